@@ -0,0 +1,403 @@
+   package mars;
+   import mars.util.*;
+   import mars.mips.hardware.*;
+   import mars.simulator.*;
+   import java.io.*;
+   import java.util.*;
+   import java.util.concurrent.*;
+   import java.security.*;
+
+	/*
+Copyright (c) 2003-2014,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Runs every program of a manifest against every input set, in parallel, for the
+ * <code>batch</code> command line option.
+ * <p>
+ * The manifest is either a directory, in which case each source file in it is a separate
+ * program, or a text file with one program per line: the names of the files to assemble
+ * together, main file first, or the name of a directory whose files are all assembled
+ * together (as with the <code>p</code> option).  The input file has one input set per
+ * line: the name of a file to use as standard input, or <code>-</code> for none, followed
+ * by the program arguments.  Relative names are taken from the directory of the file
+ * they appear in.  Blank lines and lines starting with # are ignored in both.
+ * <p>
+ * Each program is assembled once, and the resulting memory image is copied into a new
+ * SimulationContext for each of its runs.  The runs share the assembled statements
+ * read-only and are spread over one thread per processor.  One line of JSON is written
+ * per run, in manifest order: program, input, status, exitCode, instructions,
+ * stdoutDigest (SHA-256 of standard output), wallTimeMs and, for errors, error.
+ *
+ * @version October 2026
+ **/
+
+    public class BatchRunner {
+      private File manifest;
+      private File inputFile;
+      private boolean pseudo = true;
+      private boolean warningsAreErrors = false;
+      private boolean startAtMain = false;
+      private int maxSteps = -1;
+      private int assembleErrorExitCode = 0;
+      private int simulateErrorExitCode = 0;
+      private int threads = Runtime.getRuntime().availableProcessors();
+
+
+   /**
+    * Create a batch runner.
+    * @param manifest directory of programs, or file listing the programs
+    * @param inputFile file listing the input sets, or null for a single run of each program
+    * with no standard input and no arguments
+    **/
+       public BatchRunner(File manifest, File inputFile) {
+         this.manifest = manifest;
+         this.inputFile = inputFile;
+      }
+
+
+   /**
+    * Set the assembler options, as given by the np and we options.
+    * @param pseudo true if pseudo-instructions are permitted
+    * @param warningsAreErrors true if assembler warnings are errors
+    **/
+       public void setAssemblerOptions(boolean pseudo, boolean warningsAreErrors) {
+         this.pseudo = pseudo;
+         this.warningsAreErrors = warningsAreErrors;
+      }
+
+
+   /**
+    * Set where execution starts and how long it may continue.
+    * @param startAtMain true to start at the global label main, if defined
+    * @param maxSteps maximum number of steps per run, 0 or less for no maximum
+    **/
+       public void setSimulationOptions(boolean startAtMain, int maxSteps) {
+         this.startAtMain = startAtMain;
+         this.maxSteps = maxSteps;
+      }
+
+
+   /**
+    * Set the exit codes reported for runs that fail, as given by the ae and se options.
+    * @param assembleErrorExitCode exit code for a program that does not assemble
+    * @param simulateErrorExitCode exit code for a run that ends with a runtime error
+    **/
+       public void setErrorExitCodes(int assembleErrorExitCode, int simulateErrorExitCode) {
+         this.assembleErrorExitCode = assembleErrorExitCode;
+         this.simulateErrorExitCode = simulateErrorExitCode;
+      }
+
+
+   /**
+    * Assemble the programs, run them with each input set and write the results.
+    * @param out stream for the JSON lines
+    * @throws IOException if the manifest, the input file or a standard input file cannot be read
+    **/
+       public void run(PrintStream out) throws IOException {
+         ArrayList programs = readPrograms();
+         ArrayList inputs = readInputs();
+         for (int i=0; i<programs.size(); i++) {
+            ((Program) programs.get(i)).assemble();
+         }
+         ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+         ArrayList results = new ArrayList();
+         for (int i=0; i<programs.size(); i++) {
+            for (int j=0; j<inputs.size(); j++) {
+               results.add(pool.submit(new Run((Program) programs.get(i), (Input) inputs.get(j))));
+            }
+         }
+         try {
+            for (int i=0; i<results.size(); i++) {
+               out.println(((Future) results.get(i)).get());
+            }
+         }
+             catch (InterruptedException e) {
+               Thread.currentThread().interrupt();
+            }
+             catch (ExecutionException e) {
+               throw new RuntimeException(e.getCause());
+            }
+         finally {
+            pool.shutdownNow();
+         }
+      }
+
+
+       private ArrayList readPrograms() throws IOException {
+         ArrayList programs = new ArrayList();
+         if (manifest.isDirectory()) {
+            ArrayList files = FilenameFinder.getFilenameList(manifest.getAbsolutePath(), Globals.fileExtensions);
+            Collections.sort(files);
+            for (int i=0; i<files.size(); i++) {
+               ArrayList single = new ArrayList();
+               single.add(files.get(i));
+               programs.add(new Program(new File((String) files.get(i)).getName(), single));
+            }
+            return programs;
+         }
+         ArrayList lines = readLines(manifest);
+         for (int i=0; i<lines.size(); i++) {
+            String line = (String) lines.get(i);
+            ArrayList names = split(line);
+            ArrayList files;
+            File first = resolve(manifest, (String) names.get(0));
+            if (names.size() == 1 && first.isDirectory()) {
+               files = FilenameFinder.getFilenameList(first.getAbsolutePath(), Globals.fileExtensions);
+               Collections.sort(files);
+            }
+            else {
+               files = new ArrayList();
+               for (int j=0; j<names.size(); j++) {
+                  files.add(resolve(manifest, (String) names.get(j)).getAbsolutePath());
+               }
+            }
+            programs.add(new Program(line, files));
+         }
+         return programs;
+      }
+
+
+       private ArrayList readInputs() throws IOException {
+         ArrayList inputs = new ArrayList();
+         if (inputFile == null) {
+            inputs.add(new Input("", new byte[0], new ArrayList()));
+            return inputs;
+         }
+         ArrayList lines = readLines(inputFile);
+         for (int i=0; i<lines.size(); i++) {
+            String line = (String) lines.get(i);
+            ArrayList arguments = split(line);
+            String stdin = (String) arguments.remove(0);
+            byte[] bytes = (stdin.equals("-")) ? new byte[0] : readBytes(resolve(inputFile, stdin));
+            inputs.add(new Input(line, bytes, arguments));
+         }
+         return inputs;
+      }
+
+
+       // Returns the trimmed non-blank, non-comment lines of the file.
+       private static ArrayList readLines(File file) throws IOException {
+         ArrayList lines = new ArrayList();
+         BufferedReader reader = new BufferedReader(new FileReader(file));
+         try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+               line = line.trim();
+               if (line.length() > 0 && !line.startsWith("#")) {
+                  lines.add(line);
+               }
+            }
+         }
+         finally {
+            reader.close();
+         }
+         return lines;
+      }
+
+
+       private static byte[] readBytes(File file) throws IOException {
+         ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+         InputStream in = new FileInputStream(file);
+         try {
+            byte[] buffer = new byte[4096];
+            int length;
+            while ((length = in.read(buffer)) > 0) {
+               bytes.write(buffer, 0, length);
+            }
+         }
+         finally {
+            in.close();
+         }
+         return bytes.toByteArray();
+      }
+
+
+       private static ArrayList split(String line) {
+         ArrayList tokens = new ArrayList();
+         StringTokenizer st = new StringTokenizer(line);
+         while (st.hasMoreTokens()) {
+            tokens.add(st.nextToken());
+         }
+         return tokens;
+      }
+
+
+       // Relative names are relative to the directory of the file naming them.
+       private static File resolve(File listedIn, String name) {
+         File file = new File(name);
+         if (file.isAbsolute() || listedIn.getAbsoluteFile().getParentFile() == null) {
+            return file;
+         }
+         return new File(listedIn.getAbsoluteFile().getParentFile(), name);
+      }
+
+
+       private static String digest(byte[] bytes) {
+         try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(bytes);
+            StringBuffer hex = new StringBuffer();
+            for (int i=0; i<hash.length; i++) {
+               hex.append(Integer.toHexString((hash[i] >> 4) & 0xF)).append(Integer.toHexString(hash[i] & 0xF));
+            }
+            return hex.toString();
+         }
+             catch (NoSuchAlgorithmException e) {
+               return "";  // every Java platform is required to provide SHA-256
+            }
+      }
+
+
+       // JSON string literal for the value.  Also used by SimulatorServer.
+       static String quote(String value) {
+         StringBuffer quoted = new StringBuffer("\"");
+         for (int i=0; i<value.length(); i++) {
+            char ch = value.charAt(i);
+            if (ch == '"' || ch == '\\') {
+               quoted.append('\\').append(ch);
+            }
+            else if (ch < ' ') {
+               String code = Integer.toHexString(ch);
+               quoted.append("\\u").append("0000".substring(code.length())).append(code);
+            }
+            else {
+               quoted.append(ch);
+            }
+         }
+         return quoted.append('"').toString();
+      }
+
+
+       // A program of the manifest, with its assembled memory image.
+       private class Program {
+         private String name;
+         private ArrayList files;
+         private MIPSprogram code;
+         private Memory memory;
+         private int startAddress;
+         private String error;
+
+          private Program(String name, ArrayList files) {
+            this.name = name;
+            this.files = files;
+         }
+
+         // Assemble in the default context and keep a copy of the resulting memory.
+          private void assemble() {
+            try {
+               if (files.size() == 0) {
+                  throw new FileNotFoundException("no source files");
+               }
+               code = new MIPSprogram();
+               ArrayList programs = code.prepareFilesForAssembly(files, (String) files.get(0), null);
+               code.assemble(programs, pseudo, warningsAreErrors);
+               RegisterFile.initializeProgramCounter(startAtMain);
+               startAddress = RegisterFile.getProgramCounter();
+               memory = Memory.getInstance().copy();
+            }
+                catch (ProcessingException e) {
+                  error = e.errors().generateErrorAndWarningReport().trim();
+               }
+                catch (FileNotFoundException e) {
+                  error = e.getMessage();
+               }
+         }
+      }
+
+
+       // Standard input and program arguments for one run of each program.
+       private static class Input {
+         private String name;
+         private byte[] stdin;
+         private ArrayList arguments;
+
+          private Input(String name, byte[] stdin, ArrayList arguments) {
+            this.name = name;
+            this.stdin = stdin;
+            this.arguments = arguments;
+         }
+      }
+
+
+       // One program run with one input set, producing its JSON line.
+       private class Run implements Callable {
+         private Program program;
+         private Input input;
+
+          private Run(Program program, Input input) {
+            this.program = program;
+            this.input = input;
+         }
+
+          public Object call() {
+            long start = System.nanoTime();
+            String status;
+            int exitCode;
+            String error = program.error;
+            ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+            SimulationContext context = null;
+            if (error != null) {
+               status = "assemble error";
+               exitCode = assembleErrorExitCode;
+            }
+            else {
+               // Standard error is not reported.
+               context = new SimulationContext(program.memory.copy(), new ByteArrayInputStream(input.stdin),
+                                               new PrintStream(stdout, true), new PrintStream(new ByteArrayOutputStream()));
+               context.bind();
+               try {
+                  RegisterFile.initializeProgramCounter(program.startAddress);
+                  new ProgramArgumentList(input.arguments).storeProgramArguments();
+                  boolean done = program.code.simulateFromPC((BreakpointTable) null, maxSteps, null);
+                  status = (done) ? "done" : "max steps";
+                  exitCode = context.getExitCode();
+               }
+                   catch (ProcessingException e) {
+                     status = "runtime error";
+                     exitCode = simulateErrorExitCode;
+                     error = e.errors().generateErrorAndWarningReport().trim();
+                  }
+               finally {
+                  SimulationContext.unbind();
+               }
+            }
+            long elapsed = System.nanoTime() - start;
+            StringBuffer line = new StringBuffer("{");
+            line.append("\"program\":").append(quote(program.name));
+            line.append(",\"input\":").append(quote(input.name));
+            line.append(",\"status\":").append(quote(status));
+            line.append(",\"exitCode\":").append(exitCode);
+            line.append(",\"instructions\":").append((context == null) ? 0 : context.getInstructionCount());
+            line.append(",\"stdoutDigest\":").append(quote(digest(stdout.toByteArray())));
+            line.append(",\"wallTimeMs\":").append((elapsed / 1000) / 1000.0);
+            if (error != null) {
+               line.append(",\"error\":").append(quote(error));
+            }
+            return line.append("}").toString();
+         }
+      }
+   }
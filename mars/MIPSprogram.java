@@ -56,8 +56,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private ArrayList sourceList;
       private ArrayList tokenList;
       private ArrayList parsedList;
-      private ArrayList machineList;
+      private int[] machineAddresses;
+      private Memory.TextSegments assembledText;
       private BackStepper backStepper;
+      private InstructionCache instructionCache;
+      private InstructionFusion instructionFusion;
       private SymbolTable localSymbolTable;
       private MacroPool macroPool;
       private ArrayList<SourceLine> sourceLineList;
@@ -149,13 +152,26 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       }
    
    /**
-    * Produces list of machine statements that are assembled from the program.
+    * Produces list of machine statements that are assembled from the program.  The
+    * statements are not kept after assembly; they are built, in address order, from
+    * the text segment as it stood when assembly finished, so running the program or
+    * clearing memory does not change them.
     * @return ArrayList of ProgramStatement.  Each ProgramStatement represents an assembled
-    * basic MIPS instruction.
+    * basic MIPS instruction.  Null if the program has not been assembled.
     * @see ProgramStatement
     **/
     
        public ArrayList getMachineList() {
+         if (machineAddresses == null) {
+            return null;
+         }
+         ArrayList machineList = new ArrayList(machineAddresses.length);
+         for (int i=0; i<machineAddresses.length; i++) {
+            ProgramStatement statement = assembledText.getStatement(machineAddresses[i]);
+            if (statement != null) {
+               machineList.add(statement);
+            }
+         }
          return machineList;
       }
    
@@ -169,6 +185,28 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          return backStepper;
       }
    
+   /**
+    * Returns the pre-decoded instruction cache built for this program.  It is created upon successful assembly.
+    * @return InstructionCache object, null if there is none.
+    **/
+    
+       public InstructionCache getInstructionCache() {
+         return instructionCache;
+      }
+   
+   /**
+    * Returns the superinstruction table for this program, scanning the instruction
+    * cache for fusable pairs on first request.
+    * @return InstructionFusion object, null if the program has not been assembled.
+    **/
+    
+       public InstructionFusion getInstructionFusion() {
+         if (instructionFusion == null && instructionCache != null) {
+            instructionFusion = new InstructionFusion(instructionCache);
+         }
+         return instructionFusion;
+      }
+   
    /**
     * Returns SymbolTable associated with this program.  It is created at assembly time,
     * and stores local labels (those not declared using .globl directive).
@@ -314,9 +352,25 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        public ErrorList assemble(ArrayList MIPSprogramsToAssemble, boolean extendedAssemblerEnabled,
               boolean warningsAreErrors) throws ProcessingException {
          this.backStepper = null;
+         this.instructionCache = null;
+         this.instructionFusion = null;
+         this.machineAddresses = null;
+         this.assembledText = null;
          Assembler asm = new Assembler();
-         this.machineList = asm.assemble(MIPSprogramsToAssemble, extendedAssemblerEnabled, warningsAreErrors);
+         ArrayList machineList = asm.assemble(MIPSprogramsToAssemble, extendedAssemblerEnabled, warningsAreErrors);
          this.backStepper = new BackStepper();
+         this.instructionCache = new InstructionCache(machineList);
+         Memory.getInstance().setInstructionCache(this.instructionCache);
+         // The text segment now holds the assembled statements in compact form, so neither
+         // they nor the statements parsed on the first pass are kept.
+         this.machineAddresses = new int[machineList.size()];
+         for (int i=0; i<machineAddresses.length; i++) {
+            machineAddresses[i] = ((ProgramStatement) machineList.get(i)).getAddress();
+         }
+         this.assembledText = Memory.getInstance().forkTextSegments();
+         for (int i=0; i<MIPSprogramsToAssemble.size(); i++) {
+            ((MIPSprogram) MIPSprogramsToAssemble.get(i)).parsedList = null;
+         }
          return asm.getErrorList();
       }
    
@@ -344,7 +398,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     **/
     
        public boolean simulate(int maxSteps) throws ProcessingException {
-         return this.simulateFromPC(null, maxSteps, null);
+         return this.simulateFromPC((BreakpointTable) null, maxSteps, null);
       }	
    
    /**
@@ -363,6 +417,23 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          return sim.simulate(this, RegisterFile.getProgramCounter(), maxSteps, breakPoints, a);
       }
    
+   /**
+    * Simulates execution of the MIPS program. Program must have already been assembled.
+    * Begins simulation at current program counter address and continues until stopped,
+    * paused, maximum steps exceeded, a breakpoint, watch or step marker is reached, or
+    * exception occurs.
+    * @param breakpoints breakpoints, watches and step markers.  Can be null.
+    * @param maxSteps maximum number of instruction executions.  Default -1 means no maximum.
+    * @param a the GUI component responsible for this call (GO normally).  set to null if none.
+    * @return true if execution completed and false otherwise
+    * @throws ProcessingException Will throw exception if errors occured while simulating.
+    **/	
+       public boolean simulateFromPC(BreakpointTable breakpoints, int maxSteps, AbstractAction a) throws ProcessingException {
+         steppedExecution = false;
+         Simulator sim = Simulator.getInstance();
+         return sim.simulate(this, RegisterFile.getProgramCounter(), maxSteps, breakpoints, a);
+      }
+   
    
    
    /**
@@ -375,7 +446,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        public boolean simulateStepAtPC(AbstractAction a) throws ProcessingException {
          steppedExecution = true;
          Simulator sim = Simulator.getInstance();
-         boolean done = sim.simulate(this, RegisterFile.getProgramCounter(), 1, null,a);
+         boolean done = sim.simulate(this, RegisterFile.getProgramCounter(), 1, (BreakpointTable) null,a);
          return done;
       }
    
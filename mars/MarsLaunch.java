@@ -56,6 +56,23 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  ae<n>  -- terminate MARS with integer exit code <n> if an assemble error occurs.<br>
    	  ascii  -- display memory or register contents interpreted as ASCII
    		   b  -- brief - do not display register/memory address along with contents<br>
+         back  -- run with time travel and, at the end of the run, go back a number of instructions,<br>
+                  so the registers and memory displayed are as they were there.  Option has 1 argument,<br>
+                  e.g. <tt>back 1</tt> for the state before the last instruction (see TimeTravel).<br>
+        batch  -- run many programs with many input sets in parallel.  Option has 1 argument, e.g.<br>
+                  <tt>batch &lt;manifest&gt;</tt>, a directory of programs or a file listing them.<br>
+                  Results are written as JSON lines (see BatchRunner).<br>
+         bbc  -- Basic Block Compilation - frequently executed straight-line code is compiled into blocks.<br>
+        break  -- stop the run before the instruction at an address or text label is executed.<br>
+                  Option has 1 argument, e.g. <tt>break 0x00400020</tt>, and may be repeated.<br>
+      breakif  -- as break, but stop only if a condition holds there.  Option has 2 arguments,<br>
+                  e.g. <tt>breakif loop "$t0 == 100"</tt> (see BreakpointCondition).<br>
+        cache  -- measure the data cache hit rates of one or more cache configurations in a single run.<br>
+                  Option has 1 argument, e.g. <tt>cache 64x4x1+2+4/1024x8x8</tt> (see CacheSweep), and<br>
+                  may be repeated.  The hit rates are displayed as CSV at the end of the run.<br>
+  cachereport  -- write the cache hit rates to a file instead, as JSON lines if its name ends<br>
+                  with .json and as CSV otherwise.  Option has 1 argument, e.g. <tt>cachereport &lt;file&gt;</tt>.<br>
+       cycles  -- display the cycles the run would take on a five-stage pipeline, with its stalls.<br>
    		   d  -- print debugging statements<br>
            da  -- both a and d<br>
            db  -- MIPS delayed branching is enabled.<br>
@@ -67,19 +84,50 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                   are <tt>Binary</tt>, <tt>HexText</tt>, <tt>BinaryText</tt>.<br>
             h  -- display help.  Use by itself and with no filename</br>
           hex  -- display memory or register contents in hexadecimal (default)<br>
+           fr  -- Fusion Report - same as fuse, and display how often each fused pair was executed.<br>
+         fuse  -- common instruction pairs (e.g. lui+ori) are executed as one fused operation.<br>
            ic  -- display count of MIPS basic instructions 'executed'");
+       inputs  -- input sets for batch.  Option has 1 argument, e.g. <tt>inputs &lt;file&gt;</tt>,<br>
+                  a file with one line per input set: standard input file (or -) then program arguments.<br>
            mc  -- set memory configuration.  Option has 1 argument, e.g.<br>
                   <tt>mc &lt;config$gt;</tt>, where &lt;config$gt; is <tt>Default</tt><br>
                   for the MARS default 32-bit address space, <tt>CompactDataAtZero</tt> for<br>
-                  a 32KB address space with data segment at address 0, or <tt>CompactTextAtZero</tt><br>
-                  for a 32KB address space with text segment at address 0.<br>
+                  a 32KB address space with data segment at address 0, <tt>CompactTextAtZero</tt><br>
+                  for a 32KB address space with text segment at address 0, or <tt>LargeData</tt><br>
+                  (4KB pages) or <tt>LargeDataBigPages</tt> (64KB pages) for the default layout<br>
+                  with about 1.5GB of data segment and 256MB of stack, allocated as used.<br>
            me  -- display MARS messages to standard err instead of standard out. Can separate via redirection.</br>
            nc  -- do not display copyright notice (for cleaner redirected/piped output).</br>
    		  np  -- No Pseudo-instructions allowed ("ne" will work also).<br>
+      offheap  -- keep the data, heap, stack and MMIO segments in direct buffers outside the Java heap.<br>
    		   p  -- Project mode - assemble all files in the same directory as given file.<br>
+      predict  -- evaluate branch predictors on the run's conditional branches and display their<br>
+                  mispredict rates, overall and per branch site.  Option has 1 argument, a comma-separated<br>
+                  list of predictors, e.g. <tt>predict bht2:1024,gshare:12</tt> or <tt>predict all</tt>.<br>
+      profile  -- sample the program counter and call stack, and display the hottest source lines<br>
+                  and functions at the end of the run.  Option has 1 argument, the sampling interval<br>
+                  in instructions or, with the suffix ms, milliseconds, e.g. <tt>profile 1000</tt>.<br>
+       record  -- record the run's inputs (console and file reads, random numbers, time, device<br>
+                  input) in a journal file.  Option has 1 argument, e.g. <tt>record &lt;file&gt;</tt>.<br>
+       replay  -- take the run's inputs from a journal made by record, reproducing that run.<br>
+                  Option has 1 argument, e.g. <tt>replay &lt;file&gt;</tt>.<br>
+      restore  -- restore the machine state from a snapshot after assembly, then run from there.<br>
+                  Option has 1 argument, e.g. <tt>restore &lt;file&gt;</tt>.<br>
    	  se<n>  -- terminate MARS with integer exit code <n> if a simulation (run) error occurs.<br>
+       server  -- serve assemble and run requests on a Unix domain socket in a directory private to<br>
+                  the user.  Option has 1 argument, e.g. <tt>server &lt;dir&gt;</tt>.  See SimulatorServer.<br>
            sm  -- Start execution at Main - Execution will start at program statement globally labeled main.<br>
           smc  -- Self Modifying Code - Program can write and branch to either text or data segment<br>
+         until  -- as break, but stop only the first time the address is reached.<br>
+       trace  -- write an execution trace of the run: each instruction with its register writes,<br>
+                  loads and stores.  Option has 1 argument, e.g. <tt>trace &lt;file&gt;</tt>.<br>
+                  The file keeps the latest records; decode it with TraceDecoder.<br>
+       stacks  -- write the call stacks sampled by profile to a file in the collapsed format of<br>
+                  flame graph tools.  Option has 1 argument, e.g. <tt>stacks &lt;file&gt;</tt>.<br>
+     snapshot  -- save the machine state to a file at the end of the run (e.g. when the maximum<br>
+                  step count is reached).  Option has 1 argument, e.g. <tt>snapshot &lt;file&gt;</tt>.<br>
+        watch  -- stop the run when a condition becomes true at an address.  Option has 2<br>
+                  arguments, e.g. <tt>watch loop "[0x10010000] &gt; 0"</tt>.<br>
            we  -- assembler Warnings will be considered Errors<br>
           <n>  -- where <n> is an integer maximum count of steps to simulate.<br>
                   If 0, negative or not specified, there is no maximum.<br>
@@ -107,7 +155,32 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private boolean warningsAreErrors; // Whether assembler warnings should be considered errors.
       private boolean startAtMain; // Whether to start execution at statement labeled 'main' 
       private boolean countInstructions; // Whether to count and report number of instructions executed 
+      private boolean countCycles; // Whether to time the run on a pipeline model and report its cycles
+      private CacheSweep cacheSweep; // Cache configurations to measure, null for none
+      private BranchPredictorSweep branchPredictors; // Branch predictors to evaluate, null for none
+      private static final int BRANCH_REPORT_LENGTH = 20;
+      private String cacheReportFile; // Where to write their hit rates, null for standard output
       private boolean selfModifyingCode; // Whether to allow self-modifying code (e.g. write to text segment)
+      private boolean directMemory; // Whether to keep data memory outside the Java heap
+      private boolean basicBlockCompilation; // Whether to compile hot basic blocks during simulation
+      private boolean instructionFusion; // Whether to execute common instruction pairs as one step
+      private boolean fusionReport; // Whether to report instruction fusions at end of run
+      private String batchManifest; // Programs to run in batch mode, null if not in batch mode
+      private String batchInputs; // Input sets for batch mode, null for one run with no input
+      private String serverDirectory; // Directory for the socket to serve requests on, null if not in server mode
+      private String snapshotFile; // Where to save the machine state after the run, null for nowhere
+      private String restoreFile; // Machine state to restore before the run, null for none
+      private String recordFile; // Where to save the journal of the run's inputs, null for nowhere
+      private String replayFile; // Journal of inputs to replay, null for none
+      private String traceFile; // Where to write the execution trace, null for nowhere
+      private int profileInterval; // Sampling interval for the profiler, 0 for no profiling
+      private boolean profileTimer; // Whether the interval is in milliseconds rather than instructions
+      private String stacksFile; // Where to write the sampled call stacks, null for nowhere
+      private ArrayList breakpointList; // each element holds option, address or label, condition (or null)
+      private int backSteps; // Instructions to go back at the end of the run, 0 for no time travel
+      private static final int TRAVEL_INTERVAL = 100000;
+      private static final int DEFAULT_PROFILE_INTERVAL = 1000;
+      private static final int PROFILE_REPORT_LENGTH = 20;
       private static final String rangeSeparator = "-";
       private static final int splashDuration = 2000; // time in MS to show splash screen
       private static final int memoryWordsPerLine = 4; // display 4 memory words, tab separated, per line
@@ -144,7 +217,28 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             warningsAreErrors = false;
             startAtMain = false;
             countInstructions = false;
+            countCycles = false;
+            cacheSweep = null;
+            branchPredictors = null;
+            cacheReportFile = null;
 				selfModifyingCode = false;
+            directMemory = false;
+				basicBlockCompilation = false;
+				instructionFusion = false;
+				fusionReport = false;
+            batchManifest = null;
+            batchInputs = null;
+            serverDirectory = null;
+            snapshotFile = null;
+            restoreFile = null;
+            recordFile = null;
+            replayFile = null;
+            traceFile = null;
+            profileInterval = 0;
+            profileTimer = false;
+            stacksFile = null;
+            breakpointList = new ArrayList();
+            backSteps = 0;
             instructionCount = 0;
             assembleErrorExitCode = 0;
             simulateErrorExitCode = 0;
@@ -157,12 +251,20 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             maxSteps = -1;
             out = System.out;  
             if (parseCommandArgs(args)) {
-               if (runCommand()) {
-                  displayMiscellaneousPostMortem();
-                  displayRegistersPostMortem();
-                  displayMemoryPostMortem();
+               if (serverDirectory != null) {
+                  runServer();
+               }
+               else if (batchManifest != null) {
+                  runBatch();
+               }
+               else {
+                  if (runCommand()) {
+                     displayMiscellaneousPostMortem();
+                     displayRegistersPostMortem();
+                     displayMemoryPostMortem();
+                  }
+                  dumpSegments();
                }
-               dumpSegments();
             }
             System.exit(Globals.exitCode);
          }
@@ -208,7 +310,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                continue;
             }
             try {
-               int highAddress = Globals.memory.getAddressOfFirstNull(segInfo[0].intValue(), segInfo[1].intValue())- Memory.WORD_LENGTH_BYTES;
+               int highAddress = Memory.getInstance().getAddressOfFirstNull(segInfo[0].intValue(), segInfo[1].intValue())- Memory.WORD_LENGTH_BYTES;
                if (highAddress < segInfo[0].intValue()) {
                   out.println("This segment has not been written to, there is nothing to dump.");
                   continue;
@@ -311,6 +413,140 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                }
                continue;
             } 
+            if (args[i].toLowerCase().equals("batch") || args[i].toLowerCase().equals("inputs")) {
+               if (args.length <= (i+1)) {
+                  out.println("Command line argument "+args[i]+" requires a file name.");
+                  argsOK = false;
+               } 
+               else if (args[i].toLowerCase().equals("batch")) {
+                  batchManifest = args[++i];
+               }
+               else {
+                  batchInputs = args[++i];
+               }
+               continue;
+            } 
+            if (args[i].toLowerCase().equals("snapshot") || args[i].toLowerCase().equals("restore")) {
+               if (args.length <= (i+1)) {
+                  out.println("Command line argument "+args[i]+" requires a file name.");
+                  argsOK = false;
+               } 
+               else if (args[i].toLowerCase().equals("snapshot")) {
+                  snapshotFile = args[++i];
+               }
+               else {
+                  restoreFile = args[++i];
+               }
+               continue;
+            } 
+            if (args[i].toLowerCase().equals("profile")) {
+               if (args.length <= (i+1)) {
+                  out.println("Command line argument profile requires a sampling interval.");
+                  argsOK = false;
+                  continue;
+               } 
+               String interval = args[++i].toLowerCase();
+               profileTimer = interval.endsWith("ms");
+               try {
+                  profileInterval = Integer.decode(profileTimer ? interval.substring(0, interval.length()-2) : interval).intValue();
+               } 
+                  catch (NumberFormatException nfe) {
+                     profileInterval = 0;
+                  }
+               if (profileInterval <= 0) {
+                  out.println("Invalid sampling interval: "+args[i]);
+                  argsOK = false;
+               }
+               continue;
+            } 
+            if (args[i].toLowerCase().equals("stacks")) {
+               if (args.length <= (i+1)) {
+                  out.println("Command line argument stacks requires a file name.");
+                  argsOK = false;
+               } 
+               else {
+                  stacksFile = args[++i];
+               }
+               continue;
+            } 
+            if (args[i].toLowerCase().equals("trace")) {
+               if (args.length <= (i+1)) {
+                  out.println("Command line argument trace requires a file name.");
+                  argsOK = false;
+               } 
+               else {
+                  traceFile = args[++i];
+               }
+               continue;
+            } 
+            if (args[i].toLowerCase().equals("record") || args[i].toLowerCase().equals("replay")) {
+               if (args.length <= (i+1)) {
+                  out.println("Command line argument "+args[i]+" requires a file name.");
+                  argsOK = false;
+               } 
+               else if (args[i].toLowerCase().equals("record")) {
+                  recordFile = args[++i];
+               }
+               else {
+                  replayFile = args[++i];
+               }
+               continue;
+            } 
+            if (args[i].toLowerCase().equals("break") || args[i].toLowerCase().equals("until")) {
+               if (args.length <= (i+1)) {
+                  out.println("Command line argument "+args[i]+" requires an address or label.");
+                  argsOK = false;
+               } 
+               else {
+                  breakpointList.add(new Object[] {args[i].toLowerCase(), args[++i], null});
+               }
+               continue;
+            } 
+            if (args[i].toLowerCase().equals("breakif") || args[i].toLowerCase().equals("watch")) {
+               if (args.length <= (i+2)) {
+                  out.println("Command line argument "+args[i]+" requires an address or label and a condition.");
+                  argsOK = false;
+                  continue;
+               } 
+               String option = args[i].toLowerCase();
+               String location = args[++i];
+               try {
+                  breakpointList.add(new Object[] {option, location, BreakpointCondition.parse(args[++i])});
+               } 
+                  catch (IllegalArgumentException iae) {
+                     out.println(iae.getMessage());
+                     argsOK = false;
+                  }
+               continue;
+            } 
+            if (args[i].toLowerCase().equals("back")) {
+               if (args.length <= (i+1)) {
+                  out.println("Command line argument back requires an instruction count.");
+                  argsOK = false;
+                  continue;
+               } 
+               try {
+                  backSteps = Integer.decode(args[++i]).intValue();
+               } 
+                  catch (NumberFormatException nfe) {
+                     backSteps = -1;
+                  }
+               if (backSteps <= 0) {
+                  out.println("Invalid instruction count for back: "+args[i]);
+                  argsOK = false;
+               }
+               continue;
+            } 
+            if (args[i].toLowerCase().equals("server")) {
+               if (args.length <= (i+1)) {
+                  out.println("Command line argument server requires a directory name.");
+                  argsOK = false;
+               } 
+               else {
+                  serverDirectory = args[++i];
+               }
+               continue;
+            } 
             if (args[i].toLowerCase().equals("mc")) {
                String configName = args[++i];
                MemoryConfiguration config = MemoryConfigurations.getConfigurationByName(configName);
@@ -399,10 +635,77 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                selfModifyingCode = true;
                continue;
             }
+            if (args[i].toLowerCase().equals("offheap")) {
+               directMemory = true;
+               continue;
+            }
+            if (args[i].toLowerCase().equals("bbc")) {
+               basicBlockCompilation = true;
+               continue;
+            }
+            if (args[i].toLowerCase().equals("fuse")) {
+               instructionFusion = true;
+               continue;
+            }
+            if (args[i].toLowerCase().equals("fr")) {
+               instructionFusion = true;
+               fusionReport = true;
+               continue;
+            }
             if (args[i].toLowerCase().equals("ic")) { // added 19-Jul-2012 DPS
                countInstructions = true;
                continue;
             }
+            if (args[i].toLowerCase().equals("cycles")) {
+               countCycles = true;
+               continue;
+            }
+            if (args[i].toLowerCase().equals("cache")) {
+               if (args.length <= (i+1)) {
+                  out.println("Command line argument cache requires a cache specification.");
+                  argsOK = false;
+                  continue;
+               } 
+               if (cacheSweep == null) {
+                  cacheSweep = new CacheSweep();
+               }
+               try {
+                  cacheSweep.add(args[++i]);
+               } 
+                  catch (IllegalArgumentException iae) {
+                     out.println(iae.getMessage());
+                     argsOK = false;
+                  }
+               continue;
+            } 
+            if (args[i].toLowerCase().equals("predict")) {
+               if (args.length <= (i+1)) {
+                  out.println("Command line argument predict requires a list of branch predictors.");
+                  argsOK = false;
+                  continue;
+               } 
+               if (branchPredictors == null) {
+                  branchPredictors = new BranchPredictorSweep();
+               }
+               try {
+                  branchPredictors.add(args[++i]);
+               } 
+                  catch (IllegalArgumentException iae) {
+                     out.println(iae.getMessage());
+                     argsOK = false;
+                  }
+               continue;
+            } 
+            if (args[i].toLowerCase().equals("cachereport")) {
+               if (args.length <= (i+1)) {
+                  out.println("Command line argument cachereport requires a file name.");
+                  argsOK = false;
+               } 
+               else {
+                  cacheReportFile = args[++i];
+               }
+               continue;
+            } 
          
          
             if (args[i].indexOf("$") == 0) {
@@ -461,12 +764,16 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       	
       private boolean runCommand() {
          boolean programRan = false;
+         TimeTravel travel = null;
          if (filenameList.size()==0) {
             return programRan;
          }
+         if (backSteps > 0 && (breakpointList.size() > 0 || recordFile != null || replayFile != null)) {
+            out.println("The back option cannot be used with break, breakif, watch, until, record or replay.");
+            return programRan;
+         }
          try {
-            Globals.getSettings().setBooleanSettingNonPersistent(Settings.DELAYED_BRANCHING_ENABLED, delayedBranching);
-            Globals.getSettings().setBooleanSettingNonPersistent(Settings.SELF_MODIFYING_CODE_ENABLED, selfModifyingCode);
+            applySettings();
             File mainFile = new File((String) filenameList.get(0)).getAbsoluteFile();// First file is "main" file
             ArrayList filesToAssemble;
             if (assembleProject) { 
@@ -509,17 +816,49 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             if (simulate) {
                // store program args (if any) in MIPS memory
                new ProgramArgumentList(programArgumentList).storeProgramArguments();
+               if (restoreFile != null && !snapshot(false, restoreFile)) {
+                  return programRan;
+               }
+               if (backSteps > 0) {
+                  travel = startTravel();
+               }
+               if (!startJournal() || !startTrace()) {
+                  return programRan;
+               }
+               BreakpointTable breakpoints = makeBreakpoints();
+               if (breakpoints == null) {
+                  return programRan;
+               }
+               startProfile();
+               if (countCycles) {
+                  SimulationContext.current().setTimingModel(new FiveStagePipeline());
+               }
+               SimulationContext.current().setBranchPredictors(branchPredictors);
             	// establish observer if specified  
                establishObserver();
                if (Globals.debug) {
                   out.println("--------  SIMULATION BEGINS  -----------");
                }
                programRan = true;
-               boolean done = code.simulate(maxSteps);
-               if (!done) {
+               int stops = breakpoints.getStopCount();
+               boolean done;
+               if (travel != null) {
+                  done = travel.run((maxSteps > 0) ? maxSteps : -1);
+                  Globals.exitCode = travel.getContext().getExitCode();
+               } 
+               else {
+                  done = code.simulateFromPC(breakpoints, maxSteps, null);
+               }
+               if (!done && breakpoints.getStopCount() > stops) {
+                  out.println("\nProgram stopped at "+Binary.intToHexString(breakpoints.getLastStopAddress())+".");
+               }
+               else if (!done) {
                   out.println("\nProgram terminated when maximum step limit "+maxSteps+" reached.");
                }
             }
+            if (snapshotFile != null) {
+               snapshot(true, snapshotFile);
+            }
             if (Globals.debug) {
                out.println("\n--------  ALL PROCESSING COMPLETE  -----------");
             }
@@ -529,10 +868,311 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                out.println(e.errors().generateErrorAndWarningReport());
                out.println("Processing terminated due to errors.");
             } 
+         if (programRan && recordFile != null) {
+            saveJournal();
+         }
+         if (programRan && traceFile != null) {
+            finishTrace();
+         }
+         if (programRan && (profileInterval > 0 || stacksFile != null)) {
+            finishProfile();
+         }
+         if (programRan && cacheSweep != null) {
+            finishCacheSweep();
+         }
+         if (programRan && branchPredictors != null) {
+            out.println();
+            branchPredictors.writeReport(out, BRANCH_REPORT_LENGTH);
+            SimulationContext.current().setBranchPredictors(null);
+         }
+         if (programRan && countCycles) {
+            out.println();
+            SimulationContext.current().getTimingModel().writeReport(out);
+            SimulationContext.current().setTimingModel(null);
+         }
+         if (programRan && travel != null) {
+            travelBack(travel);
+         }
          return programRan;
       }
    
    
+      //////////////////////////////////////////////////////////////////////
+   	// Set up the run for the back option: it is done in a context of its own, bound to
+   	// this thread so the other options apply to it, with checkpoints for going back.
+   	
+      private TimeTravel startTravel() {
+         SimulationContext start = SimulationContext.fork(System.in, System.out, System.err);
+         start.bind();
+         return new TimeTravel(code, start, TRAVEL_INTERVAL);
+      }
+   
+   
+      //////////////////////////////////////////////////////////////////////
+   	// Go back the number of instructions given by the back option, and bind the context
+   	// there so the registers and memory displayed are those at that point.
+   	
+      private void travelBack(TimeTravel travel) {
+         long end = travel.getPosition();
+         long position = Math.max(0, end - backSteps);
+         try {
+            travel.travelTo(position);
+         } 
+            catch (ProcessingException e) {
+               out.println(e.errors().generateErrorAndWarningReport());
+            }
+         travel.getContext().bind();
+         out.println("\nWent back to instruction "+travel.getPosition()+" of "+end+".");
+      }
+   
+   
+      //////////////////////////////////////////////////////////////////////
+   	// Report the hit rates measured for the cache option, as CSV or JSON lines.
+   	
+      private void finishCacheSweep() {
+         Memory.getInstance().deleteObserver(cacheSweep);
+         if (cacheReportFile == null) {
+            out.println();
+            cacheSweep.writeCsv(out);
+            return;
+         }
+         try {
+            PrintStream report = new PrintStream(new FileOutputStream(cacheReportFile));
+            if (cacheReportFile.toLowerCase().endsWith(".json")) {
+               cacheSweep.writeJson(report);
+            } 
+            else {
+               cacheSweep.writeCsv(report);
+            }
+            report.close();
+         } 
+            catch (IOException e) {
+               out.println("Cache report error: "+e.getMessage());
+            }
+      }
+   
+   
+      //////////////////////////////////////////////////////////////////////
+   	// Attach a profiler for the profile and stacks options.
+   	
+      private void startProfile() {
+         if (profileInterval > 0 || stacksFile != null) {
+            SimulationContext.current().setProfiler(new Profiler(
+                  (profileInterval > 0) ? profileInterval : DEFAULT_PROFILE_INTERVAL, profileTimer));
+         }
+      }
+   
+   
+      //////////////////////////////////////////////////////////////////////
+   	// Display the profile and write the sampled call stacks at the end of the run.
+   	
+      private void finishProfile() {
+         Profiler profiler = SimulationContext.current().getProfiler();
+         SimulationContext.current().setProfiler(null);
+         profiler.stop();
+         if (profileInterval > 0) {
+            out.println();
+            profiler.writeReport(out, PROFILE_REPORT_LENGTH);
+         }
+         if (stacksFile != null) {
+            try {
+               PrintStream stacks = new PrintStream(new FileOutputStream(stacksFile));
+               profiler.writeCollapsedStacks(stacks);
+               stacks.close();
+            } 
+               catch (IOException e) {
+                  out.println("Profile error: "+e.getMessage());
+               }
+         }
+      }
+   
+   
+      //////////////////////////////////////////////////////////////////////
+   	// Open the execution trace for the trace option.  Returns false if it cannot be created.
+   	
+      private boolean startTrace() {
+         if (traceFile == null) {
+            return true;
+         }
+         try {
+            SimulationContext.current().setTraceWriter(new TraceWriter(new File(traceFile),
+                  TraceWriter.DEFAULT_SEGMENT_RECORDS, TraceWriter.DEFAULT_SEGMENT_COUNT));
+            return true;
+         } 
+            catch (IOException e) {
+               out.println("Trace error: "+e.getMessage());
+               Globals.exitCode = simulateErrorExitCode;
+               return false;
+            }
+      }
+   
+   
+      //////////////////////////////////////////////////////////////////////
+   	// Close the execution trace at the end of the run.
+   	
+      private void finishTrace() {
+         TraceWriter trace = SimulationContext.current().getTraceWriter();
+         SimulationContext.current().setTraceWriter(null);
+         try {
+            trace.close();
+         } 
+            catch (IOException e) {
+               out.println("Trace error: "+e.getMessage());
+            }
+      }
+   
+   
+      //////////////////////////////////////////////////////////////////////
+   	// Give the run a journal of its inputs if the record or replay option is used: the
+   	// one to replay, which goes on recording when used up, or a new one.  Returns false
+   	// if the journal to replay cannot be read.
+   	
+      private boolean startJournal() {
+         if (replayFile == null && recordFile == null) {
+            return true;
+         }
+         ReplayLog journal = new ReplayLog(false);
+         if (replayFile != null) {
+            try {
+               journal = ReplayLog.load(new File(replayFile));
+            } 
+               catch (IOException e) {
+                  out.println("Journal error: "+e.getMessage());
+                  Globals.exitCode = simulateErrorExitCode;
+                  return false;
+               }
+         }
+         SimulationContext.current().setReplayLog(journal);
+         return true;
+      }
+   
+   
+      //////////////////////////////////////////////////////////////////////
+   	// Save the journal of the run's inputs for the record option.
+   	
+      private void saveJournal() {
+         try {
+            SimulationContext.current().getReplayLog().save(new File(recordFile));
+         } 
+            catch (IOException e) {
+               out.println("Journal error: "+e.getMessage());
+            }
+      }
+   
+   
+      //////////////////////////////////////////////////////////////////////
+   	// Build the table of stops for the break, breakif, watch and until options, now
+   	// that labels can be resolved.  Returns null if an address or label is invalid.
+   	
+      private BreakpointTable makeBreakpoints() {
+         BreakpointTable breakpoints = new BreakpointTable();
+         for (int i=0; i<breakpointList.size(); i++) {
+            Object[] stop = (Object[]) breakpointList.get(i);
+            String option = (String) stop[0];
+            String location = (String) stop[1];
+            BreakpointCondition condition = (BreakpointCondition) stop[2];
+            int address;
+            try {
+               address = Binary.stringToInt(location);
+            } 
+               catch (NumberFormatException nfe) {
+                  address = code.getLocalSymbolTable().getAddressLocalOrGlobal(location);
+                  if (address == mars.assembler.SymbolTable.NOT_FOUND) {
+                     out.println("Invalid address or label for "+option+": "+location);
+                     Globals.exitCode = simulateErrorExitCode;
+                     return null;
+                  }
+               }
+            try {
+               if (option.equals("watch")) {
+                  breakpoints.setWatch(address, condition);
+               } 
+               else if (option.equals("until")) {
+                  breakpoints.setStepMarker(address);
+               } 
+               else {
+                  breakpoints.setBreakpoint(address, condition);
+               }
+            } 
+               catch (IllegalArgumentException iae) {
+                  out.println("Invalid address for "+option+": "+location);
+                  Globals.exitCode = simulateErrorExitCode;
+                  return null;
+               }
+         }
+         return breakpoints;
+      }
+   
+   
+      //////////////////////////////////////////////////////////////////////
+   	// Carry out the snapshot (save) or restore option.  Returns false if it failed.
+   	
+      private boolean snapshot(boolean save, String filename) {
+         try {
+            if (save) {
+               Snapshot.save(new File(filename));
+            } 
+            else {
+               Snapshot.restore(new File(filename));
+            }
+            return true;
+         } 
+            catch (IOException e) {
+               out.println("Snapshot error: "+e.getMessage());
+               Globals.exitCode = simulateErrorExitCode;
+               return false;
+            }
+      }
+   
+   
+      //////////////////////////////////////////////////////////////////////
+   	// Apply the options that are carried by Settings.
+   	
+      private void applySettings() {
+         Globals.getSettings().setBooleanSettingNonPersistent(Settings.DELAYED_BRANCHING_ENABLED, delayedBranching);
+         Globals.getSettings().setBooleanSettingNonPersistent(Settings.SELF_MODIFYING_CODE_ENABLED, selfModifyingCode);
+         Globals.getSettings().setBooleanSettingNonPersistent(Settings.BASIC_BLOCK_COMPILATION, basicBlockCompilation);
+         Globals.getSettings().setBooleanSettingNonPersistent(Settings.INSTRUCTION_FUSION, instructionFusion);
+         Memory.setDirectStorage(directMemory);
+      }
+   
+   
+   	//////////////////////////////////////////////////////////////////////
+   	// Carry out the batch option: run every program of the manifest with
+   	// every input set, in parallel, writing one JSON line per run.
+   	
+      private void runBatch() {
+         applySettings();
+         BatchRunner runner = new BatchRunner(new File(batchManifest), 
+                                    (batchInputs == null) ? null : new File(batchInputs));
+         runner.setAssemblerOptions(pseudo, warningsAreErrors);
+         runner.setSimulationOptions(startAtMain, maxSteps);
+         runner.setErrorExitCodes(assembleErrorExitCode, simulateErrorExitCode);
+         try {
+            runner.run(System.out);
+         } 
+            catch (IOException e) {
+               out.println("Batch error: "+e.getMessage());
+            }
+      }
+   
+   
+   	//////////////////////////////////////////////////////////////////////
+   	// Carry out the server option: serve assemble and run requests until killed.
+   	
+      private void runServer() {
+         applySettings();
+         SimulatorServer server = new SimulatorServer(new File(serverDirectory));
+         server.setErrorExitCodes(assembleErrorExitCode, simulateErrorExitCode);
+         try {
+            server.serve(out);
+         } 
+            catch (IOException e) {
+               out.println("Server error: "+e.getMessage());
+            }
+      }
+   
+   
    	//////////////////////////////////////////////////////////////////////
       // Check for memory address subrange.  Has to be two integers separated
       // by "-"; no embedded spaces.  e.g. 0x00400000-0x00400010
@@ -583,12 +1223,21 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                   }
                };
             try {
-               Globals.memory.addObserver(instructionCounter, Memory.textBaseAddress, Memory.textLimitAddress);
+               Memory.getInstance().addObserver(instructionCounter, Memory.textBaseAddress, Memory.textLimitAddress);
             } 
                catch (AddressErrorException aee) {
                   out.println("Internal error: MarsLaunch uses incorrect text segment address for instruction observer");
                }
          }		
+         if (cacheSweep != null) {
+            // The data segment through the stack, as observed by the Data Cache Simulator tool.
+            try {
+               Memory.getInstance().addObserver(cacheSweep, Memory.dataSegmentBaseAddress, Memory.stackBaseAddress);
+            } 
+               catch (AddressErrorException aee) {
+                  out.println("Internal error: MarsLaunch uses incorrect data segment address for cache observer");
+               }
+         }
       }
    	     		   	
    	//////////////////////////////////////////////////////////////////////
@@ -598,6 +1247,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          if (countInstructions) {
             out.println("\n"+instructionCount);
          }
+         if (fusionReport && code.getInstructionFusion() != null) {
+            out.println();
+            out.print(code.getInstructionFusion().getReport());
+         }
       }
    
    	     		   	
@@ -722,11 +1375,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                try {
                   // Allow display of binary text segment (machine code) DPS 14-July-2008
                   if (Memory.inTextSegment(addr) || Memory.inKernelTextSegment(addr)) {
-                     Integer iValue = Globals.memory.getRawWordOrNull(addr);
+                     Integer iValue = Memory.getInstance().getRawWordOrNull(addr);
                      value = (iValue==null) ? 0 : iValue.intValue();
                   } 
                   else {
-                     value = Globals.memory.getWord(addr);
+                     value = Memory.getInstance().getWord(addr);
                   }
                   out.print( formatIntForDisplay(value)+"\t");
                }
@@ -792,6 +1445,32 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          out.println("  ae<n>  -- terminate MARS with integer exit code <n> if an assemble error occurs.");
          out.println("  ascii  -- display memory or register contents interpreted as ASCII codes.");
          out.println("      b  -- brief - do not display register/memory address along with contents");
+         out.println("  back <n>  -- run with time travel (see TimeTravel) and, at the end of the run, go back");
+         out.println("            <n> instructions, so the registers and memory displayed are as they were");
+         out.println("            there, e.g. back 1 for the state before the last instruction or the one");
+         out.println("            that raised an error.  Not used with break, breakif, watch, until, record");
+         out.println("            or replay.");
+         out.println("  batch <manifest>  -- run many programs, each with every input set (see inputs), in");
+         out.println("            parallel.  <manifest> is a directory (each file is a program) or a file");
+         out.println("            listing one program per line: its files, main first, or a directory of");
+         out.println("            files to assemble together.  One JSON line is written per run, giving");
+         out.println("            program, input, status, exitCode, instructions, stdoutDigest and wallTimeMs.");
+         out.println("    bbc  -- Basic Block Compilation - frequently executed straight-line code is compiled");
+         out.println("            into blocks for faster simulation.  Not used with db, smc or ic.");
+         out.println("  break <addr>  -- stop the run before the instruction at <addr> is executed.  <addr> is");
+         out.println("            an address or a text label.  The registers and memory asked for are displayed");
+         out.println("            as at the end of the run.  Option may be repeated.");
+         out.println("  breakif <addr> <cond>  -- as break, but stop only if <cond> holds there.  <cond> is one");
+         out.println("            argument: a register or [address], a comparison (== != < <= > >=) and a");
+         out.println("            value, separated by spaces, e.g. breakif loop \"$t0 == 100\"");
+         out.println("  cache <spec>  -- measure the data cache hit rates of every configuration <spec> stands");
+         out.println("            for, in one run, and display them as CSV.  <spec> is blocks x words x set size");
+         out.println("            [x lru|random], each one value, several joined by +, or * for all, with further levels");
+         out.println("            after /, e.g. 64x4x1+2+4/1024x8x8.  May be repeated.");
+         out.println("  cachereport <file>  -- write the cache hit rates to <file> instead, as JSON lines if its");
+         out.println("            name ends with .json and as CSV otherwise.");
+         out.println(" cycles  -- display the cycles the run would take on a five-stage pipeline with");
+         out.println("            forwarding, and the stalls that make up the difference from ic.");
          out.println("      d  -- display MARS debugging statements");
          out.println("     db  -- MIPS delayed branching is enabled");
          out.println("    dec  -- display memory or register contents in decimal.");
@@ -803,20 +1482,60 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          out.println("            <format> = "+formats);
          out.println("      h  -- display this help.  Use by itself with no filename.");
          out.println("    hex  -- display memory or register contents in hexadecimal (default)");
+         out.println("     fr  -- Fusion Report - same as fuse, and display how often each fused pair was executed");
+         out.println("   fuse  -- common instruction pairs (e.g. lui+ori) are executed as one fused operation.");
+         out.println("            Not used with db, smc or ic.");
          out.println("     ic  -- display count of MIPS basic instructions 'executed'");
+         out.println("  inputs <file>  -- input sets for batch, one per line: a file to use as standard");
+         out.println("            input (- for none) followed by the program arguments.");
          out.println("     mc <config>  -- set memory configuration.  Argument <config> is");
          out.println("            case-sensitive and possible values are: Default for the default");
          out.println("            32-bit address space, CompactDataAtZero for a 32KB memory with");
-         out.println("            data segment at address 0, or CompactTextAtZero for a 32KB");
-         out.println("            memory with text segment at address 0.");
+         out.println("            data segment at address 0, CompactTextAtZero for a 32KB");
+         out.println("            memory with text segment at address 0, or LargeData (4KB pages)");
+         out.println("            or LargeDataBigPages (64KB pages) for the default layout with");
+         out.println("            about 1.5GB of data segment and 256MB of stack, allocated as used.");
          out.println("     me  -- display MARS messages to standard err instead of standard out. ");
          out.println("            Can separate messages from program output using redirection");
          out.println("     nc  -- do not display copyright notice (for cleaner redirected/piped output).");
          out.println("     np  -- use of pseudo instructions and formats not permitted");
+         out.println("  offheap  -- keep the data, heap, stack and MMIO segments in direct buffers outside");
+         out.println("            the Java heap, for programs that use a lot of data memory.");
          out.println("      p  -- Project mode - assemble all files in the same directory as given file.");
+         out.println("  record <file>  -- record the run's inputs (console and file reads, random numbers,");
+         out.println("            time, values loaded from MMIO devices) in a journal <file>.");
+         out.println("  replay <file>  -- take the run's inputs from a journal made by record, so the run");
+         out.println("            repeats the recorded one exactly.  Output is produced again.");
+         out.println("  predict <list>  -- evaluate branch predictors on the run's conditional branches and");
+         out.println("            display their mispredict rates, overall and per branch site with its source");
+         out.println("            line.  <list> is comma-separated: taken, nottaken, bht1[:entries],");
+         out.println("            bht2[:entries], gshare[:bits], local[:entries[:bits]], tournament[:bits],");
+         out.println("            btb[:entries], or all for one of each.");
+         out.println("  profile <n>  -- sample the program counter and call stack every <n> instructions (or");
+         out.println("            every <n> milliseconds if written <n>ms) and display the hottest source lines");
+         out.println("            and functions at the end of the run.");
+         out.println("  restore <file>  -- after assembly, restore the machine state saved by snapshot and run");
+         out.println("            from there.  Assemble the same program, under the same memory configuration.");
          out.println("  se<n>  -- terminate MARS with integer exit code <n> if a simulation (run) error occurs.");
+         out.println("  server <dir>  -- serve assemble and run requests on a Unix domain socket in <dir>,");
+         out.println("            keeping MARS loaded between them.  A request is one line of options and file");
+         out.println("            names as on this command line (a, sm, np, we, <n>, pa); the rest of the");
+         out.println("            connection is the program's standard input.  See SimulatorClient.");
+         out.println("            Anyone who can connect can run programs, and read and write files, as you:");
+         out.println("            there is no authentication.  <dir> is created with mode 0700, and the server");
+         out.println("            refuses an existing <dir> that is a link, not yours, or open to other users.");
          out.println("     sm  -- start execution at statement with global label main, if defined");
          out.println("    smc  -- Self Modifying Code - Program can write and branch to either text or data segment");
+         out.println("  snapshot <file>  -- save the machine state (memory, registers, open files) to <file>");
+         out.println("            at the end of the run, e.g. when the maximum step count is reached.");
+         out.println("  stacks <file>  -- write the call stacks sampled by profile to <file>, in the collapsed");
+         out.println("            format read by flame graph tools.");
+         out.println("  trace <file>  -- write an execution trace of the run to <file>: each instruction with");
+         out.println("            its register writes, loads and stores.  The file is a ring keeping the latest");
+         out.println("            records.  Decode it with: java mars.TraceDecoder <file> <asm files>");
+         out.println("  until <addr>  -- as break, but stop only the first time <addr> is reached.");
+         out.println("  watch <addr> <cond>  -- stop the run when <cond> becomes true at <addr>: it holds there");
+         out.println("            but did not the previous time <addr> was reached.  <cond> is as for breakif.");
          out.println("    <n>  -- where <n> is an integer maximum count of steps to simulate.");
          out.println("            If 0, negative or not specified, there is no maximum.");
          out.println(" $<reg>  -- where <reg> is number or name (e.g. 5, t3, f10) of register whose ");
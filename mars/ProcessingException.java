@@ -34,6 +34,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 
 /**
  * Class to represent error that occurs while assembling or running a MIPS program.
+ * <p>
+ * Runtime exceptions are thrown for every trap a program takes, and most are handled
+ * by the program's own exception handler and never reported.  So the constructors for
+ * runtime exceptions record no stack trace, and the ErrorList of a runtime exception
+ * is built only when errors() is first called.
  * 
  * @author Pete Sanderson
  * @version August 2003
@@ -41,6 +46,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 
     public class ProcessingException extends Exception {  
       private ErrorList errs;
+      // Runtime exception not yet turned into errs; statement is null once it has been.
+      private ProgramStatement statement;
+      private String message;
+      private int address;
+      private boolean termination;
    
    /**
     * Constructor for ProcessingException.
@@ -71,10 +81,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     * @param m a String containing specialized error message
     **/
        public ProcessingException(ProgramStatement ps, String m) {
-         errs = new ErrorList();
-         errs.add(new ErrorMessage(ps, "Runtime exception at "+
-            Binary.intToHexString(RegisterFile.getProgramCounter()-Instruction.INSTRUCTION_LENGTH)+ 
-            ": "+m));
+         super(null, null, false, false); // no stack trace; see the class description
+         statement = ps;
+         message = m;
+         address = RegisterFile.getProgramCounter()-Instruction.INSTRUCTION_LENGTH;
       		// Stopped using ps.getAddress() because of pseudo-instructions.  All instructions in
       		// the macro expansion point to the same ProgramStatement, and thus all will return the
       		// same value for getAddress(). But only the first such expanded instruction will 
@@ -112,10 +122,21 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     * Constructor for ProcessingException.
     * 
     * No parameter and thus no error list.  Use this for normal MIPS
-    * program termination (e.g. syscall 10 for exit).
+    * program termination.  The exit syscalls now use SimulationContext.requestExit().
     **/
        public ProcessingException() {
          errs = null;
+         termination = true;
+      }
+   
+   /**
+    * Determine whether this exception signals normal program termination rather than
+    * an error, without building the error list.
+    * 
+    * @return true if this exception was made by the constructor for normal termination.
+    **/
+       public boolean isTermination() {
+         return termination;
       }
    
    /**
@@ -127,6 +148,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     **/
     
        public ErrorList errors() {
+         if (statement != null) {
+            errs = new ErrorList();
+            errs.add(new ErrorMessage(statement, "Runtime exception at "+Binary.intToHexString(address)+": "+message));
+            statement = null;
+         }
          return errs;
       }
    
@@ -50,11 +50,13 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private BasicStatementList basicStatementList;
       private int[] operands;
       private int numOperands;
+      private int addressOperands;
       private Instruction instruction;
       private int textAddress;
       private int sourceLine;
       private int binaryStatement;
       private boolean altered;
+      private boolean rebuilt, tokensFromSource;
       private static final String invalidOperator = "<INVALID>";
     
     //////////////////////////////////////////////////////////////////////////////////
@@ -145,6 +147,123 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          this.altered = false;
          this.basicStatementList = buildBasicStatementListFromBinaryCode(binaryStatement, instr, operands, numOperands);
       }
+   
+   
+    //////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Constructor for ProgramStatement rebuilt from the compact form in which the text
+     * segment keeps assembled statements.  The token lists, basic assembly statement and
+     * machine statement string are not kept there; they are regenerated from the source,
+     * operands and machine code the first time they are asked for.  The regenerated token
+     * lists come from the source statement if the original ones did, otherwise from the
+     * basic assembly statement, so labels in a pseudo-instruction expansion appear as
+     * their values.
+     * @param sourceMIPSprogram The MIPSprogram object that contains this statement
+     * @param source The corresponding MIPS source statement, "" if none, or null if it is line
+     * sourceLine of sourceMIPSprogram, to be looked up when asked for.
+     * @param sourceLine The MIPS source statement line number.
+     * @param inst The Instruction object for this statement's operator.
+     * @param operands The assembled operand values.
+     * @param numOperands The number of operands in use.
+     * @param addressOperands Bit mask of the operands that are absolute addresses (see getAddressOperands()).
+     * @param tokensFromSource true if the original token list was that of the source statement.
+     * @param binaryStatement The 32-bit machine code.
+     * @param textAddress The Text Segment address in memory where the binary machine code for this statement
+     * is stored.
+     **/
+       public ProgramStatement(MIPSprogram sourceMIPSprogram, String source, int sourceLine, Instruction inst,
+                            int[] operands, int numOperands, int addressOperands, boolean tokensFromSource,
+                            int binaryStatement, int textAddress) {
+         this.sourceMIPSprogram = sourceMIPSprogram;
+         this.source = source;
+         this.sourceLine = sourceLine;
+         this.instruction = inst;
+         this.operands = operands;
+         this.numOperands = numOperands;
+         this.addressOperands = addressOperands;
+         this.tokensFromSource = tokensFromSource;
+         this.binaryStatement = binaryStatement;
+         this.textAddress = textAddress;
+         this.altered = false;
+         this.rebuilt = true;
+      }
+   
+   
+    //////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Constructor for a ProgramStatement into which the simulator loads the statements
+     * it executes one after another (see load()), so that fetching an instruction
+     * builds no object.  It has no instruction until first loaded.
+     **/
+       public ProgramStatement() {
+         this.source = "";
+         this.operands = new int[4];
+         this.rebuilt = true;
+      }
+   
+   
+    //////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Makes this statement the one the rebuilding constructor would build from the given
+     * values.  The operands are copied into this statement's own array and whatever was
+     * regenerated for the previous statement is dropped.  Only for a statement made by
+     * the no-argument constructor.
+     * @param sourceMIPSprogram The MIPSprogram object that contains this statement
+     * @param source The corresponding MIPS source statement, "" if none, or null if it is line
+     * sourceLine of sourceMIPSprogram, to be looked up when asked for.
+     * @param sourceLine The MIPS source statement line number.
+     * @param inst The Instruction object for this statement's operator.
+     * @param operands Array holding the assembled operand values.
+     * @param offset Position in operands of the first operand value.
+     * @param numOperands The number of operands in use.
+     * @param addressOperands Bit mask of the operands that are absolute addresses (see getAddressOperands()).
+     * @param tokensFromSource true if the original token list was that of the source statement.
+     * @param binaryStatement The 32-bit machine code.
+     * @param textAddress The Text Segment address in memory where the binary machine code for this statement
+     * is stored.
+     **/
+       public void load(MIPSprogram sourceMIPSprogram, String source, int sourceLine, Instruction inst,
+                            int[] operands, int offset, int numOperands, int addressOperands, boolean tokensFromSource,
+                            int binaryStatement, int textAddress) {
+         this.sourceMIPSprogram = sourceMIPSprogram;
+         this.source = source;
+         this.sourceLine = sourceLine;
+         this.instruction = inst;
+         this.operands[0] = operands[offset];
+         this.operands[1] = operands[offset + 1];
+         this.operands[2] = operands[offset + 2];
+         this.operands[3] = operands[offset + 3];
+         this.numOperands = numOperands;
+         this.addressOperands = addressOperands;
+         this.tokensFromSource = tokensFromSource;
+         this.binaryStatement = binaryStatement;
+         this.textAddress = textAddress;
+         this.originalTokenList = null;
+         this.strippedTokenList = null;
+         this.basicStatementList = null;
+         this.basicAssemblyStatement = null;
+         this.machineStatement = null;
+      }
+   
+   
+    //////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Drops the token lists, basic statement and machine statement string built while
+     * assembling this statement, once its machine code is in the text segment.  They
+     * are regenerated the first time they are asked for again, as for a statement
+     * rebuilt from the text segment.
+     **/
+       public synchronized void releaseAssemblyData() {
+         if (!rebuilt) {
+            this.tokensFromSource = (originalTokenList != strippedTokenList);
+            this.rebuilt = true;
+         }
+         this.originalTokenList = null;
+         this.strippedTokenList = null;
+         this.basicStatementList = null;
+         this.basicAssemblyStatement = null;
+         this.machineStatement = null;
+      }
    	
    
     /////////////////////////////////////////////////////////////////////////////
@@ -163,6 +282,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          String tokenValue;
          int registerNumber;
          this.numOperands = 0;
+         this.addressOperands = 0;
          for (int i=1; i<strippedTokenList.size(); i++) {
             token = strippedTokenList.get(i);
             tokenType = token.getType();
@@ -243,6 +363,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                basic += address;
                if (absoluteAddress) { // record as address if absolute, value if relative
                   basicStatementList.addAddress(address);
+                  this.addressOperands |= 1 << this.numOperands;
                } 
                else {
                   basicStatementList.addValue(address);
@@ -382,10 +503,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
         // a crude attempt at string formatting.  Where's C when you need it?
          String blanks = "                               ";
          String result = "["+this.textAddress+"]";
-         if (this.basicAssemblyStatement != null) {
-            int firstSpace = this.basicAssemblyStatement.indexOf(" ");
-            result += blanks.substring(0, 16-result.length()) + this.basicAssemblyStatement.substring(0,firstSpace);
-            result += blanks.substring(0, 24-result.length()) + this.basicAssemblyStatement.substring(firstSpace+1);;
+         String basicAssemblyStatement = getBasicAssemblyStatement();
+         String machineStatement = getMachineStatement();
+         if (basicAssemblyStatement != null) {
+            int firstSpace = basicAssemblyStatement.indexOf(" ");
+            result += blanks.substring(0, 16-result.length()) + basicAssemblyStatement.substring(0,firstSpace);
+            result += blanks.substring(0, 24-result.length()) + basicAssemblyStatement.substring(firstSpace+1);;
          } 
          else {
             result += blanks.substring(0, 16 - result.length()) + "0x" + Integer.toString(this.binaryStatement, 16);
@@ -396,11 +519,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             // result += operands[i] + " ";
                result += Integer.toString(operands[i], 16) + " ";
          }
-         if (this.machineStatement != null) {
-            result += "["+Binary.binaryStringToHexString(this.machineStatement)+"]";
-            result += "  "+this.machineStatement.substring(0,6)+"|" + this.machineStatement.substring(6,11)+"|"+
-               this.machineStatement.substring(11,16)+"|" + this.machineStatement.substring(16,21)+"|"+
-               this.machineStatement.substring(21,26)+"|" + this.machineStatement.substring(26,32);
+         if (machineStatement != null) {
+            result += "["+Binary.binaryStringToHexString(machineStatement)+"]";
+            result += "  "+machineStatement.substring(0,6)+"|" + machineStatement.substring(6,11)+"|"+
+               machineStatement.substring(11,16)+"|" + machineStatement.substring(16,21)+"|"+
+               machineStatement.substring(21,26)+"|" + machineStatement.substring(26,32);
          }
          return result;
       } // toString()
@@ -468,7 +591,13 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
      * @return The MIPS source statement.
      **/
          
-       public String getSource() {
+       public synchronized String getSource() {
+         if (source == null && rebuilt) {
+            // Rebuilt without a source of its own: it is its program's source line.
+            ArrayList lines = (sourceMIPSprogram == null) ? null : sourceMIPSprogram.getSourceLineList();
+            source = (lines == null || sourceLine < 1 || sourceLine > lines.size())
+                     ? "" : ((SourceLine) lines.get(sourceLine - 1)).getSource();
+         }
          return source;
       }
    
@@ -487,7 +616,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
      * @return The Basic Assembly statement.
      **/
      
-       public String getBasicAssemblyStatement() {
+       public synchronized String getBasicAssemblyStatement() {
+         if (basicAssemblyStatement == null && rebuilt) {
+            basicAssemblyStatement = getBasicStatementList().toString(mars.venus.NumberDisplayBaseChooser.DECIMAL,
+                                        mars.venus.NumberDisplayBaseChooser.DECIMAL);
+         }
          return basicAssemblyStatement;
       }
     
@@ -498,8 +631,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
      * setting.
      * @return The Basic Assembly statement.
      **/   
-       public String getPrintableBasicAssemblyStatement() {
-         return basicStatementList.toString();
+       public synchronized String getPrintableBasicAssemblyStatement() {
+         return getBasicStatementList().toString();
       }
    	 
     /**
@@ -507,7 +640,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
      * @return The String version of 32-bit binary machine code.
      **/
      
-       public String getMachineStatement() {
+       public synchronized String getMachineStatement() {
+         if (machineStatement == null && rebuilt) {
+            machineStatement = Binary.intToBinaryString(binaryStatement);
+         }
          return machineStatement;
       }
     
@@ -522,7 +658,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
      * Produces token list generated from original source statement.
      * @return The TokenList of Token objects generated from original source.
      **/
-       public TokenList getOriginalTokenList() {
+       public synchronized TokenList getOriginalTokenList() {
+         if (originalTokenList == null && rebuilt) {
+            String line = (tokensFromSource) ? getSource() : getBasicAssemblyStatement();
+            originalTokenList = new Tokenizer(sourceMIPSprogram).tokenizeLine(sourceMIPSprogram, sourceLine, line, false);
+         }
          return originalTokenList;
       }
     /**
@@ -530,7 +670,19 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
      * @return The TokenList of Token objects generated by stripping original list of all
      * except operator and operand tokens.
      **/
-       public TokenList getStrippedTokenList() {
+       public synchronized TokenList getStrippedTokenList() {
+         if (strippedTokenList == null && rebuilt) {
+            // As the assembler does: drop the comment, then any labels.
+            TokenList tokens = (TokenList) getOriginalTokenList().clone();
+            if (!tokens.isEmpty() && tokens.get(tokens.size()-1).getType() == TokenTypes.COMMENT) {
+               tokens.remove(tokens.size()-1);
+            }
+            while (tokens.size() >= 2 && tokens.get(1).getType() == TokenTypes.COLON) {
+               tokens.remove(0);
+               tokens.remove(0);
+            }
+            strippedTokenList = tokens;
+         }
          return strippedTokenList;
       }
     /**
@@ -554,6 +706,21 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        public int[] getOperands() {
          return operands;
       }
+    /**
+     * Produces the number of operands in use in the operand array.
+     * @return number of operands required by this statement's operator.
+     **/    
+       public int getNumOperands() {
+         return numOperands;
+      }
+    /**
+     * Produces the operands that are absolute addresses rather than values, i.e. labels
+     * replaced by their address other than in a branch.
+     * @return bit mask with bit i set if operand i is an address.
+     **/    
+       public int getAddressOperands() {
+         return addressOperands;
+      }
     /**
      * Produces operand value from given array position (first operand is position 0).
      * 
@@ -590,6 +757,23 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       } // insertBinaryCode()
    
    
+    //////////////////////////////////////////////////////////////////////////////
+    //  The basic statement list, built from the operands if this statement was rebuilt.
+    //  Jump targets were stored as word addresses by buildMachineStatementFromBasicStatement().
+       private synchronized BasicStatementList getBasicStatementList() {
+         if (basicStatementList == null && rebuilt) {
+            BasicInstruction instr = (instruction instanceof BasicInstruction) ? (BasicInstruction) instruction : null;
+            int[] values = operands;
+            if (instr != null && instr.getInstructionFormat() == BasicInstructionFormat.J_FORMAT && numOperands > 0) {
+               values = operands.clone();
+               values[0] = values[0] << 2;
+            }
+            basicStatementList = buildBasicStatementListFromBinaryCode(binaryStatement, instr, values, numOperands, addressOperands);
+         }
+         return basicStatementList;
+      }
+   
+   
     //////////////////////////////////////////////////////////////////////////////
    /*
     *   Given a model BasicInstruction and the assembled (not source) operand array for a statement, 
@@ -598,6 +782,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     *   intended to be used when source code is available.  DPS 11-July-2013
     */
        private BasicStatementList buildBasicStatementListFromBinaryCode(int binary, BasicInstruction instr, int[] operands, int numOperands) {      
+         return buildBasicStatementListFromBinaryCode(binary, instr, operands, numOperands, 0);
+      }
+   
+   // As above, with a bit mask of the operands to be shown as addresses rather than values.
+       private BasicStatementList buildBasicStatementListFromBinaryCode(int binary, BasicInstruction instr, int[] operands, int numOperands,
+                                                                        int addressOperands) {      
          BasicStatementList statementList = new BasicStatementList();
          int tokenListCounter = 1;  // index 0 is operator; operands start at index 1
          if (instr == null) {
@@ -630,6 +820,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                   statementList.addString(marker+operands[i]);
                   notOperand = false;
                }
+               else if ((addressOperands & (1 << i)) != 0) {
+                  statementList.addAddress(operands[i]);
+                  notOperand = false;
+               }
                else {
                   statementList.addValue(operands[i]);
                   notOperand = false;
@@ -690,7 +884,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
           public String toString() {
             int addressBase =  (Globals.getSettings().getBooleanSetting(Settings.DISPLAY_ADDRESSES_IN_HEX)) ? mars.venus.NumberDisplayBaseChooser.HEXADECIMAL : mars.venus.NumberDisplayBaseChooser.DECIMAL;
             int valueBase =  (Globals.getSettings().getBooleanSetting(Settings.DISPLAY_VALUES_IN_HEX)) ? mars.venus.NumberDisplayBaseChooser.HEXADECIMAL : mars.venus.NumberDisplayBaseChooser.DECIMAL;
-         	
+            return toString(addressBase, valueBase);
+         }
+      
+          String toString(int addressBase, int valueBase) {
             StringBuffer result = new StringBuffer();
             for (int i=0; i<list.size(); i++) {
                ListElement e = (ListElement) list.get(i);
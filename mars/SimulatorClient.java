@@ -0,0 +1,187 @@
+   package mars;
+   import java.io.*;
+   import java.net.*;
+   import java.nio.*;
+   import java.nio.channels.*;
+
+	/*
+Copyright (c) 2003-2014,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Client for SimulatorServer.  Usage:
+ * <pre>   java mars.SimulatorClient &lt;directory&gt; [a] [sm] [np] [we] [&lt;n&gt;] file... [pa argument...]</pre>
+ * where &lt;directory&gt; is the one given to the server, holding its socket.
+ * Sends the request, then copies its own standard input to the program until end of
+ * file.  The program's output is written to standard output, any error report to
+ * standard error, and the client exits with the program's exit code.  File names are
+ * sent as absolute paths, so the client need not run in the server's directory.
+ * It does not load MARS, so it starts quickly.
+ *
+ * @version October 2026
+ **/
+
+    public class SimulatorClient {
+
+       public static void main(String[] args) {
+         if (args.length < 2) {
+            System.err.println("Usage: java mars.SimulatorClient <directory> [options] file... [pa arguments...]");
+            System.exit(2);
+         }
+         try {
+            System.exit(run(new File(args[0]), request(args), System.in, System.out, System.err));
+         }
+             catch (IOException e) {
+               System.err.println("MARS server error: "+e.getMessage());
+            }
+         System.exit(2);
+      }
+
+
+   /**
+    * Send one request and copy the program's output and error report.
+    * @param directory the server's directory, holding its socket
+    * @param request the request line, without line terminator
+    * @param in program's standard input
+    * @param out receives the program's standard output
+    * @param err receives the error report, if any
+    * @return the program's exit code
+    * @throws IOException if the server cannot be reached or the response is malformed
+    **/
+       public static int run(File directory, String request, final InputStream in, PrintStream out, PrintStream err) throws IOException {
+         final SocketChannel channel = SocketChannel.open(
+                  UnixDomainSocketAddress.of(new File(directory, SimulatorServer.SOCKET_NAME).toPath()));
+         try {
+            byte[] line = (request+"\n").getBytes("UTF-8");
+            write(channel, line, line.length);
+            // Input is written to the channel directly: a stream from Channels would hold
+            // the channel's lock while the response is awaited below.
+            Thread input =
+               new Thread() {
+                  public void run() {
+                     try {
+                        byte[] buffer = new byte[4096];
+                        int length;
+                        while ((length = in.read(buffer)) != -1) {
+                           write(channel, buffer, length);
+                        }
+                        channel.shutdownOutput();
+                     }
+                         catch (IOException e) {
+                           // The run ended before all input was sent.
+                        }
+                  }
+               };
+            input.setDaemon(true);
+            input.start();
+            InputStream fromServer = new BufferedInputStream(Channels.newInputStream(channel));
+            String header = readLine(fromServer);
+            if (header == null) {
+               throw new IOException("no response");
+            }
+            copy(fromServer, out, field(header, "outputLength"));
+            copy(fromServer, err, field(header, "errorLength"));
+            out.flush();
+            err.flush();
+            String status = header.substring(header.indexOf("\"status\":\"")+10, header.indexOf("\","));
+            if (status.equals("request error") || status.equals("assemble error") || status.equals("runtime error")) {
+               err.println("MARS: "+status);
+            }
+            return field(header, "exitCode");
+         }
+         finally {
+            channel.close();
+         }
+      }
+
+
+       private static void write(SocketChannel channel, byte[] bytes, int length) throws IOException {
+         ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+         while (buffer.hasRemaining()) {
+            channel.write(buffer);
+         }
+      }
+
+
+       // Build the request line, making file names absolute.
+       private static String request(String[] args) {
+         StringBuffer request = new StringBuffer();
+         boolean arguments = false;
+         for (int i=1; i<args.length; i++) {
+            String arg = args[i];
+            if (arg.equalsIgnoreCase("pa")) {
+               arguments = true;
+            }
+            else if (!arguments && new File(arg).exists()) {
+               arg = new File(arg).getAbsolutePath();
+            }
+            if (request.length() > 0) {
+               request.append(' ');
+            }
+            request.append(arg);
+         }
+         return request.toString();
+      }
+
+
+       // Integer value of a field of the response header.
+       private static int field(String header, String name) throws IOException {
+         int start = header.indexOf("\""+name+"\":");
+         if (start < 0) {
+            throw new IOException("malformed response: "+header);
+         }
+         start += name.length()+3;
+         int end = start;
+         while (end < header.length() && (Character.isDigit(header.charAt(end)) || header.charAt(end) == '-')) {
+            end++;
+         }
+         return Integer.parseInt(header.substring(start, end));
+      }
+
+
+       private static void copy(InputStream from, OutputStream to, int length) throws IOException {
+         byte[] buffer = new byte[4096];
+         while (length > 0) {
+            int read = from.read(buffer, 0, Math.min(length, buffer.length));
+            if (read == -1) {
+               throw new IOException("response truncated");
+            }
+            to.write(buffer, 0, read);
+            length -= read;
+         }
+      }
+
+
+       private static String readLine(InputStream in) throws IOException {
+         ByteArrayOutputStream line = new ByteArrayOutputStream();
+         int b;
+         while ((b = in.read()) != -1 && b != '\n') {
+            line.write(b);
+         }
+         return (b == -1) ? null : new String(line.toByteArray(), "UTF-8");
+      }
+   }
@@ -0,0 +1,372 @@
+   package mars;
+   import mars.mips.hardware.*;
+   import mars.simulator.*;
+   import java.io.*;
+   import java.net.*;
+   import java.nio.channels.*;
+   import java.nio.file.*;
+   import java.nio.file.attribute.*;
+   import java.util.*;
+   import java.util.concurrent.*;
+
+	/*
+Copyright (c) 2003-2014,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Long-running server for the <code>server</code> command line option.  The instruction
+ * set, custom languages and syscalls are loaded once, when MARS starts, and each request
+ * then costs only its assembly and simulation.  The server listens on a Unix domain
+ * socket, SOCKET_NAME in a directory given when it is started, and serves each connection
+ * on a pooled worker thread.
+ * <p>
+ * A request runs a program with the server's own permissions: it can name any file the
+ * server can read, and the program's syscalls can read and write files.  So the socket
+ * must be reachable by the user running the server only.  There is no authentication;
+ * instead the server creates the directory readable by its owner only (mode 0700), or
+ * refuses to start if an existing directory is a link, belongs to another user, or can be
+ * used by the group or others.
+ * <p>
+ * A request is one line of text:
+ * <pre>   [a] [sm] [np] [we] [&lt;n&gt;] file... [pa argument...]</pre>
+ * with the same meaning as on the MARS command line: assemble only, start at main,
+ * no pseudo-instructions, warnings are errors, maximum step count, the files to assemble
+ * (main first, names relative to the server's directory) and the program arguments.
+ * Everything the client sends after that line, until it shuts down its side of the
+ * connection, is the program's standard input.
+ * <p>
+ * The response is one line of JSON with status, exitCode, instructions, wallTimeMs,
+ * outputLength and errorLength, followed by outputLength bytes of standard output and
+ * errorLength bytes of error report.  Assembled programs are cached, keyed by their
+ * files and assembler options, until one of the files changes.  Settings such as
+ * delayed branching are those given on the command line that started the server.
+ * SimulatorClient is a small client for this protocol.
+ *
+ * @version October 2026
+ **/
+
+    public class SimulatorServer {
+      private static final int CACHE_SIZE = 32;
+
+   /** Name of the server's socket within its directory. **/
+      public static final String SOCKET_NAME = "mars.sock";
+
+      private File directory;
+      private int assembleErrorExitCode = 0;
+      private int simulateErrorExitCode = 0;
+      private Map cache;  // request key -> Program, least recently used first
+      // Assembly uses the default context and global symbol table, so it is done one at a time.
+      private final Object assemblyLock = new Object();
+
+
+   /**
+    * Create a server for the given directory.
+    * @param directory directory to hold the server's socket; created if it does not exist
+    **/
+       public SimulatorServer(File directory) {
+         this.directory = directory;
+         this.cache = new LinkedHashMap(CACHE_SIZE, 0.75f, true) {
+                   protected boolean removeEldestEntry(Map.Entry eldest) {
+                     return size() > CACHE_SIZE;
+                  }
+               };
+      }
+
+
+   /**
+    * Set the exit codes reported for requests that fail, as given by the ae and se options.
+    * @param assembleErrorExitCode exit code for a program that does not assemble
+    * @param simulateErrorExitCode exit code for a run that ends with a runtime error
+    **/
+       public void setErrorExitCodes(int assembleErrorExitCode, int simulateErrorExitCode) {
+         this.assembleErrorExitCode = assembleErrorExitCode;
+         this.simulateErrorExitCode = simulateErrorExitCode;
+      }
+
+
+   /**
+    * Accept and serve requests.  Does not return unless the socket cannot be used.
+    * @param out stream for the server's own messages
+    * @throws IOException if the directory is not private to this user or the socket cannot be opened
+    **/
+       public void serve(PrintStream out) throws IOException {
+         Path socketPath = privateDirectory(directory.toPath()).resolve(SOCKET_NAME);
+         // Left behind if an earlier server was killed; nobody else can have put it there.
+         Files.deleteIfExists(socketPath);
+         ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+         server.bind(UnixDomainSocketAddress.of(socketPath));
+         ExecutorService pool = Executors.newFixedThreadPool(Math.max(2, 2 * Runtime.getRuntime().availableProcessors()));
+         out.println("MARS server listening on "+socketPath);
+         try {
+            while (true) {
+               final SocketChannel channel = server.accept();
+               pool.execute(
+                     new Runnable() {
+                        public void run() {
+                           serve(channel);
+                        }
+                     });
+            }
+         }
+         finally {
+            pool.shutdownNow();
+            server.close();
+            Files.deleteIfExists(socketPath);
+         }
+      }
+
+
+       // Create the socket directory with access for its owner only, or check that an
+       // existing one is a directory of this user's that the group and others cannot use.
+       private static Path privateDirectory(Path directory) throws IOException {
+         try {
+            if (!Files.exists(directory, LinkOption.NOFOLLOW_LINKS)) {
+               try {
+                  Files.createDirectory(directory, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+               }
+                   catch (FileSystemException e) {
+                     throw new IOException("cannot create directory "+directory);
+                  }
+            }
+            if (!Files.isDirectory(directory, LinkOption.NOFOLLOW_LINKS)) {
+               throw new IOException(directory+" is not a directory");
+            }
+            UserPrincipal user = directory.getFileSystem().getUserPrincipalLookupService()
+                                    .lookupPrincipalByName(System.getProperty("user.name"));
+            if (!Files.getOwner(directory, LinkOption.NOFOLLOW_LINKS).equals(user)) {
+               throw new IOException(directory+" belongs to another user");
+            }
+            Set permissions = Files.getPosixFilePermissions(directory, LinkOption.NOFOLLOW_LINKS);
+            if (!PosixFilePermissions.fromString("rwx------").containsAll(permissions)) {
+               throw new IOException(directory+" can be used by other users (mode must be 0700)");
+            }
+         }
+             catch (UnsupportedOperationException e) {
+               throw new IOException("cannot check that "+directory+" is private on this file system");
+            }
+         return directory;
+      }
+
+
+       // Serve one connection.
+       private void serve(SocketChannel channel) {
+         try {
+            InputStream in = Channels.newInputStream(channel);
+            OutputStream out = Channels.newOutputStream(channel);
+            String request = readLine(in);
+            if (request != null) {
+               respond(request, in, out);
+            }
+            out.flush();
+         }
+             catch (IOException e) {
+               // The client went away; nothing to report to.
+            }
+         finally {
+            try {
+               channel.close();
+            }
+                catch (IOException e) {
+               }
+         }
+      }
+
+
+       private void respond(String request, InputStream in, OutputStream out) throws IOException {
+         long start = System.nanoTime();
+         boolean assembleOnly = false, startAtMain = false, pseudo = true, warningsAreErrors = false;
+         int maxSteps = -1;
+         ArrayList files = new ArrayList();
+         ArrayList arguments = null;
+         String error = null;
+         StringTokenizer tokens = new StringTokenizer(request);
+         while (tokens.hasMoreTokens()) {
+            String token = tokens.nextToken();
+            if (arguments != null) {
+               arguments.add(token);
+            }
+            else if (token.equalsIgnoreCase("pa")) {
+               arguments = new ArrayList();
+            }
+            else if (token.equalsIgnoreCase("a")) {
+               assembleOnly = true;
+            }
+            else if (token.equalsIgnoreCase("sm")) {
+               startAtMain = true;
+            }
+            else if (token.equalsIgnoreCase("np") || token.equalsIgnoreCase("ne")) {
+               pseudo = false;
+            }
+            else if (token.equalsIgnoreCase("we")) {
+               warningsAreErrors = true;
+            }
+            else if (new File(token).exists()) {
+               files.add(new File(token).getAbsolutePath());
+            }
+            else {
+               try {
+                  maxSteps = Integer.decode(token).intValue();
+               }
+                   catch (NumberFormatException e) {
+                     error = "Invalid request argument: "+token;
+                  }
+            }
+         }
+         if (error == null && files.size() == 0) {
+            error = "No file to assemble";
+         }
+         String status;
+         int exitCode = 0;
+         long instructions = 0;
+         ByteArrayOutputStream output = new ByteArrayOutputStream();
+         Program program = null;
+         if (error != null) {
+            status = "request error";
+         }
+         else {
+            program = getProgram(files, pseudo, warningsAreErrors);
+            error = program.error;
+            if (error != null) {
+               status = "assemble error";
+               exitCode = assembleErrorExitCode;
+            }
+            else if (assembleOnly) {
+               status = "assembled";
+            }
+            else {
+               PrintStream stdout = new PrintStream(output, true);
+               SimulationContext context = new SimulationContext(program.memory.copy(), in, stdout, stdout);
+               context.bind();
+               try {
+                  RegisterFile.initializeProgramCounter(startAtMain ? program.mainAddress : program.startAddress);
+                  new ProgramArgumentList(arguments).storeProgramArguments();
+                  boolean done = program.code.simulateFromPC((BreakpointTable) null, maxSteps, null);
+                  status = (done) ? "done" : "max steps";
+                  exitCode = context.getExitCode();
+               }
+                   catch (ProcessingException e) {
+                     status = "runtime error";
+                     exitCode = simulateErrorExitCode;
+                     error = e.errors().generateErrorAndWarningReport();
+                  }
+               finally {
+                  SimulationContext.unbind();
+               }
+               instructions = context.getInstructionCount();
+            }
+         }
+         byte[] errorBytes = (error == null) ? new byte[0] : error.getBytes("UTF-8");
+         long elapsed = System.nanoTime() - start;
+         StringBuffer header = new StringBuffer("{");
+         header.append("\"status\":").append(BatchRunner.quote(status));
+         header.append(",\"exitCode\":").append(exitCode);
+         header.append(",\"instructions\":").append(instructions);
+         header.append(",\"wallTimeMs\":").append((elapsed / 1000) / 1000.0);
+         header.append(",\"outputLength\":").append(output.size());
+         header.append(",\"errorLength\":").append(errorBytes.length);
+         header.append("}\n");
+         out.write(header.toString().getBytes("UTF-8"));
+         output.writeTo(out);
+         out.write(errorBytes);
+      }
+
+
+       // Returns the assembled program, from the cache if none of its files has changed.
+       private Program getProgram(ArrayList files, boolean pseudo, boolean warningsAreErrors) {
+         String key = files.toString()+" "+pseudo+" "+warningsAreErrors;
+         synchronized (assemblyLock) {
+            Program program = (Program) cache.get(key);
+            if (program == null || !program.isCurrent()) {
+               program = new Program(files);
+               program.assemble(pseudo, warningsAreErrors);
+               cache.put(key, program);
+            }
+            return program;
+         }
+      }
+
+
+       // Read one line of UTF-8 text, byte by byte so nothing after it is consumed.
+       private static String readLine(InputStream in) throws IOException {
+         ByteArrayOutputStream line = new ByteArrayOutputStream();
+         int b;
+         while ((b = in.read()) != -1 && b != '\n') {
+            if (b != '\r') {
+               line.write(b);
+            }
+         }
+         if (b == -1 && line.size() == 0) {
+            return null;
+         }
+         return new String(line.toByteArray(), "UTF-8");
+      }
+
+
+       // An assembled program: a copy of memory after assembly and its start addresses.
+       private static class Program {
+         private ArrayList files;
+         private long[] modified;
+         private MIPSprogram code;
+         private Memory memory;
+         private int startAddress;
+         private int mainAddress;
+         private String error;
+
+          private Program(ArrayList files) {
+            this.files = files;
+            this.modified = new long[files.size()];
+            for (int i=0; i<files.size(); i++) {
+               modified[i] = new File((String) files.get(i)).lastModified();
+            }
+         }
+
+          private boolean isCurrent() {
+            for (int i=0; i<files.size(); i++) {
+               if (new File((String) files.get(i)).lastModified() != modified[i]) {
+                  return false;
+               }
+            }
+            return true;
+         }
+
+          private void assemble(boolean pseudo, boolean warningsAreErrors) {
+            try {
+               code = new MIPSprogram();
+               ArrayList programs = code.prepareFilesForAssembly(new ArrayList(files), (String) files.get(0), null);
+               code.assemble(programs, pseudo, warningsAreErrors);
+               RegisterFile.initializeProgramCounter(false);
+               startAddress = RegisterFile.getProgramCounter();
+               RegisterFile.initializeProgramCounter(true);
+               mainAddress = RegisterFile.getProgramCounter();
+               memory = Memory.getInstance().copy();
+            }
+                catch (ProcessingException e) {
+                  error = e.errors().generateErrorAndWarningReport();
+               }
+         }
+      }
+   }
@@ -0,0 +1,213 @@
+   package mars;
+   import mars.mips.hardware.*;
+   import mars.simulator.*;
+   import mars.util.*;
+   import java.io.*;
+   import java.nio.MappedByteBuffer;
+   import java.nio.channels.FileChannel;
+   import java.util.*;
+
+	/*
+Copyright (c) 2003-2014,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Decoder of execution traces written by TraceWriter (the <code>trace</code> command
+ * line option).  Usage:
+ * <pre>   java mars.TraceDecoder [mc &lt;config&gt;] [np] [p] &lt;trace&gt; file...</pre>
+ * The files are assembled as they were for the traced run (the memory configuration,
+ * no-pseudo-instruction and project options must match), and each traced instruction
+ * is printed with its address, binary, source file and line and source text, followed
+ * by the register writes, loads and stores it made.  An instruction that was modified
+ * by the program before it ran is shown disassembled.  If the ring wrapped, only the
+ * records it kept are decoded.
+ *
+ * @version October 2026
+ **/
+
+    public class TraceDecoder {
+
+       public static void main(String[] args) {
+         boolean pseudo = true, project = false;
+         int i = 0;
+         for (; i < args.length; i++) {
+            if (args[i].equalsIgnoreCase("mc") && i+1 < args.length) {
+               MemoryConfiguration config = MemoryConfigurations.getConfigurationByName(args[++i]);
+               if (config == null) {
+                  System.err.println("Invalid memory configuration: "+args[i]);
+                  System.exit(2);
+               }
+               MemoryConfigurations.setCurrentConfiguration(config);
+            }
+            else if (args[i].equalsIgnoreCase("np") || args[i].equalsIgnoreCase("ne")) {
+               pseudo = false;
+            }
+            else if (args[i].equalsIgnoreCase("p")) {
+               project = true;
+            }
+            else {
+               break;
+            }
+         }
+         if (args.length - i < 2) {
+            System.err.println("Usage: java mars.TraceDecoder [mc <config>] [np] [p] <trace> file...");
+            System.exit(2);
+         }
+         File trace = new File(args[i]);
+         ArrayList files = new ArrayList(Arrays.asList(args).subList(i+1, args.length));
+         Globals.initialize(false);
+         PrintStream out = new PrintStream(new BufferedOutputStream(System.out), false);
+         try {
+            assemble(files, pseudo, project);
+            decode(trace, out);
+         }
+             catch (ProcessingException e) {
+               System.err.println(e.errors().generateErrorAndWarningReport());
+               System.exit(2);
+            }
+             catch (IOException e) {
+               System.err.println("Trace error: "+e.getMessage());
+               System.exit(2);
+            }
+         finally {
+            out.flush();
+         }
+      }
+
+
+       private static void assemble(ArrayList files, boolean pseudo, boolean project) throws ProcessingException {
+         String mainFile = new File((String) files.get(0)).getAbsolutePath();
+         ArrayList filesToAssemble = (project)
+                  ? FilenameFinder.getFilenameList(new File(mainFile).getParent(), Globals.fileExtensions)
+                  : FilenameFinder.getFilenameList(files, FilenameFinder.MATCH_ALL_EXTENSIONS);
+         MIPSprogram code = new MIPSprogram();
+         code.assemble(code.prepareFilesForAssembly(filesToAssemble, mainFile, null), pseudo, false);
+      }
+
+
+   /**
+    * Decode a trace against the program currently in memory.
+    * @param trace the trace file
+    * @param out receives one line per record
+    * @throws IOException if the file cannot be read or is not a trace
+    **/
+       public static void decode(File trace, PrintStream out) throws IOException {
+         RandomAccessFile file = new RandomAccessFile(trace, "r");
+         try {
+            FileChannel channel = file.getChannel();
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, TraceWriter.HEADER_LENGTH);
+            if (header.getInt() != TraceWriter.MAGIC) {
+               throw new IOException(trace+" is not a MARS trace");
+            }
+            if (header.getInt() != TraceWriter.VERSION || header.getInt() != TraceWriter.RECORD_LENGTH) {
+               throw new IOException(trace+" is from another version of MARS");
+            }
+            int segmentRecords = header.getInt();
+            int segmentCount = header.getInt();
+            long records = header.getLong();
+            long segmentsWritten = (records + segmentRecords - 1) / segmentRecords;
+            long first = Math.max(0, segmentsWritten - segmentCount) * segmentRecords;
+            out.println("# "+records+" records written, "+(records - first)+" kept");
+            long segmentLength = (long) segmentRecords * TraceWriter.RECORD_LENGTH;
+            boolean started = false;
+            for (long r = first; r < records; ) {
+               int slot = (int) ((r / segmentRecords) % segmentCount);
+               MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY,
+                                TraceWriter.HEADER_LENGTH + slot * segmentLength, segmentLength);
+               for (long end = Math.min(records, (r / segmentRecords + 1) * segmentRecords); r < end; r++) {
+                  int kind = segment.get();
+                  int detail = segment.get() & 0xff;
+                  segment.getShort();
+                  int first32 = segment.getInt();
+                  int second32 = segment.getInt();
+                  started = started || kind == TraceWriter.INSTRUCTION;
+                  if (started) {
+                     out.println(format(kind, detail, first32, second32));
+                  }
+               }
+            }
+         }
+         finally {
+            file.close();
+         }
+      }
+
+
+       // One line for a record.
+       private static String format(int kind, int detail, int first, int second) {
+         switch (kind) {
+            case TraceWriter.INSTRUCTION :
+               return formatInstruction(first, second);
+            case TraceWriter.REGISTER :
+               String name = (detail == 33) ? "hi" : (detail == 34) ? "lo" : registerName(RegisterFile.getRegisters(), detail);
+               return "            "+name+" <- "+Binary.intToHexString(first);
+            case TraceWriter.FP_REGISTER :
+               return "            "+registerName(Coprocessor1.getRegisters(), detail)+" <- "+Binary.intToHexString(first);
+            case TraceWriter.COP0_REGISTER :
+               return "            "+registerName(Coprocessor0.getRegisters(), detail)+" <- "+Binary.intToHexString(first);
+            case TraceWriter.LOAD :
+               return "            load  ["+Binary.intToHexString(first)+"] ("+detail+") -> "+Binary.intToHexString(second);
+            case TraceWriter.STORE :
+               return "            store ["+Binary.intToHexString(first)+"] ("+detail+") <- "+Binary.intToHexString(second);
+            default :
+               return "            ? record kind "+kind;
+         }
+      }
+
+
+       // Address, binary and source of an instruction, from the assembled program if it
+       // was not modified, otherwise disassembled.
+       private static String formatInstruction(int address, int binary) {
+         StringBuffer line = new StringBuffer(Binary.intToHexString(address));
+         line.append("  ").append(Binary.intToHexString(binary));
+         ProgramStatement statement = null;
+         try {
+            statement = Memory.getInstance().getStatementNoNotify(address);
+         }
+             catch (AddressErrorException e) {
+            }
+         if (statement != null && statement.getBinaryStatement() == binary && statement.getSourceMIPSprogram() != null) {
+            line.append("  ").append(new File(statement.getSourceMIPSprogram().getFilename()).getName());
+            line.append(":").append(statement.getSourceLine());
+            line.append("  ").append(statement.getSource().trim());
+         }
+         else {
+            line.append("  (modified)  ").append(new ProgramStatement(binary, address).getPrintableBasicAssemblyStatement());
+         }
+         return line.toString();
+      }
+
+
+       private static String registerName(Register[] registers, int number) {
+         for (int i = 0; i < registers.length; i++) {
+            if (registers[i].getNumber() == number) {
+               return registers[i].getName();
+            }
+         }
+         return "$"+number;
+      }
+   }
@@ -192,7 +192,7 @@
          currentFileDataSegmentForwardReferences = new DataSegmentForwardReferences();
          accumulatedDataSegmentForwardReferences = new DataSegmentForwardReferences();
          Globals.symbolTable.clear();
-         Globals.memory.clear();
+         Memory.getInstance().clear();
          this.machineList = new ArrayList();
          this.errors = new ErrorList(); 
          if (Globals.debug)
@@ -279,7 +279,11 @@
          if (Globals.debug)
             System.out.println("Assembler second pass begins");
       // SECOND PASS OF ASSEMBLER GENERATES BASIC ASSEMBLER THEN MACHINE CODE.
-      // Generates basic assembler statements...
+      // Generates basic assembler statements, and from each the machine code, which is
+      // written to memory at once so the statement need not keep what was built for it.
+      // Errors in machine code are collected apart and reported after the pass, as they
+      // were when machine code was generated in a separate step.
+         ErrorList codeErrors = new ErrorList();
          for (int fileIndex = 0; fileIndex < tokenizedProgramFiles.size(); fileIndex++) {
             if (errors.errorLimitExceeded())
                break;
@@ -294,6 +298,7 @@
                }
                if (statement.getInstruction() instanceof BasicInstruction) {
                   this.machineList.add(statement);
+                  storeStatement(statement, codeErrors);
                } 
                else {
                // It is a pseudo-instruction:
@@ -367,32 +372,16 @@
                      textAddress.increment(Instruction.INSTRUCTION_LENGTH);
                      ps.buildBasicStatementFromBasicInstruction(errors);
                      this.machineList.add(ps);
+                     storeStatement(ps, codeErrors);
                   } // end of FOR loop, repeated for each template in list.
                } // end of ELSE part for extended instruction.
-              	
+               // Nothing refers to the parsed statement any more.
+               parsedList.set(i, null);
             } // end of assembler second pass.
          }
-         if (Globals.debug)
-            System.out.println("Code generation begins");
-      ///////////// THIRD MAJOR STEP IS PRODUCE MACHINE CODE FROM ASSEMBLY //////////
-      // Generates machine code statements from the list of basic assembler statements
-      // and writes the statement to memory.
-         ProgramStatement statement;
-         for (int i = 0; i < this.machineList.size(); i++) {
-            if (errors.errorLimitExceeded())
-               break;
-            statement = (ProgramStatement) this.machineList.get(i);
-            statement.buildMachineStatementFromBasicStatement(errors);
-            if (Globals.debug)
-               System.out.println(statement);
-            try {
-               Globals.memory.setStatement(statement.getAddress(), statement);
-            } 
-               catch (AddressErrorException e) {
-                  Token t = statement.getOriginalTokenList().get(0);
-                  errors.add(new ErrorMessage(t.getSourceMIPSprogram(), t.getSourceLine(), t
-                     .getStartPos(), "Invalid address for text segment: " + e.getAddress()));
-               }
+         ArrayList codeMessages = codeErrors.getErrorMessages();
+         for (int i = 0; i < codeMessages.size(); i++) {
+            errors.add((ErrorMessage) codeMessages.get(i));
          }
       // Aug. 24, 2005 Ken Vollmar
       // Ensure that I/O "file descriptors" are initialized for a new program run
@@ -415,6 +404,27 @@
          return this.machineList;
       } // assemble()
    
+   // //////////////////////////////////////////////////////////////////////
+   // Generates machine code from the basic assembler statement and writes the statement
+   // to memory, then lets it drop its token lists and strings; they are rebuilt if ever
+   // asked for.  Does nothing once the error limit is exceeded.
+      private void storeStatement(ProgramStatement statement, ErrorList errors) {
+         if (errors.errorLimitExceeded())
+            return;
+         statement.buildMachineStatementFromBasicStatement(errors);
+         if (Globals.debug)
+            System.out.println(statement);
+         try {
+            Memory.getInstance().setStatement(statement.getAddress(), statement);
+         } 
+            catch (AddressErrorException e) {
+               Token t = statement.getOriginalTokenList().get(0);
+               errors.add(new ErrorMessage(t.getSourceMIPSprogram(), t.getSourceLine(), t
+                  .getStartPos(), "Invalid address for text segment: " + e.getAddress()));
+            }
+         statement.releaseAssemblyData();
+      }
+   
    // //////////////////////////////////////////////////////////////////////
    // Will check for duplicate text addresses, which can happen inadvertantly when using
    // operand on .text directive. Will generate error message for each one that occurs.
@@ -622,7 +632,7 @@
    // alternate compact translation.
       private boolean compactTranslationCanBeApplied(ProgramStatement statement) {
          return (statement.getInstruction() instanceof ExtendedInstruction
-            && Globals.memory.usingCompactMemoryConfiguration() && ((ExtendedInstruction) statement
+            && Memory.getInstance().usingCompactMemoryConfiguration() && ((ExtendedInstruction) statement
             	.getInstruction()).hasCompactTranslation());
       }
    
@@ -1034,7 +1044,7 @@
           * 
           * else { // not in data segment...which we assume to mean in text
           * segment. try { for (int i=0; i < repetitions; i++) {
-          * Globals.memory.set(this.textAddress.get(),
+          * Memory.getInstance().set(this.textAddress.get(),
           * Binary.stringToInt(valueToken.getValue()), lengthInBytes);
           * this.textAddress.increment(lengthInBytes); } } catch
           * (AddressErrorException e) { errors.add(new
@@ -1099,7 +1109,7 @@
             ********/
             else {
                try {
-                  Globals.memory.set(this.textAddress.get(), value, lengthInBytes);
+                  Memory.getInstance().set(this.textAddress.get(), value, lengthInBytes);
                } 
                   catch (AddressErrorException e) {
                      errors.add(new ErrorMessage(token.getSourceMIPSprogram(),
@@ -1242,7 +1252,7 @@
                      }
                   }
                   try {
-                     Globals.memory.set(this.dataAddress.get(), (int) theChar,
+                     Memory.getInstance().set(this.dataAddress.get(), (int) theChar,
                         DataTypes.CHAR_SIZE);
                   } 
                      catch (AddressErrorException e) {
@@ -1254,7 +1264,7 @@
                }
                if (direct == Directives.ASCIIZ) {
                   try {
-                     Globals.memory.set(this.dataAddress.get(), 0, DataTypes.CHAR_SIZE);
+                     Memory.getInstance().set(this.dataAddress.get(), 0, DataTypes.CHAR_SIZE);
                   } 
                      catch (AddressErrorException e) {
                         errors.add(new ErrorMessage(token.getSourceMIPSprogram(), token
@@ -1290,7 +1300,7 @@
             this.dataAddress.set(this.alignToBoundary(this.dataAddress.get(), lengthInBytes));
          }
          try {
-            Globals.memory.set(this.dataAddress.get(), value, lengthInBytes);
+            Memory.getInstance().set(this.dataAddress.get(), value, lengthInBytes);
          } 
             catch (AddressErrorException e) {
                errors.add(new ErrorMessage(token.getSourceMIPSprogram(), token.getSourceLine(), token
@@ -1314,7 +1324,7 @@
             this.dataAddress.set(this.alignToBoundary(this.dataAddress.get(), lengthInBytes));
          }
          try {
-            Globals.memory.setDouble(this.dataAddress.get(), value);
+            Memory.getInstance().setDouble(this.dataAddress.get(), value);
          } 
             catch (AddressErrorException e) {
                errors.add(new ErrorMessage(token.getSourceMIPSprogram(), token.getSourceLine(), token
@@ -1474,7 +1484,7 @@
                if (labelAddress != SymbolTable.NOT_FOUND) {
                // patch address has to be valid b/c we already stored there...
                   try {
-                     Globals.memory.set(entry.patchAddress, labelAddress, entry.length);
+                     Memory.getInstance().set(entry.patchAddress, labelAddress, entry.length);
                   } 
                      catch (AddressErrorException aee) {
                      }
@@ -1,5 +1,7 @@
    package mars.mips.hardware;
    import mars.Globals;
+   import mars.simulator.SimulationContext;
+   import mars.simulator.TraceWriter;
    import java.util.*;
 
 /*
@@ -49,12 +51,44 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 		// bit 1 (exception level) not set, bit 0 (interrupt enable) set.
 		public static final int DEFAULT_STATUS_VALUE = 0x0000FF11;
 		
-      private static Register [] registers = 
+      private Register [] registers = 
           { new Register("$8 (vaddr)", 8, 0),  
             new Register("$12 (status)", 12, DEFAULT_STATUS_VALUE),
          	new Register("$13 (cause)", 13, 0),  
          	new Register("$14 (epc)", 14, 0)
            };
+      // Registers of the default SimulationContext.
+      private static final Coprocessor0 defaultCoprocessor0 = new Coprocessor0();
+   
+   	/**
+   	  *  Create a set of Coprocessor0 registers with their initial values, for a SimulationContext
+   	  *  other than the default one.  The static methods of this class operate on the
+   	  *  registers of the SimulationContext current for the calling thread.
+   	  **/
+       public Coprocessor0() {
+      }
+   
+       // Returns the registers of the calling thread's SimulationContext.
+       private static Coprocessor0 current() {
+         Coprocessor0 coprocessor = SimulationContext.current().getCoprocessor0();
+         return (coprocessor == null) ? defaultCoprocessor0 : coprocessor;
+      }
+   
+   	/**
+   	  *  Create a set of Coprocessor0 registers holding the current values of the calling
+   	  *  thread's registers, for a SimulationContext forked from its context.
+   	  *   @return the copy, with no observers.
+   	  **/
+       public static Coprocessor0 copy() {
+         Coprocessor0 coprocessor = current();
+         Coprocessor0 copy = new Coprocessor0();
+         for (int i=0; i<coprocessor.registers.length; i++) {
+            copy.registers[i].changeResetValue(coprocessor.registers[i].getResetValue());
+            copy.registers[i].setValue(coprocessor.registers[i].getValueNoNotify());
+         }
+         return copy;
+      }
+   
         												  
    	 
    	/**
@@ -62,6 +96,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/	 
    		 
        public static void showRegisters(){
+         Coprocessor0 coprocessor = current();
+         Register[] registers = coprocessor.registers;
          for (int i=0; i< registers.length; i++){
             System.out.println("Name: " + registers[i].getName());
             System.out.println("Number: " + registers[i].getNumber());
@@ -78,6 +114,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	
        public static int updateRegister(String n, int val){
+		   Coprocessor0 coprocessor = current();
+		   Register[] registers = coprocessor.registers;
 		   int oldValue = 0;
          for (int i=0; i< registers.length; i++){
             if(("$"+registers[i].getNumber()).equals(n) || registers[i].getName().equals(n)) {
@@ -96,15 +134,20 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 		  *   @return old value in register prior to update
    	  **/
        public static int updateRegister(int num, int val){
+         Coprocessor0 coprocessor = current();
+         Register[] registers = coprocessor.registers;
          int old = 0;
          for (int i=0; i< registers.length; i++){
             if(registers[i].getNumber()== num) {
                old = (Globals.getSettings().getBackSteppingEnabled())
-                        ? Globals.program.getBackStepper().addCoprocessor0Restore(num,registers[i].setValue(val))
+                        ? SimulationContext.current().getBackStepper().addCoprocessor0Restore(num,registers[i].setValue(val))
                   		: registers[i].setValue(val);
                break;
             }
          }
+         if (TraceWriter.isActive()) {
+            TraceWriter.registerWritten(TraceWriter.COP0_REGISTER, num, val);
+         }
          return old;
 			}
 
@@ -116,6 +159,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	
        public static int getValue(int num){
+         Coprocessor0 coprocessor = current();
+         Register[] registers = coprocessor.registers;
          for (int i=0; i< registers.length; i++){
             if(registers[i].getNumber()== num) {
                return registers[i].getValue();
@@ -131,6 +176,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    		  **/	
       		
        public static int getNumber(String n){
+         Coprocessor0 coprocessor = current();
+         Register[] registers = coprocessor.registers;
          for (int i=0; i< registers.length; i++){
             if(("$"+registers[i].getNumber()).equals(n) || registers[i].getName().equals(n)) {
                return registers[i].getNumber();
@@ -145,6 +192,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	
        public static Register[] getRegisters(){
+         Coprocessor0 coprocessor = current();
+         Register[] registers = coprocessor.registers;
          return registers;
       }
 
@@ -158,6 +207,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	
        public static int getRegisterPosition(Register r){
+         Coprocessor0 coprocessor = current();
+         Register[] registers = coprocessor.registers;
          for (int i=0; i< registers.length; i++){
             if(registers[i]==r) {
                return i;
@@ -173,6 +224,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	
        public static Register getRegister(String rname) {
+         Coprocessor0 coprocessor = current();
+         Register[] registers = coprocessor.registers;
          for (int i=0; i< registers.length; i++){
             if(("$"+registers[i].getNumber()).equals(rname) || registers[i].getName().equals(rname)) {
                return registers[i];
@@ -187,6 +240,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	
        public static void resetRegisters(){
+         Coprocessor0 coprocessor = current();
+         Register[] registers = coprocessor.registers;
          for(int i=0; i< registers.length; i++){
             registers[i].resetValue();
          }
@@ -197,6 +252,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 *  will add the given Observer to each one.  
    	 */
        public static void addRegistersObserver(Observer observer) {
+         Coprocessor0 coprocessor = current();
+         Register[] registers = coprocessor.registers;
          for (int i=0; i<registers.length; i++) {
             registers[i].addObserver(observer);
          }
@@ -207,6 +264,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 *  will delete the given Observer from each one.  
    	 */
        public static void deleteRegistersObserver(Observer observer) {
+         Coprocessor0 coprocessor = current();
+         Register[] registers = coprocessor.registers;
          for (int i=0; i<registers.length; i++) {
             registers[i].deleteObserver(observer);
          }
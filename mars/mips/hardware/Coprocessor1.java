@@ -1,7 +1,10 @@
    package mars.mips.hardware;
    import mars.util.*;
    import mars.Globals;
+   import mars.simulator.SimulationContext;
+   import mars.simulator.TraceWriter;
    import java.util.*;
+   import java.util.concurrent.atomic.AtomicLong;
 
 /*
 Copyright (c) 2003-2009,  Pete Sanderson and Kenneth Vollmar
@@ -48,33 +51,72 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 // storing into registers, and reassembled upon retrieval.
 
     public  class Coprocessor1 {
-      private static Register [] registers = 
-          { new Register("$f0", 0, 0),  new Register("$f1", 1, 0),
-         	new Register("$f2", 2, 0),  new Register("$f3", 3, 0),
-         	new Register("$f4", 4, 0),  new Register("$f5", 5, 0),
-         	new Register("$f6", 6, 0),  new Register("$f7", 7, 0),
-         	new Register("$f8", 8, 0),  new Register("$f9", 9, 0),
-         	new Register("$f10", 10, 0),new Register("$f11", 11, 0), 
-         	new Register("$f12", 12, 0),new Register("$f13", 13, 0),
-         	new Register("$f14", 14, 0),new Register("$f15", 15, 0),
-         	new Register("$f16", 16, 0),new Register("$f17", 17, 0),
-         	new Register("$f18", 18, 0),new Register("$f19", 19, 0),
-         	new Register("$f20", 20, 0),new Register("$f21", 21, 0),
-         	new Register("$f22", 22, 0),new Register("$f23", 23, 0),
-         	new Register("$f24", 24, 0),new Register("$f25", 25, 0),
-         	new Register("$f26", 26, 0),new Register("$f27", 27, 0),
-         	new Register("$f28", 28, 0),new Register("$f29", 29, 0),
-         	new Register("$f30", 30, 0),new Register("$f31", 31, 0)
+      // Register values, indexed by register number (32 is the condition flags), as
+      // in RegisterFile.  changed has bit n set by each write to register n.
+      private int[] values = new int[33];
+      private AtomicLong changed = new AtomicLong();
+      private Register [] registers = 
+          { new Register("$f0", 0, 0, values, changed),  new Register("$f1", 1, 0, values, changed),
+         	new Register("$f2", 2, 0, values, changed),  new Register("$f3", 3, 0, values, changed),
+         	new Register("$f4", 4, 0, values, changed),  new Register("$f5", 5, 0, values, changed),
+         	new Register("$f6", 6, 0, values, changed),  new Register("$f7", 7, 0, values, changed),
+         	new Register("$f8", 8, 0, values, changed),  new Register("$f9", 9, 0, values, changed),
+         	new Register("$f10", 10, 0, values, changed),new Register("$f11", 11, 0, values, changed), 
+         	new Register("$f12", 12, 0, values, changed),new Register("$f13", 13, 0, values, changed),
+         	new Register("$f14", 14, 0, values, changed),new Register("$f15", 15, 0, values, changed),
+         	new Register("$f16", 16, 0, values, changed),new Register("$f17", 17, 0, values, changed),
+         	new Register("$f18", 18, 0, values, changed),new Register("$f19", 19, 0, values, changed),
+         	new Register("$f20", 20, 0, values, changed),new Register("$f21", 21, 0, values, changed),
+         	new Register("$f22", 22, 0, values, changed),new Register("$f23", 23, 0, values, changed),
+         	new Register("$f24", 24, 0, values, changed),new Register("$f25", 25, 0, values, changed),
+         	new Register("$f26", 26, 0, values, changed),new Register("$f27", 27, 0, values, changed),
+         	new Register("$f28", 28, 0, values, changed),new Register("$f29", 29, 0, values, changed),
+         	new Register("$f30", 30, 0, values, changed),new Register("$f31", 31, 0, values, changed)
            };
    	// The 8 condition flags will be stored in bits 0-7 for flags 0-7.
-      private static Register condition = new Register("cf",32, 0);	 
+      private Register condition = new Register("cf", 32, 0, values, changed);	 
       private static int numConditionFlags = 8;
+      // Registers of the default SimulationContext.
+      private static final Coprocessor1 defaultCoprocessor1 = new Coprocessor1();
+   
+   	/**
+   	  *  Create a set of Coprocessor1 registers with their initial values, for a SimulationContext
+   	  *  other than the default one.  The static methods of this class operate on the
+   	  *  registers of the SimulationContext current for the calling thread.
+   	  **/
+       public Coprocessor1() {
+      }
+   
+       // Returns the registers of the calling thread's SimulationContext.
+       private static Coprocessor1 current() {
+         Coprocessor1 coprocessor = SimulationContext.current().getCoprocessor1();
+         return (coprocessor == null) ? defaultCoprocessor1 : coprocessor;
+      }
+   
+   	/**
+   	  *  Create a set of Coprocessor1 registers holding the current values and condition flags of the calling
+   	  *  thread's registers, for a SimulationContext forked from its context.
+   	  *   @return the copy, with no observers.
+   	  **/
+       public static Coprocessor1 copy() {
+         Coprocessor1 coprocessor = current();
+         Coprocessor1 copy = new Coprocessor1();
+         for (int i=0; i<coprocessor.registers.length; i++) {
+            copy.registers[i].changeResetValue(coprocessor.registers[i].getResetValue());
+            copy.registers[i].setValue(coprocessor.registers[i].getValueNoNotify());
+         }
+         copy.condition.setValue(coprocessor.condition.getValueNoNotify());
+         return copy;
+      }
+   
    	
    	/**
    	  *  Method for displaying the register values for debugging.
    	  **/	 
    		 
        public static void showRegisters(){
+         Coprocessor1 coprocessor = current();
+         Register[] registers = coprocessor.registers;
          for (int i=0; i< registers.length; i++){
           
             System.out.println("Name: " + registers[i].getName());
@@ -102,6 +144,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	  
        public static void setRegisterToFloat(int reg, float val){
+         Coprocessor1 coprocessor = current();
+         Register[] registers = coprocessor.registers;
          if(reg >= 0 && reg < registers.length) {
             registers[reg].setValue(Float.floatToRawIntBits(val));
          }
@@ -127,6 +171,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	  
        public static void setRegisterToInt(int reg, int val){
+         Coprocessor1 coprocessor = current();
+         Register[] registers = coprocessor.registers;
          if(reg >= 0 && reg < registers.length) {
             registers[reg].setValue(val);
          }
@@ -144,6 +190,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	
        public static void setRegisterPairToDouble(int reg, double val) 
                                     throws InvalidRegisterAccessException {
+         Coprocessor1 coprocessor = current();
+         Register[] registers = coprocessor.registers;
          if (reg % 2 != 0) {
             throw new InvalidRegisterAccessException();
          } 
@@ -179,6 +227,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	
        public static void setRegisterPairToLong(int reg, long val) 
                                     throws InvalidRegisterAccessException {
+         Coprocessor1 coprocessor = current();
+         Register[] registers = coprocessor.registers;
          if (reg % 2 != 0) {
             throw new InvalidRegisterAccessException();
          } 
@@ -210,6 +260,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	
        public static float getFloatFromRegister(int reg){
+         Coprocessor1 coprocessor = current();
+         Register[] registers = coprocessor.registers;
          float result = 0F;
          if(reg >= 0 && reg < registers.length) {
             result = Float.intBitsToFloat(registers[reg].getValue());
@@ -236,6 +288,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	
        public static int getIntFromRegister(int reg){
+         Coprocessor1 coprocessor = current();
+         Register[] registers = coprocessor.registers;
          int result = 0;
          if(reg >= 0 && reg < registers.length) {
             result = registers[reg].getValue();
@@ -264,6 +318,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	
        public static double getDoubleFromRegisterPair(int reg) 
                                     throws InvalidRegisterAccessException {
+         Coprocessor1 coprocessor = current();
+         Register[] registers = coprocessor.registers;
          double result = 0.0;
          if (reg % 2 != 0) {
             throw new InvalidRegisterAccessException();
@@ -296,6 +352,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	
        public static long getLongFromRegisterPair(int reg) 
                                     throws InvalidRegisterAccessException {
+         Coprocessor1 coprocessor = current();
+         Register[] registers = coprocessor.registers;
          double result = 0.0;
          if (reg % 2 != 0) {
             throw new InvalidRegisterAccessException();
@@ -326,14 +384,24 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	  
        public static int updateRegister(int num, int val){
+         Coprocessor1 coprocessor = current();
+         Register[] registers = coprocessor.registers;
          int old = 0;
-         for (int i=0; i< registers.length; i++){
-            if(registers[i].getNumber()== num) {
-               old = (Globals.getSettings().getBackSteppingEnabled())
-                        ? Globals.program.getBackStepper().addCoprocessor1Restore(num,registers[i].setValue(val))
-                  		: registers[i].setValue(val);
-               break;
+         if (num >= 0 && num < registers.length) {
+            if (registers[num].isObserved()) {
+               old = registers[num].setValue(val);
             }
+            else {
+               old = coprocessor.values[num];
+               coprocessor.values[num] = val;
+               Register.markChanged(coprocessor.changed, num);
+            }
+            if (Globals.getSettings().getBackSteppingEnabled()) {
+               SimulationContext.current().getBackStepper().addCoprocessor1Restore(num,old);
+            }
+         }
+         if (TraceWriter.isActive()) {
+            TraceWriter.registerWritten(TraceWriter.FP_REGISTER, num, val);
          }
          return old;
       }
@@ -347,7 +415,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	
        public static int getValue(int num){
-         return registers[num].getValue();
+         Coprocessor1 coprocessor = current();
+         Register[] registers = coprocessor.registers;
+         return (registers[num].isObserved()) ? registers[num].getValue() : coprocessor.values[num];
       }
       		
       	/**
@@ -357,6 +427,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    		  **/	
       		
        public static int getRegisterNumber(String n){
+         Coprocessor1 coprocessor = current();
+         Register[] registers = coprocessor.registers;
          int j=-1;
          for (int i=0; i< registers.length; i++){
             if(registers[i].getName().equals(n)) {
@@ -367,12 +439,26 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          return j;     
       }
       
+   	/**
+   	  *  Returns the FPU registers written since the previous call, and starts a new set.
+   	  *  The GUI uses this when it refreshes, rather than observing every register.
+   	  *   @return bit mask with bit n set if register n was written; bit 32 is the
+   	  *   condition flags.
+   	  **/
+   	
+       public static long takeChangedRegisters(){
+         Coprocessor1 coprocessor = current();
+         return coprocessor.changed.getAndSet(0);
+      }
+      
    	/**
    	  *  For returning the set of registers.
    	  *   @return The set of registers.
    	  **/
    	
        public static Register[] getRegisters(){
+         Coprocessor1 coprocessor = current();
+         Register[] registers = coprocessor.registers;
          return registers;
       }
       
@@ -383,6 +469,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	
        public static Register getRegister(String rName) {
+         Coprocessor1 coprocessor = current();
+         Register[] registers = coprocessor.registers;
          Register reg = null;
          if (rName.charAt(0) == '$' && rName.length() > 1 && rName.charAt(1) == 'f') {
             try {
@@ -403,6 +491,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	
        public static void resetRegisters(){
+         Coprocessor1 coprocessor = current();
+         Register[] registers = coprocessor.registers;
          for(int i=0; i < registers.length; i++)
             registers[i].resetValue();
          clearConditionFlags();
@@ -414,6 +504,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 *  will add the given Observer to each one.  
    	 */
        public static void addRegistersObserver(Observer observer) {
+         Coprocessor1 coprocessor = current();
+         Register[] registers = coprocessor.registers;
          for (int i=0; i<registers.length; i++) {
             registers[i].addObserver(observer);
          }
@@ -425,6 +517,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 *  will delete the given Observer from each one.  
    	 */
        public static void deleteRegistersObserver(Observer observer) {
+         Coprocessor1 coprocessor = current();
+         Register[] registers = coprocessor.registers;
          for (int i=0; i<registers.length; i++) {
             registers[i].deleteObserver(observer);
          }
@@ -437,16 +531,18 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 *  @return previous flag setting (0 or 1)
    	 */
        public static int setConditionFlag(int flag) {
+         Coprocessor1 coprocessor = current();
+         Register condition = coprocessor.condition;
          int old = 0;
          if (flag >= 0 && flag < numConditionFlags) {
             old = getConditionFlag(flag);
             condition.setValue(Binary.setBit(condition.getValue(),flag));
             if (Globals.getSettings().getBackSteppingEnabled())
                if (old==0) {
-                  Globals.program.getBackStepper().addConditionFlagClear(flag);
+                  SimulationContext.current().getBackStepper().addConditionFlagClear(flag);
                } 
                else {
-                  Globals.program.getBackStepper().addConditionFlagSet(flag);
+                  SimulationContext.current().getBackStepper().addConditionFlagSet(flag);
                }
          }
          return old;
@@ -459,16 +555,18 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 *  @return previous flag setting (0 or 1)
    	 */
        public static int clearConditionFlag(int flag) {
+         Coprocessor1 coprocessor = current();
+         Register condition = coprocessor.condition;
          int old = 0;
          if (flag >= 0 && flag < numConditionFlags) {
             old = getConditionFlag(flag);
             condition.setValue(Binary.clearBit(condition.getValue(),flag));
             if (Globals.getSettings().getBackSteppingEnabled())
                if (old==0) {
-                  Globals.program.getBackStepper().addConditionFlagClear(flag);
+                  SimulationContext.current().getBackStepper().addConditionFlagClear(flag);
                } 
                else {
-                  Globals.program.getBackStepper().addConditionFlagSet(flag);
+                  SimulationContext.current().getBackStepper().addConditionFlagSet(flag);
                }
          }
          return old;
@@ -482,6 +580,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 *  @return 0 if condition is false, 1 if condition is true
    	 */
        public static int getConditionFlag(int flag) {
+         Coprocessor1 coprocessor = current();
+         Register condition = coprocessor.condition;
          if (flag < 0 || flag >= numConditionFlags) 
             flag = 0;
          return Binary.bitValue(condition.getValue(), flag);
@@ -494,6 +594,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 *  @return array of int condition flags
    	 */
        public static int getConditionFlags() {
+         Coprocessor1 coprocessor = current();
+         Register condition = coprocessor.condition;
          return condition.getValue();
       }	
    	
@@ -503,6 +605,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 *
    	 */
        public static void clearConditionFlags() {
+         Coprocessor1 coprocessor = current();
+         Register condition = coprocessor.condition;
          condition.setValue(0);  // sets all 32 bits to 0.
       }		
    	
@@ -511,6 +615,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 *
    	 */
        public static void setConditionFlags() {
+         Coprocessor1 coprocessor = current();
+         Register condition = coprocessor.condition;
          condition.setValue(-1);  // sets all 32 bits to 1.
       }	
    	
@@ -4,6 +4,8 @@
    import mars.simulator.*;
    import mars.mips.instructions.*;
    import java.util.*;
+   import java.nio.ByteBuffer;
+   import java.nio.IntBuffer;
 	
 	/*
 Copyright (c) 2003-2009,  Pete Sanderson and Kenneth Vollmar
@@ -89,7 +91,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	/** Current setting for endian (default LITTLE_ENDIAN) **/
       private static boolean byteOrder = LITTLE_ENDIAN;
    	
-      public static int heapAddress;
+      public int heapAddress;
    
     // Memory will maintain a collection of observables.  Each one is associated
     // with a specific memory address or address range, and each will have at least
@@ -98,12 +100,15 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     // This assures that observers are not bombarded with notices from memory
     // addresses they do not care about.
     //
-    // Would like a tree-like implementation, but that is complicated by this fact:
-    // key for insertion into the tree would be based on Comparable using both low 
-    // and high end of address range, but retrieval from the tree has to be based
-    // on target address being ANYWHERE IN THE RANGE (not an exact key match).
+    // The observables are kept in registration order, and looked up through an
+    // ObserverIndex: the address space is cut into intervals at every range boundary,
+    // and each interval lists the observables covering all of it, so an access finds
+    // its observables with one binary search.  Accesses outside every range are rejected
+    // by two comparisons.  The index is replaced, never modified, when observers are
+    // added or removed, so the simulation thread can use it without locking.
       
-      Collection observables = getNewMemoryObserversCollection();
+      ArrayList observables = new ArrayList();
+      private volatile ObserverIndex observerIndex = ObserverIndex.EMPTY;
    
     // The data segment is allocated in blocks of 1024 ints (4096 bytes).  Each block is
     // referenced by a "block table" entry, and the table has 1024 entries.  The capacity
@@ -128,11 +133,21 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     // (I don't have a reference for that offhand...)  Using my scheme, 0x10040000 falls at
     // the start of the 65'th block -- table entry 64.  That leaves (1024-64) * 4096 = 3,932,160
     // bytes of space available without going indirect.
+    //
+    // The blocks of the data, kernel data, stack and MMIO segments are kept by a
+    // SegmentStorage, either as int arrays on the Java heap or, if setDirectStorage(true)
+    // was called before the memory was last cleared, in direct buffers outside it.
+    // A SegmentStorage finds its blocks through a two-level table, which is the
+    // "indirect" scheme above: a memory configuration that isSparse() is not limited
+    // to 4 MB per segment but uses its limit addresses as given, with blocks (pages)
+    // of the size it specifies.
     
       private static final int BLOCK_LENGTH_WORDS = 1024;  // allocated blocksize 1024 ints == 4K bytes
       private static final int BLOCK_TABLE_LENGTH = 1024; // Each entry of table points to a block.
-      private int[][] dataBlockTable;
-      private int[][] kernelDataBlockTable;
+      private static int pageSize = SegmentStorage.DEFAULT_BLOCK_LENGTH_BYTES;
+      private static boolean directStorage = false;
+      private SegmentStorage dataBlocks;
+      private SegmentStorage kernelDataBlocks;
     
     // The stack is modeled similarly to the data segment.  It cannot share the same
     // data structure because the stack base address is very large.  To store it in the
@@ -149,7 +164,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     // Everything else works the same, so it shares some private helper methods with
     // data segment algorithms.
     
-      private int[][] stackBlockTable;
+      private SegmentStorage stackBlocks;
    
     // Memory mapped I/O is simulated with a separate table using the same structure and
     // logic as data segment.  Memory is allocated in 4K byte blocks.  But since MMIO
@@ -162,22 +177,40 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     // into a table offset, this is of no concern.
    
       private static final int MMIO_TABLE_LENGTH = 16; // Each entry of table points to a 4K block.
-      private int[][] memoryMapBlockTable;
+      private SegmentStorage memoryMapBlocks;
    	    
     // I use a similar scheme for storing instructions.  MIPS text segment ranges from
     // 0x00400000 all the way to data segment (0x10000000) a range of about 250 MB!  So
     // I'll provide table of blocks with similar capacity.  This differs from data segment
-    // somewhat in that the block entries do not contain int's, but instead contain
-    // references to ProgramStatement objects.  
+    // somewhat in that the blocks hold statements rather than just int's.  TextStorage
+    // keeps each statement's machine code, operands and source reference in primitive
+    // arrays, and builds the ProgramStatement only when it is asked for.
    
-      private static final int TEXT_BLOCK_LENGTH_WORDS = 1024;  // allocated blocksize 1024 ints == 4K bytes
+      private static final int TEXT_BLOCK_LENGTH_WORDS = TextStorage.BLOCK_LENGTH_WORDS;  // allocated blocksize 1024 ints == 4K bytes
       private static final int TEXT_BLOCK_TABLE_LENGTH = 1024; // Each entry of table points to a block.
-      private ProgramStatement[][] textBlockTable;
-      private ProgramStatement[][] kernelTextBlockTable;
-    
+      private TextStorage textBlocks;
+      private TextStorage kernelTextBlocks;
+   
+    // Flat, pre-decoded copy of the user text segment built after assembly (see
+    // InstructionCache).  Instruction fetches are served from it when possible.  Any
+    // setStatement() invalidates the corresponding entry, and clear() discards it.
+   
+      private InstructionCache instructionCache;
+   
+    // With self-modifying code enabled, instructions may also be fetched from outside the
+    // text segments, e.g. from code a program generates in its data segment.  The statements
+    // decoded from such words are kept by address, in a two-level table of 4K pages allocated
+    // as used, and reused for as long as the word still holds the machine code they were
+    // decoded from.  So a store to the word invalidates its statement without any extra work
+    // on the store path, and a loop in generated code is decoded once rather than per fetch.
+   
+      private static final int DECODED_PAGE_WORDS = 1024;
+      private ProgramStatement[][][] decodedStatements;
+   
     // Set "top" address boundary to go with each "base" address.  This determines permissable
     // address range for user program.  Currently limit is 4MB, or 1024 * 1024 * 4 bytes based
-    // on the table structures described above (except memory mapped IO, limited to 64KB by range).
+    // on the table structures described above (except memory mapped IO, limited to 64KB by range),
+    // unless the memory configuration isSparse().
     
       public static int dataSegmentLimitAddress = dataSegmentBaseAddress + 
       														  BLOCK_LENGTH_WORDS * BLOCK_TABLE_LENGTH * WORD_LENGTH_BYTES;
@@ -206,14 +239,210 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          initialize();
       }
    
+    // Constructor for copy(), which fills in the tables itself.
+       private Memory(boolean initialize) {
+         if (initialize) {
+            initialize();
+         }
+      }
+   
      /**
-      * Returns the unique Memory instance, which becomes in essence global.
+      * Returns the unique Memory instance, which becomes in essence global.  A thread
+      * running in a SimulationContext other than the default one gets that context's
+      * memory instead.
    	*/
    	
        public static Memory getInstance() {
-         return uniqueMemoryInstance;
+         Memory memory = SimulationContext.current().getMemory();
+         return (memory == null) ? uniqueMemoryInstance : memory;
+      }
+   
+    /**
+     * Create a new Memory with the same contents as this one, for use by a SimulationContext.
+     * The copy has its own data, stack, kernel data and MMIO blocks.  Text is rarely written,
+     * so the text segments are forked (see fork()) rather than copied.  The copy gets its own
+     * InstructionCache, since writing text invalidates entries in the writer's cache.
+     * Observers are not copied.
+     * @return the copy
+     */
+       public Memory copy() {
+         Memory copy = new Memory(false);
+         copy.heapAddress = heapAddress;
+         copy.instructionCache = (instructionCache == null) ? null : instructionCache.copy();
+         copy.textBlocks = textBlocks.fork();
+         copy.kernelTextBlocks = kernelTextBlocks.fork();
+         copy.dataBlocks = dataBlocks.copy();
+         copy.kernelDataBlocks = kernelDataBlocks.copy();
+         copy.stackBlocks = stackBlocks.copy();
+         copy.memoryMapBlocks = memoryMapBlocks.copy();
+         return copy;
+      }
+   
+    /**
+     * Create a new Memory with the same contents as this one without copying them: the two
+     * share every allocated block until one of them writes to it, at which point the writer
+     * gets its own copy of that block (copy on write).  A fork therefore costs only its block
+     * tables and its own InstructionCache, plus one 4K block for each block either memory
+     * changes afterwards, which makes it cheap to explore many continuations of one state.
+     * As with copy(), the fork has no observers.
+     * @return the fork
+     * @see mars.simulator.SimulationContext#fork(java.io.InputStream, java.io.PrintStream, java.io.PrintStream)
+     */
+       public synchronized Memory fork() {
+         Memory fork = new Memory(false);
+         fork.heapAddress = heapAddress;
+         fork.instructionCache = (instructionCache == null) ? null : instructionCache.copy();
+         fork.dataBlocks = dataBlocks.fork();
+         fork.kernelDataBlocks = kernelDataBlocks.fork();
+         fork.stackBlocks = stackBlocks.fork();
+         fork.memoryMapBlocks = memoryMapBlocks.fork();
+         fork.textBlocks = textBlocks.fork();
+         fork.kernelTextBlocks = kernelTextBlocks.fork();
+         return fork;
+      }
+   
+    /**
+     * Keep the text segments as they stand now, apart from this memory.  They are forked
+     * (see fork()), so they cost nothing until this memory writes its text, and neither
+     * that nor clear() changes them.
+     * @return the text segments
+     */
+       public synchronized TextSegments forkTextSegments() {
+         return new TextSegments(textBlocks.fork(), kernelTextBlocks.fork());
       }
    	
+   
+    /**
+     * Number of bytes writeSnapshot() will write for the current contents.  Only allocated
+     * blocks are counted, so this is small for most programs.
+     * @return snapshot length in bytes
+     */
+       public int getSnapshotLength() {
+         int length = 4; // heap address
+         SegmentStorage[] storages = { dataBlocks, kernelDataBlocks, stackBlocks, memoryMapBlocks };
+         for (int t=0; t<storages.length; t++) {
+            length += storages[t].getSnapshotLength();
+         }
+         return length + textBlocks.getSnapshotLength() + kernelTextBlocks.getSnapshotLength();
+      }
+   
+    /**
+     * Write the heap pointer and all allocated blocks of every segment to the buffer.  Text
+     * segment words are written as their binary machine code.  The buffer must have
+     * getSnapshotLength() bytes remaining.
+     * @param buffer destination, positioned after the written data on return
+     * @see #readSnapshot(ByteBuffer)
+     */
+       public synchronized void writeSnapshot(ByteBuffer buffer) {
+         buffer.putInt(heapAddress);
+         dataBlocks.writeSnapshot(buffer);
+         kernelDataBlocks.writeSnapshot(buffer);
+         stackBlocks.writeSnapshot(buffer);
+         memoryMapBlocks.writeSnapshot(buffer);
+         textBlocks.writeSnapshot(buffer);
+         kernelTextBlocks.writeSnapshot(buffer);
+      }
+   
+    /**
+     * Read a snapshot written by writeSnapshot() and check that it fits this memory's
+     * configuration, without changing this memory.  Nothing is applied until the returned
+     * image is passed to restoreSnapshot(), so a snapshot that turns out to be invalid
+     * leaves the memory as it was.
+     * @param buffer source, positioned after the snapshot data on return
+     * @return the snapshot contents
+     * @throws IllegalArgumentException if the data do not fit this memory configuration
+     * @throws java.nio.BufferUnderflowException if the data are truncated
+     * @see #restoreSnapshot(Memory.Image)
+     */
+       public Image readSnapshot(ByteBuffer buffer) {
+         Image image = new Image();
+         image.heapAddress = buffer.getInt();
+         image.dataBlocks = dataBlocks.readSnapshot(buffer);
+         image.kernelDataBlocks = kernelDataBlocks.readSnapshot(buffer);
+         image.stackBlocks = stackBlocks.readSnapshot(buffer);
+         image.memoryMapBlocks = memoryMapBlocks.readSnapshot(buffer);
+         image.textBlocks = readTextTable(buffer, textBlocks);
+         image.kernelTextBlocks = readTextTable(buffer, kernelTextBlocks);
+         return image;
+      }
+   
+    /**
+     * Replace the contents of this memory with a snapshot read by readSnapshot().  Text
+     * segment words that differ from the current ones are decoded from their machine code
+     * (as for self-modifying code), so they carry no source information; unchanged words
+     * keep their statements.  Observers are not notified.
+     * @param image the snapshot contents
+     */
+       public synchronized void restoreSnapshot(Image image) {
+         heapAddress = image.heapAddress;
+         dataBlocks = image.dataBlocks;
+         kernelDataBlocks = image.kernelDataBlocks;
+         stackBlocks = image.stackBlocks;
+         memoryMapBlocks = image.memoryMapBlocks;
+         restoreTextTable(image.textBlocks, textBlocks, textBaseAddress);
+         restoreTextTable(image.kernelTextBlocks, kernelTextBlocks, kernelTextBaseAddress);
+      }
+   
+       // Read the blocks of a text segment: for each block number, the presence bitmap followed
+       // by the machine code of each word, or null if the snapshot has no such block.
+       private int[][] readTextTable(ByteBuffer buffer, TextStorage text) {
+         int[][] blocks = new int[text.length()][];
+         int count = buffer.getInt();
+         for (int n=0; n<count; n++) {
+            int i = buffer.getInt();
+            if (i < 0 || i >= text.length()) {
+               throw new IllegalArgumentException("text block "+i+" outside this memory configuration");
+            }
+            blocks[i] = new int[TEXT_BLOCK_LENGTH_WORDS / 32 + TEXT_BLOCK_LENGTH_WORDS];
+            buffer.asIntBuffer().get(blocks[i]);
+            buffer.position(buffer.position() + blocks[i].length * 4);
+         }
+         return blocks;
+      }
+   
+       // Update the text storage in place, so unchanged statements and their cache entries are kept.
+       private void restoreTextTable(int[][] blocks, TextStorage text, int baseAddress) {
+         int codeStart = TEXT_BLOCK_LENGTH_WORDS / 32;
+         for (int i=0; i<text.length(); i++) {
+            if (blocks[i] == null) {
+               if (text.isAllocated(i)) {
+                  for (int word=0; word<TEXT_BLOCK_LENGTH_WORDS; word++) {
+                     int relative = i * TEXT_BLOCK_LENGTH_WORDS + word;
+                     if (text.contains(relative)) {
+                        replaceStatement(text, relative, baseAddress + (relative << 2), null);
+                     }
+                  }
+                  text.release(i);
+               }
+               continue;
+            }
+            for (int word=0; word<TEXT_BLOCK_LENGTH_WORDS; word++) {
+               int relative = i * TEXT_BLOCK_LENGTH_WORDS + word;
+               int address = baseAddress + (relative << 2);
+               int code = blocks[i][codeStart + word];
+               if ((blocks[i][word >> 5] & (1 << (word & 31))) == 0) {
+                  if (text.contains(relative)) {
+                     replaceStatement(text, relative, address, null);
+                  }
+               }
+               else if (!text.contains(relative) || text.fetchWord(relative) != code) {
+                  replaceStatement(text, relative, address, new ProgramStatement(code, address));
+               }
+            }
+         }
+      }
+   
+       private void replaceStatement(TextStorage text, int relative, int address, ProgramStatement statement) {
+         if (instructionCache != null) {
+            instructionCache.invalidate(address);
+         }
+         if (statement == null) {
+            text.remove(relative);
+         }
+         else {
+            text.store(relative, statement);
+         }
+      }
    	/**
    	 * Explicitly clear the contents of memory.  Typically done at start of assembly.
    	 */
@@ -245,6 +474,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          kernelDataBaseAddress = MemoryConfigurations.getCurrentConfiguration().getKernelDataBaseAddress(); //0x90000000;
          memoryMapBaseAddress = MemoryConfigurations.getCurrentConfiguration().getMemoryMapBaseAddress(); //0xffff0000;
          kernelHighAddress = MemoryConfigurations.getCurrentConfiguration().getKernelHighAddress(); //0xffffffff;		
+         pageSize = MemoryConfigurations.getCurrentConfiguration().getPageSize();
          dataSegmentLimitAddress = Math.min(MemoryConfigurations.getCurrentConfiguration().getDataSegmentLimitAddress(),
                                       dataSegmentBaseAddress + 
             								  BLOCK_LENGTH_WORDS * BLOCK_TABLE_LENGTH * WORD_LENGTH_BYTES);
@@ -263,6 +493,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          memoryMapLimitAddress   = Math.min(MemoryConfigurations.getCurrentConfiguration().getMemoryMapLimitAddress(),
                                       memoryMapBaseAddress + 
                                  	  BLOCK_LENGTH_WORDS * MMIO_TABLE_LENGTH * WORD_LENGTH_BYTES);
+         if (MemoryConfigurations.getCurrentConfiguration().isSparse()) {
+            dataSegmentLimitAddress = MemoryConfigurations.getCurrentConfiguration().getDataSegmentLimitAddress();
+            kernelDataSegmentLimitAddress = MemoryConfigurations.getCurrentConfiguration().getKernelDataSegmentLimitAddress();
+            stackLimitAddress = MemoryConfigurations.getCurrentConfiguration().getStackLimitAddress();
+         }
       /*	System.out.println("dataSegmentLimitAddress "+Binary.intToHexString(dataSegmentLimitAddress));
       	System.out.println("textLimitAddress "+Binary.intToHexString(textLimitAddress));
       	System.out.println("kernelDataSegmentLimitAddress "+Binary.intToHexString(kernelDataSegmentLimitAddress));
@@ -284,20 +519,30 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    
    
    
+       // Empty storage for the addresses from low up to but not including high.
+       private static SegmentStorage createStorage(int low, int high) {
+         long length = ((long) high - low) & 0xFFFFFFFFL;
+         return SegmentStorage.create(length, pageSize, byteOrder == LITTLE_ENDIAN, directStorage);
+      }
+   
+   
        private void initialize() {
          heapAddress = heapBaseAddress;
-         textBlockTable  = new ProgramStatement[TEXT_BLOCK_TABLE_LENGTH][];
-         dataBlockTable  = new int[BLOCK_TABLE_LENGTH][]; // array of null int[] references
-         kernelTextBlockTable  = new ProgramStatement[TEXT_BLOCK_TABLE_LENGTH][];
-         kernelDataBlockTable  = new int[BLOCK_TABLE_LENGTH][];      
-         stackBlockTable = new int[BLOCK_TABLE_LENGTH][];
-         memoryMapBlockTable = new int[MMIO_TABLE_LENGTH][];
+         instructionCache = null;
+         decodedStatements = null;
+         textBlocks = new TextStorage(TEXT_BLOCK_TABLE_LENGTH, textBaseAddress);
+         dataBlocks = createStorage(dataSegmentBaseAddress, dataSegmentLimitAddress);
+         kernelTextBlocks = new TextStorage(TEXT_BLOCK_TABLE_LENGTH, kernelTextBaseAddress);
+         kernelDataBlocks = createStorage(kernelDataBaseAddress, kernelDataSegmentLimitAddress);
+         stackBlocks = createStorage(stackLimitAddress, stackBaseAddress + WORD_LENGTH_BYTES);
+         memoryMapBlocks = createStorage(memoryMapBaseAddress, memoryMapBaseAddress + BLOCK_LENGTH_WORDS * MMIO_TABLE_LENGTH * WORD_LENGTH_BYTES);
          System.gc(); // call garbage collector on any Table memory just deallocated. 	  
       }  
      
    	/**
    	 * Returns the next available word-aligned heap address.  There is no recycling and
-   	 * no heap management!  There is however nearly 4MB of heap space available in Mars.
+   	 * no heap management!  There is however nearly 4MB of heap space available in Mars,
+   	 * and much more under a sparse memory configuration such as LargeData.
    	 *
    	 * @param numBytes Number of bytes requested.  Should be multiple of 4, otherwise next higher multiple of 4 allocated.
    	 * @return address of allocated heap storage. 
@@ -322,6 +567,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    
      /**
       * Set byte order to either LITTLE_ENDIAN or BIG_ENDIAN.  Default is LITTLE_ENDIAN.
+      * Takes effect for the data segments when memory is next cleared.
    	*
    	* @param order either LITTLE_ENDIAN or BIG_ENDIAN
    	*/
@@ -329,6 +575,18 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          byteOrder = order;
       }
    	
+     /**
+      * Choose where the data, kernel data, stack and MMIO segments are stored: in int arrays
+      * on the Java heap (the default) or in direct buffers outside it, which suits programs
+      * that use a lot of data memory.  Takes effect when memory is next cleared, e.g. by
+      * assembly.
+   	*
+   	* @param direct true for direct (off-heap) storage
+   	*/
+       public static void setDirectStorage(boolean direct) {
+         directStorage = direct;
+      }
+   	
      /**
       * Retrieve memory byte order.  Default is LITTLE_ENDIAN (like PCs).
    	*
@@ -362,23 +620,20 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          if (inDataSegment(address)) {
            // in data segment.  Will write one byte at a time, w/o regard to boundaries.
             relativeByteAddress = address - dataSegmentBaseAddress; // relative to data segment start, in bytes
-            oldValue = storeBytesInTable(dataBlockTable, relativeByteAddress, length, value);
+            oldValue = dataBlocks.storeBytes(relativeByteAddress, length, value);
          } 
          else if (address > stackLimitAddress && address <= stackBaseAddress) {
            // in stack.  Handle similarly to data segment write, except relative byte
            // address calculated "backward" because stack addresses grow down from base.
-            relativeByteAddress = stackBaseAddress - address; 
-            oldValue = storeBytesInTable(stackBlockTable, relativeByteAddress, length, value);
+            relativeByteAddress = stackByteOffset(address); 
+            oldValue = stackBlocks.storeBytes(relativeByteAddress, length, value);
          } 
          else if (inTextSegment(address)) {
            // Burch Mod (Jan 2013): replace throw with call to setStatement 
            // DPS adaptation 5-Jul-2013: either throw or call, depending on setting
          
             if (Globals.getSettings().getBooleanSetting(Settings.SELF_MODIFYING_CODE_ENABLED)) {
-               ProgramStatement oldStatement = getStatementNoNotify(address);
-               if (oldStatement != null) {
-                  oldValue = oldStatement.getBinaryStatement();
-               }
+               oldValue = readTextWord(address);
                setStatement(address, new ProgramStatement(value, address));
             } 
             else {
@@ -390,12 +645,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          else if (address >= memoryMapBaseAddress && address < memoryMapLimitAddress) {
            // memory mapped I/O.
             relativeByteAddress = address - memoryMapBaseAddress;
-            oldValue = storeBytesInTable(memoryMapBlockTable, relativeByteAddress, length, value);
+            oldValue = memoryMapBlocks.storeBytes(relativeByteAddress, length, value);
          }
          else if (inKernelDataSegment(address)) {
            // in kernel data segment.  Will write one byte at a time, w/o regard to boundaries.
             relativeByteAddress = address - kernelDataBaseAddress; // relative to data segment start, in bytes
-            oldValue = storeBytesInTable(kernelDataBlockTable, relativeByteAddress, length, value);
+            oldValue = kernelDataBlocks.storeBytes(relativeByteAddress, length, value);
          } 
          else if (inKernelTextSegment(address)) {
            // DEVELOPER: PLEASE USE setStatement() TO WRITE TO KERNEL TEXT SEGMENT...
@@ -408,6 +663,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             throw new AddressErrorException("address out of range ",
                Exceptions.ADDRESS_EXCEPTION_STORE, address);
          }
+         if (TraceWriter.isActive()) {
+            TraceWriter.memoryAccessed(TraceWriter.STORE, address, length, value);
+         }
          notifyAnyObservers(AccessNotice.WRITE, address, length, value);
          return oldValue;
       }
@@ -432,22 +690,19 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          if (inDataSegment(address)) {
            // in data segment
             relative = (address - dataSegmentBaseAddress) >> 2; // convert byte address to words
-            oldValue = storeWordInTable(dataBlockTable, relative, value);
+            oldValue = dataBlocks.storeWord(relative, value);
          } 
          else if (address > stackLimitAddress && address <= stackBaseAddress) {
            // in stack.  Handle similarly to data segment write, except relative 
            // address calculated "backward" because stack addresses grow down from base.
             relative = (stackBaseAddress - address) >> 2; // convert byte address to words
-            oldValue = storeWordInTable(stackBlockTable, relative, value);
+            oldValue = stackBlocks.storeWord(relative, value);
          }
          else if (inTextSegment(address)) {	
            // Burch Mod (Jan 2013): replace throw with call to setStatement 
            // DPS adaptation 5-Jul-2013: either throw or call, depending on setting
             if (Globals.getSettings().getBooleanSetting(Settings.SELF_MODIFYING_CODE_ENABLED)) {
-               ProgramStatement oldStatement = getStatementNoNotify(address);
-               if (oldStatement != null) {
-                  oldValue = oldStatement.getBinaryStatement();
-               }
+               oldValue = readTextWord(address);
                setStatement(address, new ProgramStatement(value, address));
             } 
             else {
@@ -459,12 +714,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          else if (address >= memoryMapBaseAddress && address < memoryMapLimitAddress) {
            // memory mapped I/O.
             relative = (address - memoryMapBaseAddress) >> 2; // convert byte address to word
-            oldValue = storeWordInTable(memoryMapBlockTable, relative, value);
+            oldValue = memoryMapBlocks.storeWord(relative, value);
          }
          else if (inKernelDataSegment(address)) {
            // in data segment
             relative = (address - kernelDataBaseAddress) >> 2; // convert byte address to words
-            oldValue = storeWordInTable(kernelDataBlockTable, relative, value);
+            oldValue = kernelDataBlocks.storeWord(relative, value);
          }
          else if (inKernelTextSegment(address)) {
            // DEVELOPER: PLEASE USE setStatement() TO WRITE TO KERNEL TEXT SEGMENT...
@@ -479,7 +734,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          }
          notifyAnyObservers(AccessNotice.WRITE, address, WORD_LENGTH_BYTES, value);
          if (Globals.getSettings().getBackSteppingEnabled()) {
-            Globals.program.getBackStepper().addMemoryRestoreRawWord(address,oldValue);
+            SimulationContext.current().getBackStepper().addMemoryRestoreRawWord(address,oldValue);
          }
          return oldValue;
       }
@@ -501,7 +756,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                Exceptions.ADDRESS_EXCEPTION_STORE,address);
          }
          return (Globals.getSettings().getBackSteppingEnabled())
-            ? Globals.program.getBackStepper().addMemoryRestoreWord(address,set(address, value, WORD_LENGTH_BYTES))
+            ? SimulationContext.current().getBackStepper().addMemoryRestoreWord(address,set(address, value, WORD_LENGTH_BYTES))
             : set(address, value, WORD_LENGTH_BYTES);
       }
    
@@ -522,7 +777,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                Exceptions.ADDRESS_EXCEPTION_STORE, address);
          }
          return (Globals.getSettings().getBackSteppingEnabled())
-            ? Globals.program.getBackStepper().addMemoryRestoreHalf(address,set(address,value,2))
+            ? SimulationContext.current().getBackStepper().addMemoryRestoreHalf(address,set(address,value,2))
             : set(address, value, 2);
       }
    
@@ -537,7 +792,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
      
        public int setByte(int address, int value) throws AddressErrorException {
          return (Globals.getSettings().getBackSteppingEnabled())
-            ? Globals.program.getBackStepper().addMemoryRestoreByte(address,set(address,value,1))
+            ? SimulationContext.current().getBackStepper().addMemoryRestoreByte(address,set(address,value,1))
             : set(address, value, 1);
       }
    
@@ -577,11 +832,14 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                Exceptions.ADDRESS_EXCEPTION_STORE, address);
          }
          if (Globals.debug) System.out.println("memory["+address+"] set to "+statement.getBinaryStatement());
+         if (instructionCache != null) {
+            instructionCache.invalidate(address);
+         }
          if (inTextSegment(address)) {
-            storeProgramStatement(address, statement, textBaseAddress, textBlockTable);
+            textBlocks.store((address - textBaseAddress) >> 2, statement);
          } 
          else {
-            storeProgramStatement(address, statement, kernelTextBaseAddress, kernelTextBlockTable);
+            kernelTextBlocks.store((address - kernelTextBaseAddress) >> 2, statement);
          }
       }
    	
@@ -610,25 +868,27 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          if (inDataSegment(address)) {
            // in data segment.  Will read one byte at a time, w/o regard to boundaries.
             relativeByteAddress = address - dataSegmentBaseAddress; // relative to data segment start, in bytes
-            value = fetchBytesFromTable(dataBlockTable, relativeByteAddress, length);
+            value = dataBlocks.fetchBytes(relativeByteAddress, length);
          } 
          else if (address > stackLimitAddress && address <= stackBaseAddress) {
            // in stack. Similar to data, except relative address computed "backward"
-            relativeByteAddress = stackBaseAddress - address;
-            value = fetchBytesFromTable(stackBlockTable, relativeByteAddress, length);
+            relativeByteAddress = stackByteOffset(address);
+            value = stackBlocks.fetchBytes(relativeByteAddress, length);
          } 
          
          else if (address >= memoryMapBaseAddress && address < memoryMapLimitAddress) {
            // memory mapped I/O.
             relativeByteAddress = address - memoryMapBaseAddress;
-            value = fetchBytesFromTable(memoryMapBlockTable, relativeByteAddress, length);
+            value = memoryMapBlocks.fetchBytes(relativeByteAddress, length);
+            if (notify) {
+               value = ReplayLog.replayInt(value); // device input, e.g. keyboard
+            }
          }
          else if (inTextSegment(address)) {
            // Burch Mod (Jan 2013): replace throw with calls to getStatementNoNotify & getBinaryStatement 
            // DPS adaptation 5-Jul-2013: either throw or call, depending on setting
             if (Globals.getSettings().getBooleanSetting(Settings.SELF_MODIFYING_CODE_ENABLED)) {
-               ProgramStatement stmt = getStatementNoNotify(address);
-               value = stmt == null ? 0 : stmt.getBinaryStatement();
+               value = readTextWord(address);
             } 
             else {
                throw new AddressErrorException(
@@ -639,7 +899,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          else if (inKernelDataSegment(address)) {
            // in kernel data segment.  Will read one byte at a time, w/o regard to boundaries.
             relativeByteAddress = address - kernelDataBaseAddress; // relative to data segment start, in bytes
-            value = fetchBytesFromTable(kernelDataBlockTable, relativeByteAddress, length);
+            value = kernelDataBlocks.fetchBytes(relativeByteAddress, length);
          } 
          else if (inKernelTextSegment(address)) {
            // DEVELOPER: PLEASE USE getStatement() TO READ FROM KERNEL TEXT SEGMENT...
@@ -652,6 +912,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             throw new AddressErrorException("address out of range ",
                Exceptions.ADDRESS_EXCEPTION_LOAD, address);
          }
+         if (notify && TraceWriter.isActive()) {
+            TraceWriter.memoryAccessed(TraceWriter.LOAD, address, length, value);
+         }
          if (notify) notifyAnyObservers(AccessNotice.READ, address, length, value);
          return value;
       }
@@ -683,24 +946,23 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          if (inDataSegment(address)) {
            // in data segment
             relative = (address - dataSegmentBaseAddress) >> 2; // convert byte address to words
-            value = fetchWordFromTable(dataBlockTable, relative);
+            value = dataBlocks.fetchWord(relative);
          } 
          else if (address > stackLimitAddress && address <= stackBaseAddress) {
            // in stack. Similar to data, except relative address computed "backward"
             relative = (stackBaseAddress - address) >> 2; // convert byte address to words
-            value = fetchWordFromTable(stackBlockTable, relative);
+            value = stackBlocks.fetchWord(relative);
          }
          else if (address >= memoryMapBaseAddress && address < memoryMapLimitAddress) {
            // memory mapped I/O.
             relative = (address - memoryMapBaseAddress) >> 2;
-            value = fetchWordFromTable(memoryMapBlockTable, relative);
+            value = memoryMapBlocks.fetchWord(relative);
          }
          else if (inTextSegment(address)) {
            // Burch Mod (Jan 2013): replace throw with calls to getStatementNoNotify & getBinaryStatement 
            // DPS adaptation 5-Jul-2013: either throw or call, depending on setting
             if (Globals.getSettings().getBooleanSetting(Settings.SELF_MODIFYING_CODE_ENABLED)) {
-               ProgramStatement stmt = getStatementNoNotify(address);
-               value = stmt == null ? 0 : stmt.getBinaryStatement();
+               value = readTextWord(address);
             } 
             else {
                throw new AddressErrorException(
@@ -711,7 +973,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          else if (inKernelDataSegment(address)) {
            // in kernel data segment
             relative = (address - kernelDataBaseAddress) >> 2; // convert byte address to words
-            value = fetchWordFromTable(kernelDataBlockTable, relative);
+            value = kernelDataBlocks.fetchWord(relative);
          } 
          else if (inKernelTextSegment(address)) {
            // DEVELOPER: PLEASE USE getStatement() TO READ FROM KERNEL TEXT SEGMENT...
@@ -760,16 +1022,16 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          if (inDataSegment(address)) {
               // in data segment
             relative = (address - dataSegmentBaseAddress) >> 2; // convert byte address to words
-            value = fetchWordOrNullFromTable(dataBlockTable, relative);
+            value = dataBlocks.fetchWordOrNull(relative);
          } 
          else if (address > stackLimitAddress && address <= stackBaseAddress) {
               // in stack. Similar to data, except relative address computed "backward"
             relative = (stackBaseAddress - address) >> 2; // convert byte address to words
-            value = fetchWordOrNullFromTable(stackBlockTable, relative);
+            value = stackBlocks.fetchWordOrNull(relative);
          }
          else if (inTextSegment(address) || inKernelTextSegment(address)) {
             try { 
-               value = (getStatementNoNotify(address) == null) ? null : new Integer(getStatementNoNotify(address).getBinaryStatement());
+               value = (readTextStorage(address).contains(textOffset(address))) ? Integer.valueOf(readTextWord(address)) : null;
             } 
                 catch (AddressErrorException aee) { 
                   value = null;               }
@@ -777,7 +1039,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          else if (inKernelDataSegment(address)) {
               // in kernel data segment
             relative = (address - kernelDataBaseAddress) >> 2; // convert byte address to words
-            value = fetchWordOrNullFromTable(kernelDataBlockTable, relative);
+            value = kernelDataBlocks.fetchWordOrNull(relative);
          } 
          else {
               // falls outside Mars addressing range
@@ -886,7 +1148,14 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     **/
    
        public ProgramStatement getStatement(int address) throws AddressErrorException {
-         return getStatement(address, true);
+         InstructionCache cache = instructionCache;
+         if (cache != null && cache.getSimulationCode(address) != null) {
+            // A valid cache entry means an aligned user text address holding an assembled statement.
+            ProgramStatement statement = textBlocks.statementAt((address - textBaseAddress) >> 2);
+            notifyAnyObservers(AccessNotice.READ, address, Instruction.INSTRUCTION_LENGTH, statement.getBinaryStatement());
+            return statement;
+         }
+         return getStatement(address, true, null);
       	/*
          if (address % 4 != 0 || !(inTextSegment(address) || inKernelTextSegment(address))) {
             throw new AddressErrorException(
@@ -902,6 +1171,30 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       	*/
       }
    
+   ////////////////////////////////////////////////////////////////////////////////
+   /**
+    * Gets ProgramStatement from Text Segment for execution.  As getStatement(), except
+    * that a statement assembled into the text segment is loaded into the given one
+    * rather than built anew, so the simulator builds no object to fetch an instruction.
+    * @param address Starting address of Memory address to be read.  Must be word boundary.
+    * @param statement statement made by ProgramStatement() to load; the caller's own.
+    * @return the given statement, another statement if machine code there was written
+    * other than by the assembler, or null if none.
+    * @throws AddressErrorException If address is not on word boundary or is outside Text Segment.
+    * @see ProgramStatement
+    **/
+   
+       public ProgramStatement loadStatement(int address, ProgramStatement statement) throws AddressErrorException {
+         InstructionCache cache = instructionCache;
+         if (cache != null && cache.getSimulationCode(address) != null) {
+            // A valid cache entry means an aligned user text address holding an assembled statement.
+            statement = textBlocks.statementAt((address - textBaseAddress) >> 2, statement);
+            notifyAnyObservers(AccessNotice.READ, address, Instruction.INSTRUCTION_LENGTH, statement.getBinaryStatement());
+            return statement;
+         }
+         return getStatement(address, true, statement);
+      }
+   
    ////////////////////////////////////////////////////////////////////////////////
    /**
     * Gets ProgramStatement from Text Segment without notifying observers.
@@ -912,7 +1205,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     **/
    
        public ProgramStatement getStatementNoNotify(int address) throws AddressErrorException {
-         return getStatement(address, false);
+         InstructionCache cache = instructionCache;
+         if (cache != null && cache.getSimulationCode(address) != null) {
+            return textBlocks.statementAt((address - textBaseAddress) >> 2);
+         }
+         return getStatement(address, false, null);
       	/*
          if (address % 4 != 0 || !(inTextSegment(address) || inKernelTextSegment(address))) {
             throw new AddressErrorException(
@@ -930,7 +1227,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    
    //////////
    
-       private ProgramStatement getStatement(int address, boolean notify) throws AddressErrorException {
+       private ProgramStatement getStatement(int address, boolean notify, ProgramStatement statement) throws AddressErrorException {
          if (!wordAligned(address)) {
             throw new AddressErrorException(
                "fetch address for text segment not aligned to word boundary ",
@@ -943,11 +1240,78 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                Exceptions.ADDRESS_EXCEPTION_LOAD, address);
          }
          if (inTextSegment(address)) 
-            return readProgramStatement(address, textBaseAddress, textBlockTable, notify);
+            return readProgramStatement(address, textBaseAddress, textBlocks, notify, statement);
          else if (inKernelTextSegment(address)) 
-            return readProgramStatement(address, kernelTextBaseAddress, kernelTextBlockTable, notify);
+            return readProgramStatement(address, kernelTextBaseAddress, kernelTextBlocks, notify, statement);
          else 
-            return new ProgramStatement(get(address, WORD_LENGTH_BYTES), address);
+            return decodedStatement(address, get(address, WORD_LENGTH_BYTES, notify));
+      }
+   
+   //////////
+   
+       // Statement decoded from the given machine code at an address outside the text segments,
+       // reused if the word has not changed since it was last decoded.
+       private ProgramStatement decodedStatement(int address, int word) {
+         if (decodedStatements == null) {
+            decodedStatements = new ProgramStatement[DECODED_PAGE_WORDS][][];
+         }
+         ProgramStatement[][] table = decodedStatements[address >>> 22];
+         if (table == null) {
+            table = decodedStatements[address >>> 22] = new ProgramStatement[DECODED_PAGE_WORDS][];
+         }
+         ProgramStatement[] page = table[(address >>> 12) & (DECODED_PAGE_WORDS - 1)];
+         if (page == null) {
+            page = table[(address >>> 12) & (DECODED_PAGE_WORDS - 1)] = new ProgramStatement[DECODED_PAGE_WORDS];
+         }
+         int index = (address >>> 2) & (DECODED_PAGE_WORDS - 1);
+         ProgramStatement statement = page[index];
+         if (statement == null || statement.getBinaryStatement() != word) {
+            statement = page[index] = new ProgramStatement(word, address);
+         }
+         return statement;
+      }
+   
+   //////////
+   
+       // Machine code of the statement at an aligned text segment address, 0 if none,
+       // without building the statement.
+       private int readTextWord(int address) throws AddressErrorException {
+         if (!wordAligned(address)) {
+            throw new AddressErrorException(
+               "fetch address for text segment not aligned to word boundary ",
+               Exceptions.ADDRESS_EXCEPTION_LOAD, address);
+         }
+         return readTextStorage(address).fetchWord(textOffset(address));
+      }
+   
+       private TextStorage readTextStorage(int address) {
+         return (inTextSegment(address)) ? textBlocks : kernelTextBlocks;
+      }
+   
+       private static int textOffset(int address) {
+         return (address - ((inTextSegment(address)) ? textBaseAddress : kernelTextBaseAddress)) >> 2;
+      }
+   		
+   		
+   ////////////////////////////////////////////////////////////////////////////////
+   /**
+    * Install the pre-decoded instruction cache for the text segment.  Done after each
+    * successful assembly.  Subsequent instruction fetches will be served from it
+    * wherever it holds a valid entry.
+    * @param cache the InstructionCache, or null to fetch directly from the text segment.
+    * @see InstructionCache
+    **/
+       public void setInstructionCache(InstructionCache cache) {
+         instructionCache = cache;
+      }
+   
+   ////////////////////////////////////////////////////////////////////////////////
+   /**
+    * Returns the pre-decoded instruction cache for the text segment, if any.
+    * @return the InstructionCache, or null if none has been installed since the last clear().
+    **/
+       public InstructionCache getInstructionCache() {
+         return instructionCache;
       }
    		
    		
@@ -1118,14 +1482,17 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             throw new AddressErrorException("end address of range < start address of range ",
                Exceptions.ADDRESS_EXCEPTION_LOAD, startAddr);
          }
-         observables.add(new MemoryObservable(obs, startAddr, endAddr));
+         synchronized (observables) {
+            observables.add(new MemoryObservable(obs, startAddr, endAddr));
+            observerIndex = new ObserverIndex(observables);
+         }
       }
    
       /**
    	 *  Return number of observers
    	 */
        public int countObservers() {
-         return observables.size();
+         return observerIndex.size();
       }
    
    	/**
@@ -1133,18 +1500,25 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 *  @param obs  Observer to be removed
    	 */   		
        public void deleteObserver(Observer obs) {
-         Iterator it = observables.iterator();
-         while (it.hasNext()) {
-            ((MemoryObservable)it.next()).deleteObserver(obs);
-         }	
+         synchronized (observables) {
+            Iterator it = observables.iterator();
+            while (it.hasNext()) {
+               if (((MemoryObservable)it.next()).observer == obs) {
+                  it.remove();
+               }
+            }
+            observerIndex = new ObserverIndex(observables);
+         }
       }
    	
    	/**
    	 *  Remove all memory observers
    	 */
        public void deleteObservers() {
-         // just drop the collection
-         observables = getNewMemoryObserversCollection();
+         synchronized (observables) {
+            observables.clear();
+            observerIndex = ObserverIndex.EMPTY;
+         }
       }
    	
    	/**
@@ -1168,19 +1542,72 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       }
    		
    		
-       private Collection getNewMemoryObserversCollection() {
-         return new Vector();  // Vectors are thread-safe
+       /////////////////////////////////////////////////////////////////////////
+    /**
+     * The user and kernel text segments of a memory as they stood when kept by
+     * forkTextSegments().
+     */
+       public static class TextSegments {
+         private TextStorage textBlocks;
+         private TextStorage kernelTextBlocks;
+      
+          private TextSegments(TextStorage textBlocks, TextStorage kernelTextBlocks) {
+            this.textBlocks = textBlocks;
+            this.kernelTextBlocks = kernelTextBlocks;
+         }
+      
+       /**
+        * Build the statement stored at the given address.  Each call builds a new one.
+        * @param address text segment address
+        * @return the statement, or null if none is stored there or the address is not
+        * a word in a text segment
+        */
+          public ProgramStatement getStatement(int address) {
+            if (!wordAligned(address)) {
+               return null;
+            }
+            if (inTextSegment(address)) {
+               return textBlocks.statementAt((address - textBaseAddress) >> 2);
+            }
+            if (inKernelTextSegment(address)) {
+               return kernelTextBlocks.statementAt((address - kernelTextBaseAddress) >> 2);
+            }
+            return null;
+         }
       }
-   		
+   
        /////////////////////////////////////////////////////////////////////////
+    /**
+     * Contents of a snapshot, read and checked by readSnapshot() but not yet applied.
+     */
+       public static class Image {
+         private int heapAddress;
+         private SegmentStorage dataBlocks;
+         private SegmentStorage kernelDataBlocks;
+         private SegmentStorage stackBlocks;
+         private SegmentStorage memoryMapBlocks;
+         private int[][] textBlocks;
+         private int[][] kernelTextBlocks;
+      
+          private Image() {
+         }
+      }
+   
        // Private class whose objects will represent an observable-observer pair 
-   	 // for a given memory address or range.
+   	 // for a given memory address or range.  An observer that is a
+   	 // MemoryAccessListener is called directly, without a notice.
        private class MemoryObservable extends Observable implements Comparable {
          private int lowAddress, highAddress; 
+         private Observer observer;
+         private MemoryAccessListener listener;
       	
           public MemoryObservable(Observer obs, int startAddr, int endAddr) {
             lowAddress = startAddr;
             highAddress = endAddr;
+            observer = obs;
+            if (obs instanceof MemoryAccessListener) {
+               listener = (MemoryAccessListener) obs;
+            }
             this.addObserver(obs);
          }
       	
@@ -1188,6 +1615,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             return (address >= lowAddress && address <= highAddress-1+WORD_LENGTH_BYTES);
          }
       	
+          // Last byte of the range, as a long so the end of the address space does not wrap.
+          public long lastByte() {
+            return (long) highAddress-1+WORD_LENGTH_BYTES;
+         }
+      	
           public void notifyObserver(MemoryAccessNotice notice) {
             this.setChanged();
             this.notifyObservers(notice);
@@ -1210,6 +1642,72 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          }
       }
       
+       /////////////////////////////////////////////////////////////////////////
+       // Immutable lookup structure for the observables.  The boundaries are the
+       // first byte of each range and the byte after its last, sorted; interval i runs
+       // from starts[i] up to starts[i+1], and every observable matching an address in
+       // it matches all of it, so the matches are worked out once, when building.
+       private static class ObserverIndex {
+         static final ObserverIndex EMPTY = new ObserverIndex(new ArrayList());
+         private long low, high;       // first and last observed byte
+         private long[] starts;
+         private MemoryObservable[][] matches;  // per interval, null if none
+         private int size;
+      	
+          ObserverIndex(ArrayList observables) {
+            size = observables.size();
+            TreeSet boundaries = new TreeSet();
+            low = Long.MAX_VALUE;
+            high = Long.MIN_VALUE;
+            for (int i=0; i<size; i++) {
+               MemoryObservable mo = (MemoryObservable) observables.get(i);
+               boundaries.add(Long.valueOf(mo.lowAddress));
+               boundaries.add(Long.valueOf(mo.lastByte()+1));
+               low = Math.min(low, mo.lowAddress);
+               high = Math.max(high, mo.lastByte());
+            }
+            starts = new long[boundaries.size()];
+            matches = new MemoryObservable[starts.length][];
+            Iterator it = boundaries.iterator();
+            ArrayList covering = new ArrayList();
+            for (int i=0; i<starts.length; i++) {
+               starts[i] = ((Long) it.next()).longValue();
+               covering.clear();
+               for (int j=0; j<size; j++) {  // in registration order, the order of notification
+                  MemoryObservable mo = (MemoryObservable) observables.get(j);
+                  if (mo.lowAddress <= starts[i] && mo.lastByte() >= starts[i]) {
+                     covering.add(mo);
+                  }
+               }
+               if (covering.size() > 0) {
+                  matches[i] = (MemoryObservable[]) covering.toArray(new MemoryObservable[covering.size()]);
+               }
+            }
+         }
+      	
+          int size() {
+            return size;
+         }
+      	
+          // Observables whose range includes the address, or null if none.
+          MemoryObservable[] lookup(int address) {
+            if (address < low || address > high) {
+               return null;
+            }
+            int first = 0, last = starts.length - 1;
+            while (first < last) {  // last interval starting at or before the address
+               int middle = (first + last + 1) >>> 1;
+               if (starts[middle] <= address) {
+                  first = middle;
+               }
+               else {
+                  last = middle - 1;
+               }
+            }
+            return matches[first];
+         }
+      }
+      
    
    /*********************************  THE HELPERS  *************************************/
      
@@ -1220,14 +1718,21 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    //
    // The "|| Globals.getGui()==null" is a hack added 19 July 2012 DPS.  IF MIPS simulation
    // is from command mode, Globals.program is null but still want ability to observe.
+   //
+   // Observers matching the same access share one notice; MemoryAccessListeners get none.
        private void notifyAnyObservers(int type, int address, int length, int value) {
-         if ((Globals.program != null || Globals.getGui()==null) && this.observables.size() > 0) {
-            Iterator it = this.observables.iterator();
-            MemoryObservable mo;
-            while (it.hasNext()) {
-               mo = (MemoryObservable)it.next();
-               if (mo.match(address)) {
-                  mo.notifyObserver(new MemoryAccessNotice(type, address, length, value));
+         MemoryObservable[] matches = observerIndex.lookup(address);
+         if (matches != null && (Globals.program != null || Globals.getGui()==null)) {
+            MemoryAccessNotice notice = null;
+            for (int i=0; i<matches.length; i++) {
+               if (matches[i].listener != null) {
+                  matches[i].listener.memoryAccessed(type, address, length, value);
+               }
+               else {
+                  if (notice == null) {
+                     notice = new MemoryAccessNotice(type, address, length, value);
+                  }
+                  matches[i].notifyObserver(notice);
                }
             }
          } 		
@@ -1235,171 +1740,24 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    
    ////////////////////////////////////////////////////////////////////////////////
    //
-   // Helper method to store 1, 2 or 4 byte value in table that represents MIPS
-   // memory. Originally used just for data segment, but now also used for stack.
-   // Both use different tables but same storage method and same table size
-   // and block size.
-   // Modified 29 Dec 2005 to return old value of replaced bytes.
-   //
-      private static final boolean STORE = true;
-      private static final boolean FETCH = false;
-   	 
-       private int storeBytesInTable(int [][] blockTable, 
-                                   int relativeByteAddress, int length, int value) {
-         return storeOrFetchBytesInTable(blockTable, relativeByteAddress, length, value, STORE);
-      }
-   	
-   ////////////////////////////////////////////////////////////////////////////////
-   //
-   // Helper method to fetch 1, 2 or 4 byte value from table that represents MIPS
-   // memory.  Originally used just for data segment, but now also used for stack.
-   // Both use different tables but same storage method and same table size
-   // and block size.
-   //	
-   
-       private int fetchBytesFromTable(int[][] blockTable, int relativeByteAddress, int length) {
-         return storeOrFetchBytesInTable(blockTable, relativeByteAddress, length, 0, FETCH);
-      }
-   
-   ////////////////////////////////////////////////////////////////////////////////		
-   //
-   // The helper's helper.  Works for either storing or fetching, little or big endian. 
-   // When storing/fetching bytes, most of the work is calculating the correct array element(s) 
-   // and element byte(s).  This method performs either store or fetch, as directed by its 
-   // client using STORE or FETCH in last arg.
-   // Modified 29 Dec 2005 to return old value of replaced bytes, for STORE.
-   //
-       private synchronized int storeOrFetchBytesInTable(int [][] blockTable, 
-                                   int relativeByteAddress, int length, int value, boolean op) {
-         int relativeWordAddress, block, offset, bytePositionInMemory, bytePositionInValue;
-         int oldValue = 0; // for STORE, return old values of replaced bytes
-         int loopStopper = 3-length;
-      	// IF added DPS 22-Dec-2008. NOTE: has NOT been tested with Big-Endian.
-      	// Fix provided by Saul Spatz; comments that follow are his.
-      	// If address in stack segment is 4k + m, with 0 < m < 4, then the
-         // relativeByteAddress we want is stackBaseAddress - 4k + m, but the
-         // address actually passed in is stackBaseAddress - (4k + m), so we
-         // need to add 2m.  Because of the change in sign, we get the
-         // expression 4-delta below in place of m.
-         if (blockTable == stackBlockTable) {
-            int delta = relativeByteAddress % 4;
-            if (delta != 0) {
-               relativeByteAddress += ( 4 - delta ) << 1;
-            }
+   // Byte offset of a stack address in stackBlocks.  Words are stored downward from
+   // the stack base, but the bytes of a word upward, so a byte address that is not
+   // word-aligned needs correcting.  Fix provided by Saul Spatz (DPS 22-Dec-2008);
+   // comments that follow are his.
+   // If address in stack segment is 4k + m, with 0 < m < 4, then the
+   // relativeByteAddress we want is stackBaseAddress - 4k + m, but the
+   // address actually passed in is stackBaseAddress - (4k + m), so we
+   // need to add 2m.  Because of the change in sign, we get the
+   // expression 4-delta below in place of m.
+       private static int stackByteOffset(int address) {
+         int relativeByteAddress = stackBaseAddress - address;
+         int delta = relativeByteAddress % 4;
+         if (delta != 0) {
+            relativeByteAddress += ( 4 - delta ) << 1;
          }
-         for (bytePositionInValue = 3; bytePositionInValue > loopStopper; bytePositionInValue--) {
-            bytePositionInMemory = relativeByteAddress % 4;
-            relativeWordAddress = relativeByteAddress >> 2;
-            block = relativeWordAddress / BLOCK_LENGTH_WORDS;  // Block number
-            offset = relativeWordAddress % BLOCK_LENGTH_WORDS; // Word within that block
-            if (blockTable[block] == null) {
-               if (op==STORE) 
-                  blockTable[block] = new int[BLOCK_LENGTH_WORDS];
-               else 
-                  return 0;
-            }
-            if (byteOrder == LITTLE_ENDIAN) bytePositionInMemory = 3 - bytePositionInMemory;
-            if (op == STORE) {
-               oldValue = replaceByte(blockTable[block][offset], bytePositionInMemory,
-                  								oldValue, bytePositionInValue);
-               blockTable[block][offset] = replaceByte(value, bytePositionInValue, 
-                                         blockTable[block][offset], bytePositionInMemory);
-            } 
-            else {// op == FETCH
-               value = replaceByte(blockTable[block][offset], bytePositionInMemory, 
-                                                          value, bytePositionInValue);
-            }
-            relativeByteAddress++;
-         }
-         return (op == STORE)	? oldValue : value;
-      }	
-   
-   ////////////////////////////////////////////////////////////////////////////////
-   //
-   // Helper method to store 4 byte value in table that represents MIPS memory.
-   // Originally used just for data segment, but now also used for stack.
-   // Both use different tables but same storage method and same table size
-   // and block size.  Assumes address is word aligned, no endian processing.
-   // Modified 29 Dec 2005 to return overwritten value.
-         
-       private synchronized int storeWordInTable(int[][] blockTable, int relative, int value) {
-         int  block, offset, oldValue;
-         block = relative / BLOCK_LENGTH_WORDS;
-         offset = relative % BLOCK_LENGTH_WORDS; 
-         if (blockTable[block] == null) {
-               // First time writing to this block, so allocate the space.
-            blockTable[block] = new int[BLOCK_LENGTH_WORDS];
-         }
-         oldValue = blockTable[block][offset];
-         blockTable[block][offset] = value;
-         return oldValue;
+         return relativeByteAddress;
       }
-      
-   ////////////////////////////////////////////////////////////////////////////////
-   //
-   // Helper method to fetch 4 byte value from table that represents MIPS memory.
-   // Originally used just for data segment, but now also used for stack.
-   // Both use different tables but same storage method and same table size
-   // and block size.  Assumes word alignment, no endian processing.
-   //
    
-       private synchronized int fetchWordFromTable(int[][] blockTable, int relative) {
-         int value = 0;
-         int block, offset;
-         block = relative / BLOCK_LENGTH_WORDS;
-         offset = relative % BLOCK_LENGTH_WORDS; 
-         if (blockTable[block] == null) {
-                   // first reference to an address in this block.  Assume initialized to 0.
-            value = 0;
-         } 
-         else {
-            value = blockTable[block][offset];
-         }
-         return value;
-      }     
-       
-       ////////////////////////////////////////////////////////////////////////////////
-       //
-       // Helper method to fetch 4 byte value from table that represents MIPS memory.
-       // Originally used just for data segment, but now also used for stack.
-       // Both use different tables but same storage method and same table size
-       // and block size.  Assumes word alignment, no endian processing.
-   	 //
-   	 // This differs from "fetchWordFromTable()" in that it returns an Integer and
-   	 // returns null instead of 0 if the 4K table has not been allocated.  Developed
-   	 // by Greg Gibeling of UC Berkeley, fall 2007.
-       //
-       
-       private synchronized Integer fetchWordOrNullFromTable(int[][] blockTable, int relative) {
-         int value = 0;
-         int block, offset;
-         block = relative / BLOCK_LENGTH_WORDS;
-         offset = relative % BLOCK_LENGTH_WORDS; 
-         if (blockTable[block] == null) {
-                       // first reference to an address in this block.  Assume initialized to 0.
-            return null;
-         } 
-         else {
-            value = blockTable[block][offset];
-         }
-         return new Integer(value);
-      }
-   	   
-   ////////////////////////////////////////////////////////////////////////////////////
-   // Returns result of substituting specified byte of source value into specified byte 
-   // of destination value. Byte positions are 0-1-2-3, listed from most to least 
-   // significant.  No endian issues.  This is a private helper method used by get() & set().
-       private int replaceByte(int sourceValue, int bytePosInSource, int destValue, int bytePosInDest) {
-         return
-            // Set source byte value into destination byte position; set other 24 bits to 0's...
-             ((sourceValue >> (24 - (bytePosInSource << 3)) & 0xFF) 
-                                             << (24 - (bytePosInDest << 3)))
-            // and bitwise-OR it with...
-              |
-            // Set 8 bits in destination byte position to 0's, other 24 bits are unchanged.
-             (destValue & ~(0xFF << (24 - (bytePosInDest << 3))));
-      }
-      
    ///////////////////////////////////////////////////////////////////////
    // Reverses byte sequence of given value.  Can use to convert between big and
    // little endian if needed.
@@ -1410,46 +1768,17 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             	  (source << 24);
       }
    
-   ///////////////////////////////////////////////////////////////////////   	
-   // Store a program statement at the given address.  Address has already been verified
-   // as valid.  It may be either in user or kernel text segment, as specified by arguments.
-       private void storeProgramStatement(int address, ProgramStatement statement, 
-                                          int baseAddress, ProgramStatement[][] blockTable) {
-         int relative = (address - baseAddress) >> 2; // convert byte address to words
-         int block = relative / BLOCK_LENGTH_WORDS;
-         int offset = relative % BLOCK_LENGTH_WORDS; 
-         if (block < TEXT_BLOCK_TABLE_LENGTH) {
-            if (blockTable[block] == null) {
-               // No instructions are stored in this block, so allocate the block.
-               blockTable[block] = new ProgramStatement[BLOCK_LENGTH_WORDS];
-            }
-            blockTable[block][offset] = statement;
-         }
-      }
-   
-   
    ///////////////////////////////////////////////////////////////////////   	
    // Read a program statement from the given address.  Address has already been verified
    // as valid.  It may be either in user or kernel text segment, as specified by arguments.  
    // Returns associated ProgramStatement or null if none. 
-   // Last parameter controls whether or not observers will be notified.
-       private ProgramStatement readProgramStatement(int address, int baseAddress, ProgramStatement[][] blockTable, boolean notify) {
+   // notify controls whether or not observers will be notified; statement, if not null,
+   // is loaded rather than a new one built.
+       private ProgramStatement readProgramStatement(int address, int baseAddress, TextStorage text, boolean notify,
+                                                     ProgramStatement statement) {
          int relative = (address - baseAddress) >> 2; // convert byte address to words
-         int block = relative / TEXT_BLOCK_LENGTH_WORDS;
-         int offset = relative % TEXT_BLOCK_LENGTH_WORDS; 
-         if (block < TEXT_BLOCK_TABLE_LENGTH) {
-            if (blockTable[block] == null || blockTable[block][offset] == null) {
-               // No instructions are stored in this block or offset.
-               if (notify) notifyAnyObservers(AccessNotice.READ, address, Instruction.INSTRUCTION_LENGTH,0);
-               return null;
-            } 
-            else {
-               if (notify) notifyAnyObservers(AccessNotice.READ, address, Instruction.INSTRUCTION_LENGTH, blockTable[block][offset].getBinaryStatement());
-               return blockTable[block][offset];
-            }
-         }
-         if (notify) notifyAnyObservers(AccessNotice.READ, address, Instruction.INSTRUCTION_LENGTH,0);
-         return null;
+         if (notify) notifyAnyObservers(AccessNotice.READ, address, Instruction.INSTRUCTION_LENGTH, text.fetchWord(relative));
+         return text.statementAt(relative, statement);
       }
    	   	
    }
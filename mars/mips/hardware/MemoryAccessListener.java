@@ -0,0 +1,52 @@
+   package mars.mips.hardware;
+   import java.util.*;
+
+	/*
+Copyright (c) 2003-2014,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Memory observer that takes each access as primitive values rather than as a
+ * MemoryAccessNotice.  Register it with any of the Memory addObserver() methods; Memory
+ * then calls memoryAccessed() instead of update(), so no notice is created for it.  The
+ * call is made on the thread that made the access, which is the "MIPS" thread for
+ * accesses by the running program.
+ *
+ * @version October 2026
+ **/
+
+    public interface MemoryAccessListener extends Observer {
+
+   /**
+    * Called for each access to the observed address range.
+    * @param type AccessNotice.READ or AccessNotice.WRITE
+    * @param address address of the access
+    * @param length number of bytes accessed
+    * @param value value read or written
+    **/
+       public void memoryAccessed(int type, int address, int length, int value);
+   }
@@ -45,6 +45,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private String configurationIdentifier, configurationName;
       private String[] configurationItemNames;
       private int[] configurationItemValues;
+      private int pageSize = 4096;
+      private boolean sparse = false;
    	
    
        public MemoryConfiguration(String ident, String name, String[] items, int[] values) {
@@ -53,6 +55,18 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          this.configurationItemNames = items;
          this.configurationItemValues = values;
       }
+   
+    /**
+     * Configuration whose data, kernel data and stack segments extend all the way to their
+     * limit addresses, rather than at most 4 MB from their base addresses.  Memory for
+     * them is allocated a page at a time, when first written.
+     * @param pageSize bytes per page, a power of 2
+     */
+       public MemoryConfiguration(String ident, String name, String[] items, int[] values, int pageSize) {
+         this(ident, name, items, values);
+         this.pageSize = pageSize;
+         this.sparse = true;
+      }
    	
    	public String getConfigurationIdentifier() {
 		   return configurationIdentifier;
@@ -154,4 +168,20 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          return configurationItemValues[20];
       }   
    
+    /**
+     * Size of the pages in which data segment memory is allocated.
+     * @return page size in bytes
+     */
+       public int getPageSize() {
+         return pageSize;
+      }
+   
+    /**
+     * Whether segments span their full configured ranges (see the five-argument constructor).
+     * @return true if segment limit addresses are used as given
+     */
+       public boolean isSparse() {
+         return sparse;
+      }
+   
    }
\ No newline at end of file
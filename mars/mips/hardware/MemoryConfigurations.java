@@ -149,6 +149,33 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          0x00003000, // stack limit address
          0x00007fff  // memory map limit address
          };
+   
+      // Large data is the default layout with the data segment extending up to
+      // 0x70000000 (about 1.5 GB of heap) and the stack down to it (256 MB).  Pages
+      // are allocated as they are used, so small programs stay small.
+      private static int[] largeDataConfigurationItemValues = { 
+         0x00400000, // .text Base Address
+         0x10000000, // Data Segment base address
+         0x10000000, // .extern Base Address
+         0x10008000, // Global Pointer $gp)
+         0x10010000, // .data base Address
+         0x10040000, // heap base address
+         0x7fffeffc, // stack pointer $sp (from SPIM not MIPS)
+         0x7ffffffc, // stack base address
+         0x7fffffff, // highest address in user space
+         0x80000000, // lowest address in kernel space
+         0x80000000, // .ktext base address
+         0x80000180, // exception handler address
+         0x90000000, // .kdata base address
+         0xffff0000, // MMIO base address
+         0xffffffff, // highest address in kernel (and memory)
+         0x70000000, // data segment limit address
+         0x0ffffffc, // text limit address
+         0xfffeffff, // kernel data segment limit address
+         0x8ffffffc, // kernel text limit address
+         0x70000000, // stack limit address
+         0xffffffff  // memory map limit address
+         };
          
    
    
@@ -163,6 +190,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             configurations.add(new MemoryConfiguration("Default", "Default", configurationItemNames, defaultConfigurationItemValues));
             configurations.add(new MemoryConfiguration("CompactDataAtZero", "Compact, Data at Address 0", configurationItemNames, dataBasedCompactConfigurationItemValues));
             configurations.add(new MemoryConfiguration("CompactTextAtZero", "Compact, Text at Address 0", configurationItemNames, textBasedCompactConfigurationItemValues));
+            configurations.add(new MemoryConfiguration("LargeData", "Large Data, 4KB Pages", configurationItemNames, largeDataConfigurationItemValues, 4096));
+            configurations.add(new MemoryConfiguration("LargeDataBigPages", "Large Data, 64KB Pages", configurationItemNames, largeDataConfigurationItemValues, 65536));
             defaultConfiguration = (MemoryConfiguration) configurations.get(0);
             currentConfiguration = defaultConfiguration;
          	// Get current config from settings
@@ -217,7 +246,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             return false;
          if (config != currentConfiguration) {
             currentConfiguration = config;
-            Globals.memory.clear();
+            Memory.getInstance().clear();
             RegisterFile.getUserRegister("$gp").changeResetValue(config.getGlobalPointer());
             RegisterFile.getUserRegister("$sp").changeResetValue(config.getStackPointer());
             RegisterFile.getProgramCounterRegister().changeResetValue(config.getTextBaseAddress());
@@ -1,6 +1,7 @@
    package mars.mips.hardware;
    import mars.*;
    import java.util.*;
+   import java.util.concurrent.atomic.AtomicLong;
 
 /*
 Copyright (c) 2003-2006,  Pete Sanderson and Kenneth Vollmar
@@ -39,11 +40,17 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     public class Register extends Observable {
       private String name;
       private int number, resetValue;
-   	// volatile should be enough to allow safe multi-threaded access  
-   	// w/o the use of synchronized methods.  getValue and setValue
-   	// are the only methods here used by the register collection
-   	// (RegisterFile, Coprocessor0, Coprocessor1) methods. 
-      private volatile int value;
+   	// The value is values[index].  RegisterFile and Coprocessor1 give all their
+   	// registers one array, indexed by register number, so they can read and write
+   	// unobserved registers directly.  Each write sets bit <number> of changed,
+   	// which those classes hand to the GUI as the set of registers written since it
+   	// last looked.  The GUI takes it from another thread, hence the AtomicLong.
+   	// Observers are notified only while observed is set, so an unobserved
+   	// register is an array element and a flag, without locking.
+      private int[] values;
+      private int index;
+      private AtomicLong changed;
+      private volatile boolean observed;
       
    	 /**
         *  Creates a new register with specified name, number, and value.
@@ -53,9 +60,29 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
         */
    	  
        public Register(String n, int num, int val){
+         this(n, num, val, new int[1], 0, new AtomicLong());
+      }
+   	
+   	/**
+        *  Creates a new register whose value is element num of the given array.
+        *   @param n The name of the register.
+        *   @param num The number of the register, and its index in values.
+        *   @param val The inital (and reset) value of the register.
+        *   @param values Array holding the value, shared with other registers.
+        *   @param changed Gets bit num set by each write.
+        */
+   	  
+       Register(String n, int num, int val, int[] values, AtomicLong changed){
+         this(n, num, val, values, num, changed);
+      }
+   	
+       private Register(String n, int num, int val, int[] values, int index, AtomicLong changed){
          name= n;
          number=num;
-         value= val;
+         this.values = values;
+         this.index = index;
+         this.changed = changed;
+         values[index]= val;
          resetValue = val;
       }
       
@@ -74,9 +101,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  *   @return value The value of the Register.
    	  */
    	  
-       public synchronized int getValue(){
-         notifyAnyObservers(AccessNotice.READ);
-         return value;
+       public int getValue(){
+         if (observed) {
+            notifyAnyObservers(AccessNotice.READ);
+         }
+         return values[index];
       }
 
       
@@ -86,8 +115,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  *   @return value The value of the Register.
    	  */
    	  
-       public synchronized int getValueNoNotify(){
-         return value;
+       public int getValueNoNotify(){
+         return values[index];
       }
 		
    
@@ -115,10 +144,13 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  *   @return previous value of register
    	  */
    	  
-       public synchronized int setValue(int val){
-         int old = value;
-         value = val;
-         notifyAnyObservers(AccessNotice.WRITE);
+       public int setValue(int val){
+         int old = values[index];
+         values[index] = val;
+         markChanged(changed, number);
+         if (observed) {
+            notifyAnyObservers(AccessNotice.WRITE);
+         }
          return old;
       }
    	
@@ -127,8 +159,33 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  *  Observers are not notified.  
    	  */
    	  
-       public synchronized void resetValue(){
-         value = resetValue;
+       public void resetValue(){
+         values[index] = resetValue;
+      }
+   	
+   	/**
+   	  *  Returns true if the register has observers, in which case its value must be
+   	  *  accessed through getValue() and setValue() so they are notified.
+   	  *   @return true if observed
+   	  */
+   	  
+       public boolean isObserved(){
+         return observed;
+      }
+   	
+       public synchronized void addObserver(Observer o) {
+         super.addObserver(o);
+         observed = true;
+      }
+   	
+       public synchronized void deleteObserver(Observer o) {
+         super.deleteObserver(o);
+         observed = countObservers() > 0;
+      }
+   	
+       public synchronized void deleteObservers() {
+         super.deleteObservers();
+         observed = false;
       }
    	
    	/**
@@ -144,11 +201,23 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    // Method to notify any observers of register operation that has just occurred.
    //
        private void notifyAnyObservers(int type) {
-         if (this.countObservers() > 0){// && Globals.program != null) && Globals.program.inSteppedExecution()) {
+         if (observed){// && Globals.program != null) && Globals.program.inSteppedExecution()) {
             this.setChanged();
             this.notifyObservers(new RegisterAccessNotice(type, this.name));
          } 
       } 
       
+   //
+   // Set bit number of a changed-register mask.  The mask is read before the update so
+   // that rewriting a register already marked, the usual case, costs no atomic operation.
+   //
+       static void markChanged(AtomicLong changed, int number) {
+         long bit = 1L << number;
+         long mask = changed.get();
+         while ((mask & bit) == 0 && !changed.compareAndSet(mask, mask | bit)) {
+            mask = changed.get();
+         }
+      }
+      
    	
    }
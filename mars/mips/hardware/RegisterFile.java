@@ -1,10 +1,13 @@
    package mars.mips.hardware;
 
    import java.util.Observer;
+   import java.util.concurrent.atomic.AtomicLong;
 
    import mars.Globals;
    import mars.assembler.SymbolTable;
    import mars.mips.instructions.Instruction;
+   import mars.simulator.SimulationContext;
+   import mars.simulator.TraceWriter;
    import mars.util.Binary;
 
 /*
@@ -45,37 +48,92 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    
       public static final int GLOBAL_POINTER_REGISTER = 28;
       public static final int STACK_POINTER_REGISTER = 29;
+      private static final int PROGRAM_COUNTER = 32;
+      private static final int HI = 33;
+      private static final int LO = 34;
    
-      private static Register [] regFile = 
-          { new Register("$zero", 0, 0), new Register("$at", 1, 0),
-         	new Register("$v0", 2, 0),new Register("$v1", 3, 0),
-         	new Register("$a0", 4, 0),new Register("$a1", 5, 0),
-         	new Register("$a2", 6, 0),new Register("$a3", 7, 0),
-         	new Register("$t0", 8, 0),new Register("$t1", 9, 0),
-         	new Register("$t2", 10, 0),new Register("$t3", 11, 0), 
-         	new Register("$t4", 12, 0),new Register("$t5", 13, 0),
-         	new Register("$t6", 14, 0),new Register("$t7", 15, 0),
-         	new Register("$s0", 16, 0),new Register("$s1", 17, 0),
-         	new Register("$s2", 18, 0),new Register("$s3", 19, 0),
-         	new Register("$s4", 20, 0),new Register("$s5", 21, 0),
-         	new Register("$s6", 22, 0),new Register("$s7", 23, 0),
-         	new Register("$t8", 24, 0),new Register("$t9", 25, 0),
-         	new Register("$k0", 26, 0),new Register("$k1", 27, 0),
-         	new Register("$gp", GLOBAL_POINTER_REGISTER, Memory.globalPointer),
-         	new Register("$sp", STACK_POINTER_REGISTER, Memory.stackPointer),
-         	new Register("$fp", 30, 0),new Register("$ra", 31, 0)
+      // Register values, indexed by register number.  Each Register object reads and
+      // writes its element; the static methods use the array directly for registers
+      // that have no observers.  changed has bit n set by each write to register n.
+      private int[] values = new int[LO+1];
+      private AtomicLong changed = new AtomicLong();
+   
+      private Register [] regFile = 
+          { new Register("$zero", 0, 0, values, changed), new Register("$at", 1, 0, values, changed),
+         	new Register("$v0", 2, 0, values, changed),new Register("$v1", 3, 0, values, changed),
+         	new Register("$a0", 4, 0, values, changed),new Register("$a1", 5, 0, values, changed),
+         	new Register("$a2", 6, 0, values, changed),new Register("$a3", 7, 0, values, changed),
+         	new Register("$t0", 8, 0, values, changed),new Register("$t1", 9, 0, values, changed),
+         	new Register("$t2", 10, 0, values, changed),new Register("$t3", 11, 0, values, changed), 
+         	new Register("$t4", 12, 0, values, changed),new Register("$t5", 13, 0, values, changed),
+         	new Register("$t6", 14, 0, values, changed),new Register("$t7", 15, 0, values, changed),
+         	new Register("$s0", 16, 0, values, changed),new Register("$s1", 17, 0, values, changed),
+         	new Register("$s2", 18, 0, values, changed),new Register("$s3", 19, 0, values, changed),
+         	new Register("$s4", 20, 0, values, changed),new Register("$s5", 21, 0, values, changed),
+         	new Register("$s6", 22, 0, values, changed),new Register("$s7", 23, 0, values, changed),
+         	new Register("$t8", 24, 0, values, changed),new Register("$t9", 25, 0, values, changed),
+         	new Register("$k0", 26, 0, values, changed),new Register("$k1", 27, 0, values, changed),
+         	new Register("$gp", GLOBAL_POINTER_REGISTER, Memory.globalPointer, values, changed),
+         	new Register("$sp", STACK_POINTER_REGISTER, Memory.stackPointer, values, changed),
+         	new Register("$fp", 30, 0, values, changed),new Register("$ra", 31, 0, values, changed)
            };
          												  
-      private static Register programCounter= new Register("pc", 32, Memory.textBaseAddress); 
-      private static Register hi= new Register("hi", 33, 0);//this is an internal register with arbitrary number
-      private static Register lo= new Register("lo", 34, 0);// this is an internal register with arbitrary number
+      private Register programCounter= new Register("pc", PROGRAM_COUNTER, Memory.textBaseAddress, values, changed); 
+      private Register hi= new Register("hi", HI, 0, values, changed);//this is an internal register with arbitrary number
+      private Register lo= new Register("lo", LO, 0, values, changed);// this is an internal register with arbitrary number
+      // All of the above, indexed by register number.
+      private Register[] numbered = new Register[LO+1];
    		 
+      // Registers of the default SimulationContext.
+      private static final RegisterFile defaultRegisterFile = new RegisterFile();
+   
+   	/**
+   	  *  Create a set of registers with their initial values, for a SimulationContext
+   	  *  other than the default one.  The static methods of this class operate on the
+   	  *  registers of the SimulationContext current for the calling thread.
+   	  **/
+       public RegisterFile() {
+         System.arraycopy(regFile, 0, numbered, 0, regFile.length);
+         numbered[PROGRAM_COUNTER] = programCounter;
+         numbered[HI] = hi;
+         numbered[LO] = lo;
+      }
+   
+       // Returns the registers of the calling thread's SimulationContext.
+       private static RegisterFile current() {
+         RegisterFile registers = SimulationContext.current().getRegisterFile();
+         return (registers == null) ? defaultRegisterFile : registers;
+      }
+   
+   	/**
+   	  *  Create a set of registers holding the current values (and reset values) of the
+   	  *  calling thread's registers, for a SimulationContext forked from its context.
+   	  *   @return the copy, with no observers.
+   	  **/
+       public static RegisterFile copy() {
+         RegisterFile registers = current();
+         RegisterFile copy = new RegisterFile();
+         copyValues(registers.regFile, copy.regFile);
+         copyValues(new Register[] { registers.programCounter, registers.hi, registers.lo },
+                    new Register[] { copy.programCounter, copy.hi, copy.lo });
+         return copy;
+      }
+   
+       private static void copyValues(Register[] from, Register[] to) {
+         for (int i=0; i<from.length; i++) {
+            to[i].changeResetValue(from[i].getResetValue());
+            to[i].setValue(from[i].getValueNoNotify());
+         }
+      }
+   
    
    	/**
    	  *  Method for displaying the register values for debugging.
    	  **/	 
    		 
        public static void showRegisters(){
+         RegisterFile registers = current();
+         Register[] regFile = registers.regFile;
          for (int i=0; i< regFile.length; i++){
             System.out.println("Name: " + regFile[i].getName());
             System.out.println("Number: " + regFile[i].getNumber());
@@ -93,29 +151,27 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	  
        public static int updateRegister(int num, int val){
+         RegisterFile registers = current();
          int old = 0;
-         if(num == 0){
+         if(num == 0 || num == PROGRAM_COUNTER || num < 0 || num > LO){
             //System.out.println("You can not change the value of the zero register.");
          }
          else {
-            for (int i=0; i< regFile.length; i++){
-               if(regFile[i].getNumber()== num) {
-                  old = (Globals.getSettings().getBackSteppingEnabled())
-                        ? Globals.program.getBackStepper().addRegisterFileRestore(num,regFile[i].setValue(val))
-                     	: regFile[i].setValue(val);
-                  break;
-               }
+            Register register = registers.numbered[num];
+            if (register.isObserved()) {
+               old = register.setValue(val);
+            }
+            else {
+               old = registers.values[num];
+               registers.values[num] = val;
+               Register.markChanged(registers.changed, num);
+            }
+            if (Globals.getSettings().getBackSteppingEnabled()) {
+               SimulationContext.current().getBackStepper().addRegisterFileRestore(num,old);
             }
          }
-         if(num== 33){//updates the hi register
-            old = (Globals.getSettings().getBackSteppingEnabled())
-               	      ? Globals.program.getBackStepper().addRegisterFileRestore(num,hi.setValue(val))
-               			: hi.setValue(val);
-         }
-         else if(num== 34){// updates the low register
-            old = (Globals.getSettings().getBackSteppingEnabled())
-               	      ? Globals.program.getBackStepper().addRegisterFileRestore(num,lo.setValue(val))
-               			: lo.setValue(val);
+         if (TraceWriter.isActive() && num != 0) {
+            TraceWriter.registerWritten(TraceWriter.REGISTER, num, val);
          }
          return old;
       }
@@ -127,6 +183,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	
        public static void updateRegister(String reg, int val){
+         RegisterFile registers = current();
+         Register[] regFile = registers.regFile;
          if(reg.equals("zero")){
             //System.out.println("You can not change the value of the zero register.");
          }
@@ -146,15 +204,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	
        public static int getValue(int num){
-         if(num==33){
-            return hi.getValue();
-         }
-         else if(num==34){
-            return lo.getValue();
-         }
-         else  
-            return regFile[num].getValue();
-            
+         RegisterFile registers = current();
+         Register register = registers.numbered[num];
+         return (register.isObserved()) ? register.getValue() : registers.values[num];
       }
       		
       	/**
@@ -165,6 +217,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    		  **/	
       		
        public static int getNumber(String n){
+         RegisterFile registers = current();
+         Register[] regFile = registers.regFile;
          int j=-1;
          for (int i=0; i< regFile.length; i++){
             if(regFile[i].getName().equals(n)) {
@@ -175,12 +229,26 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          return j;     
       }
       
+   	/**
+   	  *  Returns the registers written since the previous call, and starts a new set.
+   	  *  The GUI uses this when it refreshes, rather than observing every register.
+   	  *   @return bit mask with bit n set if register n was written; bit 32 is the
+   	  *   Program Counter, 33 hi and 34 lo.
+   	  **/
+   	
+       public static long takeChangedRegisters(){
+         RegisterFile registers = current();
+         return registers.changed.getAndSet(0);
+      }
+      
    	/**
    	  *  For returning the set of registers.
    	  *   @return The set of registers.
    	  **/
    	
        public static Register[] getRegisters(){
+         RegisterFile registers = current();
+         Register[] regFile = registers.regFile;
          return regFile;
       }
       
@@ -191,6 +259,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	
        public static Register getUserRegister(String Rname) {
+         RegisterFile registers = current();
+         Register[] regFile = registers.regFile;
          Register reg = null;
          if (Rname.charAt(0) == '$') {
             try {
@@ -221,6 +291,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
      
        public static void initializeProgramCounter(int value){
+         RegisterFile registers = current();
+         Register programCounter = registers.programCounter;
          programCounter.setValue(value);
       }
    	
@@ -234,6 +306,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 **/
    	 
        public static void initializeProgramCounter(boolean startAtMain) {  
+         RegisterFile registers = current();
+         Register programCounter = registers.programCounter;
          int mainAddr = Globals.symbolTable.getAddress(SymbolTable.getStartLabel());
          if (startAtMain && mainAddr != SymbolTable.NOT_FOUND && (Memory.inTextSegment(mainAddr) || Memory.inKernelTextSegment(mainAddr))) {
             initializeProgramCounter(mainAddr);
@@ -251,10 +325,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
      
        public static int setProgramCounter(int value){
+         RegisterFile registers = current();
+         Register programCounter = registers.programCounter;
          int old = programCounter.getValue();
          programCounter.setValue(value);
          if (Globals.getSettings().getBackSteppingEnabled()) {
-            Globals.program.getBackStepper().addPCRestore(old);
+            SimulationContext.current().getBackStepper().addPCRestore(old);
          } 
          return old;
       }
@@ -265,6 +341,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	 
        public static int getProgramCounter(){
+         RegisterFile registers = current();
+         Register programCounter = registers.programCounter;
          return programCounter.getValue();
       }
    
@@ -273,6 +351,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	*  @return program counter's Register object.
    	*/
        public static Register getProgramCounterRegister() {
+         RegisterFile registers = current();
+         Register programCounter = registers.programCounter;
          return programCounter;
       }
    	
@@ -282,6 +362,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	 
        public static int getInitialProgramCounter(){
+         RegisterFile registers = current();
+         Register programCounter = registers.programCounter;
          return programCounter.getResetValue();
       }
    	
@@ -295,6 +377,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  **/
    	
        public static void resetRegisters(){
+         RegisterFile registers = current();
+         Register[] regFile = registers.regFile;
+         Register hi = registers.hi;
+         Register lo = registers.lo;
          for(int i=0; i< regFile.length; i++){
             regFile[i].resetValue();
          }
@@ -308,6 +394,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 **/
    
        public static void incrementPC(){
+         RegisterFile registers = current();
+         Register programCounter = registers.programCounter;
          programCounter.setValue(programCounter.getValue() + Instruction.INSTRUCTION_LENGTH);
       }
    
@@ -317,6 +405,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 *  Counter.
    	 */
        public static void addRegistersObserver(Observer observer) {
+         RegisterFile registers = current();
+         Register[] regFile = registers.regFile;
+         Register hi = registers.hi;
+         Register lo = registers.lo;
          for (int i=0; i<regFile.length; i++) {
             regFile[i].addObserver(observer);
          }
@@ -330,6 +422,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 *  Counter.
    	 */
        public static void deleteRegistersObserver(Observer observer) {
+         RegisterFile registers = current();
+         Register[] regFile = registers.regFile;
+         Register hi = registers.hi;
+         Register lo = registers.lo;
          for (int i=0; i<regFile.length; i++) {
             regFile[i].deleteObserver(observer);
          }
@@ -0,0 +1,483 @@
+   package mars.mips.hardware;
+   import java.nio.ByteBuffer;
+   import java.nio.ByteOrder;
+   import java.nio.IntBuffer;
+
+	/*
+Copyright (c) 2003-2014,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Storage for one data-like memory segment (data, kernel data, stack or memory-mapped
+ * I/O), addressed relative to the segment's base.  The segment is divided into blocks
+ * (pages) of a power-of-two number of bytes, 4K unless the memory configuration says
+ * otherwise, allocated when first written; reading an unallocated block gives 0.
+ * <p>
+ * Blocks are found through a two-level table: a directory of tables of TABLE_LENGTH
+ * block references each, and a table is allocated only when one of its blocks is.  So
+ * a segment covering most of the 32-bit address space costs a small directory until
+ * it is used, and then only as much as the pages actually touched.
+ * <p>
+ * There are two kinds of block:
+ * <ul>
+ * <li>Heap: each block is an int[] of words, as Memory has always stored them.
+ * <li>Direct: each block is a direct ByteBuffer outside the Java heap, holding the bytes
+ * in memory order, so byte and word accesses are single buffer reads and writes.  This
+ * keeps large data segments out of the garbage collector's way.
+ * </ul>
+ * Byte order is fixed when the storage is created.  Accesses do not lock; only allocating
+ * a block, and copying a block shared with a fork before writing it, are synchronized.
+ * <p>
+ * Multi-byte values are assembled from bytes as Memory.get() and set() always have:
+ * the byte at the lowest address is the least significant.
+ *
+ * @version October 2026
+ **/
+
+    abstract class SegmentStorage {
+      static final int DEFAULT_BLOCK_LENGTH_BYTES = 4096;
+      private static final int TABLE_SHIFT = 10;
+      private static final int TABLE_LENGTH = 1 << TABLE_SHIFT; // blocks per second-level table
+   
+      protected final boolean littleEndian;
+      protected final int blockLengthBytes;
+      protected final int blockLengthWords;
+      protected final int length;    // number of blocks the segment can hold
+      private final int wordShift;   // word offset >>> wordShift is the block number
+      private Object[][] directory;
+      private boolean[][] shared;    // blocks that may still be shared with a fork; null if never forked
+   
+   
+       protected SegmentStorage(int length, int blockLengthBytes, boolean littleEndian) {
+         if (blockLengthBytes < 4 || Integer.bitCount(blockLengthBytes) != 1) {
+            throw new IllegalArgumentException("Memory page size must be a power of 2, at least 4: "+blockLengthBytes);
+         }
+         this.length = length;
+         this.blockLengthBytes = blockLengthBytes;
+         this.blockLengthWords = blockLengthBytes / 4;
+         this.wordShift = Integer.numberOfTrailingZeros(blockLengthWords);
+         this.directory = new Object[(length + TABLE_LENGTH - 1) >>> TABLE_SHIFT][];
+         this.littleEndian = littleEndian;
+      }
+   
+   
+   /**
+    * Create empty storage of the given kind.
+    * @param segmentBytes number of bytes the segment must hold
+    * @param blockLengthBytes bytes per block, a power of 2
+    * @param littleEndian true for Memory.LITTLE_ENDIAN byte order
+    * @param direct true for direct (off-heap) blocks, false for int[] blocks
+    * @return the storage
+    **/
+       static SegmentStorage create(long segmentBytes, int blockLengthBytes, boolean littleEndian, boolean direct) {
+         int length = (int) ((segmentBytes + blockLengthBytes - 1) / blockLengthBytes);
+         return (direct) ? (SegmentStorage) new Direct(length, blockLengthBytes, littleEndian) 
+                         : new Heap(length, blockLengthBytes, littleEndian);
+      }
+   
+   
+       // Storage of the same kind and size, with no blocks.
+       protected abstract SegmentStorage newStorage();
+   
+       protected abstract Object newBlock();
+   
+       protected abstract Object copyBlock(Object block);
+   
+       protected abstract int getWord(Object block, int word);
+   
+       protected abstract void setWord(Object block, int word, int value);
+   
+       // Byte at the given byte offset of the block, in memory order.
+       protected abstract int getByte(Object block, int offset);
+   
+       protected abstract void setByte(Object block, int offset, int value);
+   
+       // Write the block's words, in the buffer's byte order, and advance the buffer.
+       protected abstract void writeBlock(ByteBuffer buffer, Object block);
+   
+       protected abstract void readBlock(ByteBuffer buffer, Object block);
+   
+   
+   /**
+    * Bytes per block.
+    * @return block length
+    **/
+       int getBlockLengthBytes() {
+         return blockLengthBytes;
+      }
+   
+   
+       // The block with the given number, null if not allocated.
+       private Object block(int index) {
+         Object[] table = directory[index >>> TABLE_SHIFT];
+         return (table == null) ? null : table[index & (TABLE_LENGTH - 1)];
+      }
+   
+   
+   /**
+    * Fetch a word.
+    * @param relative word offset from the segment base
+    * @return the word, 0 if never written
+    **/
+       int fetchWord(int relative) {
+         Object block = block(relative >>> wordShift);
+         return (block == null) ? 0 : getWord(block, relative & (blockLengthWords - 1));
+      }
+   
+   
+   /**
+    * Fetch a word, or null if its block has never been written.
+    * @param relative word offset from the segment base
+    * @return the word, or null
+    **/
+       Integer fetchWordOrNull(int relative) {
+         Object block = block(relative >>> wordShift);
+         return (block == null) ? null : Integer.valueOf(getWord(block, relative & (blockLengthWords - 1)));
+      }
+   
+   
+   /**
+    * Store a word.
+    * @param relative word offset from the segment base
+    * @param value the word
+    * @return the word it replaced
+    **/
+       int storeWord(int relative, int value) {
+         Object block = writableBlock(relative >>> wordShift);
+         int offset = relative & (blockLengthWords - 1);
+         int oldValue = getWord(block, offset);
+         setWord(block, offset, value);
+         return oldValue;
+      }
+   
+   
+   /**
+    * Fetch 1 to 4 bytes, without regard to word boundaries.
+    * @param relativeByteAddress byte offset from the segment base
+    * @param length number of bytes
+    * @return the bytes, lowest address least significant
+    **/
+       int fetchBytes(int relativeByteAddress, int length) {
+         if (length == 4 && (relativeByteAddress & 3) == 0) {
+            int word = fetchWord(relativeByteAddress >>> 2);
+            return (littleEndian) ? word : reverseBytes(word);
+         }
+         int value = 0;
+         for (int i=0; i<length; i++) {
+            int address = relativeByteAddress + i;
+            Object block = block((address >>> 2) >>> wordShift);
+            if (block == null) {
+               return 0;
+            }
+            value |= getByte(block, address & (blockLengthBytes - 1)) << (i << 3);
+         }
+         return value;
+      }
+   
+   
+   /**
+    * Store 1 to 4 bytes, without regard to word boundaries.
+    * @param relativeByteAddress byte offset from the segment base
+    * @param length number of bytes
+    * @param value the bytes, lowest address least significant
+    * @return the bytes they replaced, in the same form
+    **/
+       int storeBytes(int relativeByteAddress, int length, int value) {
+         if (length == 4 && (relativeByteAddress & 3) == 0) {
+            int oldValue = storeWord(relativeByteAddress >>> 2, (littleEndian) ? value : reverseBytes(value));
+            return (littleEndian) ? oldValue : reverseBytes(oldValue);
+         }
+         int oldValue = 0;
+         for (int i=0; i<length; i++) {
+            int address = relativeByteAddress + i;
+            Object block = writableBlock((address >>> 2) >>> wordShift);
+            oldValue |= getByte(block, address & (blockLengthBytes - 1)) << (i << 3);
+            setByte(block, address & (blockLengthBytes - 1), value >> (i << 3));
+         }
+         return oldValue;
+      }
+   
+   
+       // The block, allocated if need be and not shared with a fork, ready to be written.
+       private Object writableBlock(int index) {
+         Object block = block(index);
+         if (block == null || shared != null) {
+            synchronized (this) {
+               int t = index >>> TABLE_SHIFT;
+               int i = index & (TABLE_LENGTH - 1);
+               if (directory[t] == null) {
+                  directory[t] = new Object[TABLE_LENGTH];
+               }
+               if (directory[t][i] == null) {
+                  directory[t][i] = newBlock();
+               }
+               else if (shared != null && shared[t] != null && shared[t][i]) {
+                  directory[t][i] = copyBlock(directory[t][i]);
+                  shared[t][i] = false;
+               }
+               block = directory[t][i];
+            }
+         }
+         return block;
+      }
+   
+   
+   /**
+    * Create storage with the same contents and its own blocks.
+    * @return the copy
+    **/
+       synchronized SegmentStorage copy() {
+         SegmentStorage copy = newStorage();
+         for (int t=0; t<directory.length; t++) {
+            if (directory[t] != null) {
+               copy.directory[t] = new Object[TABLE_LENGTH];
+               for (int i=0; i<TABLE_LENGTH; i++) {
+                  if (directory[t][i] != null) {
+                     copy.directory[t][i] = copyBlock(directory[t][i]);
+                  }
+               }
+            }
+         }
+         return copy;
+      }
+   
+   
+   /**
+    * Create storage with the same contents that shares this storage's blocks until either
+    * of them writes one (see Memory.fork()).  Tables are not shared, only blocks.
+    * @return the fork
+    **/
+       synchronized SegmentStorage fork() {
+         if (shared == null) {
+            shared = new boolean[directory.length][];
+         }
+         SegmentStorage fork = newStorage();
+         fork.shared = new boolean[directory.length][];
+         for (int t=0; t<directory.length; t++) {
+            if (directory[t] != null) {
+               if (shared[t] == null) {
+                  shared[t] = new boolean[TABLE_LENGTH];
+               }
+               for (int i=0; i<TABLE_LENGTH; i++) {
+                  if (directory[t][i] != null) {
+                     shared[t][i] = true;
+                  }
+               }
+               fork.directory[t] = directory[t].clone();
+               fork.shared[t] = shared[t].clone();
+            }
+         }
+         return fork;
+      }
+   
+   
+   /**
+    * Number of blocks allocated.
+    * @return block count
+    **/
+       int allocatedBlocks() {
+         int count = 0;
+         for (int t=0; t<directory.length; t++) {
+            if (directory[t] != null) {
+               for (int i=0; i<TABLE_LENGTH; i++) {
+                  if (directory[t][i] != null) {
+                     count++;
+                  }
+               }
+            }
+         }
+         return count;
+      }
+   
+   
+   /**
+    * Number of bytes writeSnapshot() will write.
+    * @return snapshot length in bytes
+    **/
+       int getSnapshotLength() {
+         return 8 + allocatedBlocks() * (4 + blockLengthBytes);
+      }
+   
+   
+   /**
+    * Write the block length, the number of allocated blocks, then for each its number
+    * and its words.
+    * @param buffer destination
+    **/
+       synchronized void writeSnapshot(ByteBuffer buffer) {
+         buffer.putInt(blockLengthBytes);
+         buffer.putInt(allocatedBlocks());
+         for (int t=0; t<directory.length; t++) {
+            if (directory[t] != null) {
+               for (int i=0; i<TABLE_LENGTH; i++) {
+                  if (directory[t][i] != null) {
+                     buffer.putInt((t << TABLE_SHIFT) | i);
+                     writeBlock(buffer, directory[t][i]);
+                  }
+               }
+            }
+         }
+      }
+   
+   
+   /**
+    * Create storage of the same kind and size holding blocks written by writeSnapshot().
+    * @param buffer source
+    * @return the storage
+    * @throws IllegalArgumentException if the blocks do not fit this storage
+    **/
+       SegmentStorage readSnapshot(ByteBuffer buffer) {
+         if (buffer.getInt() != blockLengthBytes) {
+            throw new IllegalArgumentException("memory page size differs from this memory configuration");
+         }
+         SegmentStorage storage = newStorage();
+         int count = buffer.getInt();
+         for (int n=0; n<count; n++) {
+            int index = buffer.getInt();
+            if (index < 0 || index >= length) {
+               throw new IllegalArgumentException("memory block "+index+" outside this memory configuration");
+            }
+            Object block = storage.writableBlock(index);
+            readBlock(buffer, block);
+         }
+         return storage;
+      }
+   
+   
+       private static int reverseBytes(int source) {
+         return  (source >> 24 & 0x000000FF) |
+                 (source >> 8  & 0x0000FF00) |
+            	  (source << 8  & 0x00FF0000) |
+            	  (source << 24);
+      }
+   
+   
+       // Blocks of blockLengthWords ints.  Byte k of a word (k = address % 4) is bits
+       // 8k to 8k+7 for little endian, 24-8k to 31-8k for big endian.
+       private static class Heap extends SegmentStorage {
+          Heap(int length, int blockLengthBytes, boolean littleEndian) {
+            super(length, blockLengthBytes, littleEndian);
+         }
+      
+          protected SegmentStorage newStorage() {
+            return new Heap(length, blockLengthBytes, littleEndian);
+         }
+      
+          protected Object newBlock() {
+            return new int[blockLengthWords];
+         }
+      
+          protected Object copyBlock(Object block) {
+            return ((int[]) block).clone();
+         }
+      
+          protected int getWord(Object block, int word) {
+            return ((int[]) block)[word];
+         }
+      
+          protected void setWord(Object block, int word, int value) {
+            ((int[]) block)[word] = value;
+         }
+      
+          protected int getByte(Object block, int offset) {
+            return ((int[]) block)[offset >> 2] >>> shift(offset) & 0xFF;
+         }
+      
+          protected void setByte(Object block, int offset, int value) {
+            int[] words = (int[]) block;
+            int shift = shift(offset);
+            words[offset >> 2] = (words[offset >> 2] & ~(0xFF << shift)) | ((value & 0xFF) << shift);
+         }
+      
+          private int shift(int offset) {
+            return (littleEndian) ? (offset & 3) << 3 : 24 - ((offset & 3) << 3);
+         }
+      
+          protected void writeBlock(ByteBuffer buffer, Object block) {
+            buffer.asIntBuffer().put((int[]) block);
+            buffer.position(buffer.position() + blockLengthBytes);
+         }
+      
+          protected void readBlock(ByteBuffer buffer, Object block) {
+            buffer.asIntBuffer().get((int[]) block);
+            buffer.position(buffer.position() + blockLengthBytes);
+         }
+      }
+   
+   
+       // Blocks of blockLengthBytes bytes in direct ByteBuffers, in memory order.  Only
+       // absolute get and put methods are used, so blocks can be read from any thread.
+       private static class Direct extends SegmentStorage {
+          Direct(int length, int blockLengthBytes, boolean littleEndian) {
+            super(length, blockLengthBytes, littleEndian);
+         }
+      
+          protected SegmentStorage newStorage() {
+            return new Direct(length, blockLengthBytes, littleEndian);
+         }
+      
+          protected Object newBlock() {
+            return ByteBuffer.allocateDirect(blockLengthBytes)
+               .order((littleEndian) ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+         }
+      
+          protected Object copyBlock(Object block) {
+            ByteBuffer copy = (ByteBuffer) newBlock();
+            copy.put(((ByteBuffer) block).duplicate());
+            copy.clear();
+            return copy;
+         }
+      
+          protected int getWord(Object block, int word) {
+            return ((ByteBuffer) block).getInt(word << 2);
+         }
+      
+          protected void setWord(Object block, int word, int value) {
+            ((ByteBuffer) block).putInt(word << 2, value);
+         }
+      
+          protected int getByte(Object block, int offset) {
+            return ((ByteBuffer) block).get(offset) & 0xFF;
+         }
+      
+          protected void setByte(Object block, int offset, int value) {
+            ((ByteBuffer) block).put(offset, (byte) value);
+         }
+      
+          protected void writeBlock(ByteBuffer buffer, Object block) {
+            buffer.asIntBuffer().put(((ByteBuffer) block).duplicate().order(((ByteBuffer) block).order()).asIntBuffer());
+            buffer.position(buffer.position() + blockLengthBytes);
+         }
+      
+          protected void readBlock(ByteBuffer buffer, Object block) {
+            IntBuffer words = buffer.asIntBuffer();
+            words.limit(blockLengthWords);
+            ((ByteBuffer) block).duplicate().order(((ByteBuffer) block).order()).asIntBuffer().put(words);
+            buffer.position(buffer.position() + blockLengthBytes);
+         }
+      }
+   }
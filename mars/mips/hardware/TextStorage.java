@@ -0,0 +1,448 @@
+   package mars.mips.hardware;
+   import mars.*;
+   import mars.assembler.SourceLine;
+   import mars.mips.instructions.*;
+   import java.nio.ByteBuffer;
+   import java.util.*;
+
+	/*
+Copyright (c) 2003-2014,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Storage for a text segment (user or kernel), addressed by word offset from the
+ * segment's base.  Assembled statements are not kept as ProgramStatement objects, with
+ * their token lists and strings, but as parallel primitive arrays: for each word its
+ * machine code, instruction, operands, source line and where its source text is found.
+ * Instructions and source programs are numbered through a dictionary shared by the
+ * storage and its forks.  The source text is normally the source program's line itself
+ * (see MIPSprogram.getSourceLineList()), so only text that is not, such as a line of an
+ * expanded macro, is kept, in a table for its block; a statement rebuilt from the
+ * arrays looks up the line itself when its source is asked for.
+ * <p>
+ * A new ProgramStatement is built from the arrays each time the GUI or a dump format
+ * asks for one, and none is kept, so nothing here is initialized lazily or shared
+ * between the threads that ask.  The simulator has each statement it executes loaded
+ * from the arrays into one of its own instead (see statementAt(int, ProgramStatement)),
+ * so fetching an instruction builds nothing.  Statements decoded from machine code,
+ * as for self-modifying code, are built again by decoding it.  Loads of text words need
+ * only the machine code.
+ * <p>
+ * The segment is divided into blocks of BLOCK_LENGTH_WORDS words, allocated when first
+ * written.  As in SegmentStorage, a fork shares every block until one side writes it.
+ *
+ * @version October 2026
+ **/
+
+    class TextStorage {
+      static final int BLOCK_LENGTH_WORDS = 1024;
+      private static final int MAX_OPERANDS = 4;
+      // The attributes of a word, packed in one int: its operand count, the mask of its
+      // address operands, whether its token lists come from the source statement, and
+      // where its source text is: none (""), the source program's line, or its block's table.
+      private static final int OPERAND_COUNT_MASK = 0x0F;
+      private static final int ADDRESS_OPERANDS_SHIFT = 4;
+      private static final int ADDRESS_OPERANDS_MASK = 0x0F;
+      private static final int TOKENS_FROM_SOURCE = 0x100;
+      private static final int SOURCE_SHIFT = 9;
+      private static final int SOURCE_MASK = 0x3 << SOURCE_SHIFT;
+      private static final int NO_SOURCE = 0;
+      private static final int LINE_SOURCE = 1;
+      private static final int OTHER_SOURCE = 2;
+   
+      private final int baseAddress;
+      private Block[] blocks;
+      private boolean[] shared;    // blocks that may still be shared with a fork; null if never forked
+      private Dictionary dictionary;
+   
+   
+   /**
+    * Create empty storage.
+    * @param length number of blocks the segment can hold
+    * @param baseAddress address of the segment's first word
+    **/
+       TextStorage(int length, int baseAddress) {
+         this.baseAddress = baseAddress;
+         this.blocks = new Block[length];
+         this.dictionary = new Dictionary();
+      }
+   
+   
+   /**
+    * Create a storage that shares every block with this one until either writes to it.
+    * @return the fork
+    **/
+       synchronized TextStorage fork() {
+         if (shared == null) {
+            shared = new boolean[blocks.length];
+         }
+         for (int i=0; i<blocks.length; i++) {
+            if (blocks[i] != null) {
+               shared[i] = true;
+            }
+         }
+         TextStorage fork = new TextStorage(blocks.length, baseAddress);
+         fork.blocks = blocks.clone();
+         fork.shared = shared.clone();
+         fork.dictionary = dictionary;
+         return fork;
+      }
+   
+   
+   /**
+    * Number of blocks the segment can hold.
+    * @return length in blocks
+    **/
+       int length() {
+         return blocks.length;
+      }
+   
+   
+   /**
+    * Returns true if a statement is stored at the given word.
+    * @param relative word offset from the segment base
+    * @return true if there is a statement
+    **/
+       boolean contains(int relative) {
+         int index = relative / BLOCK_LENGTH_WORDS;
+         Block block = (index < blocks.length) ? blocks[index] : null;
+         return block != null && block.instructions[relative % BLOCK_LENGTH_WORDS] != 0;
+      }
+   
+   
+   /**
+    * Returns the machine code stored at the given word.
+    * @param relative word offset from the segment base
+    * @return the machine code, 0 if no statement is stored there
+    **/
+       int fetchWord(int relative) {
+         int index = relative / BLOCK_LENGTH_WORDS;
+         Block block = (index < blocks.length) ? blocks[index] : null;
+         return (block == null) ? 0 : block.words[relative % BLOCK_LENGTH_WORDS];
+      }
+   
+   
+   /**
+    * Build the statement stored at the given word.  Each call builds a new one.
+    * @param relative word offset from the segment base
+    * @return the statement, or null if none is stored there
+    **/
+       ProgramStatement statementAt(int relative) {
+         return statementAt(relative, null);
+      }
+   
+   
+   /**
+    * Load the statement stored at the given word into the given one, made by
+    * ProgramStatement(), rather than build a new one.  Machine code written other than
+    * by the assembler is still decoded into a new statement.
+    * @param relative word offset from the segment base
+    * @param statement the statement to load, or null to build a new one
+    * @return the statement loaded or built, or null if none is stored there
+    **/
+       ProgramStatement statementAt(int relative, ProgramStatement statement) {
+         int index = relative / BLOCK_LENGTH_WORDS;
+         int word = relative % BLOCK_LENGTH_WORDS;
+         Block block = (relative >= 0 && index < blocks.length) ? blocks[index] : null;
+         if (block == null || block.instructions[word] == 0) {
+            return null;
+         }
+         return rebuild(block, word, baseAddress + (relative << 2), statement);
+      }
+   
+   
+   /**
+    * Store a statement at the given word.
+    * @param relative word offset from the segment base
+    * @param statement the statement, with its machine code already built
+    **/
+       void store(int relative, ProgramStatement statement) {
+         int index = relative / BLOCK_LENGTH_WORDS;
+         int word = relative % BLOCK_LENGTH_WORDS;
+         if (index >= blocks.length) {
+            return;
+         }
+         Block block = writableBlock(index);
+         int[] operands = statement.getOperands();
+         int count = (operands == null) ? 0 : Math.min(statement.getNumOperands(), MAX_OPERANDS);
+         block.words[word] = statement.getBinaryStatement();
+         block.instructions[word] = dictionary.instructionCode(statement.getInstruction());
+         for (int i=0; i<MAX_OPERANDS; i++) {
+            block.operands[word * MAX_OPERANDS + i] = (i < count) ? operands[i] : 0;
+         }
+         // The assembler gives the statements of a pseudo-instruction expansion the same
+         // token list for both, and those of a basic instruction a stripped copy.
+         block.attributes[word] = count
+                  | (statement.getAddressOperands() & ADDRESS_OPERANDS_MASK) << ADDRESS_OPERANDS_SHIFT
+                  | ((statement.getOriginalTokenList() != statement.getStrippedTokenList()) ? TOKENS_FROM_SOURCE : 0);
+         block.sourceLines[word] = statement.getSourceLine();
+         block.programs[word] = dictionary.programCode(statement.getSourceMIPSprogram());
+         block.setSource(word, statement.getSourceMIPSprogram(), statement.getSourceLine(), statement.getSource());
+      }
+   
+   
+   /**
+    * Remove any statement stored at the given word.
+    * @param relative word offset from the segment base
+    **/
+       void remove(int relative) {
+         int index = relative / BLOCK_LENGTH_WORDS;
+         int word = relative % BLOCK_LENGTH_WORDS;
+         if (index >= blocks.length || blocks[index] == null) {
+            return;
+         }
+         Block block = writableBlock(index);
+         block.words[word] = 0;
+         block.instructions[word] = 0;
+         block.setSource(word, null, 0, null);
+      }
+   
+   
+   /**
+    * Returns true if the given block is allocated.
+    * @param index block number
+    * @return true if allocated
+    **/
+       boolean isAllocated(int index) {
+         return blocks[index] != null;
+      }
+   
+   
+   /**
+    * Release the given block.  Its statements should have been removed first.
+    * @param index block number
+    **/
+       void release(int index) {
+         blocks[index] = null;
+         if (shared != null) {
+            shared[index] = false;
+         }
+      }
+   
+   
+   /**
+    * Number of bytes writeSnapshot() will write.
+    * @return snapshot length in bytes
+    **/
+       int getSnapshotLength() {
+         return 4 + allocatedBlocks() * (4 + BLOCK_LENGTH_WORDS / 8 + BLOCK_LENGTH_WORDS * 4);
+      }
+   
+   
+   /**
+    * Write the allocated blocks: their count, then for each its number, a presence
+    * bitmap and the machine code of each word.
+    * @param buffer destination
+    **/
+       void writeSnapshot(ByteBuffer buffer) {
+         buffer.putInt(allocatedBlocks());
+         for (int i=0; i<blocks.length; i++) {
+            if (blocks[i] != null) {
+               buffer.putInt(i);
+               for (int word=0; word<BLOCK_LENGTH_WORDS; word+=32) {
+                  int present = 0;
+                  for (int bit=0; bit<32; bit++) {
+                     if (blocks[i].instructions[word+bit] != 0) {
+                        present |= 1 << bit;
+                     }
+                  }
+                  buffer.putInt(present);
+               }
+               buffer.asIntBuffer().put(blocks[i].words);
+               buffer.position(buffer.position() + BLOCK_LENGTH_WORDS * 4);
+            }
+         }
+      }
+   
+   
+       private int allocatedBlocks() {
+         int count = 0;
+         for (int i=0; i<blocks.length; i++) {
+            if (blocks[i] != null) {
+               count++;
+            }
+         }
+         return count;
+      }
+   
+   
+       // The block to write, allocated or, if it may be shared with a fork, copied first.
+       private Block writableBlock(int index) {
+         if (blocks[index] == null) {
+            synchronized (this) {
+               if (blocks[index] == null) {
+                  blocks[index] = new Block();
+               }
+            }
+         }
+         else if (shared != null && shared[index]) {
+            synchronized (this) {
+               if (shared[index]) {
+                  blocks[index] = blocks[index].copy();
+                  shared[index] = false;
+               }
+            }
+         }
+         return blocks[index];
+      }
+   
+   
+       private ProgramStatement rebuild(Block block, int word, int address, ProgramStatement statement) {
+         MIPSprogram program = dictionary.program(block.programs[word]);
+         if (program == null) {
+            return new ProgramStatement(block.words[word], address);
+         }
+         Instruction instruction = dictionary.instruction(block.instructions[word]);
+         int attributes = block.attributes[word];
+         int count = attributes & OPERAND_COUNT_MASK;
+         int addressOperands = (attributes >> ADDRESS_OPERANDS_SHIFT) & ADDRESS_OPERANDS_MASK;
+         boolean tokensFromSource = (attributes & TOKENS_FROM_SOURCE) != 0;
+         if (statement != null) {
+            statement.load(program, block.source(word), block.sourceLines[word], instruction,
+                           block.operands, word * MAX_OPERANDS, count, addressOperands,
+                           tokensFromSource, block.words[word], address);
+            return statement;
+         }
+         int[] operands = new int[MAX_OPERANDS];
+         System.arraycopy(block.operands, word * MAX_OPERANDS, operands, 0, MAX_OPERANDS);
+         return new ProgramStatement(program, block.source(word), block.sourceLines[word], instruction,
+                                     operands, count, addressOperands, tokensFromSource, block.words[word], address);
+      }
+   
+   
+       // The statements of one block, as parallel arrays indexed by word.
+       private static class Block {
+         int[] words = new int[BLOCK_LENGTH_WORDS];            // machine code
+         int[] instructions = new int[BLOCK_LENGTH_WORDS];     // dictionary code; 0 if no statement
+         int[] operands = new int[BLOCK_LENGTH_WORDS * MAX_OPERANDS];
+         int[] attributes = new int[BLOCK_LENGTH_WORDS];       // packed as described above
+         int[] sourceLines = new int[BLOCK_LENGTH_WORDS];
+         int[] programs = new int[BLOCK_LENGTH_WORDS];         // dictionary code; 0 if none
+         String[] otherSources;                                 // for OTHER_SOURCE; allocated when first needed
+      
+          Block copy() {
+            Block copy = new Block();
+            System.arraycopy(words, 0, copy.words, 0, BLOCK_LENGTH_WORDS);
+            System.arraycopy(instructions, 0, copy.instructions, 0, BLOCK_LENGTH_WORDS);
+            System.arraycopy(operands, 0, copy.operands, 0, operands.length);
+            System.arraycopy(attributes, 0, copy.attributes, 0, BLOCK_LENGTH_WORDS);
+            System.arraycopy(sourceLines, 0, copy.sourceLines, 0, BLOCK_LENGTH_WORDS);
+            System.arraycopy(programs, 0, copy.programs, 0, BLOCK_LENGTH_WORDS);
+            copy.otherSources = (otherSources == null) ? null : otherSources.clone();
+            return copy;
+         }
+      
+          // Record where the source text of a word is found, keeping it only if the source
+          // program does not have it as the given line.
+          void setSource(int word, MIPSprogram program, int line, String source) {
+            int kind;
+            if (otherSources != null) {
+               otherSources[word] = null;
+            }
+            if (source == null || source.length() == 0) {
+               kind = NO_SOURCE;
+            }
+            else if (source.equals(programLine(program, line))) {
+               kind = LINE_SOURCE;
+            }
+            else {
+               if (otherSources == null) {
+                  otherSources = new String[BLOCK_LENGTH_WORDS];
+               }
+               otherSources[word] = source;
+               kind = OTHER_SOURCE;
+            }
+            attributes[word] = (attributes[word] & ~SOURCE_MASK) | kind << SOURCE_SHIFT;
+         }
+      
+          // Source text of a word; null if it is the program's line, for the statement
+          // to look up when asked for (see ProgramStatement.getSource()).
+          String source(int word) {
+            int kind = (attributes[word] & SOURCE_MASK) >> SOURCE_SHIFT;
+            if (kind == LINE_SOURCE) {
+               return null;
+            }
+            return (kind == OTHER_SOURCE) ? otherSources[word] : "";
+         }
+      
+          // Text of a line of a source program, or null if it has no such line.
+          private static String programLine(MIPSprogram program, int line) {
+            ArrayList lines = (program == null) ? null : program.getSourceLineList();
+            return (lines == null || line < 1 || line > lines.size()) ? null : ((SourceLine) lines.get(line - 1)).getSource();
+         }
+      }
+   
+   
+       // Numbers the instructions and programs of the stored statements.  Instruction codes
+       // start at 1, for null (machine code that is not a valid instruction); program codes
+       // start at 1, with 0 for none.  Numbering is synchronized; the arrays looked up by
+       // code are replaced, never changed, when an entry is added, so lookups need no lock.
+       private static class Dictionary {
+         private volatile Instruction[] instructions = { null };
+         private IdentityHashMap instructionCodes = new IdentityHashMap();
+         private volatile MIPSprogram[] programs = { null };
+         private IdentityHashMap programCodes = new IdentityHashMap();
+      
+          synchronized int instructionCode(Instruction instruction) {
+            if (instruction == null) {
+               return 1;
+            }
+            Integer code = (Integer) instructionCodes.get(instruction);
+            if (code == null) {
+               Instruction[] added = Arrays.copyOf(instructions, instructions.length + 1);
+               added[instructions.length] = instruction;
+               instructions = added;
+               code = Integer.valueOf(added.length);
+               instructionCodes.put(instruction, code);
+            }
+            return code.intValue();
+         }
+      
+          Instruction instruction(int code) {
+            return instructions[code - 1];
+         }
+      
+          synchronized int programCode(MIPSprogram program) {
+            if (program == null) {
+               return 0;
+            }
+            Integer code = (Integer) programCodes.get(program);
+            if (code == null) {
+               MIPSprogram[] added = Arrays.copyOf(programs, programs.length + 1);
+               added[programs.length] = program;
+               programs = added;
+               code = Integer.valueOf(added.length - 1);
+               programCodes.put(program, code);
+            }
+            return code.intValue();
+         }
+      
+          MIPSprogram program(int code) {
+            return programs[code];
+         }
+      }
+   }
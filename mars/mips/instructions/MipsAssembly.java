@@ -603,7 +603,7 @@ public class MipsAssembly extends CustomAssembly{
                      try
                      {
                         RegisterFile.updateRegister(operands[0],
-                            Globals.memory.getWord(
+                            Memory.getInstance().getWord(
                             RegisterFile.getValue(operands[2]) + operands[1]));
                      } 
                          catch (AddressErrorException e)
@@ -633,7 +633,7 @@ public class MipsAssembly extends CustomAssembly{
                      try
                      {
                         RegisterFile.updateRegister(operands[0],
-                            Globals.memory.getWord(
+                            Memory.getInstance().getWord(
                             RegisterFile.getValue(operands[2]) + operands[1]));
                      } 
                          catch (AddressErrorException e)
@@ -656,8 +656,8 @@ public class MipsAssembly extends CustomAssembly{
                      {
                         int address = RegisterFile.getValue(operands[2]) + operands[1];
                         int result = RegisterFile.getValue(operands[0]);
-                        for (int i=0; i<=address % Globals.memory.WORD_LENGTH_BYTES; i++) {
-                           result = Binary.setByte(result,3-i,Globals.memory.getByte(address-i));
+                        for (int i=0; i<=address % Memory.WORD_LENGTH_BYTES; i++) {
+                           result = Binary.setByte(result,3-i,Memory.getInstance().getByte(address-i));
                         }
                         RegisterFile.updateRegister(operands[0], result);
                      } 
@@ -681,8 +681,8 @@ public class MipsAssembly extends CustomAssembly{
                      {
                         int address = RegisterFile.getValue(operands[2]) + operands[1];
                         int result = RegisterFile.getValue(operands[0]);
-                        for (int i=0; i<=3-(address % Globals.memory.WORD_LENGTH_BYTES); i++) {
-                           result = Binary.setByte(result,i,Globals.memory.getByte(address+i));
+                        for (int i=0; i<=3-(address % Memory.WORD_LENGTH_BYTES); i++) {
+                           result = Binary.setByte(result,i,Memory.getInstance().getByte(address+i));
                         }
                         RegisterFile.updateRegister(operands[0], result);
                      } 
@@ -704,7 +704,7 @@ public class MipsAssembly extends CustomAssembly{
                      int[] operands = statement.getOperands();
                      try
                      {
-                        Globals.memory.setWord(
+                        Memory.getInstance().setWord(
                             RegisterFile.getValue(operands[2]) + operands[1],
                             RegisterFile.getValue(operands[0]));
                      } 
@@ -728,7 +728,7 @@ public class MipsAssembly extends CustomAssembly{
                      int[] operands = statement.getOperands();
                      try
                      {
-                        Globals.memory.setWord(
+                        Memory.getInstance().setWord(
                             RegisterFile.getValue(operands[2]) + operands[1],
                             RegisterFile.getValue(operands[0]));
                      } 
@@ -753,8 +753,8 @@ public class MipsAssembly extends CustomAssembly{
                      {
                         int address = RegisterFile.getValue(operands[2]) + operands[1];
                         int source = RegisterFile.getValue(operands[0]);
-                        for (int i=0; i<=address % Globals.memory.WORD_LENGTH_BYTES; i++) {
-                           Globals.memory.setByte(address-i,Binary.getByte(source,3-i));
+                        for (int i=0; i<=address % Memory.WORD_LENGTH_BYTES; i++) {
+                           Memory.getInstance().setByte(address-i,Binary.getByte(source,3-i));
                         }
                      } 
                          catch (AddressErrorException e)
@@ -777,8 +777,8 @@ public class MipsAssembly extends CustomAssembly{
                      {
                         int address = RegisterFile.getValue(operands[2]) + operands[1];
                         int source = RegisterFile.getValue(operands[0]);
-                        for (int i=0; i<=3-(address % Globals.memory.WORD_LENGTH_BYTES); i++) {
-                           Globals.memory.setByte(address+i,Binary.getByte(source,i));
+                        for (int i=0; i<=3-(address % Memory.WORD_LENGTH_BYTES); i++) {
+                           Memory.getInstance().setByte(address+i,Binary.getByte(source,i));
                         }
                      } 
                          catch (AddressErrorException e)
@@ -1227,7 +1227,7 @@ public class MipsAssembly extends CustomAssembly{
                      try
                      {
                         RegisterFile.updateRegister(operands[0],
-                            Globals.memory.getByte(
+                            Memory.getInstance().getByte(
                             RegisterFile.getValue(operands[2])
                                     + (operands[1] << 16 >> 16))
                                             << 24
@@ -1252,7 +1252,7 @@ public class MipsAssembly extends CustomAssembly{
                      try
                      {
                         RegisterFile.updateRegister(operands[0],
-                            Globals.memory.getHalf(
+                            Memory.getInstance().getHalf(
                             RegisterFile.getValue(operands[2])
                                     + (operands[1] << 16 >> 16))
                                             << 16
@@ -1278,7 +1278,7 @@ public class MipsAssembly extends CustomAssembly{
                      {
                      // offset is sign-extended and loaded halfword value is zero-extended
                         RegisterFile.updateRegister(operands[0],
-                            Globals.memory.getHalf(
+                            Memory.getInstance().getHalf(
                             RegisterFile.getValue(operands[2])
                                     + (operands[1] << 16 >> 16))
                                             & 0x0000ffff);
@@ -1302,7 +1302,7 @@ public class MipsAssembly extends CustomAssembly{
                      try
                      {
                         RegisterFile.updateRegister(operands[0],
-                            Globals.memory.getByte(
+                            Memory.getInstance().getByte(
                             RegisterFile.getValue(operands[2])
                                     + (operands[1] << 16 >> 16))
                                             & 0x000000ff);
@@ -1325,7 +1325,7 @@ public class MipsAssembly extends CustomAssembly{
                      int[] operands = statement.getOperands();
                      try
                      {
-                        Globals.memory.setByte(
+                        Memory.getInstance().setByte(
                             RegisterFile.getValue(operands[2])
                                     + (operands[1] << 16 >> 16),
                                     RegisterFile.getValue(operands[0])
@@ -1349,7 +1349,7 @@ public class MipsAssembly extends CustomAssembly{
                      int[] operands = statement.getOperands();
                      try
                      {
-                        Globals.memory.setHalf(
+                        Memory.getInstance().setHalf(
                             RegisterFile.getValue(operands[2])
                                     + (operands[1] << 16 >> 16),
                                     RegisterFile.getValue(operands[0])
@@ -2670,7 +2670,7 @@ public class MipsAssembly extends CustomAssembly{
                      try
                      {
                         Coprocessor1.updateRegister(operands[0],
-                            Globals.memory.getWord(
+                            Memory.getInstance().getWord(
                             RegisterFile.getValue(operands[2]) + operands[1]));
                      } 
                          catch (AddressErrorException e)
@@ -2693,7 +2693,7 @@ public class MipsAssembly extends CustomAssembly{
                         throw new ProcessingException(statement, "first register must be even-numbered");
                      }
                   	// IF statement added by DPS 13-July-2011.
-                     if (!Globals.memory.doublewordAligned(RegisterFile.getValue(operands[2]) + operands[1])) {
+                     if (!Memory.getInstance().doublewordAligned(RegisterFile.getValue(operands[2]) + operands[1])) {
                         throw new ProcessingException(statement,
                            new AddressErrorException("address not aligned on doubleword boundary ",
                            Exceptions.ADDRESS_EXCEPTION_LOAD, RegisterFile.getValue(operands[2]) + operands[1]));
@@ -2702,10 +2702,10 @@ public class MipsAssembly extends CustomAssembly{
                      try
                      {
                         Coprocessor1.updateRegister(operands[0],
-                            Globals.memory.getWord(
+                            Memory.getInstance().getWord(
                             RegisterFile.getValue(operands[2]) + operands[1]));
                         Coprocessor1.updateRegister(operands[0]+1,
-                            Globals.memory.getWord(
+                            Memory.getInstance().getWord(
                             RegisterFile.getValue(operands[2]) + operands[1] + 4));
                      } 
                          catch (AddressErrorException e)
@@ -2726,7 +2726,7 @@ public class MipsAssembly extends CustomAssembly{
                      int[] operands = statement.getOperands();
                      try
                      {
-                        Globals.memory.setWord(
+                        Memory.getInstance().setWord(
                             RegisterFile.getValue(operands[2]) + operands[1],
                             Coprocessor1.getValue(operands[0]));
                      } 
@@ -2750,17 +2750,17 @@ public class MipsAssembly extends CustomAssembly{
                         throw new ProcessingException(statement, "first register must be even-numbered");
                      }
                   	// IF statement added by DPS 13-July-2011.
-                     if (!Globals.memory.doublewordAligned(RegisterFile.getValue(operands[2]) + operands[1])) {
+                     if (!Memory.getInstance().doublewordAligned(RegisterFile.getValue(operands[2]) + operands[1])) {
                         throw new ProcessingException(statement,
                            new AddressErrorException("address not aligned on doubleword boundary ",
                            Exceptions.ADDRESS_EXCEPTION_STORE, RegisterFile.getValue(operands[2]) + operands[1]));
                      }
                      try
                      {
-                        Globals.memory.setWord(
+                        Memory.getInstance().setWord(
                             RegisterFile.getValue(operands[2]) + operands[1],
                             Coprocessor1.getValue(operands[0]));
-                        Globals.memory.setWord(
+                        Memory.getInstance().setWord(
                             RegisterFile.getValue(operands[2]) + operands[1] + 4,
                             Coprocessor1.getValue(operands[0]+1));
                      } 
@@ -118,13 +118,13 @@ public class ExampleCustomLanguage extends CustomAssembly{
 
                      try
                         {
-                           ch = (char) Globals.memory.getByte(byteAddress);
+                           ch = (char) Memory.getInstance().getByte(byteAddress);
                                              // won't stop until NULL byte reached!
                            while (ch != 0)
                            {
                               SystemIO.printString(new Character(ch).toString());
                               byteAddress++;
-                              ch = (char) Globals.memory.getByte(byteAddress);
+                              ch = (char) Memory.getInstance().getByte(byteAddress);
                            }
                         } 
                            catch (AddressErrorException e)
@@ -130,7 +130,7 @@ public class MIPSPlusPlus extends CustomAssembly{
                      int upper = RegisterFile.getValue(operands[2]);
 
                      Random random = new Random();
-                     int roll = random.nextInt(upper - (lower + 1)) + lower;
+                     int roll = ReplayLog.replayInt(random.nextInt(upper - (lower + 1))) + lower;
                      RegisterFile.updateRegister(operands[0], result);
 
                      SystemIO.printString("Generating random number...");
@@ -136,7 +136,7 @@ public class MarioKart extends CustomAssembly{
 
                      // roll for a random number
                      Random random = new Random();
-                     int roll = random.nextInt(6);
+                     int roll = ReplayLog.replayInt(random.nextInt(6));
                      item = roll;
                      // SystemIO.printString("Random roll: " + roll + "\n");
 
@@ -65,7 +65,7 @@ public class McDonalds extends CustomAssembly{
                      int[] operands = statement.getOperands();
 
                      Random random = new Random();
-                     int tax = random.nextInt(10) + 1;
+                     int tax = ReplayLog.replayInt(random.nextInt(10)) + 1;
 
                      RegisterFile.updateRegister(operands[0], tax);
                      SystemIO.printString("Your tax for your meal is: $" + tax + "\n");
@@ -123,7 +123,7 @@ public class McDonalds extends CustomAssembly{
 
                      // roll for a random toy
                      Random random = new Random();
-                     int roll = random.nextInt(6);
+                     int roll = ReplayLog.replayInt(random.nextInt(6));
                      // SystemIO.printString("Random roll: " + roll + "\n");
 
                      RegisterFile.updateRegister(2, roll);
@@ -163,7 +163,7 @@ public class Tetris extends CustomAssembly {
                                 int[] operands = statement.getOperands();
                                 try
                                 {
-                                    Globals.memory.setWord(
+                                    Memory.getInstance().setWord(
                                             RegisterFile.getValue(operands[2]) + operands[1],
                                             RegisterFile.getValue(operands[0]));
                                 }
@@ -188,7 +188,7 @@ public class Tetris extends CustomAssembly {
                                 try
                                 {
                                     RegisterFile.updateRegister(operands[0],
-                                            Globals.memory.getWord(
+                                            Memory.getInstance().getWord(
                                                     RegisterFile.getValue(operands[2]) + operands[1]));
                                 }
                                 catch (AddressErrorException e)
@@ -472,7 +472,7 @@ public class Tetris extends CustomAssembly {
                                 int baseVal = RegisterFile.getValue(operands[0]);
 
                                 Random rand = new Random();
-                                int randVal = rand.nextInt(4) + 1; // Roll number from one to four
+                                int randVal = ReplayLog.replayInt(rand.nextInt(4)) + 1; // Roll number from one to four
 
                                 RegisterFile.updateRegister(operands[0], baseVal + randVal);
                             }
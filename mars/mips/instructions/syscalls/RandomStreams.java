@@ -1,5 +1,9 @@
    package mars.mips.instructions.syscalls;
+	import java.util.Collections;
 	import java.util.HashMap;
+	import java.util.Map;
+	import java.util.Random;
+	import mars.simulator.ReplayLog;
 
 /*
 Copyright (c) 2003-2008,  Pete Sanderson and Kenneth Vollmar
@@ -38,6 +42,59 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  
     public class RandomStreams {
       /** Collection of pseudorandom number streams available for use in Rand-type syscalls.
-       * The streams are by default not seeded. */
-		 static final HashMap randomStreams = new HashMap();
+       * The streams are by default not seeded.  Synchronized since programs in different
+       * SimulationContexts may run at the same time; they share the streams. */
+		 static final Map randomStreams = Collections.synchronizedMap(new HashMap());
+       
+      /** Returns the stream with the given index, creating a non-seeded one if there is none. */
+       static Random get(int index) {
+         synchronized (randomStreams) {
+            Integer key = Integer.valueOf(index);
+            Random stream = (Random) randomStreams.get(key);
+            if (stream == null) {
+               stream = new Random(); // create a non-seeded stream
+               randomStreams.put(key, stream);
+            }
+            return stream;
+         }
+      }
+   
+      /* The next values of a stream.  If the current SimulationContext is replaying its
+       * ReplayLog, each is the value it was when first drawn and the stream is not advanced. */
+   
+       static int nextInt(int index) {
+         Integer value = (Integer) ReplayLog.replay(Integer.class);
+         if (value == null) {
+            value = (Integer) ReplayLog.record(Integer.valueOf(get(index).nextInt()));
+         }
+         return value.intValue();
+      }
+   
+      /** @throws IllegalArgumentException if bound is not positive */
+       static int nextInt(int index, int bound) {
+         if (bound <= 0) {
+            return get(index).nextInt(bound);
+         }
+         Integer value = (Integer) ReplayLog.replay(Integer.class);
+         if (value == null) {
+            value = (Integer) ReplayLog.record(Integer.valueOf(get(index).nextInt(bound)));
+         }
+         return value.intValue();
+      }
+   
+       static float nextFloat(int index) {
+         Float value = (Float) ReplayLog.replay(Float.class);
+         if (value == null) {
+            value = (Float) ReplayLog.record(Float.valueOf(get(index).nextFloat()));
+         }
+         return value.floatValue();
+      }
+   
+       static double nextDouble(int index) {
+         Double value = (Double) ReplayLog.replay(Double.class);
+         if (value == null) {
+            value = (Double) ReplayLog.record(Double.valueOf(get(index).nextDouble()));
+         }
+         return value.doubleValue();
+      }
    }
\ No newline at end of file
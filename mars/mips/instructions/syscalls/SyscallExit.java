@@ -1,6 +1,7 @@
    package mars.mips.instructions.syscalls;
    import mars.util.*;
    import mars.*;
+   import mars.simulator.*;
 
 /*
 Copyright (c) 2003-2006,  Pete Sanderson and Kenneth Vollmar
@@ -49,6 +50,6 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    * Performs syscall function to exit the MIPS program.
    */
        public void simulate(ProgramStatement statement) throws ProcessingException {
-         throw new ProcessingException();  // empty exception list.
+         SimulationContext.current().requestExit();
       }
    }
\ No newline at end of file
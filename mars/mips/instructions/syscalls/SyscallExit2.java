@@ -2,6 +2,7 @@
    import mars.util.*;
    import mars.*;
    import mars.mips.hardware.*;
+   import mars.simulator.*;
 
 /*
 Copyright (c) 2003-2006,  Pete Sanderson and Kenneth Vollmar
@@ -52,9 +53,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    * return value is ignored.
    */
        public void simulate(ProgramStatement statement) throws ProcessingException {
-         if (Globals.getGui()==null) {
-            Globals.exitCode = RegisterFile.getValue(4);
+         if (Globals.getGui()==null || !SimulationContext.current().isDefault()) {
+            SimulationContext.current().setExitCode(RegisterFile.getValue(4));
          }
-         throw new ProcessingException(); // empty error list
+         SimulationContext.current().requestExit();
       }
    }
\ No newline at end of file
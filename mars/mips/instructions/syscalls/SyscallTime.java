@@ -2,6 +2,7 @@
    import mars.*;
    import mars.util.*;
 	import mars.mips.hardware.*;
+	import mars.simulator.ReplayLog;
 
 /*
 Copyright (c) 2003-2007,  Pete Sanderson and Kenneth Vollmar
@@ -51,7 +52,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 	* and $a1 (high order 32 bits).
    */
        public void simulate(ProgramStatement statement) throws ProcessingException {
-			long value = new java.util.Date().getTime();
+			Long logged = (Long) ReplayLog.replay(Long.class);
+			if (logged == null) {
+			   logged = (Long) ReplayLog.record(Long.valueOf(new java.util.Date().getTime()));
+			}
+			long value = logged.longValue();
          RegisterFile.updateRegister(4, Binary.lowOrderLongToInt(value)); // $a0 
 			RegisterFile.updateRegister(5, Binary.highOrderLongToInt(value)); // $a1
       }
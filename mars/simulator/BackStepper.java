@@ -58,15 +58,17 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	// memory/register value via GUI after assembling program but before running it.
       private static final int NOT_PC_VALUE = -1;
    	
+      // Bits of the flags recorded with each back step.
+      private static final int IN_DELAY_SLOT = 1;
+   	
       private boolean engaged;
       private BackstepStack backSteps;
    	
-   	// One can argue using java.util.Stack, given its clumsy implementation.
-   	// A homegrown linked implementation will be more streamlined, but
-   	// I anticipate that backstepping will only be used during timed
-   	// (currently max 30 instructions/second) or stepped execution, where
-   	// performance is not an issue.  Its Vector implementation may result
-   	// in quicker garbage collection than a pure linked list implementation.
+   	// Back-stepping is also enabled for runs at full speed, where every instruction
+   	// records at least one step, so recording must be cheap.  Steps are kept in a
+   	// circular stack of parallel primitive arrays (see BackstepStack below) rather than
+   	// as objects, and nothing is looked up when a step is recorded that is needed only
+   	// if it is undone.
    
        /**
    	  * Create a fresh BackStepper.  It is enabled, which means all
@@ -110,7 +112,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 */
    	// Added 25 June 2007
        public boolean inDelaySlot() {
-         return !empty() && backSteps.peek().inDelaySlot;
+         return !empty() && (backSteps.flags[backSteps.peek()] & IN_DELAY_SLOT) != 0;
       }
    	
       /**
@@ -123,53 +125,53 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	 // all store their result in register pairs which results in two store operations.  
    	 // Both must be undone transparently, so we need to detect that multiple steps happen
    	 // together and carry out all of them here.  
-   	 // Use a do-while loop based on the backstep's program statement reference.
+   	 // Use a do-while loop based on the backstep's program counter: the steps of one
+   	 // instruction execution are recorded together and share its address.
    	 
        public void backStep() {
          if (engaged && !backSteps.empty()) {
-            ProgramStatement statement = ((BackStep)backSteps.peek()).ps;
+            int statementPC = backSteps.pc[backSteps.peek()];
             engaged = false; // GOTTA DO THIS SO METHOD CALL IN SWITCH WILL NOT RESULT IN NEW ACTION ON STACK!
             do {
-               BackStep step = (BackStep) backSteps.pop();
-            /*
-            	System.out.println("backstep POP: action "+step.action+" pc "+mars.util.Binary.intToHexString(step.pc)+
-            	                   " source "+((step.ps==null)? "none":step.ps.getSource())+
-            							 " parm1 "+step.param1+" parm2 "+step.param2);
-            */
-               if (step.pc != NOT_PC_VALUE) {
-                  RegisterFile.setProgramCounter(step.pc);
+               int step = backSteps.pop();
+               int action = backSteps.action[step];
+               int pc = backSteps.pc[step];
+               int param1 = backSteps.param1[step];
+               int param2 = backSteps.param2[step];
+               if (pc != NOT_PC_VALUE) {
+                  RegisterFile.setProgramCounter(pc);
                }
                try {
-                  switch (step.action) {
+                  switch (action) {
                      case MEMORY_RESTORE_RAW_WORD : 
-                        Globals.memory.setRawWord(step.param1, step.param2);
+                        Memory.getInstance().setRawWord(param1, param2);
                         break;
                      case MEMORY_RESTORE_WORD : 
-                        Globals.memory.setWord(step.param1, step.param2);
+                        Memory.getInstance().setWord(param1, param2);
                         break;
                      case MEMORY_RESTORE_HALF :
-                        Globals.memory.setHalf(step.param1, step.param2);
+                        Memory.getInstance().setHalf(param1, param2);
                         break;
                      case MEMORY_RESTORE_BYTE :
-                        Globals.memory.setByte(step.param1, step.param2);
+                        Memory.getInstance().setByte(param1, param2);
                         break;
                      case REGISTER_RESTORE :
-                        RegisterFile.updateRegister(step.param1, step.param2);
+                        RegisterFile.updateRegister(param1, param2);
                         break;
                      case PC_RESTORE : 
-                        RegisterFile.setProgramCounter(step.param1);
+                        RegisterFile.setProgramCounter(param1);
                         break;
                      case COPROC0_REGISTER_RESTORE :
-                        Coprocessor0.updateRegister(step.param1, step.param2);
+                        Coprocessor0.updateRegister(param1, param2);
                         break;
                      case COPROC1_REGISTER_RESTORE :
-                        Coprocessor1.updateRegister(step.param1, step.param2);
+                        Coprocessor1.updateRegister(param1, param2);
                         break;
                      case COPROC1_CONDITION_CLEAR :
-                        Coprocessor1.clearConditionFlag(step.param1);
+                        Coprocessor1.clearConditionFlag(param1);
                         break;
                      case COPROC1_CONDITION_SET :
-                        Coprocessor1.setConditionFlag(step.param1);
+                        Coprocessor1.setConditionFlag(param1);
                         break;
                      case DO_NOTHING :
                         break;
@@ -180,7 +182,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                      System.out.println("Internal MARS error: address exception while back-stepping.");
                      System.exit(0);
                   }
-            } while (!backSteps.empty() && statement == ((BackStep)backSteps.peek()).ps);
+            } while (!backSteps.empty() && statementPC == backSteps.pc[backSteps.peek()]);
             engaged = true;  // RESET IT (was disabled at top of loop -- see comment)
          }
       }
@@ -324,52 +326,30 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	  * @return 0
    	  */
        public int addDoNothing(int pc) {
-         if (backSteps.empty() || backSteps.peek().pc != pc) { 
+         if (backSteps.empty() || backSteps.pc[backSteps.peek()] != pc) { 
             backSteps.push(DO_NOTHING, pc);
          }
          return 0;
       }
    	
    		   	 	
-   	// Represents a "back step" (undo action) on the stack.
-       private class BackStep {
-         private int action;  // what do do MEMORY_RESTORE_WORD, etc
-         private int pc;      // program counter value when original step occurred
-         private ProgramStatement ps;   // statement whose action is being "undone" here
-         private int param1;  // first parameter required by that action
-         private int param2;  // optional second parameter required by that action
-         private boolean inDelaySlot; // true if instruction executed in "delay slot" (delayed branching enabled)
-      
-         // it is critical that BackStep object get its values by calling this method
-      	// rather than assigning to individual members, because of the technique used
-      	// to set its ps member (and possibly pc).
-          private void assign(int act, int programCounter, int parm1, int parm2) {
-            action = act;
-            pc     = programCounter;
-            try {
-            // Client does not have direct access to program statement, and rather than making all
-            // of them go through the methods below to obtain it, we will do it here.  
-            // Want the program statement but do not want observers notified.
-               ps = Globals.memory.getStatementNoNotify(programCounter);
-            } 
-                catch (Exception e) {
-                // The only situation causing this so far: user modifies memory or register
-                // contents through direct manipulation on the GUI, after assembling the program but
-                // before starting to run it (or after backstepping all the way to the start).
-                // The action will not be associated with any instruction, but will be carried out
-                // when popped.
-                  ps = null;
-                  pc = NOT_PC_VALUE; // Backstep method above will see this as flag to not set PC
-               } 
-            param1 = parm1;
-            param2 = parm2;
-            inDelaySlot = Simulator.inDelaySlot(); // ADDED 25 June 2007
-         /*				
-            System.out.println("backstep PUSH: action "+action+" pc "+mars.util.Binary.intToHexString(pc)+
-         		                   " source "+((ps==null)? "none":ps.getSource())+
-         								 " parm1 "+param1+" parm2 "+param2);
-         */
+   	// Whether an instruction could have executed at the given address, so that the
+   	// step being recorded is associated with it.  If not, the step results from the user
+   	// modifying memory or register contents through direct manipulation on the GUI, after
+   	// assembling the program but before running it (or after backstepping all the way to
+   	// the start).  Such a step will not be associated with any instruction, but will be
+   	// carried out when popped.  Mirrors the checks of Memory.getStatementNoNotify().
+       private static boolean isInstructionAddress(int address) {
+         if (!Memory.wordAligned(address)) {
+            return false;
+         }
+         if (Memory.inTextSegment(address) || Memory.inKernelTextSegment(address)) {
+            return true;
          }
+         return Globals.getSettings().getBooleanSetting(Settings.SELF_MODIFYING_CODE_ENABLED)
+                && (Memory.inDataSegment(address) || Memory.inKernelDataSegment(address)
+                    || Memory.inMemoryMapSegment(address)
+                    || (address > Memory.stackLimitAddress && address <= Memory.stackBaseAddress));
       }
    	
    	// *****************************************************************************
@@ -378,31 +358,30 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	// newly-pushed item overwrites the oldest item, with circular top!  All operations 
    	// are constant time.  It's synchronized too, to be safe (is used by both the 
    	// simulation thread and the GUI thread for the back-step button).
-   	// Upon construction, it is filled with newly-created empty BackStep objects which
-   	// will exist for the life of the stack.  Push does not create a BackStep object 
-   	// but instead overwrites the contents of the existing one.  Thus during MIPS
-   	// program (simulated) execution, BackStep objects are never created or junked
-   	// regardless of how many steps are executed.  This will speed things up a bit
-   	// and make life easier for the garbage collector.
+   	// Each back step (undo action) is one index into parallel arrays holding its action
+   	// (MEMORY_RESTORE_WORD, etc), the program counter value when the original step
+   	// occurred (or NOT_PC_VALUE), the action's one or two parameters and its flags
+   	// (IN_DELAY_SLOT).  push() and pop() only store and return indexes, so no objects
+   	// are created or junked during MIPS program (simulated) execution.  The arrays
+   	// start small and double as needed up to the capacity, so a large capacity costs
+   	// memory only if a program runs long enough to use it.
    	
        private class BackstepStack {
+         private static final int INITIAL_LENGTH = 1024;
          private int capacity;
          private int size;
          private int top;
-         private BackStep[] stack;
+         private int[] action;
+         private int[] pc;
+         private int[] param1;
+         private int[] param2;
+         private byte[] flags;
       
-          // Stack is created upon successful assembly or reset.  The one-time overhead of
-      	 // creating all the BackStep objects will not be noticed by the user, and enhances
-      	 // runtime performance by not having to create or recycle them during MIPS
-      	 // program execution.
           private BackstepStack(int capacity) {
-            this.capacity = capacity;
+            this.capacity = Math.max(capacity, 1);
             this.size = 0;
             this.top = -1;
-            this.stack = new BackStep[capacity];
-            for (int i=0; i<capacity; i++) {
-               this.stack[i] = new BackStep();
-            }
+            allocate(Math.min(this.capacity, INITIAL_LENGTH));
          }
       	
           private synchronized boolean empty() {
@@ -410,20 +389,26 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          }
          
           private synchronized void push(int act, int programCounter, int parm1, int parm2) {
+            if (size == action.length && size < capacity) {
+               grow();
+            }
+            int length = action.length;
             if (size==0) {
                top=0;
                size++;
             } 
-            else if (size < capacity) {
-               top = (top + 1) % capacity;
+            else if (size < length) {
+               top = (top + 1) % length;
                size++;
             } 
             else { // size == capacity.  The top moves up one, replacing oldest entry (goodbye!)
-               top = (top + 1) % capacity;
+               top = (top + 1) % length;
             }
-         	// We'll re-use existing objects rather than create/discard each time.
-         	// Must use assign() method rather than series of assignment statements!
-            stack[top].assign(act, programCounter, parm1, parm2);
+            action[top] = act;
+            pc[top] = isInstructionAddress(programCounter) ? programCounter : NOT_PC_VALUE;
+            param1[top] = parm1;
+            param2[top] = parm2;
+            flags[top] = (byte) (Simulator.inDelaySlot() ? IN_DELAY_SLOT : 0); // ADDED 25 June 2007
          }
       	
           private synchronized void push(int act, int programCounter, int parm1) {
@@ -435,26 +420,51 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          }
          
       	// NO PROTECTION.  This class is used only within this file so there is no excuse
-      	// for trying to pop from empty stack.
-          private synchronized BackStep pop() {
-            BackStep bs;
-            bs = stack[top];
+      	// for trying to pop from empty stack.  Returns the index of the popped step, whose
+      	// values remain valid until the next push.
+          private synchronized int pop() {
+            int index = top;
             if (size==1) {
                top = -1;
             } 
             else {
-               top = (top + capacity - 1) % capacity;
+               top = (top + action.length - 1) % action.length;
             }
             size--;
-            return bs;
+            return index;
          }
       
       	// NO PROTECTION.  This class is used only within this file so there is no excuse
-      	// for trying to peek from empty stack.         
-          private synchronized BackStep peek() {
-            return stack[top];
+      	// for trying to peek from empty stack.  Returns the index of the top step.
+          private synchronized int peek() {
+            return top;
+         }
+      	
+          private void allocate(int length) {
+            action = new int[length];
+            pc = new int[length];
+            param1 = new int[length];
+            param2 = new int[length];
+            flags = new byte[length];
+         }
+      	
+         // Called only when full, so the steps are in order from top+1 (oldest) around to top.
+          private void grow() {
+            int[] oldAction = action, oldPC = pc, oldParam1 = param1, oldParam2 = param2;
+            byte[] oldFlags = flags;
+            int oldLength = action.length;
+            allocate((int) Math.min((long) capacity, 2L * oldLength));
+            int oldest = (top + 1) % oldLength;
+            for (int i=0; i<size; i++) {
+               int from = (oldest + i) % oldLength;
+               action[i] = oldAction[from];
+               pc[i] = oldPC[from];
+               param1[i] = oldParam1[from];
+               param2[i] = oldParam2[from];
+               flags[i] = oldFlags[from];
+            }
+            top = size - 1;
          }
-      			
       }
    
    }
\ No newline at end of file
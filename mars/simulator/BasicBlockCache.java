@@ -0,0 +1,212 @@
+   package mars.simulator;
+   import mars.*;
+   import mars.mips.hardware.*;
+   import mars.mips.instructions.*;
+
+	/*
+Copyright (c) 2003-2014,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Optional execution tier for hot straight-line code.  Each time the headless
+ * simulation loop is about to execute the instruction at some address, it asks
+ * this cache for a block starting there.  After an address has been entered
+ * HOT_THRESHOLD times, the run of instructions starting at it is compiled into a
+ * Block: pre-linked arrays of statements and their SimulationCode, which are then
+ * executed back-to-back without going through fetch, decode or the per-step
+ * bookkeeping of the main loop.
+ * <p>
+ * A block ends after a branch or jump format instruction, before a syscall (which is
+ * always left to the main loop), at a word the InstructionCache cannot serve, or at
+ * MAX_BLOCK_LENGTH instructions.  Since instructions such as jr can also transfer
+ * control, the block checks the program counter after every instruction and leaves
+ * as soon as it is not the next sequential address.  Runtime exceptions propagate
+ * out of execute() as usual, with the program counter exactly as the main loop
+ * would have left it.
+ * <p>
+ * Blocks are built from the InstructionCache and are all discarded whenever the
+ * InstructionCache reports a modification.  The simulator does not use this tier
+ * when self-modifying code, delayed branching or back-stepping are enabled, or when
+ * there are memory observers, since those need to see every instruction fetch.
+ *
+ * @version October 2026
+ **/
+
+    public class BasicBlockCache {
+      /** Number of times an address must be entered before its block is compiled. **/
+      public static final int HOT_THRESHOLD = 50;
+      /** Upper limit on instructions in one block. **/
+      public static final int MAX_BLOCK_LENGTH = 64;
+
+      private InstructionCache instructions;
+      private int modifications;
+      private Block[] blocks;
+      private int[] entryCounts;
+
+
+   /**
+    * Create an empty block cache over the given instruction cache.
+    * @param instructions the pre-decoded text segment that blocks are built from
+    **/
+       public BasicBlockCache(InstructionCache instructions) {
+         this.instructions = instructions;
+         flush();
+      }
+
+
+   /**
+    * Returns the compiled block starting at the given address, counting the entry
+    * and compiling the block if the address has just become hot.
+    * @param address address of the next instruction to execute
+    * @return the Block, or null if there is none (yet) and the instruction should be interpreted.
+    **/
+       public Block getBlock(int address) {
+         if (modifications != instructions.getModificationCount()) {
+            flush();
+         }
+         int index = (address - instructions.getBaseAddress()) >> 2;
+         if ((address & 3) != 0 || index < 0 || index >= blocks.length) {
+            return null;
+         }
+         Block block = blocks[index];
+         if (block == null && ++entryCounts[index] == HOT_THRESHOLD) {
+            block = compile(address);
+            blocks[index] = block;
+         }
+         return block;
+      }
+
+
+   /**
+    * Discard all compiled blocks and entry counts.
+    **/
+       public void flush() {
+         modifications = instructions.getModificationCount();
+         blocks = new Block[instructions.size()];
+         entryCounts = new int[instructions.size()];
+      }
+
+
+       // Gather the run of cached instructions starting at the given address.  Returns
+       // null if not even one instruction qualifies.
+       private Block compile(int address) {
+         ProgramStatement[] statements = new ProgramStatement[MAX_BLOCK_LENGTH];
+         SimulationCode[] codes = new SimulationCode[MAX_BLOCK_LENGTH];
+         int length = 0;
+         while (length < MAX_BLOCK_LENGTH) {
+            int instructionAddress = address + (length << 2);
+            ProgramStatement statement = instructions.getStatement(instructionAddress);
+            SimulationCode code = instructions.getSimulationCode(instructionAddress);
+            if (statement == null || code == null || isSyscall(statement)) {
+               break;
+            }
+            statements[length] = statement;
+            codes[length] = code;
+            length++;
+            if (endsBlock(statement)) {
+               break;
+            }
+         }
+         return (length == 0) ? null : new Block(address, length, statements, codes);
+      }
+
+
+       private static boolean isSyscall(ProgramStatement statement) {
+         return statement.getInstruction().getName().equals("syscall");
+      }
+
+
+       private static boolean endsBlock(ProgramStatement statement) {
+         BasicInstructionFormat format = ((BasicInstruction) statement.getInstruction()).getInstructionFormat();
+         return format == BasicInstructionFormat.I_BRANCH_FORMAT || format == BasicInstructionFormat.J_FORMAT;
+      }
+
+
+   /**
+    * A compiled run of straight-line instructions.
+    **/
+       public static class Block {
+         private int entryAddress;
+         private int length;
+         private ProgramStatement[] statements;
+         private SimulationCode[] codes;
+         private int executed;
+
+          private Block(int entryAddress, int length, ProgramStatement[] statements, SimulationCode[] codes) {
+            this.entryAddress = entryAddress;
+            this.length = length;
+            this.statements = new ProgramStatement[length];
+            this.codes = new SimulationCode[length];
+            System.arraycopy(statements, 0, this.statements, 0, length);
+            System.arraycopy(codes, 0, this.codes, 0, length);
+         }
+
+      /**
+       * Execute the block from its entry, which must be the current program counter.
+       * Stops early if an instruction transfers control elsewhere.
+       * @throws ProcessingException from the instruction that raised it; the program counter
+       * and the count returned by getExecutedCount() then include that instruction.
+       **/
+          public void execute() throws ProcessingException {
+            int next = entryAddress;
+            executed = 0;
+            while (executed < length) {
+               next += Instruction.INSTRUCTION_LENGTH;
+               RegisterFile.incrementPC();
+               executed++;
+               codes[executed-1].simulate(statements[executed-1]);
+               if (RegisterFile.getProgramCounter() != next) {
+                  return;
+               }
+            }
+         }
+
+      /**
+       * Number of instructions started by the latest execute(), including one that threw.
+       * @return instruction count
+       **/
+          public int getExecutedCount() {
+            return executed;
+         }
+
+      /**
+       * Address of the last instruction started by the latest execute().
+       * @return instruction address
+       **/
+          public int getLastExecutedAddress() {
+            return entryAddress + ((executed - 1) << 2);
+         }
+
+      /**
+       * Number of instructions in the block.
+       * @return block length
+       **/
+          public int size() {
+            return length;
+         }
+      }
+   }
@@ -0,0 +1,395 @@
+   package mars.simulator;
+   import java.util.*;
+
+	/*
+Copyright (c) 2003-2014,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Branch predictor model, evaluated by a BranchPredictorSweep on the conditional branches
+ * a program executes.  For each branch, resolve() makes the prediction the hardware would
+ * have made when fetching the branch, then learns the actual outcome.  Tables are primitive
+ * arrays indexed by low bits of the branch's word address, so resolving a branch is a few
+ * array operations.
+ * <p>
+ * The nested classes are the classic predictors: static, bimodal branch history tables of
+ * 1- or 2-bit counters, gshare, local history, a tournament of the last two, and a branch
+ * target buffer.  parse() creates one from a short specification.
+ *
+ * @version October 2026
+ **/
+
+    public abstract class BranchPredictor {
+   
+   /**
+    * Predict a branch, then learn its outcome.
+    * @param address address of the branch instruction
+    * @param taken whether the branch was taken
+    * @param target the branch target address
+    * @return true if the prediction was correct
+    **/
+       public abstract boolean resolve(int address, boolean taken, int target);
+   
+   
+   /**
+    * Return the predictor to its initial state.
+    **/
+       public abstract void reset();
+   
+   
+   /**
+    * Description of the predictor and its configuration, for reports.
+    * @return name, e.g. "gshare, 12 history bits"
+    **/
+       public abstract String getName();
+   
+   
+   /**
+    * Create a predictor from a specification: <code>taken</code>, <code>nottaken</code>,
+    * <code>bht1[:entries]</code>, <code>bht2[:entries]</code>, <code>gshare[:historyBits]</code>,
+    * <code>local[:entries[:historyBits]]</code>, <code>tournament[:historyBits]</code> or
+    * <code>btb[:entries]</code>.  Table sizes are powers of two.
+    * @param specification the specification, not case sensitive
+    * @return the predictor
+    * @throws IllegalArgumentException if the specification is not valid
+    **/
+       public static BranchPredictor parse(String specification) {
+         String[] fields = specification.trim().toLowerCase().split(":");
+         int[] values = new int[fields.length - 1];
+         for (int i=0; i<values.length; i++) {
+            try {
+               values[i] = Integer.parseInt(fields[i+1]);
+            }
+                catch (NumberFormatException nfe) {
+                  throw new IllegalArgumentException("Invalid number in branch predictor "+specification);
+               }
+         }
+         String kind = fields[0];
+         int maximumValues = (kind.equals("taken") || kind.equals("nottaken")) ? 0 : (kind.equals("local")) ? 2 : 1;
+         if (values.length > maximumValues) {
+            throw new IllegalArgumentException("Too many values in branch predictor "+specification);
+         }
+         if (kind.equals("taken") || kind.equals("nottaken")) {
+            return new Static(kind.equals("taken"));
+         }
+         if (kind.equals("bht1") || kind.equals("bht2")) {
+            return new BranchHistoryTable(value(values, 0, 1024), kind.equals("bht1") ? 1 : 2);
+         }
+         if (kind.equals("gshare")) {
+            return new Gshare(value(values, 0, 12));
+         }
+         if (kind.equals("local")) {
+            return new LocalHistory(value(values, 0, 1024), value(values, 1, 10));
+         }
+         if (kind.equals("tournament")) {
+            return new Tournament(value(values, 0, 12));
+         }
+         if (kind.equals("btb")) {
+            return new TargetBuffer(value(values, 0, 512));
+         }
+         throw new IllegalArgumentException("Unknown branch predictor "+specification);
+      }
+   
+   
+   /**
+    * One predictor of each kind, with default sizes.
+    * @return the predictors
+    **/
+       public static BranchPredictor[] all() {
+         String[] kinds = {"taken", "nottaken", "bht1", "bht2", "gshare", "local", "tournament", "btb"};
+         BranchPredictor[] predictors = new BranchPredictor[kinds.length];
+         for (int i=0; i<kinds.length; i++) {
+            predictors[i] = parse(kinds[i]);
+         }
+         return predictors;
+      }
+   
+   
+       private static int value(int[] values, int index, int defaultValue) {
+         return (index < values.length) ? values[index] : defaultValue;
+      }
+   
+   
+       // Table index of a branch address: low bits of its word address.
+       static int index(int address, int mask) {
+         return (address >>> 2) & mask;
+      }
+   
+   
+       // Move a saturating counter towards taken or not taken.
+       static void train(byte[] counters, int index, boolean taken, int maximum) {
+         if (taken) {
+            if (counters[index] < maximum) {
+               counters[index]++;
+            }
+         }
+         else if (counters[index] > 0) {
+            counters[index]--;
+         }
+      }
+   
+   
+       static int checkedSize(int size, String what) {
+         if (size <= 0 || (size & (size - 1)) != 0) {
+            throw new IllegalArgumentException("Branch predictor "+what+" must be a power of two: "+size);
+         }
+         return size;
+      }
+   
+   
+       static int checkedBits(int bits) {
+         if (bits < 1 || bits > 24) {
+            throw new IllegalArgumentException("Branch history must be 1 to 24 bits: "+bits);
+         }
+         return bits;
+      }
+   
+   
+   /**
+    * Always predicts the same outcome.
+    **/
+       public static class Static extends BranchPredictor {
+         private boolean taken;
+      
+          public Static(boolean taken) {
+            this.taken = taken;
+         }
+      
+          public boolean resolve(int address, boolean taken, int target) {
+            return taken == this.taken;
+         }
+      
+          public void reset() {
+         }
+      
+          public String getName() {
+            return (taken) ? "always taken" : "never taken";
+         }
+      }
+   
+   
+   /**
+    * Bimodal branch history table: one saturating counter of 1 or 2 bits per entry,
+    * indexed by the branch address.  Counters start at not taken (weakly, for 2 bits).
+    **/
+       public static class BranchHistoryTable extends BranchPredictor {
+         private byte[] counters;
+         private int bits;
+         private int mask;
+      
+          public BranchHistoryTable(int entries, int bits) {
+            if (bits != 1 && bits != 2) {
+               throw new IllegalArgumentException("Branch history table counters have 1 or 2 bits: "+bits);
+            }
+            this.counters = new byte[checkedSize(entries, "entries")];
+            this.bits = bits;
+            this.mask = entries - 1;
+            reset();
+         }
+      
+          public boolean resolve(int address, boolean taken, int target) {
+            int i = index(address, mask);
+            boolean predicted = counters[i] >= bits;
+            train(counters, i, taken, (1 << bits) - 1);
+            return predicted == taken;
+         }
+      
+          public void reset() {
+            Arrays.fill(counters, (byte) (bits - 1));
+         }
+      
+          public String getName() {
+            return bits+"-bit BHT, "+counters.length+" entries";
+         }
+      }
+   
+   
+   /**
+    * Gshare: 2-bit counters indexed by the branch address exclusive-or the global history
+    * of recent branch outcomes.
+    **/
+       public static class Gshare extends BranchPredictor {
+         private byte[] counters;
+         private int historyBits;
+         private int mask;
+         private int history;
+      
+          public Gshare(int historyBits) {
+            this.historyBits = checkedBits(historyBits);
+            this.counters = new byte[1 << historyBits];
+            this.mask = counters.length - 1;
+            reset();
+         }
+      
+          public boolean resolve(int address, boolean taken, int target) {
+            int i = index(address, mask) ^ history;
+            boolean predicted = counters[i] >= 2;
+            train(counters, i, taken, 3);
+            history = ((history << 1) | ((taken) ? 1 : 0)) & mask;
+            return predicted == taken;
+         }
+      
+          public void reset() {
+            Arrays.fill(counters, (byte) 1);
+            history = 0;
+         }
+      
+          public String getName() {
+            return "gshare, "+historyBits+" history bits";
+         }
+      }
+   
+   
+   /**
+    * Local history: a table, indexed by the branch address, of each branch's recent outcomes,
+    * which index a table of 2-bit counters.
+    **/
+       public static class LocalHistory extends BranchPredictor {
+         private int[] histories;
+         private byte[] counters;
+         private int historyBits;
+         private int mask;
+         private int historyMask;
+      
+          public LocalHistory(int entries, int historyBits) {
+            this.histories = new int[checkedSize(entries, "entries")];
+            this.historyBits = checkedBits(historyBits);
+            this.counters = new byte[1 << historyBits];
+            this.mask = entries - 1;
+            this.historyMask = counters.length - 1;
+            reset();
+         }
+      
+          public boolean resolve(int address, boolean taken, int target) {
+            int entry = index(address, mask);
+            int history = histories[entry];
+            boolean predicted = counters[history] >= 2;
+            train(counters, history, taken, 3);
+            histories[entry] = ((history << 1) | ((taken) ? 1 : 0)) & historyMask;
+            return predicted == taken;
+         }
+      
+          public void reset() {
+            Arrays.fill(histories, 0);
+            Arrays.fill(counters, (byte) 1);
+         }
+      
+          public String getName() {
+            return "local, "+histories.length+" entries, "+historyBits+" history bits";
+         }
+      }
+   
+   
+   /**
+    * Tournament: a local history and a gshare predictor, with 2-bit counters indexed by the
+    * global history choosing between them.  Each chooser counter moves towards the predictor
+    * that was right when only one of them was.
+    **/
+       public static class Tournament extends BranchPredictor {
+         private LocalHistory local;
+         private Gshare global;
+         private byte[] choosers;
+      
+          public Tournament(int historyBits) {
+            this.local = new LocalHistory(1024, 10);
+            this.global = new Gshare(historyBits);
+            this.choosers = new byte[1 << historyBits];
+            reset();
+         }
+      
+          public boolean resolve(int address, boolean taken, int target) {
+            int i = global.history;
+            boolean localCorrect = local.resolve(address, taken, target);
+            boolean globalCorrect = global.resolve(address, taken, target);
+            boolean correct = (choosers[i] >= 2) ? globalCorrect : localCorrect;
+            if (localCorrect != globalCorrect) {
+               train(choosers, i, globalCorrect, 3);
+            }
+            return correct;
+         }
+      
+          public void reset() {
+            local.reset();
+            global.reset();
+            Arrays.fill(choosers, (byte) 2);
+         }
+      
+          public String getName() {
+            return "tournament, "+global.historyBits+" history bits";
+         }
+      }
+   
+   
+   /**
+    * Branch target buffer: a direct-mapped table of branch addresses with their targets and
+    * 2-bit counters.  A branch is predicted taken, to the remembered target, only if it is in
+    * the buffer and its counter says taken; a taken branch not in the buffer is entered.
+    **/
+       public static class TargetBuffer extends BranchPredictor {
+         private int[] addresses;
+         private int[] targets;
+         private byte[] counters;
+         private boolean[] valid;
+         private int mask;
+      
+          public TargetBuffer(int entries) {
+            this.addresses = new int[checkedSize(entries, "entries")];
+            this.targets = new int[entries];
+            this.counters = new byte[entries];
+            this.valid = new boolean[entries];
+            this.mask = entries - 1;
+            reset();
+         }
+      
+          public boolean resolve(int address, boolean taken, int target) {
+            int i = index(address, mask);
+            boolean hit = valid[i] && addresses[i] == address;
+            boolean correct = (hit && counters[i] >= 2) ? taken && targets[i] == target : !taken;
+            if (hit) {
+               train(counters, i, taken, 3);
+               if (taken) {
+                  targets[i] = target;
+               }
+            }
+            else if (taken) {
+               valid[i] = true;
+               addresses[i] = address;
+               targets[i] = target;
+               counters[i] = 2;
+            }
+            return correct;
+         }
+      
+          public void reset() {
+            Arrays.fill(valid, false);
+         }
+      
+          public String getName() {
+            return "BTB, "+addresses.length+" entries";
+         }
+      }
+   }
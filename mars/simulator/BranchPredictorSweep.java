@@ -0,0 +1,273 @@
+   package mars.simulator;
+   import java.io.*;
+   import java.util.*;
+
+	/*
+Copyright (c) 2003-2014,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Evaluates several branch predictors at once on the conditional branches of one run.
+ * The simulator gives it each branch with its outcome (see TimedInstruction), and every
+ * predictor resolves it; mispredictions are counted per predictor and per branch site.
+ * Sites are kept in primitive arrays found through an open-addressing table, so a branch
+ * costs one probe plus the predictors' own work, and no notices or objects are created.
+ * <p>
+ * A sweep is attached to a SimulationContext with setBranchPredictors().  As with tracing,
+ * blocks and instruction fusion are not used while it is.  writeReport() gives the
+ * mispredict rate of each predictor and of each branch site, mapped to its source line.
+ *
+ * @version October 2026
+ **/
+
+    public class BranchPredictorSweep {
+      private BranchPredictor[] predictors = new BranchPredictor[0];
+      private long branches;
+      private long taken;
+      private long[] mispredicts = new long[0];
+      // Open-addressing table: branch address -> site number + 1, 0 for an empty slot.
+      private int[] slotAddresses = new int[1024];
+      private int[] slotSites = new int[1024];
+      private int siteCount;
+      private int[] siteAddresses = new int[64];
+      // Per site: executions, times taken, then mispredictions of each predictor.
+      private long[] siteCounts = new long[0];
+   
+   
+   /**
+    * Add a predictor.  Predictors are added before the run.
+    * @param predictor the predictor
+    **/
+       public void add(BranchPredictor predictor) {
+         if (branches > 0) {
+            throw new IllegalStateException("Predictors must be added before any branch");
+         }
+         BranchPredictor[] larger = new BranchPredictor[predictors.length + 1];
+         System.arraycopy(predictors, 0, larger, 0, predictors.length);
+         larger[predictors.length] = predictor;
+         predictors = larger;
+         reset();
+      }
+   
+   
+   /**
+    * Add predictors given by a comma-separated list of specifications (see
+    * BranchPredictor.parse()), or one of each kind for <code>all</code>.
+    * @param specifications the specifications
+    * @return number of predictors added
+    * @throws IllegalArgumentException if a specification is not valid
+    **/
+       public int add(String specifications) {
+         StringTokenizer tokens = new StringTokenizer(specifications, ",");
+         ArrayList added = new ArrayList();
+         while (tokens.hasMoreTokens()) {
+            String specification = tokens.nextToken().trim();
+            if (specification.equalsIgnoreCase("all")) {
+               added.addAll(Arrays.asList(BranchPredictor.all()));
+            }
+            else {
+               added.add(BranchPredictor.parse(specification));
+            }
+         }
+         for (int i=0; i<added.size(); i++) {
+            add((BranchPredictor) added.get(i));
+         }
+         return added.size();
+      }
+   
+   
+   /**
+    * Number of predictors.
+    * @return predictor count
+    **/
+       public int size() {
+         return predictors.length;
+      }
+   
+   
+   /**
+    * Called for each conditional branch executed.
+    * @param address address of the branch instruction
+    * @param taken whether it was taken
+    * @param target its target address
+    **/
+       public void branch(int address, boolean taken, int target) {
+         int base = site(address) * (predictors.length + 2);
+         branches++;
+         siteCounts[base]++;
+         if (taken) {
+            this.taken++;
+            siteCounts[base + 1]++;
+         }
+         for (int i=0; i<predictors.length; i++) {
+            if (!predictors[i].resolve(address, taken, target)) {
+               mispredicts[i]++;
+               siteCounts[base + 2 + i]++;
+            }
+         }
+      }
+   
+   
+   /**
+    * Return all predictors to their initial state and forget all counts.
+    **/
+       public void reset() {
+         for (int i=0; i<predictors.length; i++) {
+            predictors[i].reset();
+         }
+         branches = 0;
+         taken = 0;
+         mispredicts = new long[predictors.length];
+         Arrays.fill(slotSites, 0);
+         siteCount = 0;
+         siteCounts = new long[siteAddresses.length * (predictors.length + 2)];
+      }
+   
+   
+   /**
+    * Number of conditional branches executed.
+    * @return branch count
+    **/
+       public long getBranchCount() {
+         return branches;
+      }
+   
+   
+   /**
+    * Number of branches a predictor got wrong.
+    * @param predictor index of the predictor, in order of addition
+    * @return mispredict count
+    **/
+       public long getMispredictCount(int predictor) {
+         return mispredicts[predictor];
+      }
+   
+   
+   /**
+    * Print the mispredict rate of each predictor, then of each of the most executed branch
+    * sites with its source line.
+    * @param out destination
+    * @param top maximum number of sites to print
+    **/
+       public void writeReport(PrintStream out, int top) {
+         out.println(branches+" conditional branches at "+siteCount+" sites, "+percent(taken, branches)+" taken");
+         out.println();
+         out.println("       mispredicts     rate  predictor");
+         for (int i=0; i<predictors.length; i++) {
+            out.println("  P"+(i+1)+pad(Long.toString(mispredicts[i]), 14)+pad(percent(mispredicts[i], branches), 9)
+                        +"  "+predictors[i].getName());
+         }
+         if (siteCount == 0) {
+            return;
+         }
+         Integer[] order = new Integer[siteCount];
+         for (int i=0; i<siteCount; i++) {
+            order[i] = Integer.valueOf(i);
+         }
+         final int stride = predictors.length + 2;
+         Arrays.sort(order,
+               new Comparator() {
+                  public int compare(Object a, Object b) {
+                     long difference = siteCounts[((Integer) b).intValue() * stride] - siteCounts[((Integer) a).intValue() * stride];
+                     return (difference > 0) ? 1 : (difference < 0) ? -1 : 0;
+                  }
+               });
+         StringBuffer heading = new StringBuffer("      executed    taken");
+         for (int i=0; i<predictors.length; i++) {
+            heading.append(pad("P"+(i+1), 8));
+         }
+         out.println();
+         out.println(heading.append("  source line"));
+         for (int i=0; i<siteCount && i<top; i++) {
+            int site = order[i].intValue();
+            int base = site * stride;
+            StringBuffer line = new StringBuffer(pad(Long.toString(siteCounts[base]), 14));
+            line.append(pad(percent(siteCounts[base + 1], siteCounts[base]), 9));
+            for (int p=0; p<predictors.length; p++) {
+               line.append(pad(percent(siteCounts[base + 2 + p], siteCounts[base]), 8));
+            }
+            out.println(line.append("  ").append(Profiler.sourceLine(siteAddresses[site])));
+         }
+      }
+   
+   
+       // Site number of a branch address, adding the site if it is new.
+       private int site(int address) {
+         int mask = slotAddresses.length - 1;
+         int slot = (address >>> 2) & mask;
+         while (slotSites[slot] != 0) {
+            if (slotAddresses[slot] == address) {
+               return slotSites[slot] - 1;
+            }
+            slot = (slot + 1) & mask;
+         }
+         if (siteCount == siteAddresses.length) {
+            int[] addresses = new int[2 * siteCount];
+            System.arraycopy(siteAddresses, 0, addresses, 0, siteCount);
+            siteAddresses = addresses;
+            long[] counts = new long[addresses.length * (predictors.length + 2)];
+            System.arraycopy(siteCounts, 0, counts, 0, siteCounts.length);
+            siteCounts = counts;
+         }
+         siteAddresses[siteCount] = address;
+         slotAddresses[slot] = address;
+         slotSites[slot] = ++siteCount;
+         if (2 * siteCount > slotAddresses.length) {
+            rehash();
+         }
+         return siteCount - 1;
+      }
+   
+   
+       private void rehash() {
+         slotAddresses = new int[2 * slotAddresses.length];
+         slotSites = new int[slotAddresses.length];
+         int mask = slotAddresses.length - 1;
+         for (int site=0; site<siteCount; site++) {
+            int slot = (siteAddresses[site] >>> 2) & mask;
+            while (slotSites[slot] != 0) {
+               slot = (slot + 1) & mask;
+            }
+            slotAddresses[slot] = siteAddresses[site];
+            slotSites[slot] = site + 1;
+         }
+      }
+   
+   
+       private static String percent(long count, long total) {
+         return (total == 0) ? "-" : new java.text.DecimalFormat("0.0").format(100.0 * count / total)+"%";
+      }
+   
+   
+       private static String pad(String text, int width) {
+         StringBuffer padded = new StringBuffer();
+         for (int i=text.length(); i<width; i++) {
+            padded.append(' ');
+         }
+         return padded.append(text).toString();
+      }
+   }
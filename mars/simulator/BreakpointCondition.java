@@ -0,0 +1,190 @@
+   package mars.simulator;
+   import mars.*;
+   import mars.util.*;
+   import mars.mips.hardware.*;
+   import java.util.*;
+
+	/*
+Copyright (c) 2003-2014,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Predicate attached to a conditional breakpoint or watch in a BreakpointTable.  It
+ * compares either a general purpose register or a memory word with a constant, and
+ * is evaluated only when execution reaches the address it is attached to.
+ *
+ * @version October 2026
+ **/
+
+    public class BreakpointCondition {
+      public static final int EQUAL = 0;
+      public static final int NOT_EQUAL = 1;
+      public static final int LESS = 2;
+      public static final int LESS_OR_EQUAL = 3;
+      public static final int GREATER = 4;
+      public static final int GREATER_OR_EQUAL = 5;
+      // Match the above by position.
+      private static final String[] comparisonSymbols = { "==", "!=", "<", "<=", ">", ">=" };
+
+      private static final int REGISTER = 0;
+      private static final int MEMORY_WORD = 1;
+
+      private int source;
+      private int location;
+      private int comparison;
+      private int value;
+
+
+       private BreakpointCondition(int source, int location, int comparison, int value) {
+         if (comparison < EQUAL || comparison > GREATER_OR_EQUAL) {
+            throw new IllegalArgumentException("Invalid comparison: "+comparison);
+         }
+         this.source = source;
+         this.location = location;
+         this.comparison = comparison;
+         this.value = value;
+      }
+
+
+   /**
+    * Condition on the contents of a general purpose register.
+    * @param register register number, 0-31
+    * @param comparison one of the comparison constants, e.g. EQUAL
+    * @param value constant the register is compared with (signed)
+    * @return the condition
+    **/
+       public static BreakpointCondition register(int register, int comparison, int value) {
+         if (register < 0 || register > 31) {
+            throw new IllegalArgumentException("Invalid register number: "+register);
+         }
+         return new BreakpointCondition(REGISTER, register, comparison, value);
+      }
+
+
+   /**
+    * Condition on the contents of a memory word.
+    * @param address word-aligned memory address
+    * @param comparison one of the comparison constants, e.g. EQUAL
+    * @param value constant the word is compared with (signed)
+    * @return the condition
+    **/
+       public static BreakpointCondition memoryWord(int address, int comparison, int value) {
+         if (!Memory.wordAligned(address)) {
+            throw new IllegalArgumentException("Unaligned address: "+Binary.intToHexString(address));
+         }
+         return new BreakpointCondition(MEMORY_WORD, address, comparison, value);
+      }
+
+
+   /**
+    * Parse a condition of the form <code>operand comparison value</code>, for instance
+    * <code>$t0 == 5</code> or <code>[0x10010000] &gt;= -1</code>.  The operand is a register
+    * name or number with or without the $, or a memory address in square brackets.
+    * Tokens must be separated by spaces.
+    * @param condition the condition text
+    * @return the condition
+    * @throws IllegalArgumentException if the text is not a valid condition
+    **/
+       public static BreakpointCondition parse(String condition) {
+         StringTokenizer tokens = new StringTokenizer(condition);
+         if (tokens.countTokens() != 3) {
+            throw new IllegalArgumentException("Condition must be <operand> <comparison> <value>: "+condition);
+         }
+         String operand = tokens.nextToken();
+         String symbol = tokens.nextToken();
+         int value;
+         try {
+            value = Binary.stringToInt(tokens.nextToken());
+         }
+             catch (NumberFormatException nfe) {
+               throw new IllegalArgumentException("Invalid value in condition: "+condition);
+            }
+         int comparison = -1;
+         for (int i=0; i<comparisonSymbols.length; i++) {
+            if (comparisonSymbols[i].equals(symbol)) {
+               comparison = i;
+            }
+         }
+         if (comparison < 0) {
+            throw new IllegalArgumentException("Invalid comparison in condition: "+condition);
+         }
+         if (operand.startsWith("[") && operand.endsWith("]")) {
+            try {
+               return memoryWord(Binary.stringToInt(operand.substring(1, operand.length()-1)), comparison, value);
+            }
+                catch (NumberFormatException nfe) {
+                  throw new IllegalArgumentException("Invalid address in condition: "+condition);
+               }
+         }
+         Register register = RegisterFile.getUserRegister(operand.startsWith("$") ? operand : "$"+operand);
+         if (register == null) {
+            throw new IllegalArgumentException("Invalid register in condition: "+condition);
+         }
+         return register(register.getNumber(), comparison, value);
+      }
+
+
+   /**
+    * Evaluate the condition against the current machine state.  A memory word that
+    * cannot be read makes the condition false.
+    * @return true if the condition holds
+    **/
+       public boolean isSatisfied() {
+         int actual;
+         if (source == REGISTER) {
+            actual = RegisterFile.getValue(location);
+         }
+         else {
+            try {
+               actual = Memory.getInstance().getWordNoNotify(location);
+            }
+                catch (AddressErrorException aee) {
+                  return false;
+               }
+         }
+         switch (comparison) {
+            case EQUAL :
+               return actual == value;
+            case NOT_EQUAL :
+               return actual != value;
+            case LESS :
+               return actual < value;
+            case LESS_OR_EQUAL :
+               return actual <= value;
+            case GREATER :
+               return actual > value;
+            default :
+               return actual >= value;
+         }
+      }
+
+
+       public String toString() {
+         String operand = (source == REGISTER) ? "$"+location : "["+Binary.intToHexString(location)+"]";
+         return operand+" "+comparisonSymbols[comparison]+" "+value;
+      }
+   }
@@ -0,0 +1,271 @@
+   package mars.simulator;
+   import mars.*;
+   import mars.mips.hardware.*;
+   import java.util.*;
+
+	/*
+Copyright (c) 2003-2014,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Per-instruction-word table of the places where simulation should stop.  Each word
+ * has a byte of flags combining:
+ * <ul>
+ * <li>BREAKPOINT: stop before executing the instruction, if its BreakpointCondition (if any) holds.
+ * <li>WATCH: stop before executing the instruction when its BreakpointCondition becomes true,
+ * i.e. it holds now but did not on the previous visit.
+ * <li>STEP_MARKER: stop before executing the instruction once; the marker is then removed.
+ * </ul>
+ * The simulator calls shouldStop() with the address of every instruction it is about to
+ * execute, so the common case (no flags for that word) is an array load or two regardless
+ * of how many addresses have flags.  Conditions are evaluated only for flagged words.
+ * Flags are kept in pages of PAGE_WORDS words, allocated only for pages that have a flag.
+ * <p>
+ * As with the breakpoint array used previously, the instruction at which simulation starts
+ * is not checked, so a run can be resumed from a breakpoint.
+ *
+ * @version October 2026
+ **/
+
+    public class BreakpointTable {
+      public static final int BREAKPOINT = 1;
+      public static final int WATCH = 2;
+      public static final int STEP_MARKER = 4;
+
+      private static final int PAGE_SHIFT = 20; // 1 MB of address space per page
+      private static final int PAGE_WORDS = 1 << (PAGE_SHIFT - 2);
+
+      private byte[][] pages;
+      private int count;
+      private HashMap breakpointConditions; // Integer address -> BreakpointCondition
+      private HashMap watchConditions;      // Integer address -> BreakpointCondition
+      private HashMap watchStates;          // Integer address -> Boolean, result at previous visit
+      private int lastStopAddress;
+      private int stops;
+
+
+   /**
+    * Create an empty table.
+    **/
+       public BreakpointTable() {
+         pages = new byte[1 << (32 - PAGE_SHIFT)][];
+         count = 0;
+         breakpointConditions = new HashMap();
+         watchConditions = new HashMap();
+         watchStates = new HashMap();
+      }
+
+
+   /**
+    * Create a table with an unconditional breakpoint at each of the given addresses.
+    * @param breakPoints array of instruction addresses, in any order
+    **/
+       public BreakpointTable(int[] breakPoints) {
+         this();
+         if (breakPoints != null) {
+            for (int i=0; i<breakPoints.length; i++) {
+               setBreakpoint(breakPoints[i]);
+            }
+         }
+      }
+
+
+   /**
+    * Set an unconditional breakpoint.
+    * @param address instruction address
+    **/
+       public void setBreakpoint(int address) {
+         setBreakpoint(address, null);
+      }
+
+
+   /**
+    * Set a breakpoint that stops only if the condition holds when the address is reached.
+    * @param address instruction address
+    * @param condition the condition, null for unconditional
+    **/
+       public void setBreakpoint(int address, BreakpointCondition condition) {
+         setFlag(address, BREAKPOINT);
+         if (condition == null) {
+            breakpointConditions.remove(Integer.valueOf(address));
+         }
+         else {
+            breakpointConditions.put(Integer.valueOf(address), condition);
+         }
+      }
+
+
+   /**
+    * Set a watch, which stops when the condition becomes true at the given address.
+    * @param address instruction address
+    * @param condition the condition
+    **/
+       public void setWatch(int address, BreakpointCondition condition) {
+         if (condition == null) {
+            throw new IllegalArgumentException("Watch requires a condition");
+         }
+         setFlag(address, WATCH);
+         watchConditions.put(Integer.valueOf(address), condition);
+         watchStates.remove(Integer.valueOf(address));
+      }
+
+
+   /**
+    * Set a one-time stop at the given address, e.g. for "run to here" or stepping over a call.
+    * @param address instruction address
+    **/
+       public void setStepMarker(int address) {
+         setFlag(address, STEP_MARKER);
+      }
+
+
+   /**
+    * Remove the given kinds of stop from an address.
+    * @param address instruction address
+    * @param kinds combination of BREAKPOINT, WATCH and STEP_MARKER
+    **/
+       public void clear(int address, int kinds) {
+         byte[] page = pages[address >>> PAGE_SHIFT];
+         int index = (address >>> 2) & (PAGE_WORDS - 1);
+         if (page == null || page[index] == 0) {
+            return;
+         }
+         page[index] &= ~kinds;
+         if (page[index] == 0) {
+            count--;
+         }
+         if ((kinds & BREAKPOINT) != 0) {
+            breakpointConditions.remove(Integer.valueOf(address));
+         }
+         if ((kinds & WATCH) != 0) {
+            watchConditions.remove(Integer.valueOf(address));
+            watchStates.remove(Integer.valueOf(address));
+         }
+      }
+
+
+   /**
+    * Returns the kinds of stop set at an address.
+    * @param address instruction address
+    * @return combination of BREAKPOINT, WATCH and STEP_MARKER; 0 if none.
+    **/
+       public int getFlags(int address) {
+         byte[] page = pages[address >>> PAGE_SHIFT];
+         return (page == null) ? 0 : page[(address >>> 2) & (PAGE_WORDS - 1)];
+      }
+
+
+   /**
+    * Returns true if no address has any kind of stop set.
+    * @return true if empty
+    **/
+       public boolean isEmpty() {
+         return count == 0;
+      }
+
+
+   /**
+    * Determine whether simulation should stop before executing the instruction at the given
+    * address.  Evaluates conditions and updates watch state and step markers for that address.
+    * @param address address of the next instruction
+    * @return true to stop
+    **/
+       public boolean shouldStop(int address) {
+         byte[] page = pages[address >>> PAGE_SHIFT];
+         if (page == null || page[(address >>> 2) & (PAGE_WORDS - 1)] == 0) {
+            return false;
+         }
+         return hit(address, page[(address >>> 2) & (PAGE_WORDS - 1)]);
+      }
+
+
+   /**
+    * Number of times shouldStop() has returned true.  A caller can compare this with the
+    * value before a run to learn whether the run ended at one of the table's stops.
+    * @return stop count
+    **/
+       public int getStopCount() {
+         return stops;
+      }
+
+
+   /**
+    * Address at which shouldStop() last returned true.
+    * @return instruction address
+    **/
+       public int getLastStopAddress() {
+         return lastStopAddress;
+      }
+
+
+       // Slow path of shouldStop() for a word with flags set.
+       private boolean hit(int address, int kinds) {
+         if ((address & 3) != 0) {
+            return false;
+         }
+         boolean stop = false;
+         if ((kinds & STEP_MARKER) != 0) {
+            clear(address, STEP_MARKER);
+            stop = true;
+         }
+         if ((kinds & BREAKPOINT) != 0) {
+            BreakpointCondition condition = (BreakpointCondition) breakpointConditions.get(Integer.valueOf(address));
+            if (condition == null || condition.isSatisfied()) {
+               stop = true;
+            }
+         }
+         if ((kinds & WATCH) != 0) {
+            Integer key = Integer.valueOf(address);
+            boolean now = ((BreakpointCondition) watchConditions.get(key)).isSatisfied();
+            Boolean before = (Boolean) watchStates.put(key, Boolean.valueOf(now));
+            if (now && (before == null || !before.booleanValue())) {
+               stop = true;
+            }
+         }
+         if (stop) {
+            lastStopAddress = address;
+            stops++;
+         }
+         return stop;
+      }
+
+
+       private void setFlag(int address, int kind) {
+         if (!Memory.wordAligned(address)) {
+            throw new IllegalArgumentException("Unaligned instruction address");
+         }
+         if (pages[address >>> PAGE_SHIFT] == null) {
+            pages[address >>> PAGE_SHIFT] = new byte[PAGE_WORDS];
+         }
+         byte[] page = pages[address >>> PAGE_SHIFT];
+         int index = (address >>> 2) & (PAGE_WORDS - 1);
+         if (page[index] == 0) {
+            count++;
+         }
+         page[index] |= kind;
+      }
+   }
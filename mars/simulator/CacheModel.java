@@ -0,0 +1,377 @@
+   package mars.simulator;
+   import mars.mips.hardware.*;
+   import java.util.*;
+
+	/*
+Copyright (c) 2003-2014,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * One level of a data cache, for measuring hit rates; no data is stored.  The cache has
+ * a number of blocks of a number of words each, grouped into sets of setSize blocks:
+ * a set size of 1 is direct mapping, a set size equal to the number of blocks is fully
+ * associative.  When a set is full, the least recently used block or a random one is
+ * replaced.  All sizes are powers of two.
+ * <p>
+ * Block state is kept in primitive arrays (tag, valid flag and time of last use per block),
+ * so an access is a scan of one set and allocates nothing.  A level may have a next level,
+ * which is accessed on each miss; this models a hierarchy in which every level holds what
+ * it last read from the next.  This is the engine of the Data Cache Simulator tool and of
+ * CacheSweep, which evaluates many configurations in one run.
+ *
+ * @version October 2026
+ **/
+
+    public class CacheModel {
+      public static final int LRU = 0;
+      public static final int RANDOM = 1;
+      /** Block sizes in words offered by the Data Cache Simulator tool. **/
+      public static final int[] BLOCK_SIZE_CHOICES = {1, 2, 4, 8, 16, 32, 64, 128, 256, 512, 1024, 2048};
+      /** Numbers of blocks offered by the Data Cache Simulator tool. **/
+      public static final int[] BLOCK_COUNT_CHOICES = {1, 2, 4, 8, 16, 32, 64, 128, 256, 512, 1024, 2048};
+      private static final String[] policyNames = {"LRU", "Random"};
+   
+      private int numberOfBlocks, blockSizeInWords, setSizeInBlocks, numberOfSets;
+      private int blockShift; // log2 of block size in bytes
+      private int setMask;
+      private int policy;
+      private CacheModel next;
+      private int[] tags;
+      private boolean[] valid;
+      private long[] lastUse;
+      private long accesses, hits;
+      private int lastBlock;
+      private Random random;
+   
+   
+   /**
+    * Create an empty cache.
+    * @param numberOfBlocks number of blocks, a power of two
+    * @param blockSizeInWords words per block, a power of two
+    * @param setSizeInBlocks blocks per set, a power of two no larger than the number of blocks
+    * @param policy LRU or RANDOM
+    * @param next the next level, accessed on a miss, or null
+    **/
+       public CacheModel(int numberOfBlocks, int blockSizeInWords, int setSizeInBlocks, int policy, CacheModel next) {
+         if (!isPowerOfTwo(numberOfBlocks) || !isPowerOfTwo(blockSizeInWords) || !isPowerOfTwo(setSizeInBlocks)
+              || setSizeInBlocks > numberOfBlocks) {
+            throw new IllegalArgumentException("Invalid cache organization: "+numberOfBlocks+" blocks of "
+               +blockSizeInWords+" words, "+setSizeInBlocks+" blocks per set");
+         }
+         if (policy != LRU && policy != RANDOM) {
+            throw new IllegalArgumentException("Invalid replacement policy: "+policy);
+         }
+         this.numberOfBlocks = numberOfBlocks;
+         this.blockSizeInWords = blockSizeInWords;
+         this.setSizeInBlocks = setSizeInBlocks;
+         this.numberOfSets = numberOfBlocks / setSizeInBlocks;
+         this.blockShift = Integer.numberOfTrailingZeros(blockSizeInWords * Memory.WORD_LENGTH_BYTES);
+         this.setMask = numberOfSets - 1;
+         this.policy = policy;
+         this.next = next;
+         this.tags = new int[numberOfBlocks];
+         this.valid = new boolean[numberOfBlocks];
+         this.lastUse = new long[numberOfBlocks];
+         reset();
+      }
+   
+   
+       public int getNumberOfBlocks() {
+         return numberOfBlocks;
+      }
+   
+   
+       public int getNumberOfSets() {
+         return numberOfSets;
+      }
+   
+   
+       public int getSetSizeInBlocks() {
+         return setSizeInBlocks;
+      }
+   
+   
+       public int getBlockSizeInWords() {
+         return blockSizeInWords;
+      }
+   
+   
+       public int getCacheSizeInBytes() {
+         return numberOfBlocks * blockSizeInWords * Memory.WORD_LENGTH_BYTES;
+      }
+   
+   
+       public int getReplacementPolicy() {
+         return policy;
+      }
+   
+   
+   /**
+    * Change the replacement policy.  Blocks already in the cache are unaffected.
+    * @param policy LRU or RANDOM
+    **/
+       public void setReplacementPolicy(int policy) {
+         if (policy != LRU && policy != RANDOM) {
+            throw new IllegalArgumentException("Invalid replacement policy: "+policy);
+         }
+         this.policy = policy;
+      }
+   
+   
+   /**
+    * Name of a replacement policy.
+    * @param policy LRU or RANDOM
+    * @return "LRU" or "Random"
+    **/
+       public static String getPolicyName(int policy) {
+         return policyNames[policy];
+      }
+   
+   
+   /**
+    * The next level of the hierarchy.
+    * @return next level, null if this is the last
+    **/
+       public CacheModel getNext() {
+         return next;
+      }
+   
+   
+   /**
+    * Set number an address maps to.
+    * @param address memory address
+    * @return set number
+    **/
+       public int getSetNumber(int address) {
+         return (address >>> blockShift) & setMask;
+      }
+   
+   
+   /**
+    * Tag of an address, the part of its block address not given by the set number.
+    * @param address memory address
+    * @return tag
+    **/
+       public int getTag(int address) {
+         return (address >>> blockShift) >>> Integer.numberOfTrailingZeros(numberOfSets);
+      }
+   
+   
+   /**
+    * First block of the set an address maps to.
+    * @param address memory address
+    * @return block number
+    **/
+       public int getFirstBlockToSearch(int address) {
+         return getSetNumber(address) * setSizeInBlocks;
+      }
+   
+   
+   /**
+    * Last block of the set an address maps to.
+    * @param address memory address
+    * @return block number
+    **/
+       public int getLastBlockToSearch(int address) {
+         return getFirstBlockToSearch(address) + setSizeInBlocks - 1;
+      }
+   
+   
+       public boolean isValid(int block) {
+         return valid[block];
+      }
+   
+   
+       public int getBlockTag(int block) {
+         return tags[block];
+      }
+   
+   
+   /**
+    * Empty the cache (and the levels after it) and zero the counts.
+    **/
+       public void reset() {
+         Arrays.fill(valid, false);
+         Arrays.fill(tags, 0);
+         Arrays.fill(lastUse, -1);
+         accesses = 0;
+         hits = 0;
+         lastBlock = 0;
+         random = new Random(0); // reproducible replacement choices
+         if (next != null) {
+            next.reset();
+         }
+      }
+   
+   
+   // The cache implements any of the well-known cache organizations.  Physical memory
+   // address is partitioned depending on organization:
+   //    Direct Mapping:    [ tag | block | word | byte ]
+   //    Fully Associative: [ tag | word | byte ]
+   //    Set Associative:   [ tag | set | word | byte ]
+   //
+   // Bit lengths of each part are determined as follows:
+   // Direct Mapping:
+   //   byte  = log2 of #bytes in a word (typically 4)
+   //   word  = log2 of #words in a block
+   //   block = log2 of #blocks in the cache
+   //   tag   = #bytes in address - (byte+word+block)
+   // Fully Associative:
+   //   byte  = log2 of #bytes in a word (typically 4)
+   //   word  = log2 of #words in a block
+   //   tag   = #bytes in address - (byte+word)
+   // Set Associative:
+   //   byte  = log2 of #bytes in a word (typically 4)
+   //   word  = log2 of #words in a block
+   //   set   = log2 of #sets in the cache
+   //   tag   = #bytes in address - (byte+word+set)
+   //
+   // Direct Mapping (1 way set associative):
+   // The block value for a given address identifies its block index into the cache.
+   // That's why its called "direct mapped."  This is the only cache block it can
+   // occupy.  If that cache block is empty or if it is occupied by a different tag,
+   // this is a MISS.  If that cache block is occupied by the same tag, this is a HIT.
+   // There is no replacement policy: upon a cache miss of an occupied block, the old
+   // block is written out (unless write-through) and the new one read in.
+   // Those actions are not simulated here.
+   //
+   // Fully Associative:
+   // There is one set, and very tag has to be searched before determining hit or miss.
+   // If tag is matched, it is a hit.  If tag is not matched and there is at least one
+   // empty block, it is a miss and the new tag will occupy it.  If tag is not matched
+   // and every block is occupied, it is a miss and one of the occupied blocks will be
+   // selected for removal and the new tag will replace it.
+   //
+   // n-way Set Associative:
+   // Each set consists of n blocks, and the number of sets in the cache is total number
+   // of blocks divided by n.  The set bits in the address will identify which set to
+   // search, and every tag in that set has to be searched before determining hit or miss.
+   // If tag is matched, it is a hit.  If tag is not matched and there is at least one
+   // empty block, it is a miss and the new tag will occupy it.  If tag is not matched
+   // and every block is occupied, it is a miss and one of the occupied blocks will be
+   // selected for removal and the new tag will replace it.
+   //
+   
+   /**
+    * Access an address: look for its block and, on a miss, read the block into the
+    * set (from the next level, which is accessed in turn), replacing one if the set is full.
+    * @param address memory address
+    * @return true on a hit
+    **/
+       public boolean access(int address) {
+         int tag = getTag(address);
+         int first = getFirstBlockToSearch(address);
+         int last = first + setSizeInBlocks;
+         long time = accesses++;
+         for (int block = first; block < last; block++) {
+            if (!valid[block]) {
+               // Blocks of a set are filled in order, so the block is not in the set.
+               valid[block] = true;
+               return miss(block, tag, time, address);
+            }
+            if (tags[block] == tag) {
+               hits++;
+               lastUse[block] = time;
+               lastBlock = block;
+               return true;
+            }
+         }
+         return miss(selectBlockToReplace(first, last), tag, time, address);
+      }
+   
+   
+   /**
+    * Block of the last access: where the address was found or has been stored.
+    * @return block number
+    **/
+       public int getLastBlock() {
+         return lastBlock;
+      }
+   
+   
+       public long getAccessCount() {
+         return accesses;
+      }
+   
+   
+       public long getHitCount() {
+         return hits;
+      }
+   
+   
+       public long getMissCount() {
+         return accesses - hits;
+      }
+   
+   
+   /**
+    * Fraction of accesses that hit.
+    * @return hit rate between 0 and 1, 0 if there have been no accesses
+    **/
+       public double getHitRate() {
+         return (accesses == 0) ? 0.0 : hits / (double) accesses;
+      }
+   
+   
+       public String toString() {
+         return numberOfBlocks+"x"+blockSizeInWords+"x"+setSizeInBlocks+"x"+getPolicyName(policy).toLowerCase();
+      }
+   
+   
+       private boolean miss(int block, int tag, long time, int address) {
+         tags[block] = tag;
+         lastUse[block] = time;
+         lastBlock = block;
+         if (next != null) {
+            next.access(address);
+         }
+         return false;
+      }
+   
+   
+       // Called when all blocks of the set are valid.
+       private int selectBlockToReplace(int first, int last) {
+         if (last - first == 1) {
+            return first;
+         }
+         if (policy == RANDOM) {
+            return first + random.nextInt(last - first);
+         }
+         int replace = first;
+         for (int block = first + 1; block < last; block++) {
+            if (lastUse[block] < lastUse[replace]) {
+               replace = block;
+            }
+         }
+         return replace;
+      }
+   
+   
+       private static boolean isPowerOfTwo(int value) {
+         return value > 0 && (value & (value - 1)) == 0;
+      }
+   }
@@ -0,0 +1,301 @@
+   package mars.simulator;
+   import mars.mips.hardware.*;
+   import java.io.*;
+   import java.util.*;
+
+	/*
+Copyright (c) 2003-2014,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Evaluates many cache configurations in a single run.  Each configuration is a hierarchy
+ * of CacheModel levels; every data memory access of the program is given to the first
+ * level of each configuration.  Register the sweep as an observer of the data segment
+ * (as the Data Cache Simulator tool does) or call access() directly.
+ * <p>
+ * Configurations can be given as specifications of the form
+ * <pre>   blocks x words x setSize [x policy] [/ next level...]</pre>
+ * for example <code>64x4x2</code> for 64 blocks of 4 words in 2-block sets with LRU
+ * replacement, or <code>64x4x1/1024x8x8xrandom</code> for a direct-mapped first level
+ * backed by an 8-way second level with random replacement.  Each field may list several
+ * values separated by <code>+</code>, or be <code>*</code> for all of them: the block counts
+ * and sizes of CacheModel.BLOCK_COUNT_CHOICES and BLOCK_SIZE_CHOICES, every set size
+ * from direct mapping to fully associative, or both policies.  A set size may also be
+ * <code>full</code>.  A specification stands for every combination of its values, so
+ * <code>*x4x1+2+4</code> is 36 configurations.
+ * <p>
+ * The report has one record per level of each configuration, as CSV or as JSON lines.
+ *
+ * @version October 2026
+ **/
+
+    public class CacheSweep implements MemoryAccessListener {
+      private static final String[] policyKeywords = {"lru", "random"};
+      private CacheModel[] configurations = new CacheModel[16]; // first level of each
+      private int count = 0;
+   
+   
+   /**
+    * Add a configuration.
+    * @param firstLevel the first level of the hierarchy; later levels are reached through getNext()
+    **/
+       public void add(CacheModel firstLevel) {
+         if (count == configurations.length) {
+            CacheModel[] larger = new CacheModel[2 * count];
+            System.arraycopy(configurations, 0, larger, 0, count);
+            configurations = larger;
+         }
+         configurations[count++] = firstLevel;
+      }
+   
+   
+   /**
+    * Add every configuration a specification stands for (see above).
+    * @param specification the specification
+    * @return number of configurations added
+    * @throws IllegalArgumentException if the specification is not valid
+    **/
+       public int add(String specification) {
+         ArrayList hierarchies = new ArrayList();
+         hierarchies.add(new ArrayList());
+         StringTokenizer levels = new StringTokenizer(specification, "/");
+         if (!levels.hasMoreTokens()) {
+            throw new IllegalArgumentException("Empty cache specification");
+         }
+         while (levels.hasMoreTokens()) {
+            int[][] choices = parseLevel(levels.nextToken().trim().toLowerCase(), specification);
+            ArrayList extended = new ArrayList();
+            for (int h=0; h<hierarchies.size(); h++) {
+               for (int c=0; c<choices.length; c++) {
+                  ArrayList hierarchy = new ArrayList((ArrayList) hierarchies.get(h));
+                  hierarchy.add(choices[c]);
+                  extended.add(hierarchy);
+               }
+            }
+            hierarchies = extended;
+         }
+         for (int h=0; h<hierarchies.size(); h++) {
+            ArrayList hierarchy = (ArrayList) hierarchies.get(h);
+            CacheModel level = null;
+            for (int i=hierarchy.size()-1; i>=0; i--) {
+               int[] organization = (int[]) hierarchy.get(i);
+               level = new CacheModel(organization[0], organization[1], organization[2], organization[3], level);
+            }
+            add(level);
+         }
+         return hierarchies.size();
+      }
+   
+   
+   /**
+    * Number of configurations.
+    * @return configuration count
+    **/
+       public int size() {
+         return count;
+      }
+   
+   
+   /**
+    * Access an address in every configuration.
+    * @param address memory address
+    **/
+       public void access(int address) {
+         for (int i=0; i<count; i++) {
+            configurations[i].access(address);
+         }
+      }
+   
+   
+   /**
+    * Empty all caches and zero their counts.
+    **/
+       public void reset() {
+         for (int i=0; i<count; i++) {
+            configurations[i].reset();
+         }
+      }
+   
+   
+   /**
+    * Observer method: access the address of each memory access made by the MIPS program.
+    **/
+       public void update(Observable memory, Object notice) {
+         if (notice instanceof MemoryAccessNotice && ((AccessNotice) notice).accessIsFromMIPS()) {
+            access(((MemoryAccessNotice) notice).getAddress());
+         }
+      }
+
+
+   /**
+    * MemoryAccessListener method: access the address of each memory access made by the
+    * MIPS program, without a notice being created for it.
+    **/
+       public void memoryAccessed(int type, int address, int length, int value) {
+         if (Thread.currentThread().getName().startsWith("MIPS")) {
+            access(address);
+         }
+      }
+   
+   
+   /**
+    * Write the hit rates as CSV with a header line, one line per level of each configuration.
+    * @param out destination
+    **/
+       public void writeCsv(PrintStream out) {
+         out.println("configuration,level,blocks,blockWords,setSize,policy,bytes,accesses,hits,misses,hitRate");
+         for (int i=0; i<count; i++) {
+            String name = getName(configurations[i]);
+            int number = 1;
+            for (CacheModel level = configurations[i]; level != null; level = level.getNext()) {
+               out.println(name+","+number++ +","+level.getNumberOfBlocks()+","+level.getBlockSizeInWords()+","
+                  +level.getSetSizeInBlocks()+","+CacheModel.getPolicyName(level.getReplacementPolicy())+","
+                  +level.getCacheSizeInBytes()+","+level.getAccessCount()+","+level.getHitCount()+","
+                  +level.getMissCount()+","+formatRate(level.getHitRate()));
+            }
+         }
+      }
+   
+   
+   /**
+    * Write the hit rates as JSON, one line per configuration with an array of its levels.
+    * @param out destination
+    **/
+       public void writeJson(PrintStream out) {
+         for (int i=0; i<count; i++) {
+            StringBuffer line = new StringBuffer("{\"configuration\":\"").append(getName(configurations[i])).append("\",\"levels\":[");
+            for (CacheModel level = configurations[i]; level != null; level = level.getNext()) {
+               if (level != configurations[i]) {
+                  line.append(',');
+               }
+               line.append("{\"blocks\":").append(level.getNumberOfBlocks());
+               line.append(",\"blockWords\":").append(level.getBlockSizeInWords());
+               line.append(",\"setSize\":").append(level.getSetSizeInBlocks());
+               line.append(",\"policy\":\"").append(CacheModel.getPolicyName(level.getReplacementPolicy())).append('"');
+               line.append(",\"bytes\":").append(level.getCacheSizeInBytes());
+               line.append(",\"accesses\":").append(level.getAccessCount());
+               line.append(",\"hits\":").append(level.getHitCount());
+               line.append(",\"misses\":").append(level.getMissCount());
+               line.append(",\"hitRate\":").append(formatRate(level.getHitRate())).append('}');
+            }
+            out.println(line.append("]}"));
+         }
+      }
+   
+   
+       // Name of a configuration, in the form of a specification.
+       private static String getName(CacheModel firstLevel) {
+         StringBuffer name = new StringBuffer(firstLevel.toString());
+         for (CacheModel level = firstLevel.getNext(); level != null; level = level.getNext()) {
+            name.append('/').append(level.toString());
+         }
+         return name.toString();
+      }
+   
+   
+       private static String formatRate(double rate) {
+         return new java.text.DecimalFormat("0.0000").format(rate);
+      }
+   
+   
+       // The organizations one level of a specification stands for: {blocks, words, setSize, policy}.
+       private static int[][] parseLevel(String level, String specification) {
+         String[] fields = level.split("x");
+         if (fields.length < 3 || fields.length > 4) {
+            throw new IllegalArgumentException("Cache level must be blocks x words x setSize [x policy]: "+specification);
+         }
+         int[] blocks = parseField(fields[0], CacheModel.BLOCK_COUNT_CHOICES, specification);
+         int[] words = parseField(fields[1], CacheModel.BLOCK_SIZE_CHOICES, specification);
+         int[] policies = {CacheModel.LRU};
+         if (fields.length == 4) {
+            policies = (fields[3].equals("*")) ? new int[] {CacheModel.LRU, CacheModel.RANDOM}
+                                               : parseKeywords(fields[3], specification);
+         }
+         ArrayList organizations = new ArrayList();
+         for (int b=0; b<blocks.length; b++) {
+            int[] setSizes;
+            if (fields[2].equals("*")) {
+               setSizes = new int[Integer.numberOfTrailingZeros(blocks[b]) + 1];
+               for (int i=0; i<setSizes.length; i++) {
+                  setSizes[i] = 1 << i;
+               }
+            }
+            else {
+               setSizes = parseField(fields[2].replaceAll("full", Integer.toString(blocks[b])), null, specification);
+            }
+            for (int w=0; w<words.length; w++) {
+               for (int s=0; s<setSizes.length; s++) {
+                  if (setSizes[s] > blocks[b]) {
+                     continue; // not every block count has every set size
+                  }
+                  for (int p=0; p<policies.length; p++) {
+                     organizations.add(new int[] {blocks[b], words[w], setSizes[s], policies[p]});
+                  }
+               }
+            }
+         }
+         if (organizations.size() == 0) {
+            throw new IllegalArgumentException("No valid cache organization in "+specification);
+         }
+         return (int[][]) organizations.toArray(new int[0][]);
+      }
+   
+   
+       // Values of a field: * for all choices, or values separated by +.
+       private static int[] parseField(String field, int[] choices, String specification) {
+         if (field.equals("*") && choices != null) {
+            return choices;
+         }
+         String[] values = field.split("\\+");
+         int[] numbers = new int[values.length];
+         for (int i=0; i<values.length; i++) {
+            try {
+               numbers[i] = Integer.parseInt(values[i].trim());
+            }
+                catch (NumberFormatException nfe) {
+                  throw new IllegalArgumentException("Invalid number \""+values[i]+"\" in cache specification "+specification);
+               }
+            if (numbers[i] <= 0 || (numbers[i] & (numbers[i] - 1)) != 0) {
+               throw new IllegalArgumentException("Cache sizes must be powers of two: "+specification);
+            }
+         }
+         return numbers;
+      }
+   
+   
+       private static int[] parseKeywords(String field, String specification) {
+         String[] values = field.split("\\+");
+         int[] policies = new int[values.length];
+         for (int i=0; i<values.length; i++) {
+            policies[i] = Arrays.asList(policyKeywords).indexOf(values[i].trim());
+            if (policies[i] < 0) {
+               throw new IllegalArgumentException("Invalid replacement policy \""+values[i]+"\" in cache specification "+specification);
+            }
+         }
+         return policies;
+      }
+   }
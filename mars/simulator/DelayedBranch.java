@@ -54,6 +54,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  *
  * Since only one pending delayed branch can be taken at a time, everything
  * here is done with statics.  The class itself represents the potential branch.
+ * The statics operate on the DelayedBranch of the calling thread's SimulationContext.
  * 
  * @author Pete Sanderson
  * @version June 2007
@@ -67,8 +68,32 @@ public class DelayedBranch {
 
    // Initially nothing is happening.
 	
-	private static int state = CLEARED;
-	private static int branchTargetAddress = 0;
+	private int state = CLEARED;
+	private int branchTargetAddress = 0;
+	
+	// Delayed branch of the default SimulationContext.
+	private static final DelayedBranch defaultDelayedBranch = new DelayedBranch();
+	
+	/**
+	 *  Create a cleared delayed branch, for a SimulationContext other than the default one.
+	 */
+	DelayedBranch() {
+	}
+	
+	// Returns the delayed branch of the calling thread's SimulationContext.
+	private static DelayedBranch current() {
+	   DelayedBranch branch = SimulationContext.current().getDelayedBranch();
+	   return (branch == null) ? defaultDelayedBranch : branch;
+	}
+	
+	// Copy of the calling thread's delayed branch, for a forked SimulationContext.
+	static DelayedBranch copy() {
+	   DelayedBranch branch = current();
+	   DelayedBranch copy = new DelayedBranch();
+	   copy.state = branch.state;
+	   copy.branchTargetAddress = branch.branchTargetAddress;
+	   return copy;
+	}
 	
 	/**
     *  Register the fact that a successful branch is to occur.  This is called in
@@ -82,11 +107,12 @@ public class DelayedBranch {
 	 *  @param targetAddress The address to branch to after executing the next instruction
 	 */
 	public static void register(int targetAddress) {
+	  DelayedBranch branch = current();
 	  // About as clean as a switch statement can be!
-	  switch (state) {
-	    case CLEARED    :  branchTargetAddress = targetAddress;
+	  switch (branch.state) {
+	    case CLEARED    :  branch.branchTargetAddress = targetAddress;
 		 case REGISTERED :
-		 case TRIGGERED  :  state = REGISTERED;
+		 case TRIGGERED  :  branch.state = REGISTERED;
 	  }          
 	}
 
@@ -103,10 +129,11 @@ public class DelayedBranch {
 	 *
 	 */
 	 static void trigger() {
+	  DelayedBranch branch = current();
 	  // About as clean as a switch statement can be!
-	  switch (state) {
+	  switch (branch.state) {
 		 case REGISTERED :
-		 case TRIGGERED  :  state = TRIGGERED;
+		 case TRIGGERED  :  branch.state = TRIGGERED;
 		 case CLEARED    :
 	  }          
 	}
@@ -116,8 +143,9 @@ public class DelayedBranch {
 	 *  program counter to the target address.  This method has package visibility.
 	 */
 	 static void clear() {
-	  state = CLEARED;
-	  branchTargetAddress = 0; 
+	  DelayedBranch branch = current();
+	  branch.state = CLEARED;
+	  branch.branchTargetAddress = 0; 
 	}
 
    /**
@@ -129,7 +157,7 @@ public class DelayedBranch {
 	 */
 
     static boolean isRegistered() {
-	   return state == REGISTERED;
+	   return current().state == REGISTERED;
 	}
 	
    /**
@@ -140,7 +168,7 @@ public class DelayedBranch {
 	 */
 
    static boolean isTriggered() {
-	   return state == TRIGGERED;
+	   return current().state == TRIGGERED;
 	}	
 
 
@@ -153,7 +181,32 @@ public class DelayedBranch {
 	*  @return Target address of the delayed branch.
 	*/
 	 static int getBranchTargetAddress() {
-	    return branchTargetAddress;
+	    return current().branchTargetAddress;
+	}
+
+  /**
+   *  Return the state (cleared, registered or triggered) and branch target address,
+	*  for a machine Snapshot.  This method has package visibility.
+	*
+	*  @return two-element array: state, then target address.
+	*/
+	 static int[] getState() {
+	    DelayedBranch branch = current();
+	    return new int[] { branch.state, branch.branchTargetAddress };
+	}
+
+  /**
+   *  Restore a state returned by getState().  This method has package visibility.
+	*
+	*  @param state the state and target address
+	*/
+	 static void setState(int[] state) {
+	    if (state[0] < CLEARED || state[0] > TRIGGERED) {
+	       throw new IllegalArgumentException("Invalid delayed branch state: "+state[0]);
+	    }
+	    DelayedBranch branch = current();
+	    branch.state = state[0];
+	    branch.branchTargetAddress = state[1];
 	}
 	
 }  // DelayedBranch
\ No newline at end of file
@@ -0,0 +1,247 @@
+   package mars.simulator;
+   import mars.*;
+   import java.io.*;
+
+	/*
+Copyright (c) 2003-2014,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Timing model of the classic five-stage in-order MIPS pipeline (fetch, decode, execute,
+ * memory, write back) with full forwarding.  One instruction enters the pipeline per cycle
+ * unless it must wait:
+ * <ul>
+ * <li>Load-use: a loaded value is forwarded from the end of the memory stage, so an
+ * instruction using it right after the load stalls one cycle.  A store only needs its
+ * data in the memory stage, so storing a just-loaded value does not stall.
+ * <li>Long latency: multiply, divide and floating point results are available only after
+ * their latency in cycles.
+ * <li>Branch operands: branches and jumps are resolved in the decode stage, so their
+ * register operands must be ready a cycle earlier than other instructions'.
+ * <li>Busy unit: the divider is not pipelined; a multiply or divide waits for it.
+ * <li>Control: fetch continues sequentially, so a taken branch or jump discards the
+ * instruction fetched after it (none with delayed branching, whose delay slot fills it).
+ * </ul>
+ * Cycles are counted until the last instruction leaves the write back stage.
+ *
+ * @version October 2026
+ **/
+
+    public class FiveStagePipeline implements TimingModel {
+      public static final int DEFAULT_MULTIPLY_LATENCY = 4;
+      public static final int DEFAULT_DIVIDE_LATENCY = 32;
+      public static final int DEFAULT_FLOATING_POINT_LATENCY = 4;
+   
+      // Reasons for a stall.  Match stallNames by position.
+      private static final int LOAD_USE = 0;
+      private static final int LONG_LATENCY = 1;
+      private static final int BRANCH_OPERAND = 2;
+      private static final int BUSY_UNIT = 3;
+      private static final int CONTROL = 4;
+      private static final String[] stallNames = { "load-use", "long latency result",
+                                                   "branch operand", "busy divider", "taken branch or jump" };
+      // Cycles from an instruction's execute stage to the execute stage of the first
+      // instruction that can use its result, by instruction class.
+      private int[] resultLatency = new int[TimedInstruction.KINDS];
+      private int branchPenalty;
+      private int divideLatency;
+   
+      private long[] ready = new long[64];  // register -> first cycle a user can execute
+      private boolean[] loaded = new boolean[64]; // register was last written by a load
+      private long execute;                 // execute cycle of the last instruction
+      private long fetchDelay;              // cycles lost to the last instruction's control transfer
+      private long unitFree;                // first cycle the multiply/divide unit can start
+      private long instructions;
+      private long[] stalls = new long[stallNames.length];
+      private long[] kindCounts = new long[TimedInstruction.KINDS];
+   
+   
+   /**
+    * Create a pipeline with the default latencies.  Taken branches and jumps cost a cycle
+    * unless delayed branching is enabled.
+    **/
+       public FiveStagePipeline() {
+         this(Globals.getSettings().getBooleanSetting(Settings.DELAYED_BRANCHING_ENABLED) ? 0 : 1,
+              DEFAULT_MULTIPLY_LATENCY, DEFAULT_DIVIDE_LATENCY, DEFAULT_FLOATING_POINT_LATENCY);
+      }
+   
+   
+   /**
+    * Create a pipeline with the given penalty and latencies.
+    * @param branchPenalty cycles lost after a taken branch or jump
+    * @param multiplyLatency cycles until a multiply result can be used (the multiplier is pipelined)
+    * @param divideLatency cycles until a divide result can be used, during which the divider is busy
+    * @param floatingPointLatency cycles until a floating point result can be used
+    **/
+       public FiveStagePipeline(int branchPenalty, int multiplyLatency, int divideLatency, int floatingPointLatency) {
+         if (branchPenalty < 0 || multiplyLatency < 1 || divideLatency < 1 || floatingPointLatency < 1) {
+            throw new IllegalArgumentException("Invalid pipeline latency");
+         }
+         this.branchPenalty = branchPenalty;
+         this.divideLatency = divideLatency;
+         for (int i=0; i<resultLatency.length; i++) {
+            resultLatency[i] = 1;
+         }
+         resultLatency[TimedInstruction.LOAD] = 2;
+         resultLatency[TimedInstruction.MULTIPLY] = multiplyLatency;
+         resultLatency[TimedInstruction.DIVIDE] = divideLatency;
+         resultLatency[TimedInstruction.FLOATING_POINT] = floatingPointLatency;
+         reset();
+      }
+   
+   
+       public void reset() {
+         java.util.Arrays.fill(ready, 0);
+         java.util.Arrays.fill(loaded, false);
+         java.util.Arrays.fill(stalls, 0);
+         java.util.Arrays.fill(kindCounts, 0);
+         execute = 2; // the first instruction executes in cycle 3
+         fetchDelay = 0;
+         unitFree = 0;
+         instructions = 0;
+      }
+   
+   
+       public void instruction(TimedInstruction instruction) {
+         int kind = instruction.getKind();
+         long earliest = execute + 1 + fetchDelay;
+         long cycle = earliest;
+         int reason = CONTROL;
+         if (fetchDelay > 0) {
+            stalls[CONTROL] += fetchDelay;
+            fetchDelay = 0;
+         }
+         // Branches and jumps need their operands in the decode stage, a cycle early.
+         boolean early = kind == TimedInstruction.BRANCH || kind == TimedInstruction.JUMP;
+         for (long bits = instruction.getSources(); bits != 0; bits &= bits - 1) {
+            int register = Long.numberOfTrailingZeros(bits);
+            long needed = (early) ? ready[register] + 1 : ready[register];
+            if (needed > cycle) {
+               cycle = needed;
+               reason = (early) ? BRANCH_OPERAND : (loaded[register]) ? LOAD_USE : LONG_LATENCY;
+            }
+         }
+         // Store data is needed a cycle late, in the memory stage.
+         for (long bits = instruction.getStoreData(); bits != 0; bits &= bits - 1) {
+            int register = Long.numberOfTrailingZeros(bits);
+            if (ready[register] - 1 > cycle) {
+               cycle = ready[register] - 1;
+               reason = (loaded[register]) ? LOAD_USE : LONG_LATENCY;
+            }
+         }
+         if (kind == TimedInstruction.MULTIPLY || kind == TimedInstruction.DIVIDE) {
+            if (unitFree > cycle) {
+               cycle = unitFree;
+               reason = BUSY_UNIT;
+            }
+            unitFree = cycle + ((kind == TimedInstruction.DIVIDE) ? divideLatency : 1);
+         }
+         stalls[reason] += cycle - earliest;
+         long result = cycle + resultLatency[kind];
+         boolean isLoad = kind == TimedInstruction.LOAD;
+         for (long bits = instruction.getDestinations(); bits != 0; bits &= bits - 1) {
+            int register = Long.numberOfTrailingZeros(bits);
+            ready[register] = result;
+            loaded[register] = isLoad;
+         }
+         if (instruction.isTaken()) {
+            fetchDelay = branchPenalty;
+         }
+         execute = cycle;
+         instructions++;
+         kindCounts[kind]++;
+      }
+   
+   
+       public long getInstructionCount() {
+         return instructions;
+      }
+   
+   
+   /**
+    * Cycles until the last instruction leaves the write back stage.  A control penalty
+    * after the last instruction is not counted.
+    * @return cycle count
+    **/
+       public long getCycles() {
+         return (instructions == 0) ? 0 : execute + 2;
+      }
+   
+   
+   /**
+    * Stall cycles of all kinds, including those lost to taken branches and jumps.
+    * @return stall cycle count
+    **/
+       public long getStallCycles() {
+         long total = 0;
+         for (int i=0; i<stalls.length; i++) {
+            total += stalls[i];
+         }
+         return total;
+      }
+   
+   
+       public void writeReport(PrintStream out) {
+         long cycles = getCycles();
+         out.println("Five-stage pipeline");
+         out.println(pad("instructions", Long.toString(instructions)));
+         out.println(pad("cycles", Long.toString(cycles)));
+         out.println(pad("CPI", (instructions == 0) ? "-" : format((double) cycles / instructions, "0.000")));
+         out.println(pad("stall cycles", getStallCycles(), cycles));
+         for (int i=0; i<stalls.length; i++) {
+            out.println(pad("  "+stallNames[i], stalls[i], cycles));
+         }
+         out.println(pad("pipeline fill", (instructions == 0) ? 0 : 4, cycles));
+         out.println("  instruction mix");
+         for (int i=0; i<kindCounts.length; i++) {
+            if (kindCounts[i] > 0) {
+               out.println(pad("  "+TimedInstruction.getKindName(i), kindCounts[i], instructions));
+            }
+         }
+      }
+   
+   
+       // One line of the report, with the count's percentage of total.
+       private static String pad(String label, long count, long total) {
+         return pad(label, Long.toString(count))+"  "+((total == 0) ? "-" : format(100.0 * count / total, "0.0")+"%");
+      }
+   
+   
+       // One line of the report: the label, then the value right-aligned.
+       private static String pad(String label, String value) {
+         StringBuffer line = new StringBuffer("  ").append(label);
+         while (line.length() + value.length() < 36) {
+            line.append(' ');
+         }
+         return line.append(value).toString();
+      }
+   
+   
+       private static String format(double value, String pattern) {
+         return new java.text.DecimalFormat(pattern).format(value);
+      }
+   }
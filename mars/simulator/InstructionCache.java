@@ -0,0 +1,203 @@
+   package mars.simulator;
+   import mars.*;
+   import mars.mips.hardware.*;
+   import mars.mips.instructions.*;
+   import java.util.*;
+
+	/*
+Copyright (c) 2003-2014,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Pre-decoded copy of the user text segment, used by the simulator to fetch and
+ * dispatch instructions without going through <code>Memory.getStatement()</code>.
+ * It is a flat array indexed by (address - base address) / 4 of the SimulationCode
+ * resolved from each statement's BasicInstruction.  It is filled once, after assembly,
+ * from the machine list.  The statements themselves (which carry the already-extracted
+ * operands) stay in Memory, in compact form, from which the simulator loads each one
+ * as it is fetched (see <code>Memory.loadStatement()</code>).
+ * <p>
+ * An entry whose SimulationCode is null is not usable and the caller must fall back
+ * to <code>Memory.getStatement()</code>.  That covers addresses with no instruction,
+ * undefined instructions, and any word that has been rewritten since the cache was
+ * built (self-modifying code, or an edit made in the Text Segment window).  Memory
+ * calls <code>invalidate()</code> from <code>setStatement()</code> for the latter.
+ *
+ * @version October 2026
+ **/
+
+    public class InstructionCache {
+      private int baseAddress;
+      private int length;
+      private SimulationCode[] codes;
+      private int modifications;
+
+
+   /**
+    * Build the cache from the list of assembled statements.  Only statements
+    * in the user text segment are cached; kernel text is always fetched from memory.
+    * @param machineList ArrayList of ProgramStatement, as produced by the assembler.
+    **/
+       public InstructionCache(ArrayList machineList) {
+         int low = Integer.MAX_VALUE;
+         int high = Integer.MIN_VALUE;
+         for (int i=0; i<machineList.size(); i++) {
+            int address = ((ProgramStatement) machineList.get(i)).getAddress();
+            if (Memory.inTextSegment(address)) {
+               low = Math.min(low, address);
+               high = Math.max(high, address);
+            }
+         }
+         if (low > high) {
+            baseAddress = Memory.textBaseAddress;
+            length = 0;
+         }
+         else {
+            baseAddress = low;
+            length = ((high - low) >> 2) + 1;
+         }
+         codes = new SimulationCode[length];
+         for (int i=0; i<machineList.size(); i++) {
+            ProgramStatement statement = (ProgramStatement) machineList.get(i);
+            if (Memory.inTextSegment(statement.getAddress())) {
+               store(statement.getAddress(), statement);
+            }
+         }
+      }
+
+
+   // Constructor for copy().
+       private InstructionCache(InstructionCache original) {
+         baseAddress = original.baseAddress;
+         length = original.length;
+         codes = original.codes.clone();
+         modifications = original.modifications;
+      }
+
+
+   /**
+    * Create a cache with the same entries as this one, for a memory copied or forked from
+    * the one this cache belongs to.  Each memory invalidates its own cache as its text is
+    * written, so a change in one never costs the other its entries.
+    * @return the copy
+    **/
+       public InstructionCache copy() {
+         return new InstructionCache(this);
+      }
+
+
+   /**
+    * Get the statement at the given address, from the current memory, if its entry is valid.
+    * @param address instruction address
+    * @return the ProgramStatement, or null if the address is not cached (caller must use Memory).
+    **/
+       public ProgramStatement getStatement(int address) {
+         int index = indexOf(address);
+         if (index < 0 || codes[index] == null) {
+            return null;
+         }
+         try {
+            return Memory.getInstance().getStatementNoNotify(address);
+         }
+             catch (AddressErrorException aee) {
+               return null;
+            }
+      }
+
+
+   /**
+    * Get the resolved simulation code for the instruction at the given address.
+    * @param address instruction address
+    * @return the SimulationCode, or null if the address is not cached (caller must use Memory).
+    **/
+       public SimulationCode getSimulationCode(int address) {
+         int index = indexOf(address);
+         return (index < 0) ? null : codes[index];
+      }
+
+
+   /**
+    * Mark the entry for the given address unusable.  Called when the text segment word
+    * at that address is replaced.
+    * @param address text segment address whose instruction has changed
+    **/
+       public void invalidate(int address) {
+         int index = indexOf(address);
+         if (index >= 0) {
+            codes[index] = null;
+            modifications++;
+         }
+      }
+
+
+   /**
+    * Number of entries invalidated so far.  Anything derived from the cache contents
+    * can compare this against the value it saw earlier to learn it is out of date.
+    * @return modification count
+    **/
+       public int getModificationCount() {
+         return modifications;
+      }
+
+
+   /**
+    * Lowest address held in the cache.
+    * @return base address
+    **/
+       public int getBaseAddress() {
+         return baseAddress;
+      }
+
+
+   /**
+    * Number of instruction words spanned by the cache.
+    * @return number of entries
+    **/
+       public int size() {
+         return length;
+      }
+
+
+       // Returns array index for address, or -1 if unaligned or out of range.
+       private int indexOf(int address) {
+         int offset = address - baseAddress;
+         if ((offset & 3) != 0 || offset < 0) {
+            return -1;
+         }
+         offset >>= 2;
+         return (offset < length) ? offset : -1;
+      }
+
+
+       private void store(int address, ProgramStatement statement) {
+         int index = indexOf(address);
+         Instruction instruction = statement.getInstruction();
+         codes[index] = (instruction instanceof BasicInstruction)
+                  ? ((BasicInstruction) instruction).getSimulationCode()
+                  : null;
+      }
+   }
@@ -0,0 +1,281 @@
+   package mars.simulator;
+   import mars.*;
+   import mars.mips.hardware.*;
+   import mars.mips.instructions.*;
+
+	/*
+Copyright (c) 2003-2014,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Superinstructions for common adjacent instruction pairs.  The assembled text segment
+ * (as held by the InstructionCache) is scanned for pairs that match one of the PATTERNS,
+ * most of which come from pseudo-instruction expansion: <code>lui</code>+<code>ori</code>
+ * from <code>la</code>/<code>li</code>, <code>lui</code> followed by a load or store
+ * through $at, compare followed by a branch on its result, a load followed by an
+ * instruction using the loaded register, and the Tetris
+ * <code>harddrop</code>+<code>lineclear</code>/<code>nonclear</code> idiom.
+ * <p>
+ * Each match becomes a Fusion keyed by the address of its first instruction, which the
+ * headless simulation loop dispatches as a single step.  Only the first address is
+ * affected: a branch that lands on the second instruction finds no Fusion there and
+ * executes it normally.  If the first instruction transfers control, the second
+ * is skipped.  All fusions are dropped if the InstructionCache reports a modification.
+ * <p>
+ * Static (number of sites) and dynamic (number of times both halves ran) counts are kept
+ * per pattern and are available from getReport().
+ *
+ * @version October 2026
+ **/
+
+    public class InstructionFusion {
+      /** Names of the recognized patterns, used for the report. **/
+      public static final String[] PATTERNS = { "lui+ori", "lui+load/store", "slt+branch",
+                                                "load+use", "harddrop+lineclear" };
+      private static final int LUI_ORI = 0;
+      private static final int LUI_MEMORY = 1;
+      private static final int SLT_BRANCH = 2;
+      private static final int LOAD_USE = 3;
+      private static final int HARDDROP_LINECLEAR = 4;
+
+      private static final String[] LOADS = { "lw", "lh", "lhu", "lb", "lbu" };
+      private static final String[] STORES = { "sw", "sh", "sb" };
+      private static final String[] COMPARES = { "slt", "sltu", "slti", "sltiu" };
+      private static final String[] BRANCHES = { "beq", "bne" };
+      private static final String[] LINECLEARS = { "lineclear", "nonclear" };
+
+      private InstructionCache instructions;
+      private int modifications;
+      private Fusion[] fusions;
+      private int[] sites;
+      private long[] fired;
+
+
+   /**
+    * Scan the given instruction cache for fusable pairs.
+    * @param instructions the pre-decoded text segment
+    **/
+       public InstructionFusion(InstructionCache instructions) {
+         this.instructions = instructions;
+         this.modifications = instructions.getModificationCount();
+         this.fusions = new Fusion[instructions.size()];
+         this.sites = new int[PATTERNS.length];
+         this.fired = new long[PATTERNS.length];
+         int address = instructions.getBaseAddress();
+         for (int i=0; i+1 < fusions.length; i++, address += Instruction.INSTRUCTION_LENGTH) {
+            ProgramStatement first = instructions.getStatement(address);
+            ProgramStatement second = instructions.getStatement(address + Instruction.INSTRUCTION_LENGTH);
+            if (first == null || second == null) {
+               continue;
+            }
+            int pattern = match(first, second);
+            if (pattern >= 0) {
+               fusions[i] = new Fusion(pattern, address, first, second,
+                                       instructions.getSimulationCode(address),
+                                       instructions.getSimulationCode(address + Instruction.INSTRUCTION_LENGTH));
+               sites[pattern]++;
+            }
+         }
+      }
+
+
+   /**
+    * Returns the fused operation whose first instruction is at the given address.
+    * @param address address of the next instruction to execute
+    * @return the Fusion, or null if the instruction there should be executed on its own.
+    **/
+       public Fusion getFusion(int address) {
+         if (modifications != instructions.getModificationCount()) {
+            modifications = instructions.getModificationCount();
+            fusions = new Fusion[fusions.length];
+         }
+         int index = (address - instructions.getBaseAddress()) >> 2;
+         if ((address & 3) != 0 || index < 0 || index >= fusions.length) {
+            return null;
+         }
+         return fusions[index];
+      }
+
+
+   /**
+    * Number of places in the program where the given pattern was fused.
+    * @param pattern index into PATTERNS
+    * @return static count
+    **/
+       public int getSiteCount(int pattern) {
+         return sites[pattern];
+      }
+
+
+   /**
+    * Number of times a fusion of the given pattern executed both of its instructions.
+    * @param pattern index into PATTERNS
+    * @return dynamic count
+    **/
+       public long getFiredCount(int pattern) {
+         return fired[pattern];
+      }
+
+
+   /**
+    * Produce a table of sites and fired counts for each pattern, one line per pattern.
+    * @return the report
+    **/
+       public String getReport() {
+         StringBuffer report = new StringBuffer();
+         report.append(pad("fusion", 20)).append(pad("sites", 10)).append("fired\n");
+         for (int i=0; i<PATTERNS.length; i++) {
+            report.append(pad(PATTERNS[i], 20)).append(pad(""+sites[i], 10)).append(fired[i]).append("\n");
+         }
+         return report.toString();
+      }
+
+
+       private static String pad(String value, int width) {
+         StringBuffer padded = new StringBuffer(value);
+         while (padded.length() < width) {
+            padded.append(' ');
+         }
+         return padded.toString();
+      }
+
+
+       // Returns index of the pattern matched by the pair, or -1 if none.
+       private static int match(ProgramStatement first, ProgramStatement second) {
+         String firstName = first.getInstruction().getName();
+         String secondName = second.getInstruction().getName();
+         int[] firstOperands = first.getOperands();
+         if (firstName.equals("lui")) {
+            if (secondName.equals("ori") && reads(second, firstOperands[0])) {
+               return LUI_ORI;
+            }
+            if ((isOneOf(secondName, LOADS) || isOneOf(secondName, STORES)) 
+                && second.getOperands().length > 2 && second.getOperands()[2] == firstOperands[0]) {
+               return LUI_MEMORY;
+            }
+            return -1;
+         }
+         if (isOneOf(firstName, COMPARES) && isOneOf(secondName, BRANCHES) && reads(second, firstOperands[0])) {
+            return SLT_BRANCH;
+         }
+         if (isOneOf(firstName, LOADS) && reads(second, firstOperands[0])) {
+            return LOAD_USE;
+         }
+         if (firstName.equals("harddrop") && isOneOf(secondName, LINECLEARS) && reads(second, firstOperands[0])) {
+            return HARDDROP_LINECLEAR;
+         }
+         return -1;
+      }
+
+
+       // Approximates whether the statement reads the given register: the first operand
+       // is taken to be a destination except for branches and stores.  Used only to
+       // classify pairs; a fused pair executes correctly whether or not it is dependent.
+       private static boolean reads(ProgramStatement statement, int register) {
+         if (register == 0) {
+            return false;
+         }
+         BasicInstruction instruction = (BasicInstruction) statement.getInstruction();
+         BasicInstructionFormat format = instruction.getInstructionFormat();
+         int[] operands = statement.getOperands();
+         int first = (format == BasicInstructionFormat.I_BRANCH_FORMAT
+                     || isOneOf(instruction.getName(), STORES)) ? 0 : 1;
+         int last = (format == BasicInstructionFormat.I_BRANCH_FORMAT) ? 1 : operands.length - 1;
+         for (int i=first; i<=last && i<operands.length; i++) {
+            if (operands[i] == register) {
+               return true;
+            }
+         }
+         return false;
+      }
+
+
+       private static boolean isOneOf(String name, String[] names) {
+         for (int i=0; i<names.length; i++) {
+            if (names[i].equals(name)) {
+               return true;
+            }
+         }
+         return false;
+      }
+
+
+   /**
+    * A pair of adjacent instructions executed as one step.
+    **/
+       public class Fusion {
+         private int pattern;
+         private int address;
+         private ProgramStatement first, second;
+         private SimulationCode firstCode, secondCode;
+         private int executed;
+
+          private Fusion(int pattern, int address, ProgramStatement first, ProgramStatement second,
+                         SimulationCode firstCode, SimulationCode secondCode) {
+            this.pattern = pattern;
+            this.address = address;
+            this.first = first;
+            this.second = second;
+            this.firstCode = firstCode;
+            this.secondCode = secondCode;
+         }
+
+      /**
+       * Execute the pair, starting with the program counter at the first instruction.
+       * @throws ProcessingException from the instruction that raised it; the program counter
+       * and the count returned by getExecutedCount() then include that instruction.
+       **/
+          public void execute() throws ProcessingException {
+            executed = 1;
+            RegisterFile.incrementPC();
+            firstCode.simulate(first);
+            if (RegisterFile.getProgramCounter() != address + Instruction.INSTRUCTION_LENGTH) {
+               return;
+            }
+            executed = 2;
+            RegisterFile.incrementPC();
+            secondCode.simulate(second);
+            fired[pattern]++;
+         }
+
+      /**
+       * Number of instructions started by the latest execute(), including one that threw.
+       * @return 1 or 2
+       **/
+          public int getExecutedCount() {
+            return executed;
+         }
+
+      /**
+       * Address of the last instruction started by the latest execute().
+       * @return instruction address
+       **/
+          public int getLastExecutedAddress() {
+            return address + ((executed - 1) << 2);
+         }
+      }
+   }
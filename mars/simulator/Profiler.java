@@ -0,0 +1,344 @@
+   package mars.simulator;
+   import mars.*;
+   import mars.assembler.*;
+   import mars.mips.hardware.*;
+   import mars.util.*;
+   import java.io.*;
+   import java.util.*;
+
+	/*
+Copyright (c) 2003-2014,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Sampling profiler.  The simulator hands it the address and binary of every instruction
+ * it executes; on average every <i>interval</i> instructions (or, in timer mode, at
+ * the first instruction after each <i>interval</i> milliseconds) it takes a sample: the
+ * program counter and a shadow call stack.  Each count between samples is drawn
+ * uniformly from [interval/2, 3*interval/2), so samples do not keep landing on the same
+ * instruction of a loop whose length divides the interval.  The shadow stack is kept by watching calls
+ * (<code>jal</code>, <code>jalr</code>) and returns (<code>jr $ra</code>), so it costs
+ * a few integer operations per instruction and needs no help from the program.
+ * <p>
+ * Samples are attributed to source lines through the ProgramStatement at the sampled
+ * address, and to functions, named by the label at the called address, both as self time
+ * (the function was running) and as total time (it was on the stack).  writeReport()
+ * prints the top entries of each, writeCollapsedStacks() the stacks in the collapsed
+ * format read by flame graph tools.  Reports look up statements and labels in the
+ * current context's memory and the symbol tables, so they are made while the profiled
+ * program is still loaded.
+ * <p>
+ * A profiler is attached to a SimulationContext with setProfiler().  As with tracing,
+ * blocks and instruction fusion are not used while it is.
+ *
+ * @version October 2026
+ **/
+
+    public class Profiler {
+      private static final int MAX_DEPTH = 1024; // deeper calls are not tracked
+
+      private int interval;
+      private boolean timer;
+      private int countdown;
+      private Random random = new Random(0); // reproducible sampling points
+      private volatile boolean sampleDue;
+      private Timer sampleTimer;
+      private int[] stack = new int[MAX_DEPTH]; // called addresses, stack[0] is where the run started
+      private int depth = -1;
+      private int overflow = 0; // calls made beyond MAX_DEPTH and not yet returned from
+      private long samples = 0;
+      private HashMap addressSamples = new HashMap(); // Integer address -> int[1] count
+      private HashMap stackSamples = new HashMap();   // String of hex called addresses -> int[1] count
+
+
+   /**
+    * Create a profiler.
+    * @param interval number of instructions, or milliseconds if timer is true, between samples
+    * @param timer true to sample on a timer rather than by instruction count
+    **/
+       public Profiler(int interval, boolean timer) {
+         if (interval <= 0) {
+            throw new IllegalArgumentException("Invalid sampling interval: "+interval);
+         }
+         this.interval = interval;
+         this.timer = timer;
+         this.countdown = nextInterval();
+         if (timer) {
+            sampleTimer = new Timer(true);
+            sampleTimer.schedule(
+                  new TimerTask() {
+                     public void run() {
+                        sampleDue = true;
+                     }
+                  }, interval, interval);
+         }
+      }
+
+
+   /**
+    * Stop the sampling timer, if any.  Samples taken so far remain available.
+    **/
+       public void stop() {
+         if (sampleTimer != null) {
+            sampleTimer.cancel();
+            sampleTimer = null;
+         }
+      }
+
+
+   /**
+    * Forget all samples and the call stack.
+    **/
+       public synchronized void reset() {
+         depth = -1;
+         overflow = 0;
+         samples = 0;
+         countdown = nextInterval();
+         addressSamples.clear();
+         stackSamples.clear();
+      }
+
+
+   /**
+    * Called by the simulator before it executes each instruction.
+    * @param address instruction address
+    * @param binary the binary instruction
+    **/
+       public void instruction(int address, int binary) {
+         if (depth < 0) {
+            depth = 0;
+            stack[0] = address;
+         }
+         int opcode = binary >>> 26;
+         if (opcode == 3) {                                  // jal
+            call(((address + 4) & 0xF0000000) | ((binary & 0x03FFFFFF) << 2));
+         }
+         else if (opcode == 0) {
+            int funct = binary & 0x3F;
+            if (funct == 9) {                                // jalr
+               call(RegisterFile.getValue((binary >>> 21) & 0x1F));
+            }
+            else if (funct == 8 && ((binary >>> 21) & 0x1F) == 31 && depth > 0) { // jr $ra
+               if (overflow > 0) {
+                  overflow--;
+               }
+               else {
+                  depth--;
+               }
+            }
+         }
+         if (timer) {
+            if (sampleDue) {
+               sampleDue = false;
+               sample(address);
+            }
+         }
+         else if (--countdown == 0) {
+            countdown = nextInterval();
+            sample(address);
+         }
+      }
+   
+   
+       // Number of instructions until the next sample, averaging interval.
+       private int nextInterval() {
+         return Math.max(1, interval / 2 + random.nextInt(interval));
+      }
+
+
+   /**
+    * Number of samples taken.
+    * @return sample count
+    **/
+       public synchronized long getSampleCount() {
+         return samples;
+      }
+
+
+   /**
+    * Print the hottest source lines and functions.
+    * @param out destination
+    * @param top maximum number of lines and of functions to print
+    **/
+       public synchronized void writeReport(PrintStream out, int top) {
+         out.println(samples+" samples");
+         if (samples == 0) {
+            return;
+         }
+         // Lines: samples at addresses of the same source line are added up.
+         HashMap lines = new HashMap();
+         for (Iterator it = addressSamples.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry entry = (Map.Entry) it.next();
+            add(lines, sourceLine(((Integer) entry.getKey()).intValue()), ((int[]) entry.getValue())[0]);
+         }
+         out.println();
+         out.println("  samples      %  source line");
+         printTop(out, lines, top);
+         // Functions: self samples for the innermost function, total for every function on the stack.
+         HashMap self = new HashMap();
+         HashMap total = new HashMap();
+         for (Iterator it = stackSamples.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry entry = (Map.Entry) it.next();
+            String[] frames = ((String) entry.getKey()).split(";");
+            int count = ((int[]) entry.getValue())[0];
+            HashSet seen = new HashSet();
+            for (int i=0; i<frames.length; i++) {
+               String name = functionName(frames[i]);
+               if (seen.add(name)) {
+                  add(total, name, count);
+               }
+            }
+            add(self, functionName(frames[frames.length-1]), count);
+         }
+         out.println();
+         out.println("  samples      %  function (self)");
+         printTop(out, self, top);
+         out.println();
+         out.println("  samples      %  function (total)");
+         printTop(out, total, top);
+      }
+
+
+   /**
+    * Print each sampled call stack with its sample count, outermost function first and
+    * separated by semicolons: the collapsed format read by flame graph tools.
+    * @param out destination
+    **/
+       public synchronized void writeCollapsedStacks(PrintStream out) {
+         for (Iterator it = stackSamples.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry entry = (Map.Entry) it.next();
+            String[] frames = ((String) entry.getKey()).split(";");
+            StringBuffer line = new StringBuffer();
+            for (int i=0; i<frames.length; i++) {
+               if (i > 0) {
+                  line.append(';');
+               }
+               line.append(functionName(frames[i]).replace(' ', '_'));
+            }
+            out.println(line+" "+((int[]) entry.getValue())[0]);
+         }
+      }
+
+
+       private void call(int target) {
+         if (depth + 1 < MAX_DEPTH) {
+            stack[++depth] = target;
+         }
+         else {
+            overflow++;
+         }
+      }
+
+
+       private synchronized void sample(int address) {
+         samples++;
+         add(addressSamples, Integer.valueOf(address), 1);
+         StringBuffer key = new StringBuffer();
+         for (int i=0; i<=depth; i++) {
+            if (i > 0) {
+               key.append(';');
+            }
+            key.append(Binary.intToHexString(stack[i]));
+         }
+         add(stackSamples, key.toString(), 1);
+      }
+
+
+       private static void add(HashMap counts, Object key, int count) {
+         int[] counter = (int[]) counts.get(key);
+         if (counter == null) {
+            counts.put(key, new int[] { count });
+         }
+         else {
+            counter[0] += count;
+         }
+      }
+
+
+       // Print the entries with the highest counts, highest first.
+       private void printTop(PrintStream out, HashMap counts, int top) {
+         ArrayList entries = new ArrayList(counts.entrySet());
+         Collections.sort(entries,
+               new Comparator() {
+                  public int compare(Object a, Object b) {
+                     return ((int[]) ((Map.Entry) b).getValue())[0] - ((int[]) ((Map.Entry) a).getValue())[0];
+                  }
+               });
+         for (int i=0; i<entries.size() && i<top; i++) {
+            Map.Entry entry = (Map.Entry) entries.get(i);
+            int count = ((int[]) entry.getValue())[0];
+            String percent = Double.toString(Math.round(count * 1000.0 / samples) / 10.0);
+            out.println(pad(Integer.toString(count), 9)+pad(percent, 7)+"  "+entry.getKey());
+         }
+      }
+
+
+       private static String pad(String text, int width) {
+         StringBuffer padded = new StringBuffer();
+         for (int i=text.length(); i<width; i++) {
+            padded.append(' ');
+         }
+         return padded.append(text).toString();
+      }
+
+
+       // "file:line  source" for the statement at an address.  Also used by BranchPredictorSweep.
+       // Only the first instruction of a pseudo-instruction expansion has the source, so the
+       // others show their basic statement instead.
+       static String sourceLine(int address) {
+         ProgramStatement statement = statementAt(address);
+         if (statement == null || statement.getSourceMIPSprogram() == null) {
+            return Binary.intToHexString(address);
+         }
+         String source = statement.getSource().trim();
+         if (source.length() == 0) {
+            source = statement.getPrintableBasicAssemblyStatement();
+         }
+         return new File(statement.getSourceMIPSprogram().getFilename()).getName()+":"
+                +statement.getSourceLine()+"  "+source;
+      }
+
+
+       // Label at a called address (given in hex), or the address itself.
+       private static String functionName(String hexAddress) {
+         ProgramStatement statement = statementAt(Binary.stringToInt(hexAddress));
+         Symbol symbol = (statement == null || statement.getSourceMIPSprogram() == null)
+                  ? Globals.symbolTable.getSymbolGivenAddress(hexAddress)
+                  : statement.getSourceMIPSprogram().getLocalSymbolTable().getSymbolGivenAddressLocalOrGlobal(hexAddress);
+         return (symbol == null) ? hexAddress : symbol.getName();
+      }
+
+
+       private static ProgramStatement statementAt(int address) {
+         try {
+            return Memory.getInstance().getStatementNoNotify(address);
+         }
+             catch (AddressErrorException e) {
+               return null;
+            }
+      }
+   }
@@ -0,0 +1,361 @@
+   package mars.simulator;
+   import java.io.*;
+   import java.util.*;
+
+	/*
+Copyright (c) 2003-2014,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Log of a run's interactions with the world outside the simulated machine, in the order
+ * they happen.  Its inputs are what the read syscalls read (console lines and file data),
+ * random numbers (syscalls and custom-language instructions), the time, and the values
+ * the program loads from memory-mapped I/O devices.  Unless created without them, it also
+ * logs the run's effects: console output and the results of opening, writing and closing
+ * files.
+ * <p>
+ * A SimulationContext with a ReplayLog records each interaction as it happens.  If the log
+ * is moved back to an earlier position, for instance because the machine state has been
+ * restored to a checkpoint, re-executing the program replays the logged interactions
+ * instead of performing them: reads return what they returned the first time, random
+ * numbers repeat, and nothing is printed or written twice.  Once the log is used up,
+ * interactions are performed and recorded again.  Re-execution is thus exact, which is
+ * what TimeTravel relies on.
+ * <p>
+ * A log of inputs only is a journal: save() writes it to a compact binary file, and a run
+ * given the loaded journal (the <code>record</code> and <code>replay</code> command line
+ * options) gets the same inputs and so reproduces the recorded run exactly, printing and
+ * writing files as it goes.  Files the program opens must still exist, though what it
+ * reads from them comes from the journal.  Interrupts raised by devices are not logged.
+ * <p>
+ * The static methods are used by the syscalls and operate on the log of the calling
+ * thread's SimulationContext, if it has one.
+ *
+ * @version October 2026
+ **/
+
+    public class ReplayLog {
+      private static final int MAGIC = 0x4D52534A; // "MRSJ"
+      private static final int VERSION = 1;
+      // Entry tags in a saved journal.
+      private static final int STRING = 0;
+      private static final int INTEGER = 1;
+      private static final int LONG = 2;
+      private static final int FLOAT = 3;
+      private static final int DOUBLE = 4;
+      private static final int FILE_RESULT = 5;
+
+      private ArrayList entries;
+      private int position;
+      private boolean effects;
+
+
+   /**
+    * Create an empty log of inputs and effects.
+    **/
+       public ReplayLog() {
+         this(true);
+      }
+
+
+   /**
+    * Create an empty log.
+    * @param effects true to log effects (output, file writes, opens and closes) as well as
+    * inputs, so they are not repeated on replay; false for a journal of inputs only.
+    **/
+       public ReplayLog(boolean effects) {
+         this.entries = new ArrayList();
+         this.position = 0;
+         this.effects = effects;
+      }
+
+
+   /**
+    * Read a journal written by save().  Its position is at the start, ready to replay.
+    * @param file the journal file
+    * @return the journal, which logs inputs only
+    * @throws IOException if the file cannot be read or is not a journal
+    **/
+       public static ReplayLog load(File file) throws IOException {
+         DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+         try {
+            if (in.readInt() != MAGIC) {
+               throw new IOException(file+" is not a MARS journal");
+            }
+            if (in.readInt() != VERSION) {
+               throw new IOException(file+" is from another version of MARS");
+            }
+            ReplayLog journal = new ReplayLog(false);
+            int count = in.readInt();
+            for (int i=0; i<count; i++) {
+               switch (in.readByte()) {
+                  case STRING :
+                     journal.entries.add(readString(in));
+                     break;
+                  case INTEGER :
+                     journal.entries.add(Integer.valueOf(in.readInt()));
+                     break;
+                  case LONG :
+                     journal.entries.add(Long.valueOf(in.readLong()));
+                     break;
+                  case FLOAT :
+                     journal.entries.add(Float.valueOf(Float.intBitsToFloat(in.readInt())));
+                     break;
+                  case DOUBLE :
+                     journal.entries.add(Double.valueOf(Double.longBitsToDouble(in.readLong())));
+                     break;
+                  case FILE_RESULT :
+                     Integer result = Integer.valueOf(in.readInt());
+                     String error = readString(in);
+                     int length = in.readInt();
+                     byte[] data = null;
+                     if (length >= 0) {
+                        data = new byte[length];
+                        in.readFully(data);
+                     }
+                     journal.entries.add(new Object[] { result, error, data });
+                     break;
+                  default :
+                     throw new IOException(file+" is corrupt");
+               }
+            }
+            return journal;
+         }
+         finally {
+            in.close();
+         }
+      }
+
+
+   /**
+    * Write the log to a file, for load().  Only logs of inputs (see the constructor) can
+    * be reloaded meaningfully.
+    * @param file the journal file
+    * @throws IOException if the file cannot be written
+    **/
+       public synchronized void save(File file) throws IOException {
+         DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+         try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (int i=0; i<entries.size(); i++) {
+               Object entry = entries.get(i);
+               if (entry instanceof String) {
+                  out.writeByte(STRING);
+                  writeString(out, (String) entry);
+               }
+               else if (entry instanceof Integer) {
+                  out.writeByte(INTEGER);
+                  out.writeInt(((Integer) entry).intValue());
+               }
+               else if (entry instanceof Long) {
+                  out.writeByte(LONG);
+                  out.writeLong(((Long) entry).longValue());
+               }
+               else if (entry instanceof Float) {
+                  out.writeByte(FLOAT);
+                  out.writeInt(Float.floatToRawIntBits(((Float) entry).floatValue()));
+               }
+               else if (entry instanceof Double) {
+                  out.writeByte(DOUBLE);
+                  out.writeLong(Double.doubleToRawLongBits(((Double) entry).doubleValue()));
+               }
+               else {
+                  Object[] result = (Object[]) entry;
+                  byte[] data = (byte[]) result[2];
+                  out.writeByte(FILE_RESULT);
+                  out.writeInt(((Integer) result[0]).intValue());
+                  writeString(out, (String) result[1]);
+                  out.writeInt((data == null) ? -1 : data.length);
+                  if (data != null) {
+                     out.write(data);
+                  }
+               }
+            }
+         }
+         finally {
+            out.close();
+         }
+      }
+
+
+   /**
+    * Returns true if the log holds effects as well as inputs.
+    * @return false for a journal of inputs only
+    **/
+       public boolean logsEffects() {
+         return effects;
+      }
+
+
+   /**
+    * Index of the next interaction.  It is replayed if less than size(), otherwise performed
+    * and recorded.
+    * @return position in the log
+    **/
+       public synchronized int getPosition() {
+         return position;
+      }
+
+
+   /**
+    * Move to an earlier position, so interactions from there on are replayed.
+    * @param position a position previously returned by getPosition()
+    **/
+       public synchronized void setPosition(int position) {
+         if (position < 0 || position > entries.size()) {
+            throw new IllegalArgumentException("Invalid log position: "+position);
+         }
+         this.position = position;
+      }
+
+
+   /**
+    * Discard the interactions from the current position on, so they are performed and
+    * recorded again.  Used when execution is known to diverge from the logged run.
+    **/
+       public synchronized void truncate() {
+         entries.subList(position, entries.size()).clear();
+      }
+
+
+   /**
+    * Number of interactions logged.
+    * @return log size
+    **/
+       public synchronized int size() {
+         return entries.size();
+      }
+
+
+   /**
+    * If the calling thread's context is replaying its log, returns the next logged value,
+    * which must be of the given type.  A value of another type means execution has
+    * diverged from the logged run (e.g. because the user changed a register): the rest
+    * of the log is then discarded and null returned.
+    * @param type class of the expected value
+    * @return the logged value, or null if the interaction is to be performed and recorded.
+    **/
+       public static Object replay(Class type) {
+         ReplayLog log = SimulationContext.current().getReplayLog();
+         if (log == null) {
+            return null;
+         }
+         synchronized (log) {
+            if (log.position == log.entries.size()) {
+               return null;
+            }
+            Object value = log.entries.get(log.position);
+            if (!type.isInstance(value)) {
+               log.entries.subList(log.position, log.entries.size()).clear();
+               return null;
+            }
+            log.position++;
+            return value;
+         }
+      }
+
+
+   /**
+    * As replay(), for an effect (output, or a file operation other than reading).  Returns
+    * null if the log holds inputs only, so the effect is performed.
+    * @param type class of the expected value
+    * @return the logged value, or null if the effect is to be performed and recorded.
+    **/
+       public static Object replayEffect(Class type) {
+         ReplayLog log = SimulationContext.current().getReplayLog();
+         return (log == null || !log.effects) ? null : replay(type);
+      }
+
+
+   /**
+    * As record(), for an effect.  Does nothing if the log holds inputs only.
+    * @param value what to return when the effect is replayed
+    * @return the value
+    **/
+       public static Object recordEffect(Object value) {
+         ReplayLog log = SimulationContext.current().getReplayLog();
+         return (log == null || !log.effects) ? value : record(value);
+      }
+
+
+   /**
+    * Log an int input that costs nothing to obtain, such as a random number from a new
+    * generator or a value loaded from a device: returns the logged value when replaying,
+    * otherwise records the given one.
+    * @param value the input as obtained now
+    * @return the input to use
+    **/
+       public static int replayInt(int value) {
+         if (SimulationContext.current().getReplayLog() == null) {
+            return value;
+         }
+         Integer logged = (Integer) replay(Integer.class);
+         return (logged != null) ? logged.intValue() : ((Integer) record(Integer.valueOf(value))).intValue();
+      }
+
+
+   /**
+    * Record an interaction just performed, if the calling thread's context has a log.
+    * @param value what to return when the interaction is replayed (not to be modified later)
+    * @return the value
+    **/
+       public static Object record(Object value) {
+         ReplayLog log = SimulationContext.current().getReplayLog();
+         if (log != null) {
+            synchronized (log) {
+               log.entries.add(value);
+               log.position = log.entries.size();
+            }
+         }
+         return value;
+      }
+   
+
+       // Strings are written as UTF-8 with a length (-1 for null), since they may exceed 64K.
+       private static void writeString(DataOutputStream out, String string) throws IOException {
+         if (string == null) {
+            out.writeInt(-1);
+            return;
+         }
+         byte[] bytes = string.getBytes("UTF-8");
+         out.writeInt(bytes.length);
+         out.write(bytes);
+      }
+
+
+       private static String readString(DataInputStream in) throws IOException {
+         int length = in.readInt();
+         if (length < 0) {
+            return null;
+         }
+         byte[] bytes = new byte[length];
+         in.readFully(bytes);
+         return new String(bytes, "UTF-8");
+      }
+   }
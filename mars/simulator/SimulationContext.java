@@ -0,0 +1,456 @@
+   package mars.simulator;
+   import mars.*;
+   import mars.util.*;
+   import mars.mips.hardware.*;
+   import java.io.*;
+
+	/*
+Copyright (c) 2003-2014,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * The machine state of one simulated MIPS program: memory, the register files
+ * (RegisterFile, Coprocessor0, Coprocessor1), delayed branch state, the syscall file
+ * table with its standard streams, the back-stepper, the exit code and the lock
+ * guarding memory and registers.
+ * <p>
+ * The existing static classes (RegisterFile, Memory.getInstance(), DelayedBranch, SystemIO
+ * and so on) remain the way simulation code reaches this state.  They are thin delegates
+ * to the context returned by current(): the context bound to the calling thread, or the
+ * default context if there is none.  The default context is what MARS has always used;
+ * its components are the classes' own static instances, Globals.program's back-stepper,
+ * Globals.exitCode and Globals.memoryAndRegistersLock, so the GUI and tools are unaffected.
+ * <p>
+ * To run several programs at once, assemble (assembly is not thread-safe and writes to
+ * the current context's memory), then for each run create a context from a copy of that
+ * memory, bind() it in the worker thread and simulate as usual.  Threads started by a
+ * bound thread, such as the simulator's own worker thread, inherit its binding.
+ * Memory configuration, settings, the symbol table, the random number streams and
+ * external (MMIO device) interrupts remain shared by all contexts.
+ *
+ * @version October 2026
+ **/
+
+    public class SimulationContext {
+      private static final SimulationContext defaultContext = new SimulationContext(true);
+      private static final ThreadLocal boundContext = new InheritableThreadLocal();
+      // Set when any context is first bound; until then current() need not consult boundContext.
+      private static boolean anyBound = false;
+
+      private boolean isDefault;
+      private Memory memory;
+      private RegisterFile registerFile;
+      private Coprocessor0 coprocessor0;
+      private Coprocessor1 coprocessor1;
+      private DelayedBranch delayedBranch;
+      private SystemIO.FileIOData fileTable;
+      private BackStepper backStepper;
+      private Object lock;
+      private int exitCode;
+      private boolean exitRequested;
+      private long instructionCount;
+      private ReplayLog replayLog;
+      private TraceWriter traceWriter;
+      private Profiler profiler;
+      private TimingModel timingModel;
+      private BranchPredictorSweep branchPredictors;
+
+
+       // Constructor for the default context.  Null components tell the static classes
+       // to use their own instances.
+       private SimulationContext(boolean isDefault) {
+         this.isDefault = isDefault;
+      }
+
+
+   /**
+    * Create a context whose memory is a copy of the current context's memory (typically
+    * holding a just-assembled program) and whose registers have their reset values.  It
+    * uses System.in, System.out and System.err for standard input and output.
+    **/
+       public SimulationContext() {
+         this(Memory.getInstance().copy(), System.in, System.out, System.err);
+      }
+
+
+   /**
+    * Create a context with the given memory and standard streams, and registers at their
+    * reset values.  Back-stepping is disabled.
+    * @param memory the memory for this context, not shared with any other context
+    * @param in standard input (file descriptor 0 and read syscalls)
+    * @param out standard output (file descriptor 1 and print syscalls)
+    * @param err standard error (file descriptor 2)
+    **/
+       public SimulationContext(Memory memory, InputStream in, PrintStream out, PrintStream err) {
+         this.isDefault = false;
+         this.memory = memory;
+         this.registerFile = new RegisterFile();
+         this.coprocessor0 = new Coprocessor0();
+         this.coprocessor1 = new Coprocessor1();
+         this.delayedBranch = new DelayedBranch();
+         this.fileTable = new SystemIO.FileIOData(in, out, err);
+         this.backStepper = null;
+         this.lock = new Object();
+         this.exitCode = 0;
+         this.instructionCount = 0;
+      }
+
+
+   /**
+    * Create a context that continues from the current state of the calling thread's context:
+    * its memory is a fork (see Memory.fork(), so only blocks written afterwards by either
+    * context are copied), and its registers, condition flags and delayed branch state are
+    * copies.  Open files other than the standard streams are not inherited; the new
+    * context's standard streams are those given.  Back-stepping is disabled.  Fork several
+    * contexts from one state to explore different continuations of it, e.g. different inputs.
+    * @param in standard input (file descriptor 0 and read syscalls)
+    * @param out standard output (file descriptor 1 and print syscalls)
+    * @param err standard error (file descriptor 2)
+    * @return the new context, not bound to any thread
+    **/
+       public static SimulationContext fork(InputStream in, PrintStream out, PrintStream err) {
+         synchronized (current().getLock()) {
+            SimulationContext context = new SimulationContext(Memory.getInstance().fork(), in, out, err);
+            context.registerFile = RegisterFile.copy();
+            context.coprocessor0 = Coprocessor0.copy();
+            context.coprocessor1 = Coprocessor1.copy();
+            context.delayedBranch = DelayedBranch.copy();
+            return context;
+         }
+      }
+   
+   
+   /**
+    * Returns the context bound to the calling thread, or the default context.
+    * @return the current context
+    **/
+       public static SimulationContext current() {
+         if (anyBound) {
+            SimulationContext context = (SimulationContext) boundContext.get();
+            if (context != null) {
+               return context;
+            }
+         }
+         return defaultContext;
+      }
+
+
+   /**
+    * Returns the default context, used by threads with no bound context.
+    * @return the default context
+    **/
+       public static SimulationContext getDefault() {
+         return defaultContext;
+      }
+
+
+   /**
+    * Bind this context to the calling thread (and threads it subsequently starts).
+    **/
+       public void bind() {
+         anyBound = true;
+         boundContext.set(this);
+      }
+
+
+   /**
+    * Remove the calling thread's binding, so it uses the default context again.
+    **/
+       public static void unbind() {
+         boundContext.remove();
+      }
+
+
+   /**
+    * Returns true for the default context.
+    * @return true if this is the default context
+    **/
+       public boolean isDefault() {
+         return isDefault;
+      }
+
+
+   /**
+    * Memory of this context.
+    * @return Memory object, null in the default context (meaning the unique Memory instance).
+    **/
+       public Memory getMemory() {
+         return memory;
+      }
+
+
+   /**
+    * General purpose registers, hi, lo and program counter of this context.
+    * @return RegisterFile object, null in the default context.
+    **/
+       public RegisterFile getRegisterFile() {
+         return registerFile;
+      }
+
+
+   /**
+    * Coprocessor 0 registers of this context.
+    * @return Coprocessor0 object, null in the default context.
+    **/
+       public Coprocessor0 getCoprocessor0() {
+         return coprocessor0;
+      }
+
+
+   /**
+    * Coprocessor 1 registers and condition flags of this context.
+    * @return Coprocessor1 object, null in the default context.
+    **/
+       public Coprocessor1 getCoprocessor1() {
+         return coprocessor1;
+      }
+
+
+   /**
+    * Delayed branch state of this context.
+    * @return DelayedBranch object, null in the default context.
+    **/
+       public DelayedBranch getDelayedBranch() {
+         return delayedBranch;
+      }
+
+
+   /**
+    * Syscall file table and standard streams of this context.
+    * @return file table, null in the default context.
+    **/
+       public SystemIO.FileIOData getFileTable() {
+         return fileTable;
+      }
+
+
+   /**
+    * Use the given file table instead of this context's own, so that several contexts
+    * continuing one run (see TimeTravel) share its open files and standard input buffer.
+    * @param fileTable the file table of another context (not the default one)
+    **/
+       void setFileTable(SystemIO.FileIOData fileTable) {
+         this.fileTable = fileTable;
+      }
+
+
+   /**
+    * Log in which this context records, or from which it replays, its interactions with
+    * the outside world.
+    * @return ReplayLog object, null if there is none (the usual case).
+    **/
+       public ReplayLog getReplayLog() {
+         return replayLog;
+      }
+
+
+   /**
+    * Set the log in which this context records, or from which it replays, its interactions
+    * with the outside world.
+    * @param replayLog the log, or null for none
+    **/
+       public void setReplayLog(ReplayLog replayLog) {
+         this.replayLog = replayLog;
+      }
+
+
+   /**
+    * Writer of this context's execution trace.
+    * @return TraceWriter object, null if the context is not traced (the usual case).
+    **/
+       public TraceWriter getTraceWriter() {
+         return traceWriter;
+      }
+
+
+   /**
+    * Set the writer of this context's execution trace.
+    * @param traceWriter an open trace writer, or null to stop tracing
+    **/
+       public void setTraceWriter(TraceWriter traceWriter) {
+         this.traceWriter = traceWriter;
+      }
+
+
+   /**
+    * Profiler sampling this context's execution.
+    * @return Profiler object, null if the context is not profiled (the usual case).
+    **/
+       public Profiler getProfiler() {
+         return profiler;
+      }
+
+
+   /**
+    * Set the profiler sampling this context's execution.  It takes effect at the next run.
+    * @param profiler the profiler, or null to stop profiling
+    **/
+       public void setProfiler(Profiler profiler) {
+         this.profiler = profiler;
+      }
+
+
+   /**
+    * Timing model estimating the cycles this context's execution takes.
+    * @return TimingModel object, null if there is none (the usual case).
+    **/
+       public TimingModel getTimingModel() {
+         return timingModel;
+      }
+
+
+   /**
+    * Set the timing model estimating the cycles this context's execution takes.  It takes
+    * effect at the next run.
+    * @param timingModel the model, or null for none
+    **/
+       public void setTimingModel(TimingModel timingModel) {
+         this.timingModel = timingModel;
+      }
+
+
+   /**
+    * Branch predictors evaluated on this context's conditional branches.
+    * @return BranchPredictorSweep object, null if there is none (the usual case).
+    **/
+       public BranchPredictorSweep getBranchPredictors() {
+         return branchPredictors;
+      }
+
+
+   /**
+    * Set the branch predictors evaluated on this context's conditional branches.  They take
+    * effect at the next run.
+    * @param branchPredictors the predictors, or null for none
+    **/
+       public void setBranchPredictors(BranchPredictorSweep branchPredictors) {
+         this.branchPredictors = branchPredictors;
+      }
+
+
+   /**
+    * Back-stepper recording this context's changes.  In the default context this is the
+    * back-stepper of Globals.program.
+    * @return BackStepper object, null if there is none.
+    **/
+       public BackStepper getBackStepper() {
+         if (isDefault) {
+            return (Globals.program == null) ? null : Globals.program.getBackStepper();
+         }
+         return backStepper;
+      }
+
+
+   /**
+    * Set the back-stepper for a context other than the default one.
+    * @param backStepper the back-stepper, or null for none
+    **/
+       public void setBackStepper(BackStepper backStepper) {
+         this.backStepper = backStepper;
+      }
+
+
+   /**
+    * Lock that guards this context's memory and registers.  In the default context this is
+    * Globals.memoryAndRegistersLock.
+    * @return lock object
+    **/
+       public Object getLock() {
+         return (isDefault) ? Globals.memoryAndRegistersLock : lock;
+      }
+
+
+   /**
+    * Exit code set by the MIPS program (syscall 17).  In the default context this is Globals.exitCode.
+    * @return exit code
+    **/
+       public int getExitCode() {
+         return (isDefault) ? Globals.exitCode : exitCode;
+      }
+
+
+   /**
+    * Set the exit code of the MIPS program.
+    * @param exitCode the exit code
+    **/
+       public void setExitCode(int exitCode) {
+         if (isDefault) {
+            Globals.exitCode = exitCode;
+         }
+         else {
+            this.exitCode = exitCode;
+         }
+      }
+   
+   
+   /**
+    * Ask the simulator to end the MIPS program normally once the current instruction has
+    * completed, as the exit syscalls do.  The simulator checks for this after each
+    * instruction, which is much cheaper than the ProcessingException without an error
+    * list that used to signal termination (and is still accepted).
+    **/
+       public void requestExit() {
+         exitRequested = true;
+      }
+   
+   
+   /**
+    * Returns true if requestExit() has been called since the simulator last cleared the request.
+    * @return true if the program is to end
+    **/
+       public boolean isExitRequested() {
+         return exitRequested;
+      }
+   
+   
+   /**
+    * Clear a request to end the program, called by the simulator when it starts a run and
+    * when it acts on the request.
+    **/
+       public void clearExitRequest() {
+         exitRequested = false;
+      }
+   
+   
+   /**
+    * Number of instructions executed in this context by simulation without a GUI,
+    * including any that terminated the program or raised an exception.
+    * @return instruction count
+    **/
+       public long getInstructionCount() {
+         return instructionCount;
+      }
+   
+   
+   /**
+    * Add to the count of instructions executed, called by the simulator at the end of each run.
+    * @param count number of instructions executed by the run
+    **/
+       public void addInstructionCount(long count) {
+         instructionCount += count;
+      }
+   }
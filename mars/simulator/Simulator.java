@@ -59,6 +59,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       public static final int NORMAL_TERMINATION = 4;
       public static final int CLIFF_TERMINATION = 5; // run off bottom of program
       public static final int PAUSE_OR_STOP = 6;
+      // Number of instructions the headless loop executes between checks of the
+      // stop flag, external interrupts and back-stepping setting.
+      private static final int HEADLESS_BLOCK_LENGTH = 1024;
    
       /**
    	 * Returns the Simulator object
@@ -112,17 +115,37 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     **/
     
        public boolean simulate(MIPSprogram p, int pc, int maxSteps, int[] breakPoints, AbstractAction actor) throws ProcessingException {
-         simulatorThread = new SimThread(p,pc,maxSteps,breakPoints,actor);
-         simulatorThread.start();
+         return simulate(p, pc, maxSteps, (breakPoints == null) ? null : new BreakpointTable(breakPoints), actor);
+      }
+   
+   
+   /**
+    * Simulate execution of given MIPS program.  It must have already been assembled.
+    * @param p The MIPSprogram to be simulated.
+    * @param pc address of first instruction to simulate; this goes into program counter
+    * @param maxSteps maximum number of steps to perform before returning false (0 or less means no max)
+    * @param breakpoints breakpoints, watches and step markers, use null if none
+    * @param actor the GUI component responsible for this call, usually GO or STEP.  null if none.
+    * @return true if execution completed, false otherwise
+    * @throws ProcessingException Throws exception if run-time exception occurs.
+    **/
+    
+       public boolean simulate(MIPSprogram p, int pc, int maxSteps, BreakpointTable breakpoints, AbstractAction actor) throws ProcessingException {
+         // Local reference because threads running other SimulationContexts may also call this.
+         SimThread thread = new SimThread(p,pc,maxSteps,breakpoints,actor);
+         simulatorThread = thread;
+         thread.start();
       	
       	// Condition should only be true if run from command-line instead of GUI.
       	// If so, just stick around until execution thread is finished.
          if (actor == null) {
-            Object dun = simulatorThread.get(); // this should emulate join()
-            ProcessingException pe = simulatorThread.pe;
-            boolean done = simulatorThread.done;
+            Object dun = thread.get(); // this should emulate join()
+            ProcessingException pe = thread.pe;
+            boolean done = thread.done;
             if (done) SystemIO.resetFiles(); // close any files opened in MIPS progra
-            this.simulatorThread = null;
+            if (this.simulatorThread == thread) {
+               this.simulatorThread = null;
+            }
             if (pe != null) {
                throw pe;
             }
@@ -177,13 +200,21 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        private void notifyObserversOfExecutionStart(int maxSteps, int programCounter) {
          this.setChanged();
          this.notifyObservers(new SimulatorNotice(SimulatorNotice.SIMULATOR_START,
-            maxSteps, RunSpeedPanel.getInstance().getRunSpeed(), programCounter) );
+            maxSteps, getRunSpeed(), programCounter) );
       }
    
        private void notifyObserversOfExecutionStop(int maxSteps, int programCounter) {
          this.setChanged();
          this.notifyObservers(new SimulatorNotice(SimulatorNotice.SIMULATOR_STOP,
-            maxSteps, RunSpeedPanel.getInstance().getRunSpeed(), programCounter) );
+            maxSteps, getRunSpeed(), programCounter) );
+      }
+      
+       // Current run speed.  Does not create the RunSpeedPanel if there is none (e.g. command-line
+       // MARS), as its existence makes the simulator honor run speed instead of using constructHeadless().
+       private double getRunSpeed() {
+         return (Globals.getGui() != null || Globals.runSpeedPanelExists)
+                 ? RunSpeedPanel.getInstance().getRunSpeed()
+                 : RunSpeedPanel.UNLIMITED_SPEED;
       }
    	 
    	 
@@ -200,13 +231,19 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        class SimThread extends SwingWorker {
          private MIPSprogram p;
          private int pc, maxSteps;
-         private int[] breakPoints;
+         private BreakpointTable breakpoints;
          private boolean done;
          private ProcessingException pe;
          private volatile boolean stop = false;
          private volatile AbstractAction stopper;
          private AbstractAction starter;
          private int constructReturnReason;
+         private Memory memory;  // memory and lock of the SimulationContext being run
+         private Object lock;
+         private SimulationContext context;
+         private TraceWriter trace; // its execution trace, null if none
+         private Profiler profiler; // its profiler, null if none
+         private TimedInstruction timed; // feeds its timing model and branch predictors, null if none
       
       
          /**
@@ -215,15 +252,15 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       	 *  @param p  the MIPSprogram to be simulated
       	 *  @param pc address in text segment of first instruction to simulate
       	 *  @param maxSteps  maximum number of instruction steps to simulate.  Default of -1 means no maximum
-      	 *  @param breakPoints  array of breakpoints (instruction addresses) specified by user
+      	 *  @param breakpoints  breakpoints, watches and step markers specified by user, null if none
       	 *  @param starter the GUI component responsible for this call, usually GO or STEP.  null if none.
       	 */
-          SimThread(MIPSprogram p, int pc, int maxSteps, int[] breakPoints, AbstractAction starter) {
+          SimThread(MIPSprogram p, int pc, int maxSteps, BreakpointTable breakpoints, AbstractAction starter) {
             super(Globals.getGui()!=null);  
             this.p = p;
             this.pc = pc;
             this.maxSteps = maxSteps;
-            this.breakPoints = breakPoints;
+            this.breakpoints = breakpoints;
             this.done = false;
             this.pe = null;
             this.starter = starter;
@@ -259,19 +296,28 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             Thread.currentThread().setPriority(Thread.NORM_PRIORITY-1);
             Thread.yield();  // let the main thread run a bit to finish updating the GUI
          	
-            if (breakPoints == null || breakPoints.length == 0) {
-               breakPoints = null;
+            if (breakpoints != null && breakpoints.isEmpty()) {
+               breakpoints = null;
             } 
-            else {
-               Arrays.sort(breakPoints);  // must be pre-sorted for binary search
-            }
             
+            context = SimulationContext.current();
+            context.clearExitRequest();
+            memory = Memory.getInstance();
+            lock = context.getLock();
+            trace = SimulationContext.current().getTraceWriter();
+            profiler = SimulationContext.current().getProfiler();
+            TimingModel timing = SimulationContext.current().getTimingModel();
+            BranchPredictorSweep predictors = SimulationContext.current().getBranchPredictors();
+            timed = (timing == null && predictors == null) ? null : new TimedInstruction(timing, predictors);
             Simulator.getInstance().notifyObserversOfExecutionStart(maxSteps, pc);
          	
             RegisterFile.initializeProgramCounter(pc);
+            // Statements assembled into the text segment are loaded into this one to be
+            // executed (see Memory.loadStatement), so fetching one builds no object.
+            ProgramStatement fetched = new ProgramStatement();
             ProgramStatement statement = null;
             try {
-               statement = Globals.memory.getStatement(RegisterFile.getProgramCounter());
+               statement = memory.loadStatement(RegisterFile.getProgramCounter(), fetched);
             } 
                 catch (AddressErrorException e) {
                   ErrorList el = new ErrorList();
@@ -282,12 +328,13 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 						// incremented.  In this case, bad address is the instruction fetch itself so Program Counter has
 						// not yet been incremented.  We'll set the EPC directly here.  DPS 8-July-2013
                   Coprocessor0.updateRegister(Coprocessor0.EPC, RegisterFile.getProgramCounter());
-                  this.constructReturnReason = EXCEPTION;
-                  this.done = true;
-                  SystemIO.resetFiles(); // close any files opened in MIPS program
-                  Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
-                  return new Boolean(done);
+                  return finish(EXCEPTION, true, pc, 0);
                }
+            // Command-line runs (no GUI, no speed control) use the
+            // streamlined loop in constructHeadless().
+            if (starter == null && interactiveGUIUpdater == null && !Globals.runSpeedPanelExists) {
+               return constructHeadless(statement, fetched);
+            }
             int steps = 0;
          	
          	// *******************  PS addition 26 July 2006  **********************
@@ -321,6 +368,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          	// *********************************************************************
          	
             int pc = 0;  // added: 7/26/06 (explanation above)
+            // Pre-decoded text segment, if the program was assembled.  Statements fetched
+            // above come from it too (see Memory.loadStatement).
+            InstructionCache cache = memory.getInstructionCache();
+            SimulationCode code;
          
             while (statement != null) {
                pc = RegisterFile.getProgramCounter(); // added: 7/26/06 (explanation above)
@@ -329,34 +380,46 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             	// to access MIPS memory and registers only through synchronized blocks on same 
             	// lock variable, then full (albeit heavy-handed) protection of MIPS memory and 
             	// registers is assured.  Not as critical for reading from those resources.
-               synchronized (Globals.memoryAndRegistersLock) {
+               synchronized (lock) {
                   try {                      
                      if (Simulator.externalInterruptingDevice != NO_DEVICE) {
                         int deviceInterruptCode = externalInterruptingDevice;
                         Simulator.externalInterruptingDevice = NO_DEVICE;
                         throw new ProcessingException(statement, "External Interrupt", deviceInterruptCode);
                      }
-                     BasicInstruction instruction = (BasicInstruction)statement.getInstruction();
-                     if (instruction == null) {
-                        throw new ProcessingException(statement,
-                            "undefined instruction ("+Binary.intToHexString(statement.getBinaryStatement())+")",
-                            Exceptions.RESERVED_INSTRUCTION_EXCEPTION);
+                     code = (cache == null) ? null : cache.getSimulationCode(pc);
+                     if (code == null) {
+                        BasicInstruction instruction = (BasicInstruction)statement.getInstruction();
+                        if (instruction == null) {
+                           throw new ProcessingException(statement,
+                               "undefined instruction ("+Binary.intToHexString(statement.getBinaryStatement())+")",
+                               Exceptions.RESERVED_INSTRUCTION_EXCEPTION);
+                        }
+                        code = instruction.getSimulationCode();
+                     }
+                     if (trace != null) {
+                        trace.instruction(pc, statement.getBinaryStatement());
+                     }
+                     if (profiler != null) {
+                        profiler.instruction(pc, statement.getBinaryStatement());
+                     }
+                     if (timed != null) {
+                        timed.next(pc, statement.getBinaryStatement());
                      }
                      // THIS IS WHERE THE INSTRUCTION EXECUTION IS ACTUALLY SIMULATED!
-                     instruction.getSimulationCode().simulate(statement);
+                     code.simulate(statement);
+                     if (context.isExitRequested()) {
+                        return exited(pc, steps + 1);
+                     }
                   	
                   	// IF statement added 7/26/06 (explanation above)
                      if (Globals.getSettings().getBackSteppingEnabled()) {
-                        Globals.program.getBackStepper().addDoNothing(pc);
+                        SimulationContext.current().getBackStepper().addDoNothing(pc);
                      }
                   } 
                       catch (ProcessingException pe) {
-                        if (pe.errors() == null) {
-                           this.constructReturnReason = NORMAL_TERMINATION;
-                           this.done = true;
-                           SystemIO.resetFiles(); // close any files opened in MIPS program
-                           Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
-                           return new Boolean(done); // execution completed without error.
+                        if (pe.isTermination()) {
+                           return exited(pc, steps + 1); // execution completed without error.
                         } 
                         else {
                            // See if an exception handler is present.  Assume this is the case
@@ -366,19 +429,15 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                         	// MIPS program with appropriate error message.
                            ProgramStatement exceptionHandler = null;
                            try {
-                              exceptionHandler = Globals.memory.getStatement(Memory.exceptionHandlerAddress);
+                              exceptionHandler = memory.getStatement(Memory.exceptionHandlerAddress);
                            } 
                                catch (AddressErrorException aee) { } // will not occur with this well-known addres
                            if (exceptionHandler != null) {
                               RegisterFile.setProgramCounter(Memory.exceptionHandlerAddress);
                            } 
                            else {
-                              this.constructReturnReason = EXCEPTION;
                               this.pe = pe;
-                              this.done = true;
-                              SystemIO.resetFiles(); // close any files opened in MIPS program
-                              Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
-                              return new Boolean(done);
+                              return finish(EXCEPTION, true, pc, steps + 1);
                            }
                         }
                      }
@@ -392,32 +451,20 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                else if (DelayedBranch.isRegistered()) {
                   DelayedBranch.trigger();
                }//////////////////////////////////////////////////////////////////////
+               steps++;
             	
             	// Volatile variable initialized false but can be set true by the main thread.
             	// Used to stop or pause a running MIPS program.  See stopSimulation() above.
                if (stop == true) { 
-                  this.constructReturnReason = PAUSE_OR_STOP;
-                  this.done = false;
-                  Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
-                  return new Boolean(done);
+                  return finish(PAUSE_OR_STOP, false, pc, steps);
                }
-            	//	Return if we've reached a breakpoint.					
-               if((breakPoints != null) && 
-               (Arrays.binarySearch(breakPoints,RegisterFile.getProgramCounter()) >= 0)) {
-                  this.constructReturnReason = BREAKPOINT;
-                  this.done = false;
-                  Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
-                  return new Boolean(done); // false;
+            	//	Return if we've reached a breakpoint (or watch or step marker).
+               if (breakpoints != null && breakpoints.shouldStop(RegisterFile.getProgramCounter())) {
+                  return finish(BREAKPOINT, false, pc, steps);
                }
             	// Check number of MIPS instructions executed.  Return if at limit (-1 is no limit).
-               if (maxSteps > 0) {
-                  steps++;
-                  if (steps >= maxSteps) {
-                     this.constructReturnReason = MAX_STEPS;
-                     this.done = false;
-                     Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
-                     return new Boolean(done);// false;
-                  }
+               if (maxSteps > 0 && steps >= maxSteps) {
+                  return finish(MAX_STEPS, false, pc, steps);
                }
             	
             	// schedule GUI update only if: there is in fact a GUI! AND
@@ -441,7 +488,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                // Get next instruction in preparation for next iteration.
             
                try {
-                  statement = Globals.memory.getStatement(RegisterFile.getProgramCounter());
+                  statement = memory.loadStatement(RegisterFile.getProgramCounter(), fetched);
                } 
                    catch (AddressErrorException e) {
                      ErrorList el = new ErrorList();
@@ -452,11 +499,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 						   // incremented.  In this case, bad address is the instruction fetch itself so Program Counter has
 						   // not yet been incremented.  We'll set the EPC directly here.  DPS 8-July-2013
                      Coprocessor0.updateRegister(Coprocessor0.EPC, RegisterFile.getProgramCounter());
-                     this.constructReturnReason = EXCEPTION;
-                     this.done = true;
-                     SystemIO.resetFiles(); // close any files opened in MIPS program
-                     Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
-                     return  new Boolean(done);
+                     return finish(EXCEPTION, true, pc, steps);
                   }
             }
             // DPS July 2007.  This "if" statement is needed for correct program
@@ -469,13 +512,208 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          	// If we got here it was due to null statement, which means program
          	// counter "fell off the end" of the program.  NOTE: Assumes the 
          	// "while" loop contains no "break;" statements.
-            this.constructReturnReason = CLIFF_TERMINATION;
-            this.done = true;
-            SystemIO.resetFiles(); // close any files opened in MIPS program
+            return finish(CLIFF_TERMINATION, true, pc, steps); // execution completed
+         }
+         
+      	
+      	/**
+      	 *  Execution loop used when running without GUI or speed control,
+      	 *  e.g. from the command line.  Behaves like the loop in construct() but the
+      	 *  checks that cannot change from one instruction to the next in that setting
+      	 *  are hoisted out of it.  Instructions are executed in blocks of up to
+      	 *  HEADLESS_BLOCK_LENGTH.  The memory and registers lock is taken once per
+      	 *  block, and the stop flag, external interrupt and back-stepping setting
+      	 *  are re-examined only at block boundaries.  Nothing is scheduled for
+      	 *  a GUI and the run speed panel is never consulted.
+      	 *
+      	 *  @param statement the first statement to execute, already fetched
+      	 *  @param fetched the statement into which construct() loads those it fetches
+      	 *  @return  boolean value true if execution done, false otherwise
+      	 */
+          private Object constructHeadless(ProgramStatement statement, ProgramStatement fetched) {
+            InstructionCache cache = memory.getInstructionCache();
+            SimulationCode code;
+            // Hot straight-line code is run as compiled blocks, if enabled (see BasicBlockCache).
+            BasicBlockCache blockCache = (cache != null && Globals.getSettings().getBooleanSetting(Settings.BASIC_BLOCK_COMPILATION))
+                                         ? new BasicBlockCache(cache) : null;
+            BasicBlockCache.Block block;
+            // Common instruction pairs are run as one step, if enabled (see InstructionFusion).
+            // The program's fusions (and their report) are used by the default context only.
+            InstructionFusion fusion = (cache != null && p != null && Globals.getSettings().getBooleanSetting(Settings.INSTRUCTION_FUSION))
+                                       ? (SimulationContext.current().isDefault() ? p.getInstructionFusion() : new InstructionFusion(cache))
+                                       : null;
+            InstructionFusion.Fusion fused;
+            int steps = 0;
+            int pc = 0;
+            while (statement != null) {
+               boolean backStepping = Globals.getSettings().getBackSteppingEnabled();
+               boolean checkInterrupt = Simulator.externalInterruptingDevice != NO_DEVICE;
+               // Blocks and fusions skip the per-instruction fetch, so anything that must see
+               // every instruction rules them out for this stretch.
+               boolean skipFetch = !backStepping && breakpoints == null && trace == null && profiler == null && timed == null
+                        && !Globals.getSettings().getBooleanSetting(Settings.SELF_MODIFYING_CODE_ENABLED)
+                        && !Globals.getSettings().getBooleanSetting(Settings.DELAYED_BRANCHING_ENABLED)
+                        && memory.countObservers() == 0;
+               boolean useBlocks = blockCache != null && skipFetch;
+               boolean useFusion = fusion != null && skipFetch;
+               synchronized (lock) {
+                  for (int blockSteps = 0; statement != null && blockSteps < HEADLESS_BLOCK_LENGTH; blockSteps++) {
+                     pc = RegisterFile.getProgramCounter();
+                     block = (useBlocks && !checkInterrupt) ? blockCache.getBlock(pc) : null;
+                     if (block != null && maxSteps > 0 && steps + block.size() > maxSteps) {
+                        block = null; // step limit falls inside the block
+                     }
+                     fused = (block == null && useFusion && !checkInterrupt) ? fusion.getFusion(pc) : null;
+                     if (fused != null && maxSteps > 0 && steps + 2 > maxSteps) {
+                        fused = null;
+                     }
+                     try {
+                        if (block != null) {
+                           try {
+                              block.execute();
+                           }
+                           finally {
+                              // Account for the block as if its instructions had been stepped here.
+                              pc = block.getLastExecutedAddress();
+                              steps += block.getExecutedCount() - 1;
+                              blockSteps += block.getExecutedCount() - 1;
+                           }
+                        }
+                        else if (fused != null) {
+                           try {
+                              fused.execute();
+                           }
+                           finally {
+                              pc = fused.getLastExecutedAddress();
+                              steps += fused.getExecutedCount() - 1;
+                              blockSteps += fused.getExecutedCount() - 1;
+                           }
+                        }
+                        else {
+                           RegisterFile.incrementPC();
+                           if (checkInterrupt) {
+                              checkInterrupt = false;
+                              int deviceInterruptCode = externalInterruptingDevice;
+                              Simulator.externalInterruptingDevice = NO_DEVICE;
+                              throw new ProcessingException(statement, "External Interrupt", deviceInterruptCode);
+                           }
+                           code = (cache == null) ? null : cache.getSimulationCode(pc);
+                           if (code == null) {
+                              BasicInstruction instruction = (BasicInstruction)statement.getInstruction();
+                              if (instruction == null) {
+                                 throw new ProcessingException(statement,
+                                     "undefined instruction ("+Binary.intToHexString(statement.getBinaryStatement())+")",
+                                     Exceptions.RESERVED_INSTRUCTION_EXCEPTION);
+                              }
+                              code = instruction.getSimulationCode();
+                           }
+                           if (trace != null) {
+                              trace.instruction(pc, statement.getBinaryStatement());
+                           }
+                           if (profiler != null) {
+                              profiler.instruction(pc, statement.getBinaryStatement());
+                           }
+                           if (timed != null) {
+                              timed.next(pc, statement.getBinaryStatement());
+                           }
+                           code.simulate(statement);
+                           // Syscalls, and so exit requests, are never part of a block or fusion.
+                           if (context.isExitRequested()) {
+                              context.clearExitRequest();
+                              return finish(NORMAL_TERMINATION, true, pc, steps + 1);
+                           }
+                           if (backStepping) {
+                              SimulationContext.current().getBackStepper().addDoNothing(pc);
+                           }
+                        }
+                     } 
+                         catch (ProcessingException pe) {
+                           if (pe.isTermination()) {
+                              return finish(NORMAL_TERMINATION, true, pc, steps + 1);
+                           }
+                           if (!transferToExceptionHandler()) {
+                              this.pe = pe;
+                              return finish(EXCEPTION, true, pc, steps + 1);
+                           }
+                        }
+                     if (DelayedBranch.isTriggered()) {
+                        RegisterFile.setProgramCounter(DelayedBranch.getBranchTargetAddress());
+                        DelayedBranch.clear();
+                     } 
+                     else if (DelayedBranch.isRegistered()) {
+                        DelayedBranch.trigger();
+                     }
+                     steps++;
+                     if (breakpoints != null && breakpoints.shouldStop(RegisterFile.getProgramCounter())) {
+                        return finish(BREAKPOINT, false, pc, steps);
+                     }
+                     if (maxSteps > 0 && steps >= maxSteps) {
+                        return finish(MAX_STEPS, false, pc, steps);
+                     }
+                     try {
+                        statement = memory.loadStatement(RegisterFile.getProgramCounter(), fetched);
+                     } 
+                         catch (AddressErrorException e) {
+                           ErrorList el = new ErrorList();
+                           el.add(new ErrorMessage((MIPSprogram)null,0,0,"invalid program counter value: "+Binary.intToHexString(RegisterFile.getProgramCounter())));
+                           this.pe = new ProcessingException(el,e);
+                           // See construct() for why EPC is set directly here.
+                           Coprocessor0.updateRegister(Coprocessor0.EPC, RegisterFile.getProgramCounter());
+                           return finish(EXCEPTION, true, pc, steps);
+                        }
+                  }
+               }// end synchronized block
+               if (stop == true) { 
+                  return finish(PAUSE_OR_STOP, false, pc, steps);
+               }
+            }
+            if (DelayedBranch.isTriggered() || DelayedBranch.isRegistered()) {
+               DelayedBranch.clear();
+            }
+            return finish(CLIFF_TERMINATION, true, pc, steps);
+         }
+         
+         // End the run normally, as the MIPS program asked (see SimulationContext.requestExit()).
+          private Object exited(int pc, int steps) {
+            context.clearExitRequest();
+            return finish(NORMAL_TERMINATION, true, pc, steps);
+         }
+         
+         // If an exception handler is present (memory location Memory.exceptionHandlerAddress
+         // contains an instruction), set the program counter to it and return true.
+          private boolean transferToExceptionHandler() {
+            ProgramStatement exceptionHandler = null;
+            try {
+               exceptionHandler = memory.getStatement(Memory.exceptionHandlerAddress);
+            } 
+                catch (AddressErrorException aee) { } // will not occur with this well-known addres
+            if (exceptionHandler == null) {
+               return false;
+            }
+            RegisterFile.setProgramCounter(Memory.exceptionHandlerAddress);
+            return true;
+         }
+         
+         // Give the timing model and branch predictors the last instruction and notify observers of the stop.
+          private void stopped(int pc) {
+            if (timed != null) {
+               timed.flush();
+            }
             Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
-            return new Boolean(done); // true;  // execution completed
          }
          
+         // Record why construct is returning and how many instructions were executed,
+         // close MIPS files if done and notify observers.
+          private Object finish(int reason, boolean done, int pc, int steps) {
+            SimulationContext.current().addInstructionCount(steps);
+            this.constructReturnReason = reason;
+            this.done = done;
+            if (done) {
+               SystemIO.resetFiles(); // close any files opened in MIPS program
+            }
+            stopped(pc);
+            return new Boolean(done);
+         }
       	
       	/**
       	 *   This method is invoked by the SwingWorker when the "construct" method returns.  
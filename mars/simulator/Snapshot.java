@@ -0,0 +1,247 @@
+   package mars.simulator;
+   import mars.*;
+   import mars.util.*;
+   import mars.mips.hardware.*;
+   import java.io.*;
+   import java.nio.*;
+   import java.nio.channels.FileChannel;
+
+	/*
+Copyright (c) 2003-2014,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Saves the complete machine state of the current SimulationContext to a file, and
+ * restores it, so a run can resume from a known point (for instance after a long
+ * initialization phase) without repeating what came before.  The state is memory
+ * (data, heap, stack, kernel and memory-mapped I/O blocks, and the text segments), the
+ * heap pointer, RegisterFile including pc, hi and lo, the Coprocessor0 and Coprocessor1
+ * registers and condition flags, the delayed branch state and the open file table.
+ * <p>
+ * Only allocated memory blocks (pages) are stored, and the file is written and read through
+ * a memory-mapped FileChannel.  A snapshot can be restored only under the memory
+ * configuration it was saved with.  It holds machine code, not source, so restore it
+ * after assembling the same program to keep source information in the text segment.
+ * Settings, the symbol table and random number streams are not part of a snapshot.
+ *
+ * @version October 2026
+ **/
+
+    public class Snapshot {
+      private static final int MAGIC = 0x4D415253; // "MARS"
+      private static final int VERSION = 2;
+
+
+   /**
+    * Save the state of the current context.
+    * @param file the snapshot file, replaced if it exists
+    * @throws IOException if the file cannot be written
+    **/
+       public static void save(File file) throws IOException {
+         byte[] header = saveHeader();
+         Memory memory = Memory.getInstance();
+         synchronized (SimulationContext.current().getLock()) {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+               FileChannel channel = raf.getChannel();
+               long length = 12 + header.length + memory.getSnapshotLength();
+               channel.truncate(0);
+               MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+               buffer.putInt(MAGIC);
+               buffer.putInt(VERSION);
+               buffer.putInt(header.length);
+               buffer.put(header);
+               memory.writeSnapshot(buffer);
+               buffer.force();
+            }
+            finally {
+               raf.close();
+            }
+         }
+      }
+
+
+   /**
+    * Replace the state of the current context with a saved one.
+    * @param file the snapshot file
+    * @throws IOException if the file cannot be read, is not a snapshot, or does not fit the
+    * current memory configuration
+    **/
+       public static void restore(File file) throws IOException {
+         RandomAccessFile raf = new RandomAccessFile(file, "r");
+         try {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 12 || buffer.getInt() != MAGIC) {
+               throw new IOException(file+" is not a MARS snapshot");
+            }
+            if (buffer.getInt() != VERSION) {
+               throw new IOException(file+" is a snapshot from a different version of MARS");
+            }
+            byte[] header = new byte[buffer.getInt()];
+            buffer.get(header);
+            // Read and check everything before changing anything, so a snapshot that turns
+            // out to be invalid leaves the machine as it was.  Open files come last as
+            // they are the only part that can fail once the file itself has been read.
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(header));
+            Header state = new Header(in);
+            Memory memory = Memory.getInstance();
+            Memory.Image image = memory.readSnapshot(buffer);
+            Object[] files = SystemIO.openFileTable(in);
+            BackStepper backStepper = SimulationContext.current().getBackStepper();
+            boolean backStepping = backStepper != null && backStepper.enabled();
+            synchronized (SimulationContext.current().getLock()) {
+               // The restore itself is not undoable.
+               if (backStepping) {
+                  backStepper.setEnabled(false);
+               }
+               try {
+                  state.restore();
+                  memory.restoreSnapshot(image);
+                  SystemIO.restoreFileTable(files);
+               }
+               finally {
+                  if (backStepping) {
+                     backStepper.setEnabled(true);
+                  }
+               }
+            }
+         }
+             catch (BufferUnderflowException e) {
+               throw new IOException(file+" is truncated");
+            }
+             catch (IllegalArgumentException e) {
+               throw new IOException(file+": "+e.getMessage());
+            }
+         finally {
+            raf.close();
+         }
+      }
+
+
+       // Everything but memory: configuration, registers, delayed branch and open files.
+       private static byte[] saveHeader() throws IOException {
+         ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+         DataOutputStream out = new DataOutputStream(bytes);
+         out.writeUTF(MemoryConfigurations.getCurrentConfiguration().getConfigurationIdentifier());
+         Register[] registers = RegisterFile.getRegisters();
+         for (int i=0; i<registers.length; i++) {
+            out.writeInt(registers[i].getValue());
+         }
+         out.writeInt(RegisterFile.getProgramCounter());
+         out.writeInt(RegisterFile.getValue(33));
+         out.writeInt(RegisterFile.getValue(34));
+         registers = Coprocessor0.getRegisters();
+         out.writeInt(registers.length);
+         for (int i=0; i<registers.length; i++) {
+            out.writeInt(registers[i].getNumber());
+            out.writeInt(registers[i].getValue());
+         }
+         registers = Coprocessor1.getRegisters();
+         for (int i=0; i<registers.length; i++) {
+            out.writeInt(registers[i].getValue());
+         }
+         out.writeInt(Coprocessor1.getConditionFlags());
+         int[] delayedBranch = DelayedBranch.getState();
+         out.writeInt(delayedBranch[0]);
+         out.writeInt(delayedBranch[1]);
+         SystemIO.saveFileTable(out);
+         out.flush();
+         return bytes.toByteArray();
+      }
+
+
+       // Everything saveHeader() writes before the file table, read and checked but not
+       // yet applied.
+       private static class Header {
+         private int[] registers;
+         private int pc, hi, lo;
+         private int[] coprocessor0Numbers;
+         private int[] coprocessor0Values;
+         private int[] coprocessor1;
+         private int flags;
+         private int[] delayedBranch;
+      
+          private Header(DataInputStream in) throws IOException {
+            String configuration = in.readUTF();
+            if (!configuration.equals(MemoryConfigurations.getCurrentConfiguration().getConfigurationIdentifier())) {
+               throw new IOException("snapshot was saved under memory configuration "+configuration);
+            }
+            registers = readInts(in, RegisterFile.getRegisters().length);
+            pc = in.readInt();
+            hi = in.readInt();
+            lo = in.readInt();
+            int count = in.readInt();
+            if (count < 0 || count > Coprocessor0.getRegisters().length) {
+               throw new IOException("invalid Coprocessor 0 register count "+count);
+            }
+            coprocessor0Numbers = new int[count];
+            coprocessor0Values = new int[count];
+            for (int i=0; i<count; i++) {
+               coprocessor0Numbers[i] = in.readInt();
+               coprocessor0Values[i] = in.readInt();
+            }
+            coprocessor1 = readInts(in, Coprocessor1.getRegisters().length);
+            flags = in.readInt();
+            delayedBranch = readInts(in, 2);
+         }
+      
+          private static int[] readInts(DataInputStream in, int count) throws IOException {
+            int[] values = new int[count];
+            for (int i=0; i<count; i++) {
+               values[i] = in.readInt();
+            }
+            return values;
+         }
+      
+          private void restore() {
+            Register[] registerFile = RegisterFile.getRegisters();
+            for (int i=0; i<registerFile.length; i++) {
+               registerFile[i].setValue(registers[i]);
+            }
+            RegisterFile.initializeProgramCounter(pc);
+            RegisterFile.updateRegister(33, hi);
+            RegisterFile.updateRegister(34, lo);
+            for (int i=0; i<coprocessor0Numbers.length; i++) {
+               Coprocessor0.updateRegister(coprocessor0Numbers[i], coprocessor0Values[i]);
+            }
+            Register[] floatingPoint = Coprocessor1.getRegisters();
+            for (int i=0; i<floatingPoint.length; i++) {
+               floatingPoint[i].setValue(coprocessor1[i]);
+            }
+            for (int flag=0; flag<Coprocessor1.getConditionFlagCount(); flag++) {
+               if ((flags & (1 << flag)) != 0) {
+                  Coprocessor1.setConditionFlag(flag);
+               }
+               else {
+                  Coprocessor1.clearConditionFlag(flag);
+               }
+            }
+            DelayedBranch.setState(delayedBranch);
+         }
+      }
+   }
@@ -0,0 +1,270 @@
+   package mars.simulator;
+   import mars.*;
+   import mars.util.*;
+   import java.util.*;
+
+	/*
+Copyright (c) 2003-2014,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Reverse execution of unbounded reach.  Instead of recording every state change, as
+ * the BackStepper does (and which limits how far back one can go), the run is
+ * checkpointed every <i>interval</i> instructions and its interactions with the outside
+ * world are kept in a ReplayLog.  Going back to instruction <i>k</i> restores the last
+ * checkpoint at or before <i>k</i> and executes forward to <i>k</i>, replaying logged
+ * input so the re-execution is exact and prints nothing twice.  A step back therefore
+ * costs at most <i>interval</i> instructions of re-execution.
+ * <p>
+ * Checkpoints are forks of the running context (see SimulationContext.fork()), so each
+ * keeps only the memory blocks written after it was taken.  All contexts of the run share
+ * one file table, so open files and buffered standard input carry across.  Simulation
+ * is done in the calling thread, without a GUI.
+ * <pre>
+ *    TimeTravel run = new TimeTravel(program, context, 100000);
+ *    run.run(-1);                       // to the end
+ *    run.travelTo(run.getPosition() / 2);
+ *    run.stepBack();
+ *    run.getContext().bind();           // inspect registers and memory
+ * </pre>
+ *
+ * @version October 2026
+ **/
+
+    public class TimeTravel {
+      private MIPSprogram program;
+      private int interval;
+      private ReplayLog log;
+      private SystemIO.FileIOData fileTable;
+      private ArrayList checkpoints;   // Checkpoint taken at instruction i*interval is at index i
+      private SimulationContext live;  // the context being run
+      private long base;               // instruction position at which live was created
+      private boolean finished;
+
+
+   /**
+    * Prepare to run a program with time travel.
+    * @param program the assembled program
+    * @param start context in which to run it, at the state to start from; not the default
+    * context.  It must not be used by anything else from now on.
+    * @param interval number of instructions between checkpoints
+    **/
+       public TimeTravel(MIPSprogram program, SimulationContext start, int interval) {
+         if (start.isDefault()) {
+            throw new IllegalArgumentException("Time travel needs a context of its own");
+         }
+         if (interval <= 0) {
+            throw new IllegalArgumentException("Invalid checkpoint interval: "+interval);
+         }
+         this.program = program;
+         this.interval = interval;
+         this.log = new ReplayLog();
+         this.fileTable = start.getFileTable();
+         this.checkpoints = new ArrayList();
+         this.live = start;
+         this.base = -start.getInstructionCount();
+         this.finished = false;
+         start.setReplayLog(log);
+         checkpoints.add(new Checkpoint(start, 0, 0));
+      }
+
+
+   /**
+    * Position of the run: the number of instructions executed since the start.
+    * @return instruction position
+    **/
+       public long getPosition() {
+         return base + live.getInstructionCount();
+      }
+
+
+   /**
+    * Context holding the machine state at the current position.  Bind it to inspect or
+    * change the state; after a change that affects later execution, call discardFuture().
+    * It is replaced by a new context on each travel back.
+    * @return the current context
+    **/
+       public SimulationContext getContext() {
+         return live;
+      }
+
+
+   /**
+    * Returns true if the program has terminated (or raised an uncaught exception) at the
+    * current position.
+    * @return true if the program cannot run further
+    **/
+       public boolean isFinished() {
+         return finished;
+      }
+
+
+   /**
+    * Number of checkpoints, including the one at the start.
+    * @return checkpoint count
+    **/
+       public int getCheckpointCount() {
+         return checkpoints.size();
+      }
+
+
+   /**
+    * Execute forward from the current position, replaying logged interactions where the
+    * run has been before and taking checkpoints where it has not.
+    * @param steps number of instructions to execute, -1 to run until the program terminates
+    * @return true if the program terminated
+    * @throws ProcessingException if the program raises an exception
+    **/
+       public boolean run(long steps) throws ProcessingException {
+         SimulationContext previous = enter(live);
+         try {
+            while (!finished && steps != 0) {
+               long position = getPosition();
+               long chunk = interval - position % interval;
+               if (steps > 0 && steps < chunk) {
+                  chunk = steps;
+               }
+               try {
+                  finished = program.simulateFromPC((BreakpointTable) null, (int) chunk, null);
+               }
+                   catch (ProcessingException e) {
+                     finished = true;
+                     throw e;
+                  }
+               long executed = getPosition() - position;
+               if (steps > 0) {
+                  steps -= Math.min(steps, executed);
+               }
+               if (!finished && getPosition() % interval == 0 && getPosition() / interval == checkpoints.size()) {
+                  checkpoints.add(new Checkpoint(live, getPosition(), log.getPosition()));
+               }
+               if (executed == 0) {
+                  break;
+               }
+            }
+            return finished;
+         }
+         finally {
+            leave(previous);
+         }
+      }
+
+
+   /**
+    * Go to the state after the given number of instructions, backward or forward.  Going
+    * back restores the nearest checkpoint and executes forward from there.  If the program
+    * terminates before the position is reached, the run stops there.
+    * @param position instruction position to go to
+    * @throws ProcessingException if the program raises an exception on the way
+    **/
+       public void travelTo(long position) throws ProcessingException {
+         if (position < 0) {
+            throw new IllegalArgumentException("Invalid instruction position: "+position);
+         }
+         if (position < getPosition()) {
+            int index = (int) Math.min(position / interval, checkpoints.size() - 1);
+            Checkpoint checkpoint = (Checkpoint) checkpoints.get(index);
+            SimulationContext previous = enter(checkpoint.context);
+            try {
+               live = SimulationContext.fork(null, null, null);
+            }
+            finally {
+               leave(previous);
+            }
+            live.setFileTable(fileTable);
+            live.setReplayLog(log);
+            log.setPosition(checkpoint.logPosition);
+            base = checkpoint.position;
+            finished = false;
+         }
+         run(position - getPosition());
+      }
+
+
+   /**
+    * Go back one instruction.
+    * @throws ProcessingException if the program raises an exception on the way
+    **/
+       public void stepBack() throws ProcessingException {
+         if (getPosition() > 0) {
+            travelTo(getPosition() - 1);
+         }
+      }
+
+
+   /**
+    * Forget everything recorded beyond the current position: the checkpoints after it and
+    * the logged interactions not yet replayed.  Call this after changing the machine state,
+    * since execution from here on may no longer be what was recorded.
+    **/
+       public void discardFuture() {
+         int keep = (int) (getPosition() / interval) + 1;
+         while (checkpoints.size() > keep) {
+            checkpoints.remove(checkpoints.size() - 1);
+         }
+         log.truncate();
+      }
+
+
+       // Bind a context to the calling thread, returning the one current before.
+       private static SimulationContext enter(SimulationContext context) {
+         SimulationContext previous = SimulationContext.current();
+         context.bind();
+         return previous;
+      }
+
+
+       // Restore the binding that enter() replaced.
+       private static void leave(SimulationContext previous) {
+         if (previous.isDefault()) {
+            SimulationContext.unbind();
+         }
+         else {
+            previous.bind();
+         }
+      }
+
+
+       // Machine state at a given instruction position, and the log position there.
+       private static class Checkpoint {
+         private SimulationContext context;
+         private long position;
+         private int logPosition;
+
+          private Checkpoint(SimulationContext live, long position, int logPosition) {
+            SimulationContext previous = enter(live);
+            try {
+               this.context = SimulationContext.fork(null, null, null);
+            }
+            finally {
+               leave(previous);
+            }
+            this.position = position;
+            this.logPosition = logPosition;
+         }
+      }
+   }
@@ -0,0 +1,492 @@
+   package mars.simulator;
+   import mars.*;
+   import mars.mips.hardware.*;
+   import mars.mips.instructions.*;
+
+	/*
+Copyright (c) 2003-2014,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * One executed instruction as seen by a TimingModel: its address and class, the registers
+ * it reads and writes, the memory address it accesses and whether a branch was taken.
+ * The simulator decodes each instruction's binary form into the one TimedInstruction
+ * object it gives the model, so feeding a model costs a few integer operations per
+ * instruction and no allocation.  Conditional branches, with their outcomes, are also
+ * given to the context's BranchPredictorSweep.
+ * <p>
+ * Registers are given as bit masks of register numbers: bits 1 to 31 are the general
+ * purpose registers, bits 32 to 63 floating point registers $f0 to $f31 (both halves of
+ * a double), and bit 0, which as $zero never carries a dependency, stands for hi and lo.
+ * The coprocessor 1 condition flags are not tracked.
+ *
+ * @version October 2026
+ **/
+
+    public class TimedInstruction {
+      /** Integer arithmetic, logical, shift, move and compare, including traps. **/
+      public static final int ALU = 0;
+      /** Integer multiply, including mul and madd, which use the multiply unit. **/
+      public static final int MULTIPLY = 1;
+      /** Integer divide. **/
+      public static final int DIVIDE = 2;
+      /** Load from memory, integer or floating point. **/
+      public static final int LOAD = 3;
+      /** Store to memory, integer or floating point. **/
+      public static final int STORE = 4;
+      /** Conditional branch; isTaken() gives the outcome. **/
+      public static final int BRANCH = 5;
+      /** Unconditional jump, call or return, including eret.  Always taken. **/
+      public static final int JUMP = 6;
+      /** Floating point arithmetic, conversion and compare. **/
+      public static final int FLOATING_POINT = 7;
+      /** System call. **/
+      public static final int SYSCALL = 8;
+      /** Anything else, including instructions of custom languages. **/
+      public static final int OTHER = 9;
+      /** Number of instruction classes. **/
+      public static final int KINDS = 10;
+   
+      /** Register number standing for hi and lo in the register masks. **/
+      public static final int HI_LO = 0;
+      /** Register number of $f0 in the register masks. **/
+      public static final int FIRST_FP_REGISTER = 32;
+   
+      private static final String[] kindNames = { "ALU", "multiply", "divide", "load", "store",
+                                                  "branch", "jump", "floating point", "syscall", "other" };
+   
+      private TimingModel timing;
+      private BranchPredictorSweep predictors;
+      private boolean delayedBranching;
+      private boolean pending;
+      private int address;
+      private int kind;
+      private long sources;
+      private long storeData;
+      private long destinations;
+      private int memoryAddress;
+      private int target;
+      private boolean taken;
+   
+   
+       // Created by the simulator for each run, for a timing model or branch predictors or both.
+       TimedInstruction(TimingModel timing, BranchPredictorSweep predictors) {
+         this.timing = timing;
+         this.predictors = predictors;
+         delayedBranching = Globals.getSettings().getBooleanSetting(Settings.DELAYED_BRANCHING_ENABLED);
+      }
+   
+   
+   /**
+    * Address of the instruction.
+    * @return instruction address
+    **/
+       public int getAddress() {
+         return address;
+      }
+   
+   
+   /**
+    * Class of the instruction.
+    * @return one of the class constants, e.g. LOAD
+    **/
+       public int getKind() {
+         return kind;
+      }
+   
+   
+   /**
+    * Registers whose values the instruction needs to compute its result or, for a branch or
+    * jump, its target and outcome.  For a store these are the address registers only.
+    * @return register mask
+    **/
+       public long getSources() {
+         return sources;
+      }
+   
+   
+   /**
+    * Registers holding the data a store writes to memory, needed only when the store
+    * reaches memory.  Zero for other instructions.
+    * @return register mask
+    **/
+       public long getStoreData() {
+         return storeData;
+      }
+   
+   
+   /**
+    * Registers the instruction writes.
+    * @return register mask
+    **/
+       public long getDestinations() {
+         return destinations;
+      }
+   
+   
+   /**
+    * Effective address of a load or store, computed before the instruction executed.
+    * @return memory address, 0 for other instructions
+    **/
+       public int getMemoryAddress() {
+         return memoryAddress;
+      }
+   
+   
+   /**
+    * Target address of a conditional branch.
+    * @return branch target, 0 for other instructions
+    **/
+       public int getBranchTarget() {
+         return target;
+      }
+   
+   
+   /**
+    * Whether control went somewhere other than the next instruction: the outcome of a
+    * conditional branch, always true for a jump.
+    * @return true if taken
+    **/
+       public boolean isTaken() {
+         return taken;
+      }
+   
+   
+   /**
+    * Name of an instruction class, for reports.
+    * @param kind one of the class constants
+    * @return name, e.g. "load"
+    **/
+       public static String getKindName(int kind) {
+         return kindNames[kind];
+      }
+   
+   
+       // Called by the simulator before it executes each instruction.  The previous
+       // instruction is given to the model now that its branch outcome is known.
+       void next(int address, int binary) {
+         if (pending) {
+            deliver(address);
+         }
+         decode(address, binary);
+         pending = true;
+      }
+   
+   
+       // Called by the simulator at the end of a run to give the model the last instruction.
+       void flush() {
+         if (pending) {
+            deliver(RegisterFile.getProgramCounter());
+         }
+      }
+   
+   
+       private void deliver(int nextAddress) {
+         if (kind == BRANCH) {
+            // With delayed branching the next instruction is the delay slot, and a taken
+            // branch has by then triggered the transfer.
+            taken = (delayedBranching) ? DelayedBranch.isTriggered() || DelayedBranch.isRegistered()
+                                       : nextAddress != address + Instruction.INSTRUCTION_LENGTH;
+         }
+         pending = false;
+         if (timing != null) {
+            timing.instruction(this);
+         }
+         if (predictors != null && kind == BRANCH) {
+            predictors.branch(address, taken, target);
+         }
+      }
+   
+   
+       private void decode(int address, int binary) {
+         int opcode = binary >>> 26;
+         int rs = (binary >>> 21) & 0x1F;
+         int rt = (binary >>> 16) & 0x1F;
+         int rd = (binary >>> 11) & 0x1F;
+         int funct = binary & 0x3F;
+         this.address = address;
+         kind = OTHER;
+         sources = 0;
+         storeData = 0;
+         destinations = 0;
+         memoryAddress = 0;
+         target = 0;
+         taken = false;
+         switch (opcode) {
+            case 0x00 :
+               decodeSpecial(rs, rt, rd, funct);
+               break;
+            case 0x01 :                       // bltz, bgez, bltzal, bgezal, trap immediates
+               sources = register(rs);
+               if ((rt & 0x0C) == 0x08) {
+                  kind = ALU;
+               }
+               else {
+                  kind = BRANCH;
+                  if ((rt & 0x10) != 0) {
+                     destinations = register(31);
+                  }
+               }
+               break;
+            case 0x02 :                       // j
+               kind = JUMP;
+               taken = true;
+               break;
+            case 0x03 :                       // jal
+               kind = JUMP;
+               taken = true;
+               destinations = register(31);
+               break;
+            case 0x04 :                       // beq
+            case 0x05 :                       // bne
+               kind = BRANCH;
+               sources = register(rs) | register(rt);
+               break;
+            case 0x06 :                       // blez
+            case 0x07 :                       // bgtz
+               kind = BRANCH;
+               sources = register(rs);
+               break;
+            case 0x08 : case 0x09 : case 0x0A : case 0x0B :
+            case 0x0C : case 0x0D : case 0x0E :  // immediate arithmetic and logic
+               kind = ALU;
+               sources = register(rs);
+               destinations = register(rt);
+               break;
+            case 0x0F :                       // lui
+               kind = ALU;
+               destinations = register(rt);
+               break;
+            case 0x10 :                       // coprocessor 0
+               if (rs == 0x00) {              // mfc0
+                  kind = ALU;
+                  destinations = register(rt);
+               }
+               else if (rs == 0x04) {         // mtc0
+                  kind = ALU;
+                  sources = register(rt);
+               }
+               else if (funct == 0x18) {      // eret
+                  kind = JUMP;
+                  taken = true;
+               }
+               break;
+            case 0x11 :
+               decodeCoprocessor1(binary, rs, rt, rd, funct);
+               break;
+            case 0x1C :                       // mul, madd, msub, clz, clo
+               if (funct == 0x20 || funct == 0x21) {
+                  kind = ALU;
+                  sources = register(rs);
+                  destinations = register(rd);
+               }
+               else if (funct == 0x02) {
+                  kind = MULTIPLY;
+                  sources = register(rs) | register(rt);
+                  destinations = register(rd);
+               }
+               else {
+                  kind = MULTIPLY;
+                  sources = register(rs) | register(rt) | hiLo();
+                  destinations = hiLo();
+               }
+               break;
+            case 0x20 : case 0x21 : case 0x23 : case 0x24 : case 0x25 : case 0x30 : // lb lh lw lbu lhu ll
+               load(binary, rs, register(rt));
+               break;
+            case 0x22 : case 0x26 :           // lwl, lwr merge into rt
+               load(binary, rs, register(rt));
+               sources |= register(rt);
+               break;
+            case 0x31 :                       // lwc1
+               load(binary, rs, floatRegister(rt, false));
+               break;
+            case 0x35 :                       // ldc1
+               load(binary, rs, floatRegister(rt, true));
+               break;
+            case 0x28 : case 0x29 : case 0x2A : case 0x2B : case 0x2E : // sb sh swl sw swr
+               store(binary, rs, register(rt));
+               break;
+            case 0x38 :                       // sc also writes its success flag to rt
+               store(binary, rs, register(rt));
+               destinations = register(rt);
+               break;
+            case 0x39 :                       // swc1
+               store(binary, rs, floatRegister(rt, false));
+               break;
+            case 0x3D :                       // sdc1
+               store(binary, rs, floatRegister(rt, true));
+               break;
+         }
+         if (kind == BRANCH) {
+            target = address + Instruction.INSTRUCTION_LENGTH + (((short) binary) << 2);
+         }
+      }
+   
+   
+       private void decodeSpecial(int rs, int rt, int rd, int funct) {
+         kind = ALU;
+         switch (funct) {
+            case 0x00 : case 0x02 : case 0x03 : // shift by immediate
+               sources = register(rt);
+               destinations = register(rd);
+               break;
+            case 0x01 :                       // movf, movt
+               sources = register(rs) | register(rd);
+               destinations = register(rd);
+               break;
+            case 0x08 :                       // jr
+               kind = JUMP;
+               taken = true;
+               sources = register(rs);
+               break;
+            case 0x09 :                       // jalr
+               kind = JUMP;
+               taken = true;
+               sources = register(rs);
+               destinations = register(rd);
+               break;
+            case 0x0A : case 0x0B :           // movz, movn
+               sources = register(rs) | register(rt) | register(rd);
+               destinations = register(rd);
+               break;
+            case 0x0C :                       // syscall reads $v0 and $a0-$a3, may write $v0
+               kind = SYSCALL;
+               sources = register(2) | register(4) | register(5) | register(6) | register(7);
+               destinations = register(2);
+               break;
+            case 0x0D :                       // break
+               kind = OTHER;
+               break;
+            case 0x10 : case 0x12 :           // mfhi, mflo
+               sources = hiLo();
+               destinations = register(rd);
+               break;
+            case 0x11 : case 0x13 :           // mthi, mtlo
+               sources = register(rs);
+               destinations = hiLo();
+               break;
+            case 0x18 : case 0x19 :           // mult, multu
+               kind = MULTIPLY;
+               sources = register(rs) | register(rt);
+               destinations = hiLo();
+               break;
+            case 0x1A : case 0x1B :           // div, divu
+               kind = DIVIDE;
+               sources = register(rs) | register(rt);
+               destinations = hiLo();
+               break;
+            default :
+               if ((funct >= 0x04 && funct <= 0x07) || (funct >= 0x20 && funct <= 0x2B)) {
+                  sources = register(rs) | register(rt);
+                  destinations = register(rd);
+               }
+               else if (funct >= 0x30 && funct <= 0x36) { // traps
+                  sources = register(rs) | register(rt);
+               }
+               else {
+                  kind = OTHER;
+               }
+         }
+      }
+   
+   
+       private void decodeCoprocessor1(int binary, int format, int rt, int fs, int funct) {
+         int fd = (binary >>> 6) & 0x1F;
+         switch (format) {
+            case 0x00 :                       // mfc1
+               kind = ALU;
+               sources = floatRegister(fs, false);
+               destinations = register(rt);
+               return;
+            case 0x04 :                       // mtc1
+               kind = ALU;
+               sources = register(rt);
+               destinations = floatRegister(fs, false);
+               return;
+            case 0x08 :                       // bc1f, bc1t
+               kind = BRANCH;
+               return;
+            case 0x10 : case 0x11 : case 0x14 : // single, double, word formats
+               break;
+            default :
+               return;
+         }
+         kind = FLOATING_POINT;
+         boolean wide = format == 0x11;
+         boolean wideResult = (funct == 0x21) || (wide && funct != 0x20 && funct != 0x24 && (funct < 0x0C || funct > 0x0F));
+         if (funct <= 0x03) {                 // add, sub, mul, div
+            sources = floatRegister(fs, wide) | floatRegister(rt, wide);
+            destinations = floatRegister(fd, wideResult);
+         }
+         else if (funct >= 0x30) {            // compares set a condition flag
+            sources = floatRegister(fs, wide) | floatRegister(rt, wide);
+         }
+         else {
+            sources = floatRegister(fs, wide);
+            if (funct == 0x12 || funct == 0x13) { // movz, movn test a general purpose register
+               sources |= register(rt) | floatRegister(fd, wide);
+            }
+            else if (funct == 0x11) {         // movf, movt
+               sources |= floatRegister(fd, wide);
+            }
+            destinations = floatRegister(fd, wideResult);
+         }
+      }
+   
+   
+       private void load(int binary, int base, long destination) {
+         kind = LOAD;
+         sources = register(base);
+         destinations = destination;
+         memoryAddress = RegisterFile.getValue(base) + (short) binary;
+      }
+   
+   
+       private void store(int binary, int base, long data) {
+         kind = STORE;
+         sources = register(base);
+         storeData = data;
+         memoryAddress = RegisterFile.getValue(base) + (short) binary;
+      }
+   
+   
+       private static long register(int number) {
+         return (number == 0) ? 0 : 1L << number;
+      }
+   
+   
+       private static long hiLo() {
+         return 1L << HI_LO;
+      }
+   
+   
+       // A double occupies an even-odd register pair.
+       private static long floatRegister(int number, boolean wide) {
+         return (wide) ? 3L << (FIRST_FP_REGISTER + (number & 0x1E)) : 1L << (FIRST_FP_REGISTER + number);
+      }
+   }
@@ -0,0 +1,83 @@
+   package mars.simulator;
+   import java.io.*;
+
+	/*
+Copyright (c) 2003-2014,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Cycle timing model.  MARS executes one instruction at a time and counts instructions;
+ * a timing model estimates how many cycles the same instruction stream would take on
+ * some processor implementation.  The simulator hands it a TimedInstruction for every
+ * instruction executed, in program order, describing its class, the registers it reads
+ * and writes, the memory address it accesses and, for a branch, whether it was taken.
+ * The model keeps whatever state it needs (pipeline occupancy, register availability,
+ * predictor tables) and reports the cycle count.
+ * <p>
+ * A model is attached to a SimulationContext with setTimingModel().  As with tracing,
+ * blocks and instruction fusion are not used while one is.  FiveStagePipeline is the
+ * classic in-order pipeline.
+ *
+ * @version October 2026
+ **/
+
+    public interface TimingModel {
+   
+   /**
+    * Called for each instruction executed, in program order.  The TimedInstruction object
+    * is reused for the next instruction, so the model must copy anything it keeps.
+    * @param instruction the instruction
+    **/
+       public void instruction(TimedInstruction instruction);
+   
+   
+   /**
+    * Number of instructions the model has been given.
+    * @return instruction count
+    **/
+       public long getInstructionCount();
+   
+   
+   /**
+    * Number of cycles the instructions given so far take, until the last one completes.
+    * @return cycle count
+    **/
+       public long getCycles();
+   
+   
+   /**
+    * Forget all instructions and return to the initial (empty) state.
+    **/
+       public void reset();
+   
+   
+   /**
+    * Print the cycle count, cycles per instruction and any breakdown the model keeps.
+    * @param out destination
+    **/
+       public void writeReport(PrintStream out);
+   }
@@ -0,0 +1,240 @@
+   package mars.simulator;
+   import java.io.*;
+   import java.nio.MappedByteBuffer;
+   import java.nio.channels.FileChannel;
+
+	/*
+Copyright (c) 2003-2014,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Writer of a binary execution trace: one fixed-width record for each instruction
+ * executed, followed by one for each register it writes and each memory location it
+ * loads or stores.  Records go straight into a memory-mapped file, with no Observer
+ * notices, so a trace can be taken at full speed.  TraceDecoder turns a trace back into
+ * source lines.
+ * <p>
+ * The file is a ring of segments.  Records fill one segment after the other, and after
+ * the last the first is overwritten, so the file keeps the most recent records and its
+ * size is fixed.  Only the segment being filled is mapped.  The header gives the
+ * geometry and the number of records written, and is brought up to date at each segment
+ * change and at close().
+ * <p>
+ * File layout (big-endian): header of HEADER_LENGTH bytes holding the magic number,
+ * version, RECORD_LENGTH, records per segment, segment count (ints) and records written
+ * (long); then the segments.  Record number <i>r</i> is in segment slot
+ * (<i>r</i> / records per segment) % segment count.  A record is a kind byte, a byte
+ * of detail (register number, or access length in bytes), two zero bytes and two ints:
+ * <ul>
+ * <li>INSTRUCTION: address, binary instruction.
+ * <li>REGISTER, FP_REGISTER, COP0_REGISTER: new value, 0.  The detail is the register
+ * number (33 and 34 for hi and lo).
+ * <li>LOAD, STORE: address, value.
+ * </ul>
+ * A writer traces the SimulationContext it is given to with setTraceWriter().  While
+ * any writer is open, blocks and instruction fusion are not used.
+ *
+ * @version October 2026
+ **/
+
+    public class TraceWriter {
+      public static final int INSTRUCTION = 1;
+      public static final int REGISTER = 2;
+      public static final int FP_REGISTER = 3;
+      public static final int COP0_REGISTER = 4;
+      public static final int LOAD = 5;
+      public static final int STORE = 6;
+
+      public static final int RECORD_LENGTH = 12;
+      public static final int HEADER_LENGTH = 64;
+      public static final int MAGIC = 0x4D525354; // "MRST"
+      public static final int VERSION = 1;
+      /** Records per segment used by the trace command line option: 12 MB segments. */
+      public static final int DEFAULT_SEGMENT_RECORDS = 1 << 20;
+      /** Segments used by the trace command line option. */
+      public static final int DEFAULT_SEGMENT_COUNT = 16;
+
+      // Number of writers open, so the hooks in the register files and memory cost one
+      // test while none is.
+      private static int openWriters = 0;
+
+      private RandomAccessFile file;
+      private FileChannel channel;
+      private MappedByteBuffer header;
+      private MappedByteBuffer segment;
+      private int segmentRecords;
+      private int segmentCount;
+      private long records;
+      private IOException failure;
+
+
+   /**
+    * Create a trace file, replacing any existing one.
+    * @param traceFile the file
+    * @param segmentRecords number of records in a segment
+    * @param segmentCount number of segments in the ring
+    * @throws IOException if the file cannot be created or mapped
+    **/
+       public TraceWriter(File traceFile, int segmentRecords, int segmentCount) throws IOException {
+         if (segmentRecords <= 0 || segmentCount <= 0
+             || (long) segmentRecords * RECORD_LENGTH > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid trace geometry");
+         }
+         this.segmentRecords = segmentRecords;
+         this.segmentCount = segmentCount;
+         this.records = 0;
+         file = new RandomAccessFile(traceFile, "rw");
+         file.setLength(0);
+         channel = file.getChannel();
+         header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_LENGTH);
+         header.putInt(MAGIC).putInt(VERSION).putInt(RECORD_LENGTH).putInt(segmentRecords).putInt(segmentCount);
+         updateHeader();
+         mapSegment(0);
+         synchronized (TraceWriter.class) {
+            openWriters++;
+         }
+      }
+
+
+   /**
+    * Returns true if any trace writer is open.  The hooks test this before looking for the
+    * current context's writer.
+    * @return true if tracing may be on
+    **/
+       public static boolean isActive() {
+         return openWriters > 0;
+      }
+
+
+   /**
+    * Record a register write in the current context's trace, if it has one.
+    * @param kind REGISTER, FP_REGISTER or COP0_REGISTER
+    * @param number register number
+    * @param value new value
+    **/
+       public static void registerWritten(int kind, int number, int value) {
+         TraceWriter trace = SimulationContext.current().getTraceWriter();
+         if (trace != null) {
+            trace.write(kind, number, value, 0);
+         }
+      }
+
+
+   /**
+    * Record a load or store in the current context's trace, if it has one.
+    * @param kind LOAD or STORE
+    * @param address memory address
+    * @param length number of bytes accessed
+    * @param value value loaded or stored
+    **/
+       public static void memoryAccessed(int kind, int address, int length, int value) {
+         TraceWriter trace = SimulationContext.current().getTraceWriter();
+         if (trace != null) {
+            trace.write(kind, length, address, value);
+         }
+      }
+
+
+   /**
+    * Record that an instruction is about to be executed.  Called by the simulator.
+    * @param address instruction address
+    * @param binary the binary instruction
+    **/
+       public void instruction(int address, int binary) {
+         write(INSTRUCTION, 0, address, binary);
+      }
+
+
+   /**
+    * Number of records written, including any since overwritten.
+    * @return record count
+    **/
+       public long getRecordCount() {
+         return records;
+      }
+
+
+   /**
+    * Finish the trace: bring the header up to date and close the file.
+    * @throws IOException if the trace could not be written, now or earlier
+    **/
+       public void close() throws IOException {
+         if (file == null) {
+            return;
+         }
+         synchronized (TraceWriter.class) {
+            openWriters--;
+         }
+         try {
+            if (failure == null) {
+               updateHeader();
+               header.force();
+               segment.force();
+            }
+         }
+         finally {
+            file.close();
+            file = null;
+            header = null;
+            segment = null;
+         }
+         if (failure != null) {
+            throw failure;
+         }
+      }
+
+
+       private void write(int kind, int detail, int first, int second) {
+         if (segment == null) {
+            return; // closed, or failed
+         }
+         if (!segment.hasRemaining()) {
+            try {
+               updateHeader();
+               mapSegment((int) ((records / segmentRecords) % segmentCount));
+            }
+                catch (IOException e) {
+                  failure = e;
+                  segment = null;
+                  return;
+               }
+         }
+         segment.put((byte) kind).put((byte) detail).putShort((short) 0).putInt(first).putInt(second);
+         records++;
+      }
+
+
+       private void mapSegment(int slot) throws IOException {
+         long length = (long) segmentRecords * RECORD_LENGTH;
+         segment = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_LENGTH + slot * length, length);
+      }
+
+
+       private void updateHeader() {
+         header.putLong(20, records);
+      }
+   }
@@ -0,0 +1,146 @@
+   package mars.tools;
+   import javax.swing.*;
+   import java.awt.*;
+   import java.awt.event.*;
+   import java.io.*;
+   import mars.*;
+   import mars.simulator.*;
+
+	
+/*
+Copyright (c) 2003-2014,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining 
+a copy of this software and associated documentation files (the 
+"Software"), to deal in the Software without restriction, including 
+without limitation the rights to use, copy, modify, merge, publish, 
+distribute, sublicense, and/or sell copies of the Software, and to 
+permit persons to whom the Software is furnished to do so, subject 
+to the following conditions:
+
+The above copyright notice and this permission notice shall be 
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, 
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF 
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION 
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+	
+   /**
+	 * Tool that samples the program counter and call stack while the program runs, and
+	 * shows the source lines and functions where most samples fell.  It attaches a
+	 * mars.simulator.Profiler to the default simulation context while connected.
+	 */
+    public class HotSpotProfiler extends AbstractMarsToolAndApplication {
+   
+      private static String heading =  "Hot Spot Profiler";
+      private static String version = " Version 1.0";
+      private static final int SAMPLING_INTERVAL = 100; // instructions
+      private static final int REPORT_LENGTH = 25;
+      private static final int REFRESH_DELAY = 500;  // milliseconds
+   
+      private Profiler profiler = new Profiler(SAMPLING_INTERVAL, false);
+      private JTextArea report;
+      private javax.swing.Timer refreshTimer;
+      private long displayedSamples = -1;
+   	         	
+   	/**
+   	 * Simple constructor, likely used to run a stand-alone profiler.
+   	 * @param title String containing title for title bar
+   	 * @param heading String containing text for heading shown in upper part of window.
+   	 */
+       public HotSpotProfiler(String title, String heading) {
+         super(title,heading);
+      }
+   	 
+   	 /**
+   	  *  Simple constructor, likely used by the MARS Tools menu mechanism
+   	  */
+       public HotSpotProfiler() {
+         super (heading+", "+version, heading);
+      }
+   		 
+   	/**
+   	 *  Required method to return Tool name.  
+   	 *  @return  Tool name.  MARS will display this in menu item.
+   	 */
+       public String getName() {
+         return "Hot Spot Profiler";
+      }
+   	
+   	/**
+   	 *  The report is a text area in a fixed-width font, refreshed periodically while the
+   	 *  program runs.
+   	 */
+       protected JComponent buildMainDisplayArea() {
+         report = new JTextArea(REPORT_LENGTH, 72);
+         report.setEditable(false);
+         report.setFont(new Font("Monospaced", Font.PLAIN, 12));
+         refreshTimer = new javax.swing.Timer(REFRESH_DELAY,
+                new ActionListener() {
+                   public void actionPerformed(ActionEvent e) {
+                     refresh();
+                  }
+               });
+         refreshTimer.start();
+         return new JScrollPane(report);
+      }
+   	
+   	/**
+   	 *  Rather than observing memory, attach the profiler to the simulator.  It takes effect
+   	 *  at the start of the next run.
+   	 */
+       protected void addAsObserver() {
+         SimulationContext.getDefault().setProfiler(profiler);
+      }
+   	
+   	/**
+   	 *  Detach the profiler.  The samples taken so far remain displayed.
+   	 */
+       protected void deleteAsObserver() {
+         if (SimulationContext.getDefault().getProfiler() == profiler) {
+            SimulationContext.getDefault().setProfiler(null);
+         }
+      }
+   	
+   	/**
+   	 *  Forget all samples.
+   	 */
+       protected void reset() {
+         profiler.reset();
+         refresh();
+      }
+   	
+   	/**
+   	 *  Stop refreshing when the window closes.
+   	 */
+       protected void performSpecialClosingDuties() {
+         refreshTimer.stop();
+         super.performSpecialClosingDuties();
+      }
+   
+       // Redisplay the report if there are new samples.
+       private void refresh() {
+         long samples = profiler.getSampleCount();
+         if (samples == displayedSamples) {
+            return;
+         }
+         displayedSamples = samples;
+         ByteArrayOutputStream text = new ByteArrayOutputStream();
+         PrintStream out = new PrintStream(text);
+         profiler.writeReport(out, REPORT_LENGTH);
+         out.flush();
+         report.setText(text.toString());
+         report.setCaretPosition(0);
+      }
+   }
@@ -1,5 +1,7 @@
    package mars.util;
    import mars.*;
+   import mars.simulator.ReplayLog;
+   import mars.simulator.SimulationContext;
    import java.io.*;
    import javax.swing.*;
    import java.util.*;
@@ -37,7 +39,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  * routines.  These methods will detect whether the simulator is being
  * run from the command line or through the GUI, then do I/O to
  * System.in and System.out in the former situation, and interact with
- * the GUI in the latter.
+ * the GUI in the latter.  Programs running in a SimulationContext other than the
+ * default one always use that context's streams.  Open files are also per context.
  *
  * @author Pete Sanderson and Ken Vollmar
  * @version August 2003-2005
@@ -64,9 +67,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private static final int STDOUT = 1;
       private static final int STDERR = 2;
    
-      // Will use one buffered reader for all keyboard/redirected/piped input.
-   	// Added by DPS 28 Feb 2008.  See getInputReader() below.
-      private static BufferedReader inputReader = null;
+      // Open files of the default SimulationContext.
+      private static final FileIOData defaultFiles = new FileIOData();
    
     /**
      * Implements syscall to read an integer value.  
@@ -78,11 +80,16 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        public static int readInteger(int serviceNumber)
       {
          String input = "0";
-         if (Globals.getGui() == null)
+         String replayed = (String) ReplayLog.replay(String.class);
+         if (replayed != null)
+         {
+            input = replayed; // as read when first executed
+         }
+         else if (useConsole())
          {
             try
             {  
-               input = getInputReader().readLine();
+               input = readConsoleLine();
             } 
                 catch (IOException e)
                {}
@@ -97,7 +104,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                input = Globals.getGui().getMessagesPane().getInputString(-1);
             }
          }
-      
+         if (replayed == null)
+         {
+            ReplayLog.record(input);
+         }
+
         // Client is responsible for catching NumberFormatException
          return new Integer(input.trim()).intValue();
       }
@@ -113,11 +124,16 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        public static float readFloat(int serviceNumber)
       {
          String input = "0";
-         if (Globals.getGui() == null)
+         String replayed = (String) ReplayLog.replay(String.class);
+         if (replayed != null)
+         {
+            input = replayed; // as read when first executed
+         }
+         else if (useConsole())
          {
             try
             {
-               input = getInputReader().readLine();
+               input = readConsoleLine();
             } 
                 catch (IOException e)
                {}
@@ -132,6 +148,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                input = Globals.getGui().getMessagesPane().getInputString(-1);
             }
          }
+         if (replayed == null)
+         {
+            ReplayLog.record(input);
+         }
+
          return new Float(input.trim()).floatValue();
       
       }
@@ -147,11 +168,16 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        public static double readDouble(int serviceNumber)
       {
          String input = "0";
-         if (Globals.getGui() == null)
+         String replayed = (String) ReplayLog.replay(String.class);
+         if (replayed != null)
+         {
+            input = replayed; // as read when first executed
+         }
+         else if (useConsole())
          {
             try
             {
-               input = getInputReader().readLine();
+               input = readConsoleLine();
             } 
                 catch (IOException e)
                {}
@@ -166,6 +192,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                input = Globals.getGui().getMessagesPane().getInputString(-1);
             }
          }
+         if (replayed == null)
+         {
+            ReplayLog.record(input);
+         }
+
          return new Double(input.trim()).doubleValue();
       
       }
@@ -176,9 +207,14 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
      */
        public static void printString(String string)
       {
-         if (Globals.getGui() == null)
+         if (ReplayLog.replayEffect(String.class) != null)
          {
-            System.out.print(string);
+            return; // printed when first executed
+         }
+         ReplayLog.recordEffect(string);
+         if (useConsole())
+         {
+            files().getStdout().print(string);
          } 
          else
          {
@@ -197,11 +233,16 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        public static String readString(int serviceNumber, int maxLength)
       {
          String input = "";
-         if (Globals.getGui() == null)
+         String replayed = (String) ReplayLog.replay(String.class);
+         if (replayed != null)
+         {
+            input = replayed; // as read when first executed
+         }
+         else if (useConsole())
          {
             try
             {
-               input = getInputReader().readLine();
+               input = readConsoleLine();
             } 
                 catch (IOException e)
                {}
@@ -220,6 +261,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                }
             }
          }
+         if (replayed == null)
+         {
+            ReplayLog.record(input);
+         }
       	
          if (input.length() > maxLength) {
             // Modified DPS 13-July-2011.  Originally: return input.substring(0, maxLength);
@@ -240,11 +285,16 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       {
          String input = "0";
          int returnValue = 0;
-         if (Globals.getGui() == null)
+         String replayed = (String) ReplayLog.replay(String.class);
+         if (replayed != null)
+         {
+            input = replayed; // as read when first executed
+         }
+         else if (useConsole())
          {
             try
             {
-               input = getInputReader().readLine();
+               input = readConsoleLine();
             } 
                 catch (IOException e)
                {}
@@ -259,6 +309,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                input = Globals.getGui().getMessagesPane().getInputString(1);
             }
          }
+         if (replayed == null)
+         {
+            ReplayLog.record(input);
+         }
+
          // The whole try-catch is not really necessary in this case since I'm
       	// just propagating the runtime exception (the default behavior), but 
       	// I want to make it explicit.  The client needs to catch it.
@@ -285,10 +340,20 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
      */
    
        public static int writeToFile(int fd, byte[] myBuffer, int lengthRequested)
+      {
+         Object[] logged = (Object[]) ReplayLog.replayEffect(Object[].class);
+         if (logged != null)
+         {
+            return replayFileResult(logged, null);
+         }
+         return recordFileResult(performWrite(fd, myBuffer, lengthRequested), null, true);
+      }
+   
+       private static int performWrite(int fd, byte[] myBuffer, int lengthRequested)
       {
        /////////////// DPS 8-Jan-2013  ////////////////////////////////////////////////////
        /// Write to STDOUT or STDERR file descriptor while using IDE - write to Messages pane. 
-         if ((fd==STDOUT || fd==STDERR) && Globals.getGui() != null) {
+         if ((fd==STDOUT || fd==STDERR) && !useConsole()) {
             String data = new String(myBuffer);
             Globals.getGui().getMessagesPane().postRunMessage(data);
             return data.length();
@@ -296,14 +361,14 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        ///////////////////////////////////////////////////////////////////////////////////
        //// When running in command mode, code below works for either regular file or STDOUT/STDERR
       
-         if (!FileIOData.fdInUse(fd, 1)) // Check the existence of the "write" fd
+         if (!files().fdInUse(fd, 1)) // Check the existence of the "write" fd
          {
             fileErrorString = new String(
                     "File descriptor " + fd + " is not open for writing");
             return -1;
          }
          // retrieve FileOutputStream from storage
-         OutputStream outputStream = (OutputStream) FileIOData.getStreamInUse(fd);
+         OutputStream outputStream = (OutputStream) files().getStreamInUse(fd);
          try
          {
             // Oct. 9 2005 Ken Vollmar
@@ -350,11 +415,21 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
      * @return number of bytes read, 0 on EOF, or -1 on error
      */
        public static int readFromFile(int fd, byte[] myBuffer, int lengthRequested)
+      {
+         Object[] logged = (Object[]) ReplayLog.replay(Object[].class);
+         if (logged != null)
+         {
+            return replayFileResult(logged, myBuffer);
+         }
+         return recordFileResult(performRead(fd, myBuffer, lengthRequested), myBuffer, false);
+      }
+   
+       private static int performRead(int fd, byte[] myBuffer, int lengthRequested)
       {
          int retValue = -1;  
        /////////////// DPS 8-Jan-2013  //////////////////////////////////////////////////
        /// Read from STDIN file descriptor while using IDE - get input from Messages pane. 
-         if (fd==STDIN && Globals.getGui() != null) {
+         if (fd==STDIN && !useConsole()) {
             String input = Globals.getGui().getMessagesPane().getInputString(lengthRequested);
             byte[] bytesRead = input.getBytes();;
             for (int i=0; i < myBuffer.length; i++) {
@@ -365,14 +440,14 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
        ////////////////////////////////////////////////////////////////////////////////////
        //// When running in command mode, code below works for either regular file or STDIN
        
-         if (!FileIOData.fdInUse(fd, 0)) // Check the existence of the "read" fd
+         if (!files().fdInUse(fd, 0)) // Check the existence of the "read" fd
          {
             fileErrorString = new String(
                     "File descriptor " + fd + " is not open for reading");
             return -1;
          }
         // retrieve FileInputStream from storage
-         InputStream InputStream = (InputStream) FileIOData.getStreamInUse(fd);
+         InputStream InputStream = (InputStream) files().getStreamInUse(fd);
          try
          {
             // Reads up to lengthRequested bytes of data from this Input stream into an array of bytes.
@@ -410,6 +485,16 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     * @author Ken Vollmar
     */
        public static int openFile(String filename, int flags)
+      {
+         Object[] logged = (Object[]) ReplayLog.replayEffect(Object[].class);
+         if (logged != null)
+         {
+            return replayFileResult(logged, null);
+         }
+         return recordFileResult(performOpen(filename, flags), null, true);
+      }
+   
+       private static int performOpen(String filename, int flags)
       {
         // Internally, a "file descriptor" is an index into a table
         // of the filename, flag, and the File???putStream associated with
@@ -422,7 +507,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          int fdToUse;
       
         // Check internal plausibility of opening this file
-         fdToUse = FileIOData.nowOpening(filename, flags);
+         fdToUse = files().nowOpening(filename, flags);
          retValue = fdToUse; // return value is the fd
          if (fdToUse < 0)
          { 
@@ -436,7 +521,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             {
                 // Set up input stream from disk file
                inputStream = new FileInputStream(filename);
-               FileIOData.setStreamInUse(fdToUse, inputStream); // Save stream for later use
+               files().setStreamInUse(fdToUse, inputStream); // Save stream for later use
             } 
                 catch (FileNotFoundException e)
                {
@@ -451,7 +536,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             try
             { 
                outputStream = new FileOutputStream(filename, ((flags & O_APPEND) != 0) );
-               FileIOData.setStreamInUse(fdToUse, outputStream); // Save stream for later use
+               files().setStreamInUse(fdToUse, outputStream); // Save stream for later use
             } 
                 catch (FileNotFoundException e)
                {
@@ -470,7 +555,45 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
      */
        public static void closeFile(int fd)
       {
-         FileIOData.close(fd);
+         Object[] logged = (Object[]) ReplayLog.replayEffect(Object[].class);
+         if (logged != null)
+         {
+            replayFileResult(logged, null);
+            return;
+         }
+         files().close(fd);
+         recordFileResult(0, null, true);
+      }
+   
+       // Record the outcome of a file syscall in the current context's ReplayLog, if any:
+       // its result, the error message and the bytes read (if data is not null).  An effect
+       // is recorded only if the log holds effects.
+       private static int recordFileResult(int result, byte[] data, boolean effect)
+      {
+         ReplayLog log = SimulationContext.current().getReplayLog();
+         if (log != null && (!effect || log.logsEffects()))
+         {
+            byte[] bytesRead = null;
+            if (data != null && result > 0)
+            {
+               bytesRead = new byte[result];
+               System.arraycopy(data, 0, bytesRead, 0, result);
+            }
+            ReplayLog.record(new Object[] { Integer.valueOf(result), fileErrorString, bytesRead });
+         }
+         return result;
+      }
+   
+       // Reproduce the logged outcome of a file syscall without performing it.
+       private static int replayFileResult(Object[] logged, byte[] data)
+      {
+         fileErrorString = (String) logged[1];
+         byte[] bytesRead = (byte[]) logged[2];
+         if (data != null && bytesRead != null)
+         {
+            System.arraycopy(bytesRead, 0, data, 0, Math.min(bytesRead.length, data.length));
+         }
+         return ((Integer) logged[0]).intValue();
       }
    
     /** 
@@ -478,7 +601,112 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
      */
        public static void resetFiles()
       {
-         FileIOData.resetFiles();
+         files().resetFiles();
+      }
+   
+    /**
+     * Write the table of open files (other than the standard ones) for a machine
+     * snapshot: for each, its descriptor, name, flags and current position.
+     * @param out destination
+     * @throws IOException if the table cannot be written or a position cannot be read
+     * @see #openFileTable(DataInput)
+     */
+       public static void saveFileTable(DataOutput out) throws IOException
+      {
+         FileIOData files = files();
+         int count = 0;
+         for (int fd = STDERR + 1; fd < SYSCALL_MAXFILES; fd++)
+         {
+            if (files.fileNames[fd] != null && files.streams[fd] != null)
+               count++;
+         }
+         out.writeInt(count);
+         for (int fd = STDERR + 1; fd < SYSCALL_MAXFILES; fd++)
+         {
+            Object stream = files.streams[fd];
+            if (files.fileNames[fd] != null && stream != null)
+            {
+               out.writeInt(fd);
+               out.writeUTF(files.fileNames[fd]);
+               out.writeInt(files.fileFlags[fd]);
+               out.writeLong((stream instanceof FileInputStream)
+                             ? ((FileInputStream) stream).getChannel().position()
+                             : ((FileOutputStream) stream).getChannel().position());
+            }
+         }
+      }
+   
+    /**
+     * Reopen the files recorded by saveFileTable(), without changing the current table.
+     * Files open for reading are positioned where they were; files open for writing are
+     * reopened for appending, so nothing written before is lost.  If any file cannot be
+     * reopened, those already reopened are closed again.
+     * @param in source
+     * @return the reopened files, to install with restoreFileTable()
+     * @throws IOException if the table cannot be read or a file cannot be reopened
+     * @see #restoreFileTable(Object[])
+     */
+       public static Object[] openFileTable(DataInput in) throws IOException
+      {
+         Object[] table = new Object[SYSCALL_MAXFILES]; // null, or name, flags and stream
+         boolean opened = false;
+         try
+         {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++)
+            {
+               int fd = in.readInt();
+               String name = in.readUTF();
+               int flags = in.readInt();
+               long position = in.readLong();
+               if (fd <= STDERR || fd >= SYSCALL_MAXFILES || table[fd] != null)
+                  throw new IOException("invalid file descriptor " + fd);
+               if (flags == O_RDONLY)
+               {
+                  FileInputStream inputStream = new FileInputStream(name);
+                  table[fd] = new Object[] { name, Integer.valueOf(flags), inputStream };
+                  inputStream.getChannel().position(position);
+               }
+               else
+               {
+                  table[fd] = new Object[] { name, Integer.valueOf(flags), new FileOutputStream(name, true) };
+               }
+            }
+            opened = true;
+         }
+         finally
+         {
+            if (!opened)
+            {
+               for (int fd = 0; fd < SYSCALL_MAXFILES; fd++)
+               {
+                  if (table[fd] != null)
+                     ((Closeable) ((Object[]) table[fd])[2]).close();
+               }
+            }
+         }
+         return table;
+      }
+   
+    /**
+     * Close all open files and install those reopened by openFileTable(), under the
+     * same descriptors.
+     * @param table the reopened files
+     */
+       public static void restoreFileTable(Object[] table)
+      {
+         FileIOData files = files();
+         files.resetFiles();
+         for (int fd = STDERR + 1; fd < SYSCALL_MAXFILES; fd++)
+         {
+            if (table[fd] != null)
+            {
+               Object[] entry = (Object[]) table[fd];
+               files.fileNames[fd] = (String) entry[0];
+               files.fileFlags[fd] = ((Integer) entry[1]).intValue();
+               files.setStreamInUse(fd, entry[2]);
+            }
+         }
       }
    
      /**
@@ -498,10 +726,25 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
    	// transparent to it.  Lazy instantiation.  DPS.  28 Feb 2008
    	
        private static BufferedReader getInputReader() {
-         if (inputReader == null) {
-            inputReader = new BufferedReader(new InputStreamReader(System.in));  
-         }
-         return inputReader;
+         return files().getInputReader();
+      }
+   
+      // Reads a line of console input.  End of input reads as an empty line rather than
+      // null, so the syscall reports invalid input instead of failing.
+       private static String readConsoleLine() throws IOException {
+         String line = getInputReader().readLine();
+         return (line == null) ? "" : line;
+      }
+   
+      // Open files and standard streams of the calling thread's SimulationContext.
+       private static FileIOData files() {
+         FileIOData files = SimulationContext.current().getFileTable();
+         return (files == null) ? defaultFiles : files;
+      }
+   
+      // Console streams are used when there is no GUI, and always outside the default context.
+       private static boolean useConsole() {
+         return Globals.getGui() == null || !SimulationContext.current().isDefault();
       }
    	
    	
@@ -509,14 +752,68 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
     // Maintain information on files in use. The index to the arrays is the "file descriptor."
     // Ken Vollmar, August 2005
     
-       private static class FileIOData
+   /**
+    * Open files and standard streams of one SimulationContext.  The table of the default
+    * context uses System.in, System.out and System.err.
+    */
+       public static class FileIOData
       {
-         private static String[] fileNames = new String[ SYSCALL_MAXFILES ]; // The filenames in use. Null if file descriptor i is not in use.
-         private static int[] fileFlags = new int[ SYSCALL_MAXFILES ]; // The flags of this file, 0=READ, 1=WRITE. Invalid if this file descriptor is not in use.
-         private static Object[] streams = new Object[SYSCALL_MAXFILES]; // The streams in use, associated with the filenames
+         private String[] fileNames = new String[ SYSCALL_MAXFILES ]; // The filenames in use. Null if file descriptor i is not in use.
+         private int[] fileFlags = new int[ SYSCALL_MAXFILES ]; // The flags of this file, 0=READ, 1=WRITE. Invalid if this file descriptor is not in use.
+         private Object[] streams = new Object[SYSCALL_MAXFILES]; // The streams in use, associated with the filenames
+         private InputStream stdin;  // null means System.in, and so on
+         private PrintStream stdout;
+         private PrintStream stderr;
+         // Will use one buffered reader for all keyboard/redirected/piped input.
+         // Added by DPS 28 Feb 2008.  See getInputReader() below.
+         private BufferedReader inputReader = null;
+      
+         // Table of the default context.
+          private FileIOData()
+         {
+            this(null, null, null);
+         }
+      
+      /**
+       * Create a table with only the standard file descriptors open.
+       * @param in stream for STDIN and the read syscalls
+       * @param out stream for STDOUT and the print syscalls
+       * @param err stream for STDERR
+       */
+          public FileIOData(InputStream in, PrintStream out, PrintStream err)
+         {
+            stdin = in;
+            stdout = out;
+            stderr = err;
+            setupStdio();
+         }
+      
+          private InputStream getStdin()
+         {
+            return (stdin == null) ? System.in : stdin;
+         }
+      
+          private PrintStream getStdout()
+         {
+            return (stdout == null) ? System.out : stdout;
+         }
+      
+          private PrintStream getStderr()
+         {
+            return (stderr == null) ? System.err : stderr;
+         }
+      
+         // Lazy instantiation.  DPS.  28 Feb 2008
+          private BufferedReader getInputReader()
+         {
+            if (inputReader == null) {
+               inputReader = new BufferedReader(new InputStreamReader(getStdin()));  
+            }
+            return inputReader;
+         }
       
         // Reset all file information. Closes any open files and resets the arrays
-          private static void resetFiles()
+          private void resetFiles()
          {
             for (int i = 0; i < SYSCALL_MAXFILES; i++)
             {
@@ -525,36 +822,36 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
             setupStdio();
          }
       	// DPS 8-Jan-2013
-          private static void setupStdio() {
+          private void setupStdio() {
             fileNames[STDIN]  = "STDIN";
             fileNames[STDOUT] = "STDOUT";
             fileNames[STDERR] = "STDERR";
             fileFlags[STDIN]  = SystemIO.O_RDONLY;
             fileFlags[STDOUT] = SystemIO.O_WRONLY;
             fileFlags[STDERR] = SystemIO.O_WRONLY;
-            streams[STDIN]  = System.in;
-            streams[STDOUT] = System.out;
-            streams[STDERR] = System.err;
-            System.out.flush();
-            System.err.flush();
+            streams[STDIN]  = getStdin();
+            streams[STDOUT] = getStdout();
+            streams[STDERR] = getStderr();
+            getStdout().flush();
+            getStderr().flush();
          }
       
         // Preserve a stream that is in use
-          private static void setStreamInUse(int fd, Object s)
+          private void setStreamInUse(int fd, Object s)
          {
             streams[fd] = s;
          
          }
       
         // Retrieve a stream for use
-          private static Object getStreamInUse(int fd)
+          private Object getStreamInUse(int fd)
          {
             return streams[fd];
          
          }
       
         // Determine whether a given filename is already in use.
-          private static boolean filenameInUse(String requestedFilename)
+          private boolean filenameInUse(String requestedFilename)
          {
             for (int i = 0; i < SYSCALL_MAXFILES; i++)
             {
@@ -572,7 +869,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          }
       
         // Determine whether a given fd is already in use with the given flag.
-          private static boolean fdInUse(int fd, int flag)
+          private boolean fdInUse(int fd, int flag)
          {
             if (fd < 0 || fd >= SYSCALL_MAXFILES)
             {
@@ -592,7 +889,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       
         // Close the file with file descriptor fd. No errors are recoverable -- if the user's
         // made an error in the call, it will come back to him.
-          private static void close(int fd)
+          private void close(int fd)
          {
             // Can't close STDIN, STDOUT, STDERR, or invalid fd
             if (fd <= STDERR || fd >= SYSCALL_MAXFILES) 
@@ -624,7 +921,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
         // Attempt to open a new file with the given flag, using the lowest available file descriptor.
         // Check that filename is not in use, flag is reasonable, and there is an available file descriptor.
         // Return: file descriptor in 0...(SYSCALL_MAXFILES-1), or -1 if error
-          private static int nowOpening(String filename, int flag)
+          private int nowOpening(String filename, int flag)
          {
             int i = 0;
             if (filenameInUse(filename))
@@ -664,7 +961,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          
          }
       
-      } // end private class FileIOData
+      } // end class FileIOData
     ////////////////////////////////////////////////////////////////////////////////
    
    
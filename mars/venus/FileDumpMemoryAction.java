@@ -125,7 +125,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       	
          for (int i=0; i<segmentArray.length; i++) {
             try {
-               highAddressArray[i] = Globals.memory.getAddressOfFirstNull(baseAddressArray[i],limitAddressArray[i]) - Memory.WORD_LENGTH_BYTES;
+               highAddressArray[i] = Memory.getInstance().getAddressOfFirstNull(baseAddressArray[i],limitAddressArray[i]) - Memory.WORD_LENGTH_BYTES;
             
             }  // Exception will not happen since the Memory base and limit addresses are on word boundaries!
                 catch (AddressErrorException aee) {
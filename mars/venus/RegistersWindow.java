@@ -48,7 +48,8 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       private static Register [] registers;
       private Object[][] tableData;
       private boolean highlighting;
-      private int highlightRow;
+      private long highlightRows;  // bit n set to highlight row n
+      private boolean trackingChanges;
       private ExecutePane executePane;
       private static final int NAME_COLUMN = 0;
       private static final int NUMBER_COLUMN = 1;
@@ -120,7 +121,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          if (table != null) {
             table.tableChanged(new TableModelEvent(table.getModel()));
          }
-			highlightRow = -1; // assure highlight will not occur upon re-assemble.
+			highlightRows = 0; // assure highlight will not occur upon re-assemble.
       }
    	 
    	 /**
@@ -152,6 +153,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          updateRegisterUnsignedValue(32, RegisterFile.getProgramCounter(), base);
          updateRegisterValue(33, RegisterFile.getValue(33), base);
          updateRegisterValue(34, RegisterFile.getValue(34), base);
+         if (trackingChanges) {
+            highlightChangedRegisters(RegisterFile.takeChangedRegisters() & ~(1L << 32)); // not the PC
+         }
       }
    	
      /**
@@ -170,11 +174,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
       }   
    	
     	/** Required by Observer interface.  Called when notified by an Observable that we are registered with.
-   	 * Observables include:
-   	 *   The Simulator object, which lets us know when it starts and stops running
-   	 *   A register object, which lets us know of register operations
-   	 * The Simulator keeps us informed of when simulated MIPS execution is active.
-   	 * This is the only time we care about register operations.
+   	 * The Simulator keeps us informed of when simulated MIPS execution is active.  In
+   	 * timed or stepped mode, registers written are highlighted each time the display is
+   	 * updated; the register file keeps track of them, so registers are not observed.
    	 * @param observable The Observable object who is notifying us
    	 * @param obj Auxiliary object with additional information.
    	 */
@@ -182,42 +184,40 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          if (observable == mars.simulator.Simulator.getInstance()) {
             SimulatorNotice notice = (SimulatorNotice) obj;
             if (notice.getAction()==SimulatorNotice.SIMULATOR_START) {
-               // Simulated MIPS execution starts.  Respond to memory changes if running in timed
+               // Simulated MIPS execution starts.  Highlight register changes if running in timed
             	// or stepped mode.
                if (notice.getRunSpeed() != RunSpeedPanel.UNLIMITED_SPEED || notice.getMaxSteps()==1) {
-                  RegisterFile.addRegistersObserver(this);
-                  this.highlighting = true;
+                  this.trackChanges();
+               }
+               else {
+                  this.trackingChanges = false;
                }
             } 
-            else {
-               // Simulated MIPS execution stops.  Stop responding.
-               RegisterFile.deleteRegistersObserver(this);            
-            }
          } 
-         else if (obj instanceof RegisterAccessNotice) { 
-         	// NOTE: each register is a separate Observable
-            RegisterAccessNotice access = (RegisterAccessNotice) obj;
-            if (access.getAccessType()==AccessNotice.WRITE) {
-            	// Uses the same highlighting technique as for Text Segment -- see
-            	// AddressCellRenderer class in DataSegmentWindow.java.
-               this.highlighting = true;
-               this.highlightCellForRegister((Register)observable);
-               Globals.getGui().getRegistersPane().setSelectedComponent(this);
-            }
-         }
       }
    	
      /**
-      *  Highlight the row corresponding to the given register.  
-   	*  @param register Register object corresponding to row to be selected.
+      *  Start highlighting the registers written from now on, each time the display is updated.
    	*/
-       void highlightCellForRegister(Register register) {
-         this.highlightRow = register.getNumber();
+       void trackChanges() {
+         RegisterFile.takeChangedRegisters();
+         this.trackingChanges = true;
+         this.highlighting = true;
+      }
+   	
+       // Highlight the rows of the registers written since the last update, if any.
+       private void highlightChangedRegisters(long changed) {
+         if (changed == 0) {
+            return;
+         }
+         this.highlighting = true;
+         this.highlightRows = changed;
          // Tell the system that table contents have changed.  This will trigger re-rendering 
-      	// during which cell renderers are obtained.  The row of interest (identified by 
-      	// instance variabls this.registerRow) will get a renderer
+      	// during which cell renderers are obtained.  The rows of interest (identified by 
+      	// instance variable this.highlightRows) will get a renderer
       	// with highlight background color and all others get renderer with default background. 
          table.tableChanged(new TableModelEvent(table.getModel()));
+         Globals.getGui().getRegistersPane().setSelectedComponent(this);
       }
    	
    /*
@@ -241,7 +241,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
                                     isSelected, hasFocus, row, column);
             cell.setFont(font);
             cell.setHorizontalAlignment(alignment);
-            if (settings.getRegistersHighlighting() && highlighting && row==highlightRow) {
+            if (settings.getRegistersHighlighting() && highlighting && (highlightRows & (1L << row)) != 0) {
                cell.setBackground( settings.getColorSettingByPosition(Settings.REGISTER_HIGHLIGHT_BACKGROUND) );
                cell.setForeground( settings.getColorSettingByPosition(Settings.REGISTER_HIGHLIGHT_FOREGROUND) );
 					cell.setFont( settings.getFontByPosition(Settings.REGISTER_HIGHLIGHT_FONT) );
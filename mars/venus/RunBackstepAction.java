@@ -63,12 +63,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
          if (Globals.getSettings().getBackSteppingEnabled()) {
             boolean inDelaySlot = Globals.program.getBackStepper().inDelaySlot(); // Added 25 June 2007
 				Memory.getInstance().addObserver(executePane.getDataSegmentWindow());
-				RegisterFile.addRegistersObserver(executePane.getRegistersWindow());
+				executePane.getRegistersWindow().trackChanges();
 				Coprocessor0.addRegistersObserver(executePane.getCoprocessor0Window());
-				Coprocessor1.addRegistersObserver(executePane.getCoprocessor1Window());
+				executePane.getCoprocessor1Window().trackChanges();
             Globals.program.getBackStepper().backStep();
 				Memory.getInstance().deleteObserver(executePane.getDataSegmentWindow());
-				RegisterFile.deleteRegistersObserver(executePane.getRegistersWindow());
             executePane.getRegistersWindow().updateRegisters();
             executePane.getCoprocessor1Window().updateRegisters();
             executePane.getCoprocessor0Window().updateRegisters();
@@ -0,0 +1,132 @@
+   package mars.simulator;
+   import mars.*;
+   import mars.mips.hardware.*;
+   import java.io.*;
+   import java.util.*;
+
+	/*
+Copyright (c) 2003-2014,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Checks that conditional breakpoints, watches and step markers in a BreakpointTable
+ * stop a headless run where they should, and let it run to completion when they
+ * never hold.  Run with the MARS classes on the class path; exits with status 1
+ * on the first failure.
+ *
+ * @version October 2026
+ **/
+
+    public class BreakpointTableTest {
+      // Counts $t0 from 1 to 20, storing each value in w, then exits.
+      private static final String PROGRAM =
+           ".data\n"
+         + "w: .word 0\n"
+         + ".text\n"
+         + "main: li $t0, 0\n"
+         + "loop: addi $t0, $t0, 1\n"
+         + "      sw $t0, w\n"
+         + "      slti $t1, $t0, 20\n"
+         + "      bne $t1, $zero, loop\n"
+         + "      li $v0, 10\n"
+         + "      syscall\n";
+
+      private static MIPSprogram program;
+      private static int failures = 0;
+
+
+       public static void main(String[] args) throws Exception {
+         Globals.initialize(false);
+         File source = File.createTempFile("breakpoints", ".asm");
+         source.deleteOnExit();
+         PrintStream out = new PrintStream(new FileOutputStream(source));
+         out.print(PROGRAM);
+         out.close();
+
+         // A condition that holds part way through stops the run there.
+         BreakpointTable table = new BreakpointTable();
+         assemble(source);
+         table.setBreakpoint(label("loop"), BreakpointCondition.parse("$t0 == 7"));
+         check("breakpoint stops run", !program.simulateFromPC(table, -1, null));
+         check("breakpoint stops when condition holds", RegisterFile.getValue(8) == 7);
+         check("breakpoint stop address", table.getLastStopAddress() == label("loop"));
+
+         // A condition that never holds lets the run finish.
+         table = new BreakpointTable();
+         assemble(source);
+         table.setBreakpoint(label("loop"), BreakpointCondition.parse("$t0 < 0"));
+         check("false condition skips run", program.simulateFromPC(table, -1, null));
+         check("false condition never stops", table.getStopCount() == 0);
+         check("run completed", RegisterFile.getValue(8) == 20);
+
+         // A watch on memory stops once, when its condition becomes true; resuming
+         // runs to the end because the condition stays true.
+         table = new BreakpointTable();
+         assemble(source);
+         table.setWatch(label("loop"), BreakpointCondition.parse("[" + label("w") + "] >= 12"));
+         check("watch stops run", !program.simulateFromPC(table, -1, null));
+         check("watch stops when condition becomes true", RegisterFile.getValue(8) == 12);
+         check("watch does not stop again", program.simulateFromPC(table, -1, null));
+         check("watch stopped once", table.getStopCount() == 1);
+
+         // A step marker stops the first time only.
+         table = new BreakpointTable();
+         assemble(source);
+         table.setStepMarker(label("loop") + 4);
+         check("step marker stops run", !program.simulateFromPC(table, -1, null));
+         check("step marker stops on first visit", RegisterFile.getValue(8) == 1);
+         check("step marker is removed", program.simulateFromPC(table, -1, null));
+
+         if (failures > 0) {
+            System.exit(1);
+         }
+         System.out.println("BreakpointTableTest: all checks passed");
+      }
+
+
+       private static void assemble(File source) throws ProcessingException {
+         program = new MIPSprogram();
+         ArrayList files = new ArrayList();
+         files.add(source.getPath());
+         program.assemble(program.prepareFilesForAssembly(files, source.getPath(), null), true, false);
+         RegisterFile.resetRegisters();
+         RegisterFile.initializeProgramCounter(false);
+      }
+
+
+       private static int label(String name) {
+         return program.getLocalSymbolTable().getAddressLocalOrGlobal(name);
+      }
+
+
+       private static void check(String what, boolean passed) {
+         if (!passed) {
+            System.out.println("FAILED: " + what);
+            failures++;
+         }
+      }
+   }
@@ -0,0 +1,141 @@
+   package mars.simulator;
+   import mars.*;
+   import mars.mips.hardware.*;
+   import java.io.*;
+   import java.util.*;
+
+	/*
+Copyright (c) 2003-2014,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining
+a copy of this software and associated documentation files (the
+"Software"), to deal in the Software without restriction, including
+without limitation the rights to use, copy, modify, merge, publish,
+distribute, sublicense, and/or sell copies of the Software, and to
+permit persons to whom the Software is furnished to do so, subject
+to the following conditions:
+
+The above copyright notice and this permission notice shall be
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * Checks that a TimeTravel run goes back and forth to exact instruction positions,
+ * replaying console input and printing nothing twice, both on the command-line path
+ * of the simulator and on the path used when a RunSpeedPanel exists.  Run with the
+ * MARS classes on the class path; exits with status 1 on the first failure.
+ *
+ * @version October 2026
+ **/
+
+    public class TimeTravelTest {
+      // Reads n, then adds 1 to 40 to it in $t0 with $t1 counting, prints $t0 and exits.
+      // Instruction k (k >= 4) of the loop leaves $t1 == (k - 4) / 4 + 1 after its addi.
+      private static final String PROGRAM =
+           ".text\n"
+         + "main: li $v0, 5\n"
+         + "      syscall\n"
+         + "      move $t0, $v0\n"
+         + "      li $t1, 0\n"
+         + "loop: addi $t1, $t1, 1\n"
+         + "      add $t0, $t0, $t1\n"
+         + "      slti $t2, $t1, 40\n"
+         + "      bne $t2, $zero, loop\n"
+         + "      li $v0, 1\n"
+         + "      move $a0, $t0\n"
+         + "      syscall\n"
+         + "      li $v0, 10\n"
+         + "      syscall\n";
+      private static final int LENGTH = 4 + 4 * 40 + 5;
+
+      private static MIPSprogram program;
+      private static int failures = 0;
+
+
+       public static void main(String[] args) throws Exception {
+         Globals.initialize(false);
+         File source = File.createTempFile("timetravel", ".asm");
+         source.deleteOnExit();
+         PrintStream out = new PrintStream(new FileOutputStream(source));
+         out.print(PROGRAM);
+         out.close();
+
+         ArrayList files = new ArrayList();
+         files.add(source.getPath());
+         program = new MIPSprogram();
+         program.assemble(program.prepareFilesForAssembly(files, source.getPath(), null), true, false);
+
+         travel("command line", false);
+         travel("run speed panel", true);
+
+         if (failures > 0) {
+            System.exit(1);
+         }
+         System.out.println("TimeTravelTest: all checks passed");
+      }
+
+
+       private static void travel(String path, boolean runSpeedPanel) throws Exception {
+         Globals.runSpeedPanelExists = runSpeedPanel;
+         RegisterFile.resetRegisters();
+         RegisterFile.initializeProgramCounter(false);
+         ByteArrayOutputStream printed = new ByteArrayOutputStream();
+         SimulationContext start = SimulationContext.fork(
+               new ByteArrayInputStream("100\n".getBytes()), new PrintStream(printed, true), System.err);
+         TimeTravel run = new TimeTravel(program, start, 16);
+
+         check(path + ": run terminates", run.run(-1));
+         check(path + ": position at end", run.getPosition() == LENGTH);
+         check(path + ": result", register(run, 8) == 100 + 40 * 41 / 2);
+         check(path + ": checkpoints", run.getCheckpointCount() == LENGTH / 16 + 1);
+
+         run.travelTo(4 + 4 * 9 + 1);
+         check(path + ": back to loop", run.getPosition() == 4 + 4 * 9 + 1 && register(run, 9) == 10);
+         check(path + ": state matches position", register(run, 8) == 100 + 9 * 10 / 2);
+         run.stepBack();
+         check(path + ": step back", run.getPosition() == 4 + 4 * 9 && register(run, 9) == 9);
+         run.travelTo(3);
+         check(path + ": back before input", register(run, 8) == 100);
+         run.travelTo(30);
+         check(path + ": forward again", run.getPosition() == 30 && register(run, 9) == 7);
+         check(path + ": nothing printed twice", printed.toString().equals("" + (100 + 40 * 41 / 2)));
+         check(path + ": run terminates again", run.run(-1) && run.getPosition() == LENGTH);
+         check(path + ": still printed once", printed.toString().equals("" + (100 + 40 * 41 / 2)));
+      }
+
+
+       // Value of a register in the context at the current position of a run.
+       private static int register(TimeTravel run, int number) {
+         SimulationContext previous = SimulationContext.current();
+         run.getContext().bind();
+         int value = RegisterFile.getValue(number);
+         if (previous.isDefault()) {
+            SimulationContext.unbind();
+         }
+         else {
+            previous.bind();
+         }
+         return value;
+      }
+
+
+       private static void check(String what, boolean passed) {
+         if (!passed) {
+            System.out.println("FAILED: " + what);
+            failures++;
+         }
+      }
+   }